@@ -7,19 +7,63 @@ package com.backblaze.b2.client;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.exceptions.B2LocalException;
 import com.backblaze.b2.client.structures.B2AccountAuthorization;
+import com.backblaze.b2.util.B2Clock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The B2AccountAuthorizationCache holds the most recent account authorization
  * and can be cleared when it appears to have become invalid.
  *
+ * Account authorizations are good for 24 hours.  Instead of waiting for
+ * the server to tell us that ours has expired, we start getting a new one
+ * in the background once ours is refreshAfterMillis old.  Callers keep
+ * getting the old one until the new one arrives, so nobody has to wait.
+ *
+ * When there's no authorization at all (at the start or after clear()),
+ * callers have to wait for one.  Only one call to the authorizer is in
+ * flight at a time, and everyone who's waiting shares its result.
+ *
  * REQUIRES: the provided accountAuthorizer must be thread-safe.
  *
  * THREAD-SAFETY: this class may be used from multiple threads safely.
  */
 class B2AccountAuthorizationCache {
+    // a bit before the 24 hours that an authorization is good for, so
+    // there's plenty of time to get a new one, even with a few failures.
+    static final long DEFAULT_REFRESH_AFTER_MILLIS = TimeUnit.HOURS.toMillis(22);
+
+    // if a background refresh fails, we wait this long before trying
+    // another one so we don't call the authorizer for every get().
+    static final long DEFAULT_RETRY_REFRESH_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     private final B2StorageClientWebifier webifier;
     private final B2AccountAuthorizer accountAuthorizer;
-    private B2AccountAuthorization authorization;
+    private final Executor refreshExecutor;
+    private final long refreshAfterMillis;
+    private final long retryRefreshAfterMillis;
+
+    /**
+     * The authorization to hand out and when we got it.  It's
+     * volatile so that get() doesn't have to lock in the common case.
+     */
+    private volatile Current currentOrNull;
+
+    /**
+     * If non-null, a call to the authorizer is in progress and this will
+     * be completed with its result.  Guarded by 'this'.
+     */
+    private CompletableFuture<B2AccountAuthorization> inFlightOrNull;
+
+    /**
+     * We won't start another background refresh before this time.
+     * Guarded by 'this'.
+     */
+    private long nextRefreshAllowedMonoMillis = Long.MIN_VALUE;
 
     /**
      * The authorize() call from the authorizer should always
@@ -27,39 +71,60 @@ class B2AccountAuthorizationCache {
      * the first successful authorization, we hold on to the accountId
      * and use it to make sure we are always authenticating with the same account.
      */
-    private String accountId;
+    private volatile String accountId;
+
+    private static class Current {
+        final B2AccountAuthorization authorization;
+        final long obtainedMonoMillis;
+
+        Current(B2AccountAuthorization authorization,
+                long obtainedMonoMillis) {
+            this.authorization = authorization;
+            this.obtainedMonoMillis = obtainedMonoMillis;
+        }
+    }
 
     B2AccountAuthorizationCache(B2StorageClientWebifier webifier,
                                 B2AccountAuthorizer accountAuthorizer) {
+        this(webifier,
+                accountAuthorizer,
+                B2AccountAuthorizationCache::runOnNewDaemonThread,
+                DEFAULT_REFRESH_AFTER_MILLIS,
+                DEFAULT_RETRY_REFRESH_AFTER_MILLIS);
+    }
+
+    /*forTests*/ B2AccountAuthorizationCache(B2StorageClientWebifier webifier,
+                                             B2AccountAuthorizer accountAuthorizer,
+                                             Executor refreshExecutor,
+                                             long refreshAfterMillis,
+                                             long retryRefreshAfterMillis) {
         this.webifier = webifier;
         this.accountAuthorizer = accountAuthorizer;
+        this.refreshExecutor = refreshExecutor;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.retryRefreshAfterMillis = retryRefreshAfterMillis;
     }
 
 
     /**
      * @return a B2AccountAuthorization.  it does *NOT* retry on its own.
      *
-     * THREADING: note that we intentionally block all other threads while
-     *            waiting for an answer from the server.  if the first thread
-     *            succeeds, they'll all benefit.  if one of them fails,
-     *            the next one that asks will try again.  no need to ask
-     *            multiple times in parallel.
+     * THREADING: if we have an authorization, we return it without locking,
+     *            even if a background refresh is in progress.  if we don't
+     *            have one, we block until one call to the authorizer finishes.
+     *            if it succeeds, all of the waiting threads benefit.  if it
+     *            fails, all of the waiting threads get its exception and the
+     *            next one that asks will try again.
      */
-    synchronized B2AccountAuthorization get() throws B2Exception {
-        if (authorization == null) {
-            authorization = accountAuthorizer.authorize(webifier);
-
-            final String accountIdFromAuthorization = authorization.getAccountId();
-            if (accountId == null) {
-                accountId = accountIdFromAuthorization;
-            } else {
-                if (!accountId.equals(accountIdFromAuthorization)) {
-                    throw new B2LocalException("unauthorized", "authorized as " + accountIdFromAuthorization +
-                            "but previously authorized as accountId " + accountId);
-                }
+    B2AccountAuthorization get() throws B2Exception {
+        final Current current = currentOrNull;
+        if (current != null) {
+            if (B2Clock.get().monotonicMillis() - current.obtainedMonoMillis >= refreshAfterMillis) {
+                maybeStartBackgroundRefresh();
             }
+            return current.authorization;
         }
-        return authorization;
+        return waitForAuthorization();
     }
 
     /**
@@ -68,7 +133,7 @@ class B2AccountAuthorizationCache {
      * @return the accountId from a successful authorization
      * @throws B2Exception thrown from any B2Exception thrown during 'authorization' -> get()
      */
-    synchronized String getAccountId() throws B2Exception{
+    String getAccountId() throws B2Exception {
         if (accountId == null) {
             get();
         }
@@ -76,6 +141,113 @@ class B2AccountAuthorizationCache {
     }
 
     synchronized void clear() {
-        authorization = null;
+        currentOrNull = null;
+    }
+
+    private B2AccountAuthorization waitForAuthorization() throws B2Exception {
+        final CompletableFuture<B2AccountAuthorization> future;
+        final boolean isOurs;
+        synchronized (this) {
+            final Current current = currentOrNull;
+            if (current != null) {
+                // someone else got one while we were waiting for the lock.
+                return current.authorization;
+            }
+            isOurs = (inFlightOrNull == null);
+            if (isOurs) {
+                inFlightOrNull = new CompletableFuture<>();
+            }
+            future = inFlightOrNull;
+        }
+
+        if (isOurs) {
+            authorizeAndComplete(future);
+        }
+        return waitFor(future);
+    }
+
+    private void maybeStartBackgroundRefresh() {
+        final CompletableFuture<B2AccountAuthorization> future;
+        synchronized (this) {
+            final long nowMonoMillis = B2Clock.get().monotonicMillis();
+            if (inFlightOrNull != null || nowMonoMillis < nextRefreshAllowedMonoMillis) {
+                return;
+            }
+            nextRefreshAllowedMonoMillis = nowMonoMillis + retryRefreshAfterMillis;
+            future = new CompletableFuture<>();
+            inFlightOrNull = future;
+        }
+
+        try {
+            refreshExecutor.execute(() -> authorizeAndComplete(future));
+        } catch (RejectedExecutionException e) {
+            // we'll try again later.  in the meantime, the current
+            // authorization is still good, so there's no one to tell.
+            synchronized (this) {
+                inFlightOrNull = null;
+            }
+            future.completeExceptionally(new B2LocalException("trouble", "couldn't start refreshing account authorization: " + e, e));
+        }
+    }
+
+    /**
+     * Calls the authorizer and completes the future with the result.
+     * It never throws; errors go to the future.
+     */
+    private void authorizeAndComplete(CompletableFuture<B2AccountAuthorization> future) {
+        try {
+            final B2AccountAuthorization authorization = accountAuthorizer.authorize(webifier);
+            synchronized (this) {
+                final String accountIdFromAuthorization = authorization.getAccountId();
+                if (accountId == null) {
+                    accountId = accountIdFromAuthorization;
+                } else {
+                    if (!accountId.equals(accountIdFromAuthorization)) {
+                        throw new B2LocalException("unauthorized", "authorized as " + accountIdFromAuthorization +
+                                "but previously authorized as accountId " + accountId);
+                    }
+                }
+                currentOrNull = new Current(authorization, B2Clock.get().monotonicMillis());
+                inFlightOrNull = null;
+            }
+            future.complete(authorization);
+        } catch (Throwable t) {
+            synchronized (this) {
+                inFlightOrNull = null;
+            }
+            future.completeExceptionally(t);
+        }
+    }
+
+    private static B2AccountAuthorization waitFor(CompletableFuture<B2AccountAuthorization> future) throws B2Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting for account authorization: " + e, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof B2Exception) {
+                throw (B2Exception) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new B2LocalException("trouble", "exception while getting account authorization: " + cause, cause);
+        }
+    }
+
+    /**
+     * Background refreshes happen about once a day, so it's not worth
+     * keeping a thread around for them.  The thread is a daemon so
+     * that it doesn't keep the JVM alive.
+     */
+    private static void runOnNewDaemonThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "B2AccountAuthorizationCache-refresh");
+        thread.setDaemon(true);
+        thread.start();
     }
 }
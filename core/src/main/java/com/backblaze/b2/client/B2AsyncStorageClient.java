@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.structures.B2Bucket;
+import com.backblaze.b2.client.structures.B2CancelLargeFileRequest;
+import com.backblaze.b2.client.structures.B2CopyFileRequest;
+import com.backblaze.b2.client.structures.B2CreateBucketRequest;
+import com.backblaze.b2.client.structures.B2DeleteBucketRequest;
+import com.backblaze.b2.client.structures.B2DeleteFileVersionRequest;
+import com.backblaze.b2.client.structures.B2DownloadAuthorization;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2DownloadByNameRequest;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2FinishLargeFileRequest;
+import com.backblaze.b2.client.structures.B2GetDownloadAuthorizationRequest;
+import com.backblaze.b2.client.structures.B2GetFileInfoByNameRequest;
+import com.backblaze.b2.client.structures.B2GetFileInfoRequest;
+import com.backblaze.b2.client.structures.B2HideFileRequest;
+import com.backblaze.b2.client.structures.B2ListBucketsRequest;
+import com.backblaze.b2.client.structures.B2ListBucketsResponse;
+import com.backblaze.b2.client.structures.B2StartLargeFileRequest;
+import com.backblaze.b2.client.structures.B2UpdateBucketRequest;
+import com.backblaze.b2.client.structures.B2UploadFileRequest;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/*****
+ * B2AsyncStorageClient is the asynchronous version of B2StorageClient.
+ * It takes the same request structures, but each call returns right away
+ * with a CompletableFuture instead of blocking the caller until the
+ * operation is done.
+ *
+ * If an operation fails, its future completes exceptionally, and the
+ * cause of the ExecutionException from get() (or the CompletionException
+ * from join()) is the B2Exception that the B2StorageClient would have thrown.
+ *
+ * B2AsyncStorageClientImpl doesn't hold a thread while a request is with
+ * the server.  b2-sdk-javahttpclient's B2StorageJavaHttpClientBuilder
+ * makes one.
+ *
+ * Only the single-request operations are here.  For large files,
+ * use B2StorageClient.storeLargeFileFromLocalContentAsync() or
+ * downloadByIdParallel(), which already spread their work across
+ * an executor.  For everything else, use getStorageClient().
+ *
+ * Be sure to close() any instance you create when you are done with it.
+ *
+ * THREAD-SAFETY:  You may call any methods from any thread at any time.
+ */
+public interface B2AsyncStorageClient extends Closeable {
+
+    /**
+     * @return the blocking client that this async client uses.
+     *         don't close it; close this instead.
+     */
+    B2StorageClient getStorageClient();
+
+    /**
+     * @see B2StorageClient#createBucket(B2CreateBucketRequest)
+     */
+    CompletableFuture<B2Bucket> createBucket(B2CreateBucketRequest request);
+
+    /**
+     * @see B2StorageClient#listBuckets(B2ListBucketsRequest)
+     */
+    CompletableFuture<B2ListBucketsResponse> listBuckets(B2ListBucketsRequest request);
+
+    /**
+     * @see B2StorageClient#getBucketOrNullByName(String)
+     */
+    CompletableFuture<B2Bucket> getBucketOrNullByName(String name);
+
+    /**
+     * @see B2StorageClient#updateBucket(B2UpdateBucketRequest)
+     */
+    CompletableFuture<B2Bucket> updateBucket(B2UpdateBucketRequest request);
+
+    /**
+     * @see B2StorageClient#deleteBucket(B2DeleteBucketRequest)
+     */
+    CompletableFuture<B2Bucket> deleteBucket(B2DeleteBucketRequest request);
+
+    /**
+     * @see B2StorageClient#uploadSmallFile(B2UploadFileRequest)
+     */
+    CompletableFuture<B2FileVersion> uploadSmallFile(B2UploadFileRequest request);
+
+    /**
+     * @see B2StorageClient#copySmallFile(B2CopyFileRequest)
+     */
+    CompletableFuture<B2FileVersion> copySmallFile(B2CopyFileRequest request);
+
+    /**
+     * @see B2StorageClient#startLargeFile(B2StartLargeFileRequest)
+     */
+    CompletableFuture<B2FileVersion> startLargeFile(B2StartLargeFileRequest request);
+
+    /**
+     * @see B2StorageClient#finishLargeFile(B2FinishLargeFileRequest)
+     */
+    CompletableFuture<B2FileVersion> finishLargeFile(B2FinishLargeFileRequest request);
+
+    /**
+     * @see B2StorageClient#cancelLargeFile(B2CancelLargeFileRequest)
+     */
+    CompletableFuture<Void> cancelLargeFile(B2CancelLargeFileRequest request);
+
+    /**
+     * The handler is called on one of the client's threads, not the caller's.
+     * The future completes after the handler returns.
+     *
+     * @see B2StorageClient#downloadById(B2DownloadByIdRequest, B2ContentSink)
+     */
+    CompletableFuture<Void> downloadById(B2DownloadByIdRequest request,
+                                         B2ContentSink handler);
+
+    /**
+     * The handler is called on one of the client's threads, not the caller's.
+     * The future completes after the handler returns.
+     *
+     * @see B2StorageClient#downloadByName(B2DownloadByNameRequest, B2ContentSink)
+     */
+    CompletableFuture<Void> downloadByName(B2DownloadByNameRequest request,
+                                           B2ContentSink handler);
+
+    /**
+     * @see B2StorageClient#getFileInfo(B2GetFileInfoRequest)
+     */
+    CompletableFuture<B2FileVersion> getFileInfo(B2GetFileInfoRequest request);
+
+    /**
+     * @see B2StorageClient#getFileInfoByName(B2GetFileInfoByNameRequest)
+     */
+    CompletableFuture<B2FileVersion> getFileInfoByName(B2GetFileInfoByNameRequest request);
+
+    /**
+     * @see B2StorageClient#hideFile(B2HideFileRequest)
+     */
+    CompletableFuture<B2FileVersion> hideFile(B2HideFileRequest request);
+
+    /**
+     * @see B2StorageClient#deleteFileVersion(B2DeleteFileVersionRequest)
+     */
+    CompletableFuture<Void> deleteFileVersion(B2DeleteFileVersionRequest request);
+
+    /**
+     * @see B2StorageClient#getDownloadAuthorization(B2GetDownloadAuthorizationRequest)
+     */
+    CompletableFuture<B2DownloadAuthorization> getDownloadAuthorization(B2GetDownloadAuthorizationRequest request);
+
+    /**
+     * Closes the underlying B2StorageClient.  Operations that are already
+     * running may fail.  The executor belongs to the caller, so it is not
+     * shut down.
+     */
+    @Override
+    void close();
+}
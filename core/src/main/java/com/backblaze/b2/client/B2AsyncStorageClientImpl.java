@@ -0,0 +1,334 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2UnauthorizedException;
+import com.backblaze.b2.client.structures.B2AccountAuthorization;
+import com.backblaze.b2.client.structures.B2Bucket;
+import com.backblaze.b2.client.structures.B2CancelLargeFileRequest;
+import com.backblaze.b2.client.structures.B2CancelLargeFileResponse;
+import com.backblaze.b2.client.structures.B2CopyFileRequest;
+import com.backblaze.b2.client.structures.B2CreateBucketRequest;
+import com.backblaze.b2.client.structures.B2CreateBucketRequestReal;
+import com.backblaze.b2.client.structures.B2DeleteBucketRequest;
+import com.backblaze.b2.client.structures.B2DeleteBucketRequestReal;
+import com.backblaze.b2.client.structures.B2DeleteFileVersionRequest;
+import com.backblaze.b2.client.structures.B2DeleteFileVersionResponse;
+import com.backblaze.b2.client.structures.B2DownloadAuthorization;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2DownloadByNameRequest;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2FinishLargeFileRequest;
+import com.backblaze.b2.client.structures.B2GetDownloadAuthorizationRequest;
+import com.backblaze.b2.client.structures.B2GetFileInfoByNameRequest;
+import com.backblaze.b2.client.structures.B2GetFileInfoRequest;
+import com.backblaze.b2.client.structures.B2GetUploadUrlRequest;
+import com.backblaze.b2.client.structures.B2HideFileRequest;
+import com.backblaze.b2.client.structures.B2ListBucketsRequest;
+import com.backblaze.b2.client.structures.B2ListBucketsResponse;
+import com.backblaze.b2.client.structures.B2StartLargeFileRequest;
+import com.backblaze.b2.client.structures.B2UpdateBucketRequest;
+import com.backblaze.b2.client.structures.B2UploadFileRequest;
+import com.backblaze.b2.client.structures.B2UploadListener;
+import com.backblaze.b2.client.structures.B2UploadUrlResponse;
+import com.backblaze.b2.client.webApiClients.B2AsyncWebApiClient;
+import com.backblaze.b2.util.B2ByteProgressListener;
+import com.backblaze.b2.util.B2InputStreamWithByteProgressListener;
+import com.backblaze.b2.util.B2Preconditions;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * B2AsyncStorageClientImpl implements B2AsyncStorageClient on top of a
+ * B2AsyncWebApiClient, so no thread waits while a request is with the
+ * server.  The number of operations in flight is limited by the
+ * B2AsyncWebApiClient, not by the number of threads.
+ *
+ * It shares the account authorization, upload urls, retry policy, and
+ * metrics of the B2StorageClientImpl it's given, and it makes the same
+ * requests that client's B2StorageClientWebifierImpl would.  The executor
+ * only starts attempts.  Waiting between retries happens on a shared
+ * scheduler thread.
+ *
+ * Getting a new account authorization still blocks the thread that asks
+ * for it.  That's rare, since the authorization is cached and refreshed
+ * in the background.
+ *
+ * THREAD-SAFETY: this class is thread-safe.
+ */
+public class B2AsyncStorageClientImpl implements B2AsyncStorageClient {
+    private final B2StorageClientImpl client;
+    private final B2StorageClientWebifierImpl webifier;
+    private final B2AsyncWebApiClient webApiClient;
+    private final B2AccountAuthorizationCache accountAuthCache;
+    private final B2UploadUrlCache uploadUrlCache;
+    private final B2Retryer retryer;
+    private final Supplier<B2RetryPolicy> retryPolicySupplier;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param client the blocking client to share state with.  it must use a
+     *               B2StorageClientWebifierImpl.  this object takes ownership
+     *               of it and will close it in close().
+     * @param webApiClient the transport for this client's requests.  this
+     *                     object takes ownership of it and will close it in
+     *                     close().
+     * @param executor where to start the attempts.  they don't wait for the
+     *                 server, so a thread or two is plenty.  the caller
+     *                 retains ownership of it and is responsible for
+     *                 shutting it down.
+     */
+    public B2AsyncStorageClientImpl(B2StorageClientImpl client,
+                                    B2AsyncWebApiClient webApiClient,
+                                    Executor executor) {
+        B2Preconditions.checkArgument(client.getWebifier() instanceof B2StorageClientWebifierImpl,
+                "client must use a B2StorageClientWebifierImpl");
+        this.client = client;
+        this.webifier = (B2StorageClientWebifierImpl) client.getWebifier();
+        this.webApiClient = webApiClient;
+        this.accountAuthCache = client.getAccountAuthCache();
+        this.uploadUrlCache = client.getUploadUrlCache();
+        this.retryer = client.getRetryer();
+        this.retryPolicySupplier = client.getRetryPolicySupplier();
+        this.executor = executor;
+        this.scheduler = B2Retryer.getDefaultScheduler();
+    }
+
+    @Override
+    public B2StorageClient getStorageClient() {
+        return client;
+    }
+
+    @Override
+    public CompletableFuture<B2Bucket> createBucket(B2CreateBucketRequest request) {
+        return retry("b2_create_bucket", isRetry -> {
+            final B2CreateBucketRequestReal realRequest = new B2CreateBucketRequestReal(accountAuthCache.getAccountId(), request);
+            return postJson("b2_create_bucket", realRequest, B2Bucket.class);
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2ListBucketsResponse> listBuckets(B2ListBucketsRequest request) {
+        return retry("b2_list_buckets", isRetry -> postJson("b2_list_buckets", request, B2ListBucketsResponse.class));
+    }
+
+    @Override
+    public CompletableFuture<B2Bucket> getBucketOrNullByName(String name) {
+        return retry("b2_list_buckets", isRetry -> {
+            final B2ListBucketsRequest request = B2ListBucketsRequest
+                    .builder(accountAuthCache.getAccountId())
+                    .setBucketName(name)
+                    .build();
+            return postJson("b2_list_buckets", request, B2ListBucketsResponse.class);
+        }).thenApply(response -> {
+            final List<B2Bucket> buckets = response.getBuckets();
+            return buckets.isEmpty() ? null : buckets.get(0);
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2Bucket> updateBucket(B2UpdateBucketRequest request) {
+        return retry("b2_update_bucket", isRetry -> postJson("b2_update_bucket", request, B2Bucket.class));
+    }
+
+    @Override
+    public CompletableFuture<B2Bucket> deleteBucket(B2DeleteBucketRequest request) {
+        return retry("b2_delete_bucket", isRetry -> {
+            final B2DeleteBucketRequestReal realRequest = new B2DeleteBucketRequestReal(accountAuthCache.getAccountId(), request.getBucketId());
+            return postJson("b2_delete_bucket", realRequest, B2Bucket.class);
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> uploadSmallFile(B2UploadFileRequest request) {
+        return retry("b2_upload_file", isRetry -> {
+            final B2UploadUrlResponse cachedOrNull = uploadUrlCache.getCachedOrNull(request.getBucketId(), isRetry);
+            final CompletableFuture<B2UploadUrlResponse> uploadUrlResponse = (cachedOrNull != null) ?
+                    CompletableFuture.completedFuture(cachedOrNull) :
+                    postJson("b2_get_upload_url", B2GetUploadUrlRequest.builder(request.getBucketId()).build(), B2UploadUrlResponse.class);
+            return uploadUrlResponse.thenCompose(response -> uploadFile(response, request));
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> copySmallFile(B2CopyFileRequest request) {
+        return retry("b2_copy_file", isRetry -> postJson("b2_copy_file", request, B2FileVersion.class));
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> startLargeFile(B2StartLargeFileRequest request) {
+        return retry("b2_start_large_file", isRetry -> postJson("b2_start_large_file", request, B2FileVersion.class));
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> finishLargeFile(B2FinishLargeFileRequest request) {
+        return retry("b2_finish_large_file", isRetry -> postJson("b2_finish_large_file", request, B2FileVersion.class));
+    }
+
+    @Override
+    public CompletableFuture<Void> cancelLargeFile(B2CancelLargeFileRequest request) {
+        return retry("b2_cancel_large_file", isRetry -> postJson("b2_cancel_large_file", request, B2CancelLargeFileResponse.class))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> downloadById(B2DownloadByIdRequest request,
+                                                B2ContentSink handler) {
+        final B2ContentSink handlerThatRecordsBytes = client.sinkThatRecordsBytes("b2_download_file_by_id", handler);
+        return retry("b2_download_file_by_id", isRetry -> {
+            final B2AccountAuthorization accountAuth = accountAuthCache.get();
+            return webApiClient.getContentAsync(
+                    webifier.makeDownloadByIdUrl(accountAuth, request),
+                    webifier.makeDownloadHeaders(accountAuth, request.getRange(), request.getServerSideEncryption()),
+                    handlerThatRecordsBytes);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> downloadByName(B2DownloadByNameRequest request,
+                                                  B2ContentSink handler) {
+        final B2ContentSink handlerThatRecordsBytes = client.sinkThatRecordsBytes("b2_download_file_by_name", handler);
+        return retry("b2_download_file_by_name", isRetry -> {
+            final B2AccountAuthorization accountAuth = accountAuthCache.get();
+            return webApiClient.getContentAsync(
+                    webifier.makeDownloadByNameUrl(accountAuth, request.getBucketName(), request.getFileName(), request),
+                    webifier.makeDownloadHeaders(accountAuth, request.getRange(), request.getServerSideEncryption()),
+                    handlerThatRecordsBytes);
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> getFileInfo(B2GetFileInfoRequest request) {
+        return retry("b2_get_file_info", isRetry -> postJson("b2_get_file_info", request, B2FileVersion.class));
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> getFileInfoByName(B2GetFileInfoByNameRequest request) {
+        return retry("get_file_info_by_name", isRetry -> {
+            final B2AccountAuthorization accountAuth = accountAuthCache.get();
+            return webApiClient.headAsync(
+                    webifier.makeGetFileInfoByNameUrl(accountAuth, request.getBucketName(), request.getFileName()),
+                    webifier.makeGetFileInfoByNameHeaders(accountAuth, request))
+                    .thenApply(headers -> webifier.makeFileVersionFromHeadResponse(accountAuth, headers));
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2FileVersion> hideFile(B2HideFileRequest request) {
+        return retry("b2_hide_file", isRetry -> postJson("b2_hide_file", request, B2FileVersion.class));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteFileVersion(B2DeleteFileVersionRequest request) {
+        return retry("b2_delete_file_version", isRetry -> postJson("b2_delete_file_version", request, B2DeleteFileVersionResponse.class))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<B2DownloadAuthorization> getDownloadAuthorization(B2GetDownloadAuthorizationRequest request) {
+        return retry("b2_get_download_authorization", isRetry -> postJson("b2_get_download_authorization", request, B2DownloadAuthorization.class));
+    }
+
+    @Override
+    public void close() {
+        webApiClient.close();
+        client.close();
+    }
+
+    private <T> CompletableFuture<T> retry(String operation,
+                                           B2Retryer.AsyncRetryableCallable<T> callable) {
+        return retryer.doRetryNonBlocking(operation,
+                accountAuthCache,
+                callable,
+                retryPolicySupplier.get(),
+                executor,
+                scheduler);
+    }
+
+    private <T> CompletableFuture<T> postJson(String apiName,
+                                              Object request,
+                                              Class<T> responseClass) throws B2Exception {
+        final B2AccountAuthorization accountAuth = accountAuthCache.get();
+        return webApiClient.postJsonReturnJsonAsync(
+                webifier.makeUrl(accountAuth, apiName),
+                webifier.makeHeaders(accountAuth),
+                request,
+                responseClass);
+    }
+
+    /**
+     * Does what B2StorageClientWebifierImpl.uploadFile() does, without
+     * waiting for the upload to finish.  When it works, the upload url is
+     * given back to the cache for the next upload.
+     */
+    private CompletableFuture<B2FileVersion> uploadFile(B2UploadUrlResponse uploadUrlResponse,
+                                                        B2UploadFileRequest request) {
+        final B2UploadListener uploadListener = request.getListener();
+        final B2ContentDetailsForUpload contentDetails;
+        final B2Headers headers;
+        try {
+            contentDetails = new B2ContentDetailsForUpload(request.getContentSource());
+        } catch (B2Exception e) {
+            return failedFuture(e);
+        }
+        final long contentLen = contentDetails.getContentLength();
+
+        uploadListener.progress(B2UploadProgressUtil.forSmallFileWaitingToStart(contentLen));
+        uploadListener.progress(B2UploadProgressUtil.forSmallFileStarting(contentLen));
+
+        try {
+            headers = webifier.makeUploadFileHeaders(uploadUrlResponse, request, contentDetails);
+        } catch (B2Exception e) {
+            contentDetails.close();
+            return failedFuture(e);
+        }
+
+        final B2ByteProgressListener progressAdapter = new B2UploadProgressAdapter(uploadListener, 0, 1, 0, contentLen);
+        final B2ByteProgressFilteringListener progressListener = new B2ByteProgressFilteringListener(progressAdapter);
+
+        return webApiClient.postDataReturnJsonAsync(
+                uploadUrlResponse.getUploadUrl(),
+                headers,
+                new B2InputStreamWithByteProgressListener(contentDetails.getInputStream(), progressListener),
+                contentLen,
+                B2FileVersion.class)
+                .whenComplete((version, throwable) -> {
+                    contentDetails.close();
+                    if (throwable == null) {
+                        uploadListener.progress(B2UploadProgressUtil.forSmallFileSucceeded(contentLen));
+                        uploadUrlCache.unget(uploadUrlResponse);
+                        retryer.getMetricsRecorder().bytesTransferred("b2_upload_file", version.getContentLength());
+                    } else {
+                        final Throwable cause = causeOf(throwable);
+                        if (cause instanceof B2UnauthorizedException) {
+                            ((B2UnauthorizedException) cause).setRequestCategory(B2UnauthorizedException.RequestCategory.UPLOADING);
+                        }
+                        uploadListener.progress(B2UploadProgressUtil.forSmallFileFailed(contentLen, progressListener.getBytesSoFar()));
+                    }
+                });
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(B2Exception e) {
+        final CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    private static Throwable causeOf(Throwable throwable) {
+        return (throwable instanceof CompletionException && throwable.getCause() != null) ?
+                throwable.getCause() :
+                throwable;
+    }
+}
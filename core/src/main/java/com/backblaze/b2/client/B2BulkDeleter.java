@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.exceptions.B2RuntimeException;
+import com.backblaze.b2.client.structures.B2BulkDeleteListener;
+import com.backblaze.b2.client.structures.B2BulkDeleteProgress;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2ListFileVersionsRequest;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2Preconditions;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * B2BulkDeleter deletes lots of file versions much faster than deleting them
+ * one at a time, by running several deletes at once on an executor while the
+ * calling thread keeps listing.
+ *
+ * The calling thread lists the file versions with the client's fileVersions()
+ * iterable, and hands each one that matches the filter to the executor to be
+ * deleted with the client's deleteFileVersion(), so the client's retries apply
+ * to both.  At most maxDeletesInFlight deletes are running or waiting to run
+ * at a time; when that many are, listing waits for one of them to finish.
+ *
+ * Use the request to narrow down what's listed (for example, with a prefix),
+ * since B2 does that filtering for us.  Use the filter for anything else,
+ * such as uploadedBefore() or hideMarkersOnly().
+ *
+ * If a delete fails (after the client's retries), no more deletes are started,
+ * the ones in flight are allowed to finish, and the exception is thrown.  If
+ * that happens, the file versions before it in the listing have probably been
+ * deleted, and the ones after it probably haven't.
+ *
+ * THREAD-SAFETY: this class may be used from multiple threads safely, as long
+ *   as the client and executor are thread-safe.
+ */
+public class B2BulkDeleter {
+    /**
+     * By default, up to this many deletes may be in flight at once.
+     */
+    public static final int DEFAULT_MAX_DELETES_IN_FLIGHT = 20;
+
+    private final B2StorageClient client;
+    private final ExecutorService executor;
+    private final int maxDeletesInFlight;
+
+    /**
+     * @param client the client to list and delete with.
+     * @param executor the executor to run the deletes on.
+     */
+    public B2BulkDeleter(B2StorageClient client,
+                         ExecutorService executor) {
+        this(client, executor, DEFAULT_MAX_DELETES_IN_FLIGHT);
+    }
+
+    /**
+     * @param client the client to list and delete with.
+     * @param executor the executor to run the deletes on.
+     * @param maxDeletesInFlight how many deletes may be running or waiting
+     *                           to run at once.  must be positive.
+     */
+    public B2BulkDeleter(B2StorageClient client,
+                         ExecutorService executor,
+                         int maxDeletesInFlight) {
+        B2Preconditions.checkArgumentIsNotNull(client, "client");
+        B2Preconditions.checkArgumentIsNotNull(executor, "executor");
+        B2Preconditions.checkArgument(maxDeletesInFlight > 0, "maxDeletesInFlight must be positive");
+        this.client = client;
+        this.executor = executor;
+        this.maxDeletesInFlight = maxDeletesInFlight;
+    }
+
+    /**
+     * @param timestampMillis a time, in milliseconds since the epoch.
+     * @return a filter that matches the file versions uploaded before the given time.
+     */
+    public static Predicate<B2FileVersion> uploadedBefore(long timestampMillis) {
+        return version -> version.getUploadTimestamp() < timestampMillis;
+    }
+
+    /**
+     * @return a filter that matches the hide markers made by hiding files.
+     */
+    public static Predicate<B2FileVersion> hideMarkersOnly() {
+        return B2FileVersion::isHide;
+    }
+
+    /**
+     * Deletes all of the file versions that the request lists and the filter matches.
+     *
+     * @param request the request to list with.
+     * @param filter says which of the listed file versions to delete.  it's called
+     *               on the calling thread.
+     * @param listener is told about progress after each delete and at the end.
+     * @return the progress at the end.
+     * @throws B2Exception if there's trouble listing or deleting.
+     */
+    public B2BulkDeleteProgress deleteFileVersions(B2ListFileVersionsRequest request,
+                                                   Predicate<B2FileVersion> filter,
+                                                   B2BulkDeleteListener listener) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(request, "request");
+        B2Preconditions.checkArgumentIsNotNull(filter, "filter");
+        B2Preconditions.checkArgumentIsNotNull(listener, "listener");
+
+        final BulkDelete bulkDelete = new BulkDelete(listener);
+        try {
+            for (B2FileVersion version : client.fileVersions(request)) {
+                if (!bulkDelete.deleteIfMatches(version, filter)) {
+                    break;
+                }
+            }
+        } catch (B2RuntimeException e) {
+            // the iterables can't throw B2Exceptions, so they wrap them.
+            if (e.getCause() instanceof B2Exception) {
+                throw (B2Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            // even if the listing failed, don't return while any of our
+            // deletes are still running.
+            bulkDelete.waitForDeletesInFlight();
+        }
+
+        bulkDelete.throwIfDeleteFailed();
+        final B2BulkDeleteProgress progress = bulkDelete.makeProgress();
+        listener.progress(progress);
+        return progress;
+    }
+
+    /**
+     * A BulkDelete holds the state of one call to deleteFileVersions().
+     */
+    private class BulkDelete {
+        private final B2BulkDeleteListener listener;
+        private final long startMonoMillis = B2Clock.get().monotonicMillis();
+        private final Semaphore inFlight = new Semaphore(maxDeletesInFlight);
+
+        private final AtomicLong listedCount = new AtomicLong();
+        private final AtomicLong matchedCount = new AtomicLong();
+        private final AtomicLong deletedCount = new AtomicLong();
+        private final AtomicLong deletedBytes = new AtomicLong();
+        private final AtomicReference<B2Exception> firstFailure = new AtomicReference<>();
+
+        BulkDelete(B2BulkDeleteListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Starts deleting the version if it matches the filter.
+         *
+         * @return false iff a delete has failed, so we should stop.
+         */
+        boolean deleteIfMatches(B2FileVersion version,
+                                Predicate<B2FileVersion> filter) {
+            listedCount.incrementAndGet();
+            if (firstFailure.get() != null) {
+                return false;
+            }
+            if (!filter.test(version)) {
+                return true;
+            }
+            matchedCount.incrementAndGet();
+
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed(new B2LocalException("interrupted", "interrupted while waiting to delete " + version.getFileName() + ": " + e, e));
+                return false;
+            }
+
+            try {
+                executor.execute(() -> delete(version));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                failed(new B2LocalException("bad_state", "The executor rejected a delete task. Does it have a hard limit? Did you call shutdown() on it? (" + e + ")", e));
+                return false;
+            }
+            return true;
+        }
+
+        private void delete(B2FileVersion version) {
+            try {
+                // once something has failed, don't start any more deletes,
+                // even the ones that are already waiting in the executor.
+                if (firstFailure.get() == null) {
+                    client.deleteFileVersion(version);
+                    deletedCount.incrementAndGet();
+                    deletedBytes.addAndGet(version.getContentLength());
+                    listener.progress(makeProgress());
+                }
+            } catch (B2Exception e) {
+                failed(e);
+            } catch (RuntimeException e) {
+                failed(new B2LocalException("trouble", "unexpected exception while deleting " + version.getFileName() + ": " + e, e));
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        private void failed(B2Exception e) {
+            firstFailure.compareAndSet(null, e);
+        }
+
+        void waitForDeletesInFlight() {
+            // the deletes always finish, one way or another, since the client
+            // gives up after its retries.  so there's no need to be interruptible.
+            inFlight.acquireUninterruptibly(maxDeletesInFlight);
+            inFlight.release(maxDeletesInFlight);
+        }
+
+        void throwIfDeleteFailed() throws B2Exception {
+            final B2Exception failure = firstFailure.get();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        B2BulkDeleteProgress makeProgress() {
+            return new B2BulkDeleteProgress(
+                    listedCount.get(),
+                    matchedCount.get(),
+                    deletedCount.get(),
+                    deletedBytes.get(),
+                    B2Clock.get().monotonicMillis() - startMonoMillis);
+        }
+    }
+}
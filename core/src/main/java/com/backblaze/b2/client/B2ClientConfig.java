@@ -9,6 +9,7 @@ import com.backblaze.b2.util.B2Preconditions;
 
 import java.io.Closeable;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * B2ClientConfig describes the various settings the B2 clients need.
@@ -16,20 +17,63 @@ import java.util.Objects;
 
  */
 public class B2ClientConfig {
+    /**
+     * By default, there's no limit on how many parts of one large file
+     * may be submitted to the executor at once.
+     */
+    public static final int DEFAULT_MAX_PARTS_IN_FLIGHT_PER_LARGE_FILE = Integer.MAX_VALUE;
+
+    /**
+     * By default, upload urls are only gotten when they're needed, so
+     * none are gotten ahead of time in the background.
+     */
+    public static final int DEFAULT_UPLOAD_URL_POOL_MIN_SIZE_PER_BUCKET = 0;
+
+    /**
+     * Upload urls are good for 24 hours.  By default, we stop handing
+     * them out an hour before that.
+     */
+    public static final long DEFAULT_UPLOAD_URL_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(23);
+
+    /**
+     * By default, file listings get each page when the caller is ready for
+     * it, so no pages are gotten ahead of time.
+     */
+    public static final int DEFAULT_LIST_FILES_PREFETCH_PAGES = 0;
+
     private final B2AccountAuthorizer accountAuthorizer;
     private final String userAgent;
     private final String masterUrl;
     private final B2TestMode testModeOrNull;
+    private final int maxPartsInFlightPerLargeFile;
+    private final int uploadUrlPoolMinSizePerBucket;
+    private final long uploadUrlMaxAgeMillis;
+    private final B2MetricsRecorder metricsRecorderOrNull;
+    private final int listFilesPrefetchPages;
 
     private B2ClientConfig(B2AccountAuthorizer accountAuthorizer,
                            String userAgent,
                            String masterUrl,
-                           B2TestMode testModeOrNull) {
+                           B2TestMode testModeOrNull,
+                           int maxPartsInFlightPerLargeFile,
+                           int uploadUrlPoolMinSizePerBucket,
+                           long uploadUrlMaxAgeMillis,
+                           B2MetricsRecorder metricsRecorderOrNull,
+                           int listFilesPrefetchPages) {
         B2Preconditions.checkArgument(userAgent != null && userAgent.length() > 0);
+        B2Preconditions.checkArgument(maxPartsInFlightPerLargeFile > 0, "maxPartsInFlightPerLargeFile must be positive");
+        B2Preconditions.checkArgument(uploadUrlPoolMinSizePerBucket >= 0, "uploadUrlPoolMinSizePerBucket must not be negative");
+        B2Preconditions.checkArgument(uploadUrlMaxAgeMillis > 0, "uploadUrlMaxAgeMillis must be positive");
+        B2Preconditions.checkArgument(listFilesPrefetchPages >= 0, "listFilesPrefetchPages must not be negative");
         this.accountAuthorizer = accountAuthorizer;
         this.userAgent = userAgent;
         this.masterUrl = masterUrl;
         this.testModeOrNull = testModeOrNull;
+        this.maxPartsInFlightPerLargeFile = maxPartsInFlightPerLargeFile;
+        this.uploadUrlPoolMinSizePerBucket = uploadUrlPoolMinSizePerBucket;
+        this.uploadUrlMaxAgeMillis = uploadUrlMaxAgeMillis;
+        this.metricsRecorderOrNull = metricsRecorderOrNull;
+        this.listFilesPrefetchPages = listFilesPrefetchPages;
     }
 
     public B2AccountAuthorizer getAccountAuthorizer() {
@@ -48,6 +92,44 @@ public class B2ClientConfig {
         return testModeOrNull;
     }
 
+    /**
+     * @return the maximum number of parts of a single large file that the client
+     *         will have submitted to the caller's executor at any one time.
+     */
+    public int getMaxPartsInFlightPerLargeFile() {
+        return maxPartsInFlightPerLargeFile;
+    }
+
+    /**
+     * @return how many upload urls the client tries to keep on hand for
+     *         each bucket it uploads to.
+     */
+    public int getUploadUrlPoolMinSizePerBucket() {
+        return uploadUrlPoolMinSizePerBucket;
+    }
+
+    /**
+     * @return how old an upload url may get before the client stops using it.
+     */
+    public long getUploadUrlMaxAgeMillis() {
+        return uploadUrlMaxAgeMillis;
+    }
+
+    /**
+     * @return the recorder to tell about each operation, or null if no one's recording.
+     */
+    public B2MetricsRecorder getMetricsRecorderOrNull() {
+        return metricsRecorderOrNull;
+    }
+
+    /**
+     * @return how many pages of a file listing the client gets ahead of
+     *         the caller, in the background.
+     */
+    public int getListFilesPrefetchPages() {
+        return listFilesPrefetchPages;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -56,12 +138,18 @@ public class B2ClientConfig {
         return Objects.equals(getAccountAuthorizer(), that.getAccountAuthorizer()) &&
                 Objects.equals(getUserAgent(), that.getUserAgent()) &&
                 Objects.equals(getMasterUrl(), that.getMasterUrl()) &&
-                getTestModeOrNull() == that.getTestModeOrNull();
+                getTestModeOrNull() == that.getTestModeOrNull() &&
+                getMaxPartsInFlightPerLargeFile() == that.getMaxPartsInFlightPerLargeFile() &&
+                getUploadUrlPoolMinSizePerBucket() == that.getUploadUrlPoolMinSizePerBucket() &&
+                getUploadUrlMaxAgeMillis() == that.getUploadUrlMaxAgeMillis() &&
+                Objects.equals(getMetricsRecorderOrNull(), that.getMetricsRecorderOrNull()) &&
+                getListFilesPrefetchPages() == that.getListFilesPrefetchPages();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getAccountAuthorizer(), getUserAgent(), getMasterUrl(), getTestModeOrNull());
+        return Objects.hash(getAccountAuthorizer(), getUserAgent(), getMasterUrl(), getTestModeOrNull(), getMaxPartsInFlightPerLargeFile(),
+                getUploadUrlPoolMinSizePerBucket(), getUploadUrlMaxAgeMillis(), getMetricsRecorderOrNull(), getListFilesPrefetchPages());
     }
 
     public static Builder builder(B2AccountAuthorizer accountAuthorizer, String userAgent) {
@@ -83,6 +171,11 @@ public class B2ClientConfig {
         private final String userAgent;
         private String masterUrl;
         private B2TestMode testModeOrNull;
+        private int maxPartsInFlightPerLargeFile = DEFAULT_MAX_PARTS_IN_FLIGHT_PER_LARGE_FILE;
+        private int uploadUrlPoolMinSizePerBucket = DEFAULT_UPLOAD_URL_POOL_MIN_SIZE_PER_BUCKET;
+        private long uploadUrlMaxAgeMillis = DEFAULT_UPLOAD_URL_MAX_AGE_MILLIS;
+        private B2MetricsRecorder metricsRecorderOrNull;
+        private int listFilesPrefetchPages = DEFAULT_LIST_FILES_PREFETCH_PAGES;
 
         public Builder(B2AccountAuthorizer accountAuthorizer,
                        String userAgent) {
@@ -100,12 +193,90 @@ public class B2ClientConfig {
             return this;
         }
 
+        /**
+         * Limits how many parts of one large file are submitted to the executor
+         * at a time.  The rest of the parts wait their turn inside the client
+         * instead of in the executor's queue, which keeps one huge file from
+         * starving the other files that share the executor.
+         *
+         * @param maxPartsInFlightPerLargeFile the limit.  must be positive.
+         * @return this builder.
+         */
+        public Builder setMaxPartsInFlightPerLargeFile(int maxPartsInFlightPerLargeFile) {
+            this.maxPartsInFlightPerLargeFile = maxPartsInFlightPerLargeFile;
+            return this;
+        }
+
+        /**
+         * Asks the client to keep at least this many upload urls on hand for
+         * each bucket it uploads to.  When a bucket runs low, more are gotten
+         * in the background, so uploads don't have to wait for get_upload_url.
+         * Use B2StorageClient.warmUploadUrlPool() to fill a bucket's pool
+         * before the first upload.
+         *
+         * @param uploadUrlPoolMinSizePerBucket the minimum.  zero (the default)
+         *                                      means urls are only gotten when needed.
+         * @return this builder.
+         */
+        public Builder setUploadUrlPoolMinSizePerBucket(int uploadUrlPoolMinSizePerBucket) {
+            this.uploadUrlPoolMinSizePerBucket = uploadUrlPoolMinSizePerBucket;
+            return this;
+        }
+
+        /**
+         * Upload urls older than this are thrown away instead of being used.
+         *
+         * @param uploadUrlMaxAgeMillis the maximum age.  must be positive.
+         * @return this builder.
+         */
+        public Builder setUploadUrlMaxAgeMillis(long uploadUrlMaxAgeMillis) {
+            this.uploadUrlMaxAgeMillis = uploadUrlMaxAgeMillis;
+            return this;
+        }
+
+        /**
+         * Tells the client to report the latency, attempts, failures, and bytes
+         * transferred of every operation to the given recorder.
+         * B2MetricsRecorderSimpleImpl keeps them in memory for you.
+         *
+         * @param metricsRecorderOrNull the recorder, or null (the default) for no metrics.
+         * @return this builder.
+         */
+        public Builder setMetricsRecorderOrNull(B2MetricsRecorder metricsRecorderOrNull) {
+            this.metricsRecorderOrNull = metricsRecorderOrNull;
+            return this;
+        }
+
+        /**
+         * Asks the iterables from fileNames(), fileVersions(), and
+         * unfinishedLargeFiles() to get up to this many pages ahead of the
+         * caller, in the background, so that the caller's work on one page
+         * overlaps with the requests for the next ones.
+         *
+         * Each page has to wait for the one before it, so there's never more
+         * than one request in flight for an iterator, no matter how big this is.
+         *
+         * @param listFilesPrefetchPages how many pages to get ahead.  zero (the
+         *                               default) means pages are only gotten
+         *                               when they're needed.
+         * @return this builder.
+         */
+        public Builder setListFilesPrefetchPages(int listFilesPrefetchPages) {
+            this.listFilesPrefetchPages = listFilesPrefetchPages;
+            return this;
+        }
+
         public B2ClientConfig build() {
             return new B2ClientConfig(
                     accountAuthorizer,
                     userAgent,
                     masterUrl,
-                    testModeOrNull);
+                    testModeOrNull,
+                    maxPartsInFlightPerLargeFile,
+                    uploadUrlPoolMinSizePerBucket,
+                    uploadUrlMaxAgeMillis,
+                    metricsRecorderOrNull,
+                    listFilesPrefetchPages);
         }
     }
 }
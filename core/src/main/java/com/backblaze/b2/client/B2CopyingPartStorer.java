@@ -11,6 +11,7 @@ import com.backblaze.b2.client.structures.B2UploadListener;
 import com.backblaze.b2.util.B2ByteRange;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This implementation stores a part of a large file by copying
@@ -51,6 +52,15 @@ public class B2CopyingPartStorer implements B2PartStorer {
         return largeFileCreationManager.copyPart(partNumber, sourceFileId, byteRangeOrNull, uploadListener, cancellationToken);
     }
 
+    @Override
+    public CompletableFuture<B2Part> storePartAsync(
+            B2LargeFileStorer largeFileCreationManager,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) {
+
+        return largeFileCreationManager.copyPartAsync(partNumber, sourceFileId, byteRangeOrNull, uploadListener, cancellationToken);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -6,6 +6,8 @@ package com.backblaze.b2.client;
 
 import com.backblaze.b2.client.exceptions.B2Exception;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
 
 /**
@@ -13,6 +15,16 @@ import java.util.function.Supplier;
  * documentation.  It should be reasonable and sufficient for almost every
  * use of B2.
  *
+ * The delays double from 1 second up to 64 seconds, as the documentation
+ * suggests, but the B2Retryer actually sleeps for a random number of
+ * milliseconds between zero and that delay ("full jitter").  Otherwise,
+ * threads that fail at the same time would all retry at the same time,
+ * over and over.  When the server says how long to wait, we wait exactly
+ * that long.
+ *
+ * If there's a B2RetryBudget, each delayed retry needs a token from it.
+ * If there aren't any left, we give up instead of retrying.
+ *
  * Each attempted operation should have a unique instance of this class
  * because it stores state about retries between calls.  Use an instance
  * of Supplier&lt;B2RetryPolicy&gt; which provides a new instance on each call.
@@ -26,15 +38,53 @@ public class B2DefaultRetryPolicy implements B2RetryPolicy {
     //   attempt#8
     private static final int MAX_ATTEMPTS = 8;
 
+    private final B2RetryBudget retryBudgetOrNull;
+
+    // given the longest we might wait, returns how long to wait.
+    private final LongUnaryOperator jitter;
+
     private int waitBetweenRetrySecs = 1;
 
     /**
-     * @return a supplier to create new instances of this class.
+     * @return a supplier to create new instances of this class.  they don't
+     *         have a retry budget.
      */
     public static Supplier<B2RetryPolicy> supplier() {
         return B2DefaultRetryPolicy::new;
     }
 
+    /**
+     * Use this to opt in to a retry budget, for example with
+     * supplier(B2RetryBudget.withDefaults()).
+     *
+     * @param retryBudgetOrNull the budget for all of the supplied instances to
+     *                          share, or null to not limit retries that way.
+     * @return a supplier to create new instances of this class.
+     */
+    public static Supplier<B2RetryPolicy> supplier(B2RetryBudget retryBudgetOrNull) {
+        return () -> new B2DefaultRetryPolicy(retryBudgetOrNull);
+    }
+
+    /**
+     * Makes a policy without a retry budget.
+     */
+    public B2DefaultRetryPolicy() {
+        this(null);
+    }
+
+    /**
+     * @param retryBudgetOrNull if non-null, each delayed retry needs a token from it.
+     */
+    public B2DefaultRetryPolicy(B2RetryBudget retryBudgetOrNull) {
+        this(retryBudgetOrNull, B2DefaultRetryPolicy::fullJitter);
+    }
+
+    /*forTests*/ B2DefaultRetryPolicy(B2RetryBudget retryBudgetOrNull,
+                                      LongUnaryOperator jitter) {
+        this.retryBudgetOrNull = retryBudgetOrNull;
+        this.jitter = jitter;
+    }
+
     @Override
     public Integer gotRetryableAfterDelay(String operation,
                                           int attemptsSoFar,
@@ -63,6 +113,32 @@ public class B2DefaultRetryPolicy implements B2RetryPolicy {
         }
     }
 
+    /**
+     * Uses gotRetryableAfterDelay() to decide whether and how long to wait,
+     * and then picks a random time up to that long, unless the server said
+     * how long to wait.
+     */
+    @Override
+    public Long gotRetryableAfterDelayMillis(String operation,
+                                             int attemptsSoFar,
+                                             long tookMillis,
+                                             B2Exception e) {
+        final Integer waitSecs = gotRetryableAfterDelay(operation, attemptsSoFar, tookMillis, e);
+        if (waitSecs == null) {
+            return null;
+        }
+        if (retryBudgetOrNull != null && !retryBudgetOrNull.tryAcquire()) {
+            // lots of retries are happening.  shed this one.
+            return null;
+        }
+
+        final long waitMillis = waitSecs * 1000L;
+        if (e.getRetryAfterSecondsOrNull() != null) {
+            return waitMillis;
+        }
+        return jitter.applyAsLong(waitMillis);
+    }
+
     @Override
     public boolean gotRetryableImmediately(String operation,
                                            int attemptsSoFar,
@@ -70,4 +146,8 @@ public class B2DefaultRetryPolicy implements B2RetryPolicy {
                                            B2Exception e) {
         return (attemptsSoFar < MAX_ATTEMPTS);
     }
+
+    private static long fullJitter(long maxMillis) {
+        return ThreadLocalRandom.current().nextLong(maxMillis + 1);
+    }
 }
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2DownloadByNameRequest;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2Histogram;
+import com.backblaze.b2.util.B2Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * B2HedgedDownloader cuts the tail latency of small downloads, such as
+ * thumbnails, by "hedging": if the response to a download hasn't started
+ * within the usual time, it asks again, and uses whichever copy of the
+ * content arrives first.  One slow server then only costs us the hedge
+ * delay, instead of the whole slow response.
+ *
+ * The hedge delay comes from the downloads we've already done.  We record
+ * how long each one took to start responding (its "time to first byte") in
+ * a B2Histogram, and hedge once a download has taken longer than the given
+ * percentile of those (by default, the 95th).  Until there are minSamples
+ * times recorded, we don't know what's usual, so we don't hedge.
+ *
+ * Hedges are limited by a budget, so they can't double the load when B2 is
+ * slow for everyone.  Each download earns maxHedgeRatio of a token, up to
+ * maxHedgeBurst tokens, and each hedge spends a whole one.  With the
+ * defaults, at most one download in ten is hedged over time.
+ *
+ * Each attempt downloads with the client's downloadByName() or downloadById(),
+ * so the client's retries apply to each of them.  The attempts run on the
+ * executor and read the whole response into memory; the first one to finish
+ * is given to your handler on the calling thread, and the other one is
+ * cancelled, which interrupts it.  (If it's reading, it also gives up the
+ * next time it reads.)  Because the content is in memory, this is only meant for
+ * small files.  If all of the attempts fail, the primary attempt's exception
+ * is thrown.
+ *
+ * THREAD-SAFETY: this class may be used from multiple threads safely, as long
+ *   as the client and executor are thread-safe.  Sharing one instance is what
+ *   makes the time to first byte histogram useful.
+ */
+public class B2HedgedDownloader {
+    /**
+     * By default, hedge when a download hasn't started responding within
+     * this percentile of the times to first byte so far.
+     */
+    public static final double DEFAULT_PERCENTILE = 95.0;
+
+    /**
+     * By default, don't hedge until this many times to first byte are recorded.
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    /**
+     * By default, never hedge sooner than this, no matter what the percentile is.
+     */
+    public static final long DEFAULT_MIN_HEDGE_DELAY_MILLIS = 10;
+
+    /**
+     * By default, each download earns this fraction of a hedge.
+     */
+    public static final double DEFAULT_MAX_HEDGE_RATIO = 0.1;
+
+    /**
+     * By default, up to this many hedges can be saved up for a burst.
+     */
+    public static final double DEFAULT_MAX_HEDGE_BURST = 10;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final long MAX_LEN = Integer.MAX_VALUE;
+
+    private final B2StorageClient client;
+    private final ExecutorService executor;
+    private final double percentile;
+    private final int minSamples;
+    private final long minHedgeDelayMillis;
+    private final double maxHedgeRatio;
+    private final double maxHedgeBurst;
+
+    private final B2Histogram timeToFirstByteMillis = new B2Histogram();
+    private final AtomicLong downloadCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    // guarded by 'this'.
+    private double hedgeTokens;
+
+    private B2HedgedDownloader(Builder builder) {
+        this.client = builder.client;
+        this.executor = builder.executor;
+        this.percentile = builder.percentile;
+        this.minSamples = builder.minSamples;
+        this.minHedgeDelayMillis = builder.minHedgeDelayMillis;
+        this.maxHedgeRatio = builder.maxHedgeRatio;
+        this.maxHedgeBurst = builder.maxHedgeBurst;
+    }
+
+    /**
+     * @param client the client to download with.
+     * @param executor the executor to run the attempts on.  it needs to be able
+     *                 to run two attempts at once for hedging to help.
+     * @return a new builder.
+     */
+    public static Builder builder(B2StorageClient client,
+                                  ExecutorService executor) {
+        return new Builder(client, executor);
+    }
+
+    /**
+     * Just like B2StorageClient.downloadById(), but hedged.
+     *
+     * @param request specifies what to download.
+     * @param handler is given the content of the first attempt to finish.
+     * @throws B2Exception if there's trouble with every attempt.
+     */
+    public void downloadById(B2DownloadByIdRequest request,
+                             B2ContentSink handler) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(request, "request");
+        download(sink -> client.downloadById(request, sink), handler);
+    }
+
+    /**
+     * Just like B2StorageClient.downloadByName(), but hedged.
+     *
+     * @param request specifies what to download.
+     * @param handler is given the content of the first attempt to finish.
+     * @throws B2Exception if there's trouble with every attempt.
+     */
+    public void downloadByName(B2DownloadByNameRequest request,
+                               B2ContentSink handler) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(request, "request");
+        download(sink -> client.downloadByName(request, sink), handler);
+    }
+
+    /**
+     * @return the milliseconds a download may wait for its first byte before
+     *         it's hedged, or -1 if there aren't enough samples to say yet.
+     */
+    public long getHedgeDelayMillisOrMinusOne() {
+        if (timeToFirstByteMillis.getCount() < minSamples) {
+            return -1;
+        }
+        return Math.max(minHedgeDelayMillis, timeToFirstByteMillis.getValueAtPercentile(percentile));
+    }
+
+    /**
+     * @return the times to first byte recorded so far, in milliseconds.
+     *         you may reset() it if the usual times have changed.
+     */
+    public B2Histogram getTimeToFirstByteMillisHistogram() {
+        return timeToFirstByteMillis;
+    }
+
+    /**
+     * @return how many downloads have been started.
+     */
+    public long getDownloadCount() {
+        return downloadCount.get();
+    }
+
+    /**
+     * @return how many of the downloads have been hedged.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return how many of the hedged downloads got their content from the hedge.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    private interface AttemptDownloader {
+        void download(B2ContentSink sink) throws B2Exception;
+    }
+
+    private void download(AttemptDownloader attemptDownloader,
+                          B2ContentSink handler) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(handler, "handler");
+        downloadCount.incrementAndGet();
+        earnHedgeToken();
+
+        // figure this out before starting, so the primary's time to first
+        // byte can't change it.
+        final long hedgeDelayMillisOrMinusOne = getHedgeDelayMillisOrMinusOne();
+
+        final Race race = new Race();
+        final Attempt primary = race.start(attemptDownloader);
+        if (hedgeDelayMillisOrMinusOne >= 0 &&
+                !race.waitForFirstByteOrEnd(hedgeDelayMillisOrMinusOne) &&
+                tryAcquireHedgeToken()) {
+            hedgeCount.incrementAndGet();
+            race.start(attemptDownloader);
+        }
+
+        final Attempt winner = race.waitForWinner(primary);
+        if (winner != primary) {
+            hedgeWinCount.incrementAndGet();
+        }
+        try {
+            handler.readContent(winner.headers, new ByteArrayInputStream(winner.bytes));
+        } catch (IOException e) {
+            throw new B2LocalException("trouble", "handler failed to read downloaded content: " + e, e);
+        }
+    }
+
+    private synchronized void earnHedgeToken() {
+        hedgeTokens = Math.min(maxHedgeBurst, hedgeTokens + maxHedgeRatio);
+    }
+
+    private synchronized boolean tryAcquireHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens -= 1;
+        return true;
+    }
+
+    /**
+     * A Race holds the attempts for one download.
+     *
+     * THREAD-SAFETY: the attempts report to it from the executor's threads,
+     *   so its state is guarded by 'this'.
+     */
+    private class Race {
+        private final List<Attempt> attempts = new ArrayList<>();
+        private int startedCount;
+        private int failedCount;
+        private boolean anyFirstByte;
+        private Attempt winnerOrNull;
+
+        Attempt start(AttemptDownloader attemptDownloader) throws B2Exception {
+            final Attempt attempt = new Attempt(this);
+            synchronized (this) {
+                startedCount++;
+                attempts.add(attempt);
+            }
+            try {
+                final Future<?> future = executor.submit(() -> attempt.run(attemptDownloader));
+                synchronized (this) {
+                    attempt.futureOrNull = future;
+                    // the other attempt might have won already.
+                    cancelIfLost(attempt);
+                }
+            } catch (RejectedExecutionException e) {
+                final B2LocalException exception = new B2LocalException("bad_state", "The executor rejected a download attempt. Does it have a hard limit? Did you call shutdown() on it? (" + e + ")", e);
+                if (startedCount == 1) {
+                    // we can't even start the primary.
+                    throw exception;
+                }
+                // the primary is already running, so we can do without the hedge.
+                attempt.failed(exception);
+            }
+            return attempt;
+        }
+
+        /**
+         * @return true iff an attempt started responding (or ended) before the timeout.
+         */
+        synchronized boolean waitForFirstByteOrEnd(long timeoutMillis) throws B2Exception {
+            final long deadlineNanos = System.nanoTime() + timeoutMillis * 1000000L;
+            while (!anyFirstByte && winnerOrNull == null && failedCount < startedCount) {
+                final long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                waitOrThrow(remainingNanos);
+            }
+            return true;
+        }
+
+        synchronized Attempt waitForWinner(Attempt primary) throws B2Exception {
+            while (winnerOrNull == null && failedCount < startedCount) {
+                waitOrThrow(0);
+            }
+            if (winnerOrNull == null) {
+                throw primary.exception;
+            }
+            return winnerOrNull;
+        }
+
+        synchronized boolean isDecided() {
+            return winnerOrNull != null;
+        }
+
+        synchronized void gotFirstByte() {
+            anyFirstByte = true;
+            notifyAll();
+        }
+
+        /**
+         * @return true iff the attempt is the winner.
+         */
+        synchronized boolean finished(Attempt attempt) {
+            if (winnerOrNull == null) {
+                winnerOrNull = attempt;
+                for (Attempt other : attempts) {
+                    cancelIfLost(other);
+                }
+            }
+            notifyAll();
+            return winnerOrNull == attempt;
+        }
+
+        synchronized void failed() {
+            failedCount++;
+            notifyAll();
+        }
+
+        /**
+         * Interrupts the attempt if another one has won, so it stops waiting
+         * for the server (and for the client's retries).
+         */
+        private synchronized void cancelIfLost(Attempt attempt) {
+            if (winnerOrNull != null && winnerOrNull != attempt && attempt.futureOrNull != null) {
+                attempt.futureOrNull.cancel(true);
+            }
+        }
+
+        private void waitOrThrow(long nanos) throws B2Exception {
+            try {
+                if (nanos == 0) {
+                    wait();
+                } else {
+                    wait(nanos / 1000000L, (int) (nanos % 1000000L));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new B2LocalException("interrupted", "interrupted while waiting for a download: " + e, e);
+            }
+        }
+    }
+
+    /**
+     * An Attempt is one download of the content into memory.  It's a
+     * B2ContentSink, so the client calls it again if it retries.
+     */
+    private class Attempt implements B2ContentSink {
+        private final Race race;
+        private final long startMonoMillis = B2Clock.get().monotonicMillis();
+        private boolean recordedFirstByte;
+
+        // guarded by the race.  null until the attempt is submitted.
+        private Future<?> futureOrNull;
+
+        // set before telling the race we're done.
+        private B2Headers headers;
+        private byte[] bytes;
+        private B2Exception exception;
+
+        Attempt(Race race) {
+            this.race = race;
+        }
+
+        void run(AttemptDownloader attemptDownloader) {
+            try {
+                attemptDownloader.download(this);
+                race.finished(this);
+            } catch (B2Exception e) {
+                failed(e);
+            } catch (RuntimeException e) {
+                failed(new B2LocalException("trouble", "download attempt failed: " + e, e));
+            }
+        }
+
+        void failed(B2Exception e) {
+            exception = e;
+            race.failed();
+        }
+
+        @Override
+        public void readContent(B2Headers responseHeaders,
+                                InputStream in) throws B2Exception {
+            if (!recordedFirstByte) {
+                // even if another attempt has won, this is how long this one took.
+                recordedFirstByte = true;
+                timeToFirstByteMillis.record(B2Clock.get().monotonicMillis() - startMonoMillis);
+                race.gotFirstByte();
+            }
+            throwIfLost();
+
+            final long len = responseHeaders.getContentLength();
+            if (len >= MAX_LEN) {
+                throw new B2LocalException("too_big",
+                        "contentLength is too big for a B2HedgedDownloader.  (" + len + " > " + MAX_LEN + ")");
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(0, len));
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                int nRead;
+                while ((nRead = in.read(buffer)) != -1) {
+                    throwIfLost();
+                    out.write(buffer, 0, nRead);
+                }
+            } catch (IOException e) {
+                throw new B2ConnectionBrokenException("read_failed", null, "read failed: " + e.getMessage(), e);
+            }
+
+            headers = responseHeaders;
+            bytes = out.toByteArray();
+        }
+
+        private void throwIfLost() throws B2LocalException {
+            // throwing makes the client give up on this attempt and its connection.
+            if (race.isDecided()) {
+                throw new B2LocalException("cancelled", "another attempt at this download finished first");
+            }
+        }
+    }
+
+    public static class Builder {
+        private final B2StorageClient client;
+        private final ExecutorService executor;
+        private double percentile = DEFAULT_PERCENTILE;
+        private int minSamples = DEFAULT_MIN_SAMPLES;
+        private long minHedgeDelayMillis = DEFAULT_MIN_HEDGE_DELAY_MILLIS;
+        private double maxHedgeRatio = DEFAULT_MAX_HEDGE_RATIO;
+        private double maxHedgeBurst = DEFAULT_MAX_HEDGE_BURST;
+
+        private Builder(B2StorageClient client,
+                        ExecutorService executor) {
+            B2Preconditions.checkArgumentIsNotNull(client, "client");
+            B2Preconditions.checkArgumentIsNotNull(executor, "executor");
+            this.client = client;
+            this.executor = executor;
+        }
+
+        /**
+         * @param percentile hedge when a download hasn't started responding within
+         *                   this percentile of the times to first byte so far.
+         *                   must be between 0 and 100.
+         * @return this builder.
+         */
+        public Builder setPercentile(double percentile) {
+            B2Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param minSamples don't hedge until this many times to first byte are recorded.
+         *                   must not be negative.
+         * @return this builder.
+         */
+        public Builder setMinSamples(int minSamples) {
+            B2Preconditions.checkArgument(minSamples >= 0, "minSamples must not be negative");
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param minHedgeDelayMillis never hedge sooner than this.  must not be negative.
+         * @return this builder.
+         */
+        public Builder setMinHedgeDelayMillis(long minHedgeDelayMillis) {
+            B2Preconditions.checkArgument(minHedgeDelayMillis >= 0, "minHedgeDelayMillis must not be negative");
+            this.minHedgeDelayMillis = minHedgeDelayMillis;
+            return this;
+        }
+
+        /**
+         * @param maxHedgeRatio the fraction of downloads that may be hedged over time.
+         *                      must be between 0 and 1.
+         * @return this builder.
+         */
+        public Builder setMaxHedgeRatio(double maxHedgeRatio) {
+            B2Preconditions.checkArgument(maxHedgeRatio >= 0 && maxHedgeRatio <= 1, "maxHedgeRatio must be between 0 and 1");
+            this.maxHedgeRatio = maxHedgeRatio;
+            return this;
+        }
+
+        /**
+         * @param maxHedgeBurst how many hedges may be saved up for a burst.
+         *                      must be at least one.
+         * @return this builder.
+         */
+        public Builder setMaxHedgeBurst(double maxHedgeBurst) {
+            B2Preconditions.checkArgument(maxHedgeBurst >= 1, "maxHedgeBurst must be at least one");
+            this.maxHedgeBurst = maxHedgeBurst;
+            return this;
+        }
+
+        public B2HedgedDownloader build() {
+            return new B2HedgedDownloader(this);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2Preconditions;
+import com.backblaze.b2.util.B2Sha1;
+import com.backblaze.b2.util.B2StringUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * B2LargeFileDownloader downloads a file as a bunch of byte ranges in parallel
+ * and writes each range straight into its spot in the destination file using
+ * positional writes.  It's the download-side cousin of B2LargeFileUploader.
+ *
+ * The caller tells us which bytes of the file to get (usually all of them)
+ * and gives us a RangeDownloader that knows how to fetch one range, so we
+ * don't have to care whether the download is by id or by name.  Retrying
+ * is the RangeDownloader's job.  Since every range writes to absolute
+ * positions, it's fine for a retried range to rewrite the bytes it wrote
+ * before failing.
+ *
+ * If expectedFileIdOrNull is non-null, every range response must be for
+ * that fileId.  That's how we make sure that a download-by-name doesn't
+ * end up stitching together ranges from two different versions of a file
+ * when someone uploads a new version in the middle of our download.
+ *
+ * The ranges don't come with SHA1s, so if expectedSha1OrNull is non-null,
+ * we read the whole destination back once every range is written and check
+ * its SHA1.  The caller should only give us one when we're downloading the
+ * whole file.
+ *
+ * If the download fails, the destination file may be left partially written.
+ *
+ * THREAD-SAFETY: an instance should only be used by one thread at a time,
+ *     although it uses the executor's threads internally.
+ */
+class B2LargeFileDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A RangeDownloader downloads one range of the file and hands the
+     * response to the given sink.
+     */
+    interface RangeDownloader {
+        void download(B2ByteRange range, B2ContentSink sink) throws B2Exception;
+    }
+
+    private final ExecutorService executor;
+    private final RangeDownloader rangeDownloader;
+    private final String expectedFileIdOrNull;
+    private final String expectedSha1OrNull;
+    private final long start;
+    private final long length;
+    private final long rangeSize;
+
+    /**
+     * @param executor the executor to download the ranges on.  the caller owns it.
+     * @param rangeDownloader fetches one range of the file.
+     * @param expectedFileIdOrNull if non-null, every response must be for this fileId.
+     * @param expectedSha1OrNull if non-null, the destination must have this SHA1 once
+     *                           it's all written.
+     * @param start the offset of the first byte of the file to download.
+     * @param length the number of bytes to download.  the byte at 'start' goes
+     *               to the first byte of the destination.
+     * @param rangeSize the maximum number of bytes to request in each range.
+     */
+    B2LargeFileDownloader(ExecutorService executor,
+                          RangeDownloader rangeDownloader,
+                          String expectedFileIdOrNull,
+                          String expectedSha1OrNull,
+                          long start,
+                          long length,
+                          long rangeSize) {
+        B2Preconditions.checkArgument(start >= 0, "start must be non-negative");
+        B2Preconditions.checkArgument(length >= 0, "length must be non-negative");
+        B2Preconditions.checkArgument(rangeSize > 0, "rangeSize must be positive");
+
+        this.executor = executor;
+        this.rangeDownloader = rangeDownloader;
+        this.expectedFileIdOrNull = expectedFileIdOrNull;
+        this.expectedSha1OrNull = expectedSha1OrNull;
+        this.start = start;
+        this.length = length;
+        this.rangeSize = rangeSize;
+    }
+
+    void downloadToFile(File destination) throws B2Exception {
+        try (FileChannel channel = FileChannel.open(destination.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            downloadToChannel(channel);
+            maybeCheckSha1(channel);
+
+            // like B2FlushAndSyncFileOnCloseOutputStream, make sure the bytes
+            // are really on disk before we say we're done.
+            channel.force(true);
+        } catch (IOException e) {
+            throw new B2LocalException("write_failed", "failed to write to " + destination + ": " + e, e);
+        }
+    }
+
+    private void downloadToChannel(FileChannel channel) throws B2Exception {
+        final List<Future<Long>> futures = new ArrayList<>();
+        try {
+            for (B2ByteRange range : pickRanges(start, length, rangeSize)) {
+                futures.add(executor.submit(() -> downloadOneRange(channel, range)));
+            }
+
+            for (Future<Long> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new B2LocalException("interrupted", "interrupted while trying to download ranges: " + e, e);
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof B2Exception) {
+                        throw (B2Exception) cause;
+                    } else {
+                        throw new B2LocalException("trouble", "exception while trying to download ranges: " + cause, cause);
+                    }
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            throw new B2LocalException("bad_state", "The executor rejected a download task. Does it have a hard limit? Did you call shutdown() on it? (" + e + ")", e);
+        } finally {
+            // same as the uploader: the finished ones won't mind and
+            // the others will be stopped.
+            for (Future<Long> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void maybeCheckSha1(FileChannel channel) throws B2Exception, IOException {
+        if (expectedSha1OrNull == null) {
+            return;
+        }
+        final MessageDigest digest = B2Sha1.createSha1MessageDigest();
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        int numRead;
+        while ((numRead = channel.read(buffer, position)) != -1) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += numRead;
+        }
+        final String actualSha1 = B2StringUtil.toHexString(digest.digest());
+        if (!B2Sha1.equalHexSha1s(expectedSha1OrNull, actualSha1)) {
+            throw new B2LocalException("mismatch", "sha1 mismatch as written to destination.  expected " + expectedSha1OrNull + ", but got " + actualSha1);
+        }
+    }
+
+    private long downloadOneRange(FileChannel channel,
+                                  B2ByteRange range) throws B2Exception {
+        final long expectedBytes = range.getNumberOfBytes();
+        final long[] bytesWritten = new long[1];
+
+        rangeDownloader.download(range, (responseHeaders, in) -> {
+            throwIfUnexpectedFileId(responseHeaders);
+            // the sink might be called again if the download is retried,
+            // so always start over at the beginning of the range.
+            bytesWritten[0] = copyToChannel(in, channel, range.start - start, expectedBytes);
+        });
+
+        if (bytesWritten[0] != expectedBytes) {
+            throw new B2LocalException("trouble", "expected " + expectedBytes + " bytes for " + range + ", but got " + bytesWritten[0]);
+        }
+        return bytesWritten[0];
+    }
+
+    private void throwIfUnexpectedFileId(B2Headers responseHeaders) throws B2LocalException {
+        if (expectedFileIdOrNull == null) {
+            return;
+        }
+        final String fileId = responseHeaders.getValueOrNull(B2Headers.FILE_ID);
+        if (!expectedFileIdOrNull.equals(fileId)) {
+            throw new B2LocalException("mismatch", "expected to download fileId '" + expectedFileIdOrNull + "', but got '" + fileId + "'. was a new version uploaded during the download?");
+        }
+    }
+
+    /**
+     * Copies the stream into the channel at the given position, using positional
+     * writes so that many threads can share the channel.  It won't write more
+     * than maxBytes.
+     *
+     * Only trouble reading the stream comes out as an IOException, so that the
+     * download gets retried.  Trouble writing, or getting too many bytes, won't
+     * get better by trying again, so it's a B2LocalException.
+     *
+     * @return the number of bytes copied.
+     */
+    private static long copyToChannel(InputStream in,
+                                      FileChannel channel,
+                                      long position,
+                                      long maxBytes) throws B2Exception, IOException {
+        final byte[] bytes = new byte[BUFFER_SIZE];
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long total = 0;
+        int numRead;
+        while ((numRead = in.read(bytes)) != -1) {
+            if (total + numRead > maxBytes) {
+                throw new B2LocalException("mismatch", "got more than the " + maxBytes + " bytes we asked for");
+            }
+            buffer.clear();
+            buffer.limit(numRead);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + total + buffer.position());
+                }
+            } catch (IOException e) {
+                throw new B2LocalException("write_failed", "write failed: " + e.getMessage(), e);
+            }
+            total += numRead;
+        }
+        return total;
+    }
+
+    /**
+     * @param fileVersion the version being downloaded.
+     * @return the SHA1 that the whole file should have, or null if B2
+     *         doesn't know it.  like B2ContentWriter.getSha1ToCheckOrNull(),
+     *         but from the file's info instead of a response's headers.
+     */
+    static String getSha1ToCheckOrNull(B2FileVersion fileVersion) {
+        final String unverifiedPrefix = "unverified:";
+        String sha1 = fileVersion.getContentSha1();
+        if (sha1 != null && sha1.startsWith(unverifiedPrefix)) {
+            sha1 = sha1.substring(unverifiedPrefix.length());
+        }
+        // sha1 == "none" for large files, which might have a largeFileSha1.
+        if (sha1 != null && !sha1.equals("none")) {
+            return sha1;
+        }
+        return fileVersion.getLargeFileSha1OrNull();
+    }
+
+    /**
+     * @return the ranges needed to download 'length' bytes starting at 'start',
+     *         with each range no bigger than rangeSize.
+     */
+    /*forTests*/ static List<B2ByteRange> pickRanges(long start,
+                                                    long length,
+                                                    long rangeSize) {
+        final List<B2ByteRange> ranges = new ArrayList<>();
+        final long pastEnd = start + length;
+        for (long rangeStart = start; rangeStart < pastEnd; rangeStart += rangeSize) {
+            final long rangeEnd = Math.min(rangeStart + rangeSize, pastEnd) - 1;
+            ranges.add(B2ByteRange.between(rangeStart, rangeEnd));
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2Part;
+import com.backblaze.b2.json.B2Json;
+import com.backblaze.b2.json.B2JsonException;
+import com.backblaze.b2.util.B2Preconditions;
+import com.backblaze.b2.util.B2Sha1;
+import com.backblaze.b2.util.B2StringUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * B2LargeFileJournal remembers, in a local file, which parts of a large file
+ * have been stored, so that storing the large file can pick up where it left
+ * off after a crash, without listing the parts that are already in B2 and
+ * without reading their bytes again.
+ *
+ * The journal holds the B2FileVersion returned by startLargeFile(), followed
+ * by each part (including its SHA-1) as it's stored.  Each one is written on
+ * its own line and synced to disk before we go on, so a crash can only lose
+ * the part that was being written.  A partial line at the end is ignored.
+ *
+ * To use it, get the journal for the local file and see whether it already
+ * has a large file version.  If it does, store with that version instead of
+ * starting a new large file:
+ *
+ *   journal = B2LargeFileJournal.forLocalFile(journalDir, localFile);
+ *   fileVersion = journal.getLargeFileVersionOrNull();
+ *   if (fileVersion == null) {
+ *       fileVersion = client.startLargeFile(startRequest);
+ *   }
+ *   client.storeLargeFileFromLocalContent(
+ *       B2StoreLargeFileRequest.builder(fileVersion).build(),
+ *       contentSource, listener, executor, journal);
+ *
+ * Journaled parts are matched to the parts being stored by part number and
+ * length, so resume with the same part sizes that were used at first.  Once
+ * the large file is finished, its journal is deleted.
+ *
+ * THREAD-SAFETY: this class is thread-safe.  Don't let two journals use the
+ *   same file at once, even in different processes.
+ */
+public class B2LargeFileJournal {
+    private static final String JOURNAL_SUFFIX = ".b2journal";
+
+    private final File journalFile;
+
+    // these are null/empty until the large file has been started.
+    private B2FileVersion largeFileVersionOrNull;
+    private final Map<Integer, B2Part> storedParts = new TreeMap<>();
+
+    /**
+     * Opens the journal in the given file, reading whatever is already in it.
+     *
+     * @param journalFile the file to keep the journal in.  it doesn't have to exist yet.
+     * @throws B2Exception if there's trouble reading the journal.
+     */
+    public B2LargeFileJournal(File journalFile) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(journalFile, "journalFile");
+        this.journalFile = journalFile;
+        read();
+    }
+
+    /**
+     * Opens the journal for storing the given local file as a large file.
+     * The journal's name depends on the local file's path, length, and
+     * modification time, so if the local file changes, a new journal is used.
+     *
+     * @param journalDirectory the directory to keep journals in.  it must exist.
+     * @param localFile the local file that's being stored.
+     * @return the journal for the local file.
+     * @throws B2Exception if there's trouble looking at the local file or reading the journal.
+     */
+    public static B2LargeFileJournal forLocalFile(File journalDirectory,
+                                                  File localFile) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(journalDirectory, "journalDirectory");
+        B2Preconditions.checkArgumentIsNotNull(localFile, "localFile");
+        B2Preconditions.checkArgument(journalDirectory.isDirectory(), "journalDirectory must be a directory");
+
+        final String identity;
+        try {
+            identity = localFile.getCanonicalPath() + "\n" + localFile.length() + "\n" + localFile.lastModified();
+        } catch (IOException e) {
+            throw new B2LocalException("trouble", "can't get canonical path of " + localFile + ": " + e, e);
+        }
+        final String journalName = B2Sha1.hexSha1OfBytes(B2StringUtil.getUtf8Bytes(identity)) + JOURNAL_SUFFIX;
+        return new B2LargeFileJournal(new File(journalDirectory, journalName));
+    }
+
+    public File getFile() {
+        return journalFile;
+    }
+
+    /**
+     * @return the large file version that this journal is for, or null if
+     *         startedLargeFile() hasn't been called.
+     */
+    public synchronized B2FileVersion getLargeFileVersionOrNull() {
+        return largeFileVersionOrNull;
+    }
+
+    /**
+     * @return the parts that have been stored, in order of part number.
+     */
+    public synchronized List<B2Part> getStoredParts() {
+        return new ArrayList<>(storedParts.values());
+    }
+
+    /**
+     * Starts the journal over, for the given large file.
+     *
+     * @param largeFileVersion the large file version returned by startLargeFile().
+     * @throws B2Exception if there's trouble writing the journal.
+     */
+    public synchronized void startedLargeFile(B2FileVersion largeFileVersion) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(largeFileVersion, "largeFileVersion");
+        write(largeFileVersion, false);
+        largeFileVersionOrNull = largeFileVersion;
+        storedParts.clear();
+    }
+
+    /**
+     * Records that the given part has been stored.
+     *
+     * @param part the part returned by storing it.
+     * @throws B2Exception if there's trouble writing the journal.
+     */
+    public synchronized void partStored(B2Part part) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(part, "part");
+        B2Preconditions.checkState(largeFileVersionOrNull != null, "startedLargeFile() must be called before partStored()");
+        write(part, true);
+        storedParts.put(part.getPartNumber(), part);
+    }
+
+    /**
+     * Deletes the journal file and forgets what was in it.
+     *
+     * @return true iff there's no journal file left afterwards.
+     */
+    public synchronized boolean delete() {
+        largeFileVersionOrNull = null;
+        storedParts.clear();
+        return !journalFile.exists() || journalFile.delete();
+    }
+
+    private void write(Object record,
+                       boolean append) throws B2Exception {
+        final byte[] line;
+        try {
+            // B2Json escapes newlines inside strings, so the only newlines
+            // are the ones it adds for readability.
+            line = (B2Json.get().toJson(record).replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (B2JsonException e) {
+            throw new B2LocalException("trouble", "can't convert " + record + " to json: " + e, e);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(journalFile, append)) {
+            out.write(line);
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw new B2LocalException("trouble", "can't write large file journal " + journalFile + ": " + e, e);
+        }
+    }
+
+    private void read() throws B2Exception {
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        final byte[] contents;
+        try {
+            contents = Files.readAllBytes(journalFile.toPath());
+        } catch (IOException e) {
+            throw new B2LocalException("trouble", "can't read large file journal " + journalFile + ": " + e, e);
+        }
+
+        int lineStart = 0;
+        int newline;
+        while ((newline = indexOfNewline(contents, lineStart)) >= 0) {
+            final String line = new String(contents, lineStart, newline - lineStart, StandardCharsets.UTF_8);
+            try {
+                if (largeFileVersionOrNull == null) {
+                    largeFileVersionOrNull = B2Json.get().fromJson(line, B2FileVersion.class);
+                } else {
+                    final B2Part part = B2Json.get().fromJson(line, B2Part.class);
+                    storedParts.put(part.getPartNumber(), part);
+                }
+            } catch (B2JsonException e) {
+                throw new B2LocalException("parsing_failed", "can't parse line of large file journal " + journalFile + ": " + e, e);
+            }
+            lineStart = newline + 1;
+        }
+
+        // a partial line at the end was being written when we crashed.
+        // cut it off so that the next line we write starts on its own line.
+        if (lineStart < contents.length) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(lineStart);
+                file.getFD().sync();
+            } catch (IOException e) {
+                throw new B2LocalException("trouble", "can't truncate large file journal " + journalFile + ": " + e, e);
+            }
+        }
+    }
+
+    private static int indexOfNewline(byte[] bytes, int start) {
+        for (int i = start; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "B2LargeFileJournal{" + journalFile + "}";
+    }
+}
@@ -27,11 +27,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static com.backblaze.b2.client.structures.B2ServerSideEncryptionMode.SSE_C;
@@ -81,6 +86,24 @@ public class B2LargeFileStorer {
     private final Supplier<B2RetryPolicy> retryPolicySupplier;
     private final ExecutorService executor;
 
+    /**
+     * Waits out the delays before retrying parts, so that the executor's
+     * threads don't have to.  It's the executor itself if that's a
+     * ScheduledExecutorService.
+     */
+    private final ScheduledExecutorService retryScheduler;
+
+    /**
+     * The most parts we'll have submitted to the executor at once.
+     */
+    private final int maxPartsInFlight;
+
+    /**
+     * If non-null, each part is recorded here as it's stored, and it's
+     * deleted once the large file is finished.
+     */
+    private final B2LargeFileJournal journalOrNull;
+
     B2LargeFileStorer(
             B2StoreLargeFileRequest storeLargeFileRequest,
             List<B2PartStorer> partStorers,
@@ -89,7 +112,48 @@ public class B2LargeFileStorer {
             B2Retryer retryer,
             Supplier<B2RetryPolicy> retryPolicySupplier,
             ExecutorService executor) {
+        this(storeLargeFileRequest,
+                partStorers,
+                accountAuthCache,
+                webifier,
+                retryer,
+                retryPolicySupplier,
+                executor,
+                B2ClientConfig.DEFAULT_MAX_PARTS_IN_FLIGHT_PER_LARGE_FILE);
+    }
+
+    B2LargeFileStorer(
+            B2StoreLargeFileRequest storeLargeFileRequest,
+            List<B2PartStorer> partStorers,
+            B2AccountAuthorizationCache accountAuthCache,
+            B2StorageClientWebifier webifier,
+            B2Retryer retryer,
+            Supplier<B2RetryPolicy> retryPolicySupplier,
+            ExecutorService executor,
+            int maxPartsInFlight) {
+        this(storeLargeFileRequest,
+                partStorers,
+                accountAuthCache,
+                webifier,
+                retryer,
+                retryPolicySupplier,
+                executor,
+                maxPartsInFlight,
+                null);
+    }
+
+    B2LargeFileStorer(
+            B2StoreLargeFileRequest storeLargeFileRequest,
+            List<B2PartStorer> partStorers,
+            B2AccountAuthorizationCache accountAuthCache,
+            B2StorageClientWebifier webifier,
+            B2Retryer retryer,
+            Supplier<B2RetryPolicy> retryPolicySupplier,
+            ExecutorService executor,
+            int maxPartsInFlight,
+            B2LargeFileJournal journalOrNull) {
         B2Preconditions.checkArgumentIsNotNull(storeLargeFileRequest, "storeLargeFileRequest");
+        B2Preconditions.checkArgument(maxPartsInFlight > 0, "maxPartsInFlight must be positive");
 
         this.fileVersion = storeLargeFileRequest.getFileVersion();
         this.serverSideEncryptionOrNull = storeLargeFileRequest.getServerSideEncryption();
@@ -102,6 +166,11 @@ public class B2LargeFileStorer {
         this.retryer = retryer;
         this.retryPolicySupplier = retryPolicySupplier;
         this.executor = executor;
+        this.retryScheduler = (executor instanceof ScheduledExecutorService) ?
+                (ScheduledExecutorService) executor :
+                B2Retryer.getDefaultScheduler();
+        this.maxPartsInFlight = maxPartsInFlight;
+        this.journalOrNull = journalOrNull;
     }
 
     private List<B2PartStorer> validateAndSortPartStorers(List<B2PartStorer> partStorers) {
@@ -184,12 +253,88 @@ public class B2LargeFileStorer {
             B2Retryer retryer,
             Supplier<B2RetryPolicy> retryPolicySupplier,
             ExecutorService executor) throws B2Exception {
+        return forLocalContent(
+                storeLargeFileRequest,
+                contentSource,
+                partSizes,
+                accountAuthCache,
+                webifier,
+                retryer,
+                retryPolicySupplier,
+                executor,
+                B2ClientConfig.DEFAULT_MAX_PARTS_IN_FLIGHT_PER_LARGE_FILE);
+    }
+
+    public static B2LargeFileStorer forLocalContent(
+            B2StoreLargeFileRequest storeLargeFileRequest,
+            B2ContentSource contentSource,
+            B2PartSizes partSizes,
+            B2AccountAuthorizationCache accountAuthCache,
+            B2StorageClientWebifier webifier,
+            B2Retryer retryer,
+            Supplier<B2RetryPolicy> retryPolicySupplier,
+            ExecutorService executor,
+            int maxPartsInFlight) throws B2Exception {
+        return forLocalContent(
+                storeLargeFileRequest,
+                contentSource,
+                partSizes,
+                accountAuthCache,
+                webifier,
+                retryer,
+                retryPolicySupplier,
+                executor,
+                maxPartsInFlight,
+                null);
+    }
+
+    /**
+     * Just like the other forLocalContent()s, except that if journalOrNull
+     * isn't null, the parts it says are already stored aren't stored again,
+     * and the parts that get stored are recorded in it.
+     *
+     * @throws B2LocalException with code "mismatch" if the journal is for a
+     *                          different large file.
+     */
+    public static B2LargeFileStorer forLocalContent(
+            B2StoreLargeFileRequest storeLargeFileRequest,
+            B2ContentSource contentSource,
+            B2PartSizes partSizes,
+            B2AccountAuthorizationCache accountAuthCache,
+            B2StorageClientWebifier webifier,
+            B2Retryer retryer,
+            Supplier<B2RetryPolicy> retryPolicySupplier,
+            ExecutorService executor,
+            int maxPartsInFlight,
+            B2LargeFileJournal journalOrNull) throws B2Exception {
         B2Preconditions.checkArgumentIsNotNull(storeLargeFileRequest, "storeLargeFileRequest");
 
+        final Map<Integer, B2Part> journaledParts = new TreeMap<>();
+        if (journalOrNull != null) {
+            final B2FileVersion largeFileVersion = storeLargeFileRequest.getFileVersion();
+            final B2FileVersion journaledVersion = journalOrNull.getLargeFileVersionOrNull();
+            if (journaledVersion == null) {
+                journalOrNull.startedLargeFile(largeFileVersion);
+            } else if (!journaledVersion.getFileId().equals(largeFileVersion.getFileId())) {
+                throw new B2LocalException("mismatch", journalOrNull + " is for large file " +
+                        journaledVersion.getFileId() + ", not " + largeFileVersion.getFileId());
+            } else {
+                for (B2Part part : journalOrNull.getStoredParts()) {
+                    journaledParts.put(part.getPartNumber(), part);
+                }
+            }
+        }
+
         // Convert the contentSource into a list of B2PartStorer objects.
+        // the parts that the journal already has don't need to be read at all.
         final List<B2PartStorer> partContentSources = new ArrayList<>();
         try {
             for (final B2PartSpec partSpec : partSizes.pickParts(contentSource.getContentLength())) {
+                final B2Part journaledPart = journaledParts.get(partSpec.getPartNumber());
+                if (journaledPart != null && journaledPart.getContentLength() == partSpec.getLength()) {
+                    partContentSources.add(new B2AlreadyStoredPartStorer(journaledPart));
+                    continue;
+                }
                 final B2UploadingPartStorer localPartContentSource = new B2UploadingPartStorer(
                         partSpec.getPartNumber(),
                         createRangedContentSource(contentSource, partSpec.getStart(), partSpec.getLength()));
@@ -207,7 +352,9 @@ public class B2LargeFileStorer {
                 webifier,
                 retryer,
                 retryPolicySupplier,
-                executor);
+                executor,
+                maxPartsInFlight,
+                journalOrNull);
     }
 
     B2FileVersion storeFile(B2UploadListener uploadListenerOrNull) throws B2Exception {
@@ -247,17 +394,16 @@ public class B2LargeFileStorer {
             uploadListener = uploadListenerOrNull;
         }
 
+        // there's one future per part.  they're completed as the parts are stored.
         final List<CompletableFuture<B2Part>> completableFutures = new ArrayList<>();
-
-        // Store each part in parallel.
-        for (final B2PartStorer partStorer : partStorers) {
-            CompletableFuture<B2Part> future = CompletableFuture.supplyAsync(
-                    adaptB2Supplier(() -> partStorer.storePart(this, uploadListener, cancellationToken)),
-                            executor);
-
-            completableFutures.add(future);
+        for (int i = 0; i < partStorers.size(); i++) {
+            completableFutures.add(new CompletableFuture<>());
         }
 
+        // Store the parts in parallel, but only start maxPartsInFlight of them now.
+        // each time a part finishes, another one is started.
+        new PartStarter(completableFutures, uploadListener).startParts();
+
         // future that tracks when all the parts are stored
         final CompletableFuture<Void> allPartsCompletedFuture = CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[0]));
 
@@ -282,6 +428,138 @@ public class B2LargeFileStorer {
         return retval;
     }
 
+    /**
+     * A PartStarter keeps up to maxPartsInFlight parts being stored at once.
+     *
+     * When a part's future is already done by the time we look at it (an
+     * already-stored part, or a same-thread executor), its completion callback
+     * runs inline, inside startParts().  If that callback started the next part
+     * itself, every finished part would add stack frames, and thousands of
+     * them would overflow the stack.  So the callback just gives back its slot
+     * and asks for the parts to be started, and only one thread at a time
+     * starts them, in a loop.  A request that comes in while that thread is
+     * looping makes it go around again instead of starting anything itself.
+     */
+    private class PartStarter {
+        private final List<CompletableFuture<B2Part>> partFutures;
+        private final B2UploadListener uploadListener;
+        private final AtomicInteger nextPartIndex = new AtomicInteger(0);
+
+        // how many more parts can be started without going over maxPartsInFlight.
+        private final AtomicInteger freeSlots = new AtomicInteger(maxPartsInFlight);
+
+        // how many requests to start parts haven't been handled yet.  the
+        // thread that raises it from zero does the starting.
+        private final AtomicInteger pendingStartRequests = new AtomicInteger(0);
+
+        PartStarter(List<CompletableFuture<B2Part>> partFutures,
+                    B2UploadListener uploadListener) {
+            this.partFutures = partFutures;
+            this.uploadListener = uploadListener;
+        }
+
+        /**
+         * Starts as many parts as there are free slots for, unless another
+         * thread is already doing that, in which case it'll do it for us.
+         */
+        void startParts() {
+            if (pendingStartRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int handled = 1;
+            while (true) {
+                while (freeSlots.get() > 0 && nextPartIndex.get() < partFutures.size()) {
+                    freeSlots.decrementAndGet();
+                    startNextPart();
+                }
+                handled = pendingStartRequests.addAndGet(-handled);
+                if (handled == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Submits the next part that hasn't been started yet, if there is one, and
+         * arranges for it to give back its slot when it's done.  The result of storing
+         * the part goes into its future in partFutures.
+         *
+         * Parts whose futures are already done have been cancelled, so we don't
+         * start them, and they keep their slots, so we stop starting parts after them.
+         */
+        private void startNextPart() {
+            final int partIndex = nextPartIndex.getAndIncrement();
+            if (partIndex >= partFutures.size()) {
+                return;
+            }
+
+            final CompletableFuture<B2Part> partFuture = partFutures.get(partIndex);
+            if (partFuture.isDone()) {
+                return;
+            }
+
+            final B2PartStorer partStorer = partStorers.get(partIndex);
+            try {
+                final CompletableFuture<B2Part> storingFuture = partStorer.storePartAsync(B2LargeFileStorer.this, uploadListener, cancellationToken);
+
+                // if the part's future gets cancelled, cancel the real work too, so
+                // that it won't run if it hasn't started yet.
+                partFuture.whenComplete((part, error) -> {
+                    if (partFuture.isCancelled()) {
+                        storingFuture.cancel(true);
+                    }
+                });
+
+                storingFuture.whenComplete((part, error) -> {
+                    if (error == null) {
+                        recordStoredPart(partStorer, part, partFuture);
+                    } else {
+                        partFuture.completeExceptionally(error);
+                    }
+                    // keep going even if this part failed.  the other parts are still
+                    // stored, just like they were when every part was submitted at once,
+                    // and the caller can cancel the returned future to stop them.
+                    freeSlots.incrementAndGet();
+                    startParts();
+                });
+            } catch (RejectedExecutionException e) {
+                partFuture.completeExceptionally(e);
+                failUnstartedParts(nextPartIndex, partFutures, e);
+            }
+        }
+    }
+
+    /**
+     * Completes the part's future, after recording the part in the journal,
+     * if there is one.  The part isn't stored as far as we're concerned
+     * until the journal says so, since resuming depends on it.
+     */
+    private void recordStoredPart(B2PartStorer partStorer,
+                                  B2Part part,
+                                  CompletableFuture<B2Part> partFuture) {
+        if (journalOrNull != null && !(partStorer instanceof B2AlreadyStoredPartStorer)) {
+            try {
+                journalOrNull.partStored(part);
+            } catch (B2Exception e) {
+                partFuture.completeExceptionally(e);
+                return;
+            }
+        }
+        partFuture.complete(part);
+    }
+
+    /**
+     * Every part's future needs to be completed, even the ones we'll never start.
+     */
+    private static void failUnstartedParts(AtomicInteger nextPartIndex,
+                                           List<CompletableFuture<B2Part>> partFutures,
+                                           Throwable error) {
+        int partIndex;
+        while ((partIndex = nextPartIndex.getAndIncrement()) < partFutures.size()) {
+            partFutures.get(partIndex).completeExceptionally(error);
+        }
+    }
+
     /**
      * Adapts finishLargeFileFromB2PartFutures to be used in completion stages. These
      * functions cannot return B2Exceptions, so those must be caught here and converted
@@ -301,7 +579,7 @@ public class B2LargeFileStorer {
      * Supplier interface that throws B2Exception or IOException
      * @param <Type> return type
      */
-    private interface B2Supplier<Type> {
+    interface B2Supplier<Type> {
         Type get() throws B2Exception, IOException;
     }
 
@@ -369,11 +647,18 @@ public class B2LargeFileStorer {
         B2FinishLargeFileRequest finishRequest = B2FinishLargeFileRequest
                 .builder(largeFileVersion.getFileId(), partSha1s)
                 .build();
-        return retryer.doRetry(
+        final B2FileVersion finishedVersion = retryer.doRetry(
                 "b2_finish_large_file",
                 accountAuthCache,
                 () -> webifier.finishLargeFile(accountAuthCache.get(), finishRequest),
                 retryPolicySupplier.get());
+
+        // there's nothing left to resume.  if the journal can't be deleted,
+        // resuming with it will fail, because the large file is finished.
+        if (journalOrNull != null) {
+            journalOrNull.delete();
+        }
+        return finishedVersion;
     }
 
     void updateProgress(
@@ -401,6 +686,80 @@ public class B2LargeFileStorer {
             B2ContentSource contentSource,
             B2UploadListener uploadListener, B2CancellationToken cancellationToken) throws IOException, B2Exception {
 
+        final B2Retryer.RetryableCallable<B2Part> uploader = prepareToUploadPart(partNumber, contentSource, uploadListener, cancellationToken);
+        try {
+            return retryer.doRetry(
+                    "b2_upload_part",
+                    accountAuthCache,
+                    uploader,
+                    retryPolicySupplier.get()
+            );
+        } catch (B2Exception e) {
+            updateProgress(
+                    uploadListener,
+                    partNumber,
+                    contentSource.getContentLength(),
+                    0,
+                    B2UploadState.FAILED);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Just like uploadPart(), except that the attempts are run on the executor,
+     * and no thread is tied up while waiting to retry.
+     */
+    CompletableFuture<B2Part> uploadPartAsync(
+            int partNumber,
+            B2ContentSource contentSource,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) {
+        final B2Retryer.RetryableCallable<B2Part> uploader;
+        try {
+            uploader = prepareToUploadPart(partNumber, contentSource, uploadListener, cancellationToken);
+        } catch (IOException e) {
+            final CompletableFuture<B2Part> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new B2LocalException("trouble", "exception working with content source" + e, e));
+            return failed;
+        }
+
+        final CompletableFuture<B2Part> future = retryer.doRetryAsync(
+                "b2_upload_part",
+                accountAuthCache,
+                uploader,
+                retryPolicySupplier.get(),
+                executor,
+                retryScheduler);
+        future.whenComplete((part, error) -> {
+            if (error != null) {
+                long partLength;
+                try {
+                    partLength = contentSource.getContentLength();
+                } catch (IOException e) {
+                    partLength = B2UploadProgress.UNKNOWN_PART_SIZE_PLACEHOLDER;
+                }
+                updateProgress(
+                        uploadListener,
+                        partNumber,
+                        partLength,
+                        0,
+                        B2UploadState.FAILED);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reports that the part is waiting to start and returns the code to
+     * make each attempt to upload it.
+     */
+    private B2Retryer.RetryableCallable<B2Part> prepareToUploadPart(
+            int partNumber,
+            B2ContentSource contentSource,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) throws IOException {
+
         updateProgress(
                 uploadListener,
                 partNumber,
@@ -417,54 +776,39 @@ public class B2LargeFileStorer {
                 contentSource.getContentLength());
         final B2ByteProgressFilteringListener progressListener = new B2ByteProgressFilteringListener(progressAdapter);
 
-        try {
-            return retryer.doRetry(
-                    "b2_upload_part",
-                    accountAuthCache,
-                    (isRetry) -> {
-                        cancellationToken.throwIfCancelled();
-                        final B2UploadPartUrlResponse uploadPartUrlResponse = uploadPartUrlCache.get(isRetry);
-
-                        final B2ContentSource contentSourceThatReportsProgress =
-                                new B2ContentSourceWithByteProgressListener(contentSource, progressListener);
-                        final B2UploadPartRequest uploadPartRequest = B2UploadPartRequest
-                                .builder(partNumber, contentSourceThatReportsProgress)
-                                .setServerSideEncryption(serverSideEncryptionOrNull)
-                                .build();
-
-                        updateProgress(
-                                uploadListener,
-                                partNumber,
-                                contentSource.getContentLength(),
-                                0,
-                                B2UploadState.STARTING);
-
-                        final B2Part part = webifier.uploadPart(uploadPartUrlResponse, uploadPartRequest);
-
-                        // Return the upload part URL, because it works and can be reused.
-                        uploadPartUrlCache.unget(uploadPartUrlResponse);
-
-                        updateProgress(
-                                uploadListener,
-                                partNumber,
-                                part.getContentLength(),
-                                part.getContentLength(),
-                                B2UploadState.SUCCEEDED);
-
-                        return part;
-                    },
-                    retryPolicySupplier.get()
-            );
-        } catch (B2Exception e) {
+        return (isRetry) -> {
+            cancellationToken.throwIfCancelled();
+            final B2UploadPartUrlResponse uploadPartUrlResponse = uploadPartUrlCache.get(isRetry);
+
+            final B2ContentSource contentSourceThatReportsProgress =
+                    new B2ContentSourceWithByteProgressListener(contentSource, progressListener);
+            final B2UploadPartRequest uploadPartRequest = B2UploadPartRequest
+                    .builder(partNumber, contentSourceThatReportsProgress)
+                    .setServerSideEncryption(serverSideEncryptionOrNull)
+                    .build();
+
             updateProgress(
                     uploadListener,
                     partNumber,
                     contentSource.getContentLength(),
                     0,
-                    B2UploadState.FAILED);
+                    B2UploadState.STARTING);
 
-            throw e;
-        }
+            final B2Part part = webifier.uploadPart(uploadPartUrlResponse, uploadPartRequest);
+
+            // Return the upload part URL, because it works and can be reused.
+            uploadPartUrlCache.unget(uploadPartUrlResponse);
+            retryer.getMetricsRecorder().bytesTransferred("b2_upload_part", part.getContentLength());
+
+            updateProgress(
+                    uploadListener,
+                    partNumber,
+                    part.getContentLength(),
+                    part.getContentLength(),
+                    B2UploadState.SUCCEEDED);
+
+            return part;
+        };
     }
 
     /**
@@ -483,6 +827,57 @@ public class B2LargeFileStorer {
             B2UploadListener uploadListener,
             B2CancellationToken cancellationToken) throws B2Exception {
 
+        final B2Retryer.RetryableCallable<B2Part> copier = prepareToCopyPart(partNumber, sourceFileId, byteRangeOrNull, uploadListener, cancellationToken);
+        try {
+            return retryer.doRetry(
+                    "b2_copy_part",
+                    accountAuthCache,
+                    copier,
+                    retryPolicySupplier.get());
+        } catch (B2Exception e) {
+            reportCopyPartFailed(partNumber, uploadListener);
+            throw e;
+        }
+    }
+
+    /**
+     * Just like copyPart(), except that the attempts are run on the executor,
+     * and no thread is tied up while waiting to retry.
+     */
+    CompletableFuture<B2Part> copyPartAsync(
+            int partNumber,
+            String sourceFileId,
+            B2ByteRange byteRangeOrNull,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) {
+
+        final B2Retryer.RetryableCallable<B2Part> copier = prepareToCopyPart(partNumber, sourceFileId, byteRangeOrNull, uploadListener, cancellationToken);
+        final CompletableFuture<B2Part> future = retryer.doRetryAsync(
+                "b2_copy_part",
+                accountAuthCache,
+                copier,
+                retryPolicySupplier.get(),
+                executor,
+                retryScheduler);
+        future.whenComplete((part, error) -> {
+            if (error != null) {
+                reportCopyPartFailed(partNumber, uploadListener);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reports that the part is waiting to start and returns the code to
+     * make each attempt to copy it.
+     */
+    private B2Retryer.RetryableCallable<B2Part> prepareToCopyPart(
+            int partNumber,
+            String sourceFileId,
+            B2ByteRange byteRangeOrNull,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) {
+
         updateProgress(
                 uploadListener,
                 partNumber,
@@ -495,42 +890,45 @@ public class B2LargeFileStorer {
                 .setRange(byteRangeOrNull)
                 .build();
 
-        try {
-            return retryer.doRetry(
-                    "b2_copy_part",
-                    accountAuthCache,
-                    () -> {
-                        cancellationToken.throwIfCancelled();
-
-                        updateProgress(
-                                uploadListener,
-                                partNumber,
-                                B2UploadProgress.UNKNOWN_PART_SIZE_PLACEHOLDER,
-                                0,
-                                B2UploadState.STARTING);
-
-                        final B2Part part = webifier.copyPart(accountAuthCache.get(), copyPartRequest);
-
-                        updateProgress(
-                                uploadListener,
-                                partNumber,
-                                part.getContentLength(),
-                                part.getContentLength(),
-                                B2UploadState.SUCCEEDED);
-
-                        return part;
-                    },
-                    retryPolicySupplier.get());
-        } catch (B2Exception e) {
+        return (isRetry) -> {
+            cancellationToken.throwIfCancelled();
+
             updateProgress(
                     uploadListener,
                     partNumber,
                     B2UploadProgress.UNKNOWN_PART_SIZE_PLACEHOLDER,
                     0,
-                    B2UploadState.FAILED);
+                    B2UploadState.STARTING);
 
-            throw e;
-        }
+            final B2Part part = webifier.copyPart(accountAuthCache.get(), copyPartRequest);
+
+            updateProgress(
+                    uploadListener,
+                    partNumber,
+                    part.getContentLength(),
+                    part.getContentLength(),
+                    B2UploadState.SUCCEEDED);
+
+            return part;
+        };
+    }
+
+    private void reportCopyPartFailed(int partNumber,
+                                      B2UploadListener uploadListener) {
+        updateProgress(
+                uploadListener,
+                partNumber,
+                B2UploadProgress.UNKNOWN_PART_SIZE_PLACEHOLDER,
+                0,
+                B2UploadState.FAILED);
+    }
+
+    /**
+     * Runs the supplier on the executor.  It's how parts that don't have
+     * their own asynchronous way to be stored are stored.
+     */
+    <Type> CompletableFuture<Type> supplyAsyncOnExecutor(B2Supplier<Type> supplier) {
+        return CompletableFuture.supplyAsync(adaptB2Supplier(supplier), executor);
     }
 
     static B2ContentSource createRangedContentSource(
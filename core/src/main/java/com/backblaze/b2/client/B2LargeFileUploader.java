@@ -35,6 +35,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.function.Supplier;
 
 class B2LargeFileUploader {
@@ -46,6 +47,7 @@ class B2LargeFileUploader {
     private final B2PartSizes partSizes;
     private final B2UploadFileRequest request;
     private final long contentLength;
+    private final int maxPartsInFlight;
 
     B2LargeFileUploader(B2Retryer retryer,
                         B2StorageClientWebifier webifier,
@@ -55,6 +57,27 @@ class B2LargeFileUploader {
                         B2PartSizes partSizes,
                         B2UploadFileRequest request,
                         long contentLength) {
+        this(retryer,
+                webifier,
+                accountAuthCache,
+                retryPolicySupplier,
+                executor,
+                partSizes,
+                request,
+                contentLength,
+                B2ClientConfig.DEFAULT_MAX_PARTS_IN_FLIGHT_PER_LARGE_FILE);
+    }
+
+    B2LargeFileUploader(B2Retryer retryer,
+                        B2StorageClientWebifier webifier,
+                        B2AccountAuthorizationCache accountAuthCache,
+                        Supplier<B2RetryPolicy> retryPolicySupplier,
+                        ExecutorService executor,
+                        B2PartSizes partSizes,
+                        B2UploadFileRequest request,
+                        long contentLength,
+                        int maxPartsInFlight) {
+        B2Preconditions.checkArgument(maxPartsInFlight > 0, "maxPartsInFlight must be positive");
         this.retryer = retryer;
         this.webifier = webifier;
         this.accountAuthCache = accountAuthCache;
@@ -64,6 +87,7 @@ class B2LargeFileUploader {
 
         this.request = request;
         this.contentLength = contentLength;
+        this.maxPartsInFlight = maxPartsInFlight;
     }
 
     B2FileVersion uploadLargeFile() throws B2Exception {
@@ -198,6 +222,11 @@ class B2LargeFileUploader {
                 accountAuthCache,
                 largeFileVersion.getFileId());
 
+        // each upload we submit holds a permit until it finishes, so there are never
+        // more than maxPartsInFlight of our uploads in the executor.  the rest of
+        // the parts wait here instead of piling up in the executor's queue.
+        final Semaphore partsInFlight = new Semaphore(maxPartsInFlight);
+
         final List<String> partSha1s = new ArrayList<>();
         final List<Future<B2Part>> uploadedPartFutures = new ArrayList<>();
         try {
@@ -208,8 +237,23 @@ class B2LargeFileUploader {
 
                 final B2Part alreadyUploadedPart = uploadedAlready.get(partSpec);
                 if (alreadyUploadedPart == null) {
+                    acquirePermit(partsInFlight);
+
+                    // while we were waiting for a permit, some parts finished.  if any of them
+                    // failed, stop now instead of uploading the rest of the file.
+                    while (partSha1s.size() < uploadedPartFutures.size() &&
+                            uploadedPartFutures.get(partSha1s.size()).isDone()) {
+                        partSha1s.add(getPart(uploadedPartFutures.get(partSha1s.size())).getContentSha1());
+                    }
+
                     // do the upload
-                    uploadedPartFutures.add(executor.submit(() -> uploadOnePart(uploadPartUrlCache, request, partCount, partSpec)));
+                    uploadedPartFutures.add(executor.submit(() -> {
+                        try {
+                            return uploadOnePart(uploadPartUrlCache, request, partCount, partSpec);
+                        } finally {
+                            partsInFlight.release();
+                        }
+                    }));
                 } else {
                     // tell the listener about our prior success as soon as we can.
                     listener.progress(B2UploadProgressUtil.forPartSucceeded(partSpec, partCount));
@@ -223,24 +267,15 @@ class B2LargeFileUploader {
 
             B2Preconditions.checkState(partCount == uploadedPartFutures.size(), "didn't we add a future for every spec?");
 
-            for (Future<B2Part> future : uploadedPartFutures) {
-                try {
-                    partSha1s.add(future.get().getContentSha1());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new B2LocalException("interrupted", "interrupted while trying to upload parts: " + e, e);
-                } catch (ExecutionException e) {
-                    Throwable cause = e.getCause();
-                    if (cause instanceof B2Exception) {
-                        throw (B2Exception) e.getCause();
-                    } else {
-                        throw new B2LocalException("trouble", "exception while trying to upload parts: " + cause, cause);
-                    }
-                }
+            // some of the sha1s might've been collected while submitting.  get the rest.
+            while (partSha1s.size() < uploadedPartFutures.size()) {
+                partSha1s.add(getPart(uploadedPartFutures.get(partSha1s.size())).getContentSha1());
             }
         } catch (RejectedExecutionException e) {
             // the executor doesn't to accept a task we're trying to submit.
             // turn this into a B2Exception and let the finally clean up what it can.
+            // (we never get our permit back for the rejected task, but that's ok
+            // since we're giving up on this upload.)
             throw new B2LocalException("bad_state", "The executor rejected an upload task. Does it have a hard limit? Did you call shutdown() on it? (" + e + ")", e);
         } finally {
             // we've either called get() on all of the futures, or we've hit an exception and
@@ -258,6 +293,31 @@ class B2LargeFileUploader {
         return retryer.doRetry("b2_finish_large_file", accountAuthCache, () -> webifier.finishLargeFile(accountAuthCache.get(), finishRequest), retryPolicySupplier.get());
     }
 
+    private static void acquirePermit(Semaphore partsInFlight) throws B2LocalException {
+        try {
+            partsInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting to upload parts: " + e, e);
+        }
+    }
+
+    private static B2Part getPart(Future<B2Part> future) throws B2Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while trying to upload parts: " + e, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof B2Exception) {
+                throw (B2Exception) e.getCause();
+            } else {
+                throw new B2LocalException("trouble", "exception while trying to upload parts: " + cause, cause);
+            }
+        }
+    }
+
     private B2Part uploadOnePart(B2UploadPartUrlCache uploadPartUrlCache,
                                  B2UploadFileRequest request,
                                  int partCount,
@@ -305,6 +365,7 @@ class B2LargeFileUploader {
 
                         final B2Part part = webifier.uploadPart(uploadPartUrlResponse, partRequest);
                         uploadPartUrlCache.unget(uploadPartUrlResponse);
+                        retryer.getMetricsRecorder().bytesTransferred("b2_upload_part", part.getContentLength());
 
                         request.getListener().progress(B2UploadProgressUtil.forPartSucceeded(partSpec, partCount));
                         return part;
@@ -16,26 +16,19 @@ public class B2ListFileNamesIterable extends B2ListFilesIterableBase {
     private final B2ListFileNamesRequest request;
 
     private class Iter extends IterBase {
-        private B2ListFileNamesResponse currentResponse;
-
         Iter() throws B2Exception {
         }
 
         @Override
-        protected void advance() throws B2Exception {
+        protected B2ListFilesResponse fetchPageAfter(B2ListFilesResponse previousOrNull) throws B2Exception {
             B2ListFileNamesRequest.Builder builder =
                     B2ListFileNamesRequest.builder(request);
 
-            if (currentResponse != null) {
-                builder.setStartFileName(currentResponse.getNextFileName());
+            if (previousOrNull != null) {
+                builder.setStartFileName(((B2ListFileNamesResponse) previousOrNull).getNextFileName());
             }
 
-            currentResponse = getClient().listFileNames(builder.build());
-        }
-
-        @Override
-        protected B2ListFilesResponse getCurrentResponseOrNull() {
-            return currentResponse;
+            return getClient().listFileNames(builder.build());
         }
     }
 
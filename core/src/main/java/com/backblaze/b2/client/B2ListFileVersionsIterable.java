@@ -16,27 +16,21 @@ public class B2ListFileVersionsIterable extends B2ListFilesIterableBase {
     private final B2ListFileVersionsRequest request;
 
     private class Iter extends IterBase {
-        private B2ListFileVersionsResponse currentResponse;
-
         Iter() throws B2Exception {
         }
 
         @Override
-        protected B2ListFilesResponse getCurrentResponseOrNull() {
-            return currentResponse;
-        }
-
-        @Override
-        protected void advance() throws B2Exception {
+        protected B2ListFilesResponse fetchPageAfter(B2ListFilesResponse previousOrNull) throws B2Exception {
             B2ListFileVersionsRequest.Builder builder =
                     B2ListFileVersionsRequest.builder(request);
 
-            if (currentResponse != null) {
-                builder.setStart(currentResponse.getNextFileName(),
-                        currentResponse.getNextFileId());
+            if (previousOrNull != null) {
+                final B2ListFileVersionsResponse previous = (B2ListFileVersionsResponse) previousOrNull;
+                builder.setStart(previous.getNextFileName(),
+                        previous.getNextFileId());
             }
 
-            currentResponse = getClient().listFileVersions(builder.build());
+            return getClient().listFileVersions(builder.build());
         }
     }
 
@@ -7,10 +7,33 @@ package com.backblaze.b2.client;
 
 import com.backblaze.b2.client.structures.B2FileVersion;
 
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * This interface collects the APIs we provide on our B2FileVersion iterables.
- * For now, it's just the Iterable-ness.  Someday, I expect it, or some interfaces
+ * For now, it's the Iterable-ness and streams.  Someday, I expect it, or some interfaces
  * to provide some kind of "get resume point" functionality.
+ *
+ * Just like the iterators, the streams throw B2RuntimeExceptions if there's
+ * trouble getting a page.
  */
 public interface B2ListFilesIterable extends Iterable<B2FileVersion> {
+
+    /**
+     * @return a sequential stream of the files.
+     */
+    default Stream<B2FileVersion> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * The stream's spliterator splits at page boundaries, so each page is
+     * handed off to be processed in parallel while the next page is gotten.
+     *
+     * @return a possibly parallel stream of the files.
+     */
+    default Stream<B2FileVersion> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
 }
@@ -5,20 +5,48 @@
 package com.backblaze.b2.client;
 
 import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
 import com.backblaze.b2.client.exceptions.B2RuntimeException;
 import com.backblaze.b2.client.structures.B2FileVersion;
 import com.backblaze.b2.client.structures.B2ListFilesResponse;
 import com.backblaze.b2.util.B2Preconditions;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 public abstract class B2ListFilesIterableBase implements B2ListFilesIterable {
     private final B2StorageClientImpl b2Client;
 
+    /**
+     * IterBase walks through the files in the pages of a listing.
+     *
+     * If the client's listFilesPrefetchPages is more than zero, it asks for
+     * up to that many pages after the current one in the background, on the
+     * client's prefetch executor, so they're usually ready by the time the
+     * caller gets to them.  Each page's request needs the page before it, so
+     * they're chained one after the other.
+     */
     protected abstract class IterBase implements Iterator<B2FileVersion> {
+        private final int prefetchPages;
+
+        // the futures for the pages after the current one, in order.
+        // a future's value is null if there turned out to be no such page.
+        private final Deque<CompletableFuture<B2ListFilesResponse>> prefetchedPages = new ArrayDeque<>();
+
+        private B2ListFilesResponse currentResponse;
         private int currentIndex;
 
         IterBase() throws B2Exception {
+            this.prefetchPages = getClient().getListFilesPrefetchPages();
             advanceIfNeeded();
         }
 
@@ -50,40 +78,111 @@ public abstract class B2ListFilesIterableBase implements B2ListFilesIterable {
                 return;
             }
 
-            if (getCurrentResponseOrNull() != null) {
+            if (currentResponse != null) {
                 // we've gotten at least one page of results.  was it the last page?
-                if (getCurrentResponseOrNull().atEnd()) {
+                if (currentResponse.atEnd()) {
                     // no more pages to fetch.
                     return;
                 }
             }
 
-            advance();
+            if (currentResponse == null || prefetchPages == 0) {
+                currentResponse = fetchPageAfter(currentResponse);
+            } else {
+                currentResponse = waitForPrefetchedPage();
+            }
             currentIndex = 0;
+
+            if (prefetchPages > 0) {
+                prefetchMorePages();
+            }
+        }
+
+        // returns true if there are no pages after the current one.
+        boolean isOnLastPage() {
+            return currentResponse == null || currentResponse.atEnd();
+        }
+
+        // returns the files we haven't returned from the current page yet,
+        // and moves on to the next page.
+        List<B2FileVersion> takeRestOfPage() throws B2Exception {
+            final int size = getCurrentResponseSize();
+            final List<B2FileVersion> rest = (size == 0) ?
+                    Collections.emptyList() :
+                    currentResponse.getFiles().subList(currentIndex, size);
+            currentIndex = size;
+            advanceIfNeeded();
+            return rest;
+        }
+
+        // starts getting the pages after the current one, until we're
+        // getting prefetchPages of them.
+        private void prefetchMorePages() {
+            while (prefetchedPages.size() < prefetchPages) {
+                final CompletableFuture<B2ListFilesResponse> previous = prefetchedPages.isEmpty() ?
+                        CompletableFuture.completedFuture(currentResponse) :
+                        prefetchedPages.getLast();
+                prefetchedPages.addLast(previous.thenApplyAsync(this::fetchPageAfterInCompletionStage, getClient().getListFilesPrefetchExecutor()));
+            }
+        }
+
+        // only called when the current response isn't atEnd(), so the next
+        // prefetched page is a real page.
+        private B2ListFilesResponse waitForPrefetchedPage() throws B2Exception {
+            final CompletableFuture<B2ListFilesResponse> future = prefetchedPages.removeFirst();
+            final B2ListFilesResponse response;
+            try {
+                response = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new B2LocalException("interrupted", "interrupted while waiting for the next page: " + e, e);
+            } catch (ExecutionException e) {
+                // the pages after this one depend on it, so they've failed too.
+                // forget them, so we'll try again if we're called again.
+                prefetchedPages.clear();
+
+                final Throwable cause = e.getCause();
+                if (cause instanceof B2Exception) {
+                    throw (B2Exception) cause;
+                }
+                throw new B2LocalException("trouble", "exception while getting the next page: " + cause, cause);
+            }
+            B2Preconditions.checkState(response != null, "where's the next page?");
+            return response;
+        }
+
+        // returns null if there are no more pages.  B2Exceptions are converted
+        // into CompletionExceptions so that this can be used in completion stages.
+        private B2ListFilesResponse fetchPageAfterInCompletionStage(B2ListFilesResponse previousOrNull) {
+            if (previousOrNull == null || previousOrNull.atEnd()) {
+                return null;
+            }
+            try {
+                return fetchPageAfter(previousOrNull);
+            } catch (B2Exception e) {
+                throw new CompletionException(e);
+            }
         }
 
         // may be called when there's no current response yet.
         private int getCurrentResponseSize() {
-            final B2ListFilesResponse response = getCurrentResponseOrNull();
-            return (response == null) ?
+            return (currentResponse == null) ?
                     0 :
-                    response.getFiles().size();
+                    currentResponse.getFiles().size();
         }
 
         // must only be called when there should be a current response!
         private B2FileVersion getIthCurrentResponse(int i) {
-            final B2ListFilesResponse response = getCurrentResponseOrNull();
-            B2Preconditions.checkState(response != null);
-            return response.getFiles().get(i);
+            B2Preconditions.checkState(currentResponse != null);
+            return currentResponse.getFiles().get(i);
         }
 
-        // returns the most recently fetched response, or null if none yet.
-        protected abstract B2ListFilesResponse getCurrentResponseOrNull();
-
+        // returns the page after previousOrNull, or the first page if it's null.
         // this will only be called when we aren't at the end of the list yet.
-        // namely, if there's no current response yet or if the current response
-        // says we're not atEnd().
-        abstract protected void advance() throws B2Exception;
+        // namely, if previousOrNull is null or if it says we're not atEnd().
+        // when pages are being prefetched, it's called from the prefetch
+        // executor's threads, one call at a time.
+        abstract protected B2ListFilesResponse fetchPageAfter(B2ListFilesResponse previousOrNull) throws B2Exception;
     }
 
     B2ListFilesIterableBase(B2StorageClientImpl b2Client) {
@@ -99,10 +198,92 @@ public abstract class B2ListFilesIterableBase implements B2ListFilesIterable {
         }
     }
 
+    /**
+     * The spliterator hands off whole pages when it's split, so the files in
+     * pages that have already been gotten can be processed in parallel while
+     * the next page is gotten.  Once there are no more pages to get, it splits
+     * what's left of the last page.
+     */
+    @Override
+    public Spliterator<B2FileVersion> spliterator() {
+        try {
+            return new PageSpliterator((IterBase) createIter());
+        } catch (B2Exception e) {
+            throw new B2RuntimeException("failed to create/advance iterator: " + e.getMessage(), e);
+        }
+    }
+
+    private static class PageSpliterator implements Spliterator<B2FileVersion> {
+        private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+
+        private final IterBase iter;
+
+        // once we've taken the last page from iter, this is what's left of it.
+        private Spliterator<B2FileVersion> lastPageOrNull;
+
+        PageSpliterator(IterBase iter) {
+            this.iter = iter;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super B2FileVersion> action) {
+            if (lastPageOrNull != null) {
+                return lastPageOrNull.tryAdvance(action);
+            }
+            if (!iter.hasNext()) {
+                return false;
+            }
+            action.accept(iter.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<B2FileVersion> trySplit() {
+            if (lastPageOrNull != null) {
+                return lastPageOrNull.trySplit();
+            }
+            if (!iter.hasNext()) {
+                return null;
+            }
+
+            final boolean wasOnLastPage = iter.isOnLastPage();
+            final List<B2FileVersion> restOfPage;
+            try {
+                restOfPage = iter.takeRestOfPage();
+            } catch (B2Exception e) {
+                throw new B2RuntimeException("failed to advance iterator: " + e.getMessage(), e);
+            }
+
+            // arrays' spliterators know their sizes and split in half.
+            final Spliterator<B2FileVersion> restOfPageSpliterator =
+                    Spliterators.spliterator(restOfPage.toArray(), CHARACTERISTICS);
+            if (wasOnLastPage) {
+                lastPageOrNull = restOfPageSpliterator;
+                return lastPageOrNull.trySplit();
+            }
+            return restOfPageSpliterator;
+        }
+
+        @Override
+        public long estimateSize() {
+            if (lastPageOrNull != null) {
+                return lastPageOrNull.estimateSize();
+            }
+            return iter.hasNext() ? Long.MAX_VALUE : 0;
+        }
+
+        @Override
+        public int characteristics() {
+            return (lastPageOrNull != null) ?
+                    lastPageOrNull.characteristics() :
+                    CHARACTERISTICS;
+        }
+    }
+
     protected B2StorageClientImpl getClient() {
         return b2Client;
     }
 
-    // creates a new iterator.  you should probably subclass IterBase.
+    // creates a new iterator.  it must be a subclass of IterBase.
     abstract Iterator<B2FileVersion> createIter() throws B2Exception;
 }
@@ -16,26 +16,19 @@ public class B2ListUnfinishedLargeFilesIterable extends B2ListFilesIterableBase
     private final B2ListUnfinishedLargeFilesRequest request;
 
     private class Iter extends IterBase {
-        private B2ListUnfinishedLargeFilesResponse currentResponse;
-
         Iter() throws B2Exception {
         }
 
         @Override
-        protected B2ListFilesResponse getCurrentResponseOrNull() {
-            return currentResponse;
-        }
-
-        @Override
-        protected void advance() throws B2Exception {
+        protected B2ListFilesResponse fetchPageAfter(B2ListFilesResponse previousOrNull) throws B2Exception {
             B2ListUnfinishedLargeFilesRequest.Builder builder =
                     B2ListUnfinishedLargeFilesRequest.builder(request);
 
-            if (currentResponse != null) {
-                builder.setStartFileId(currentResponse.getNextFileId());
+            if (previousOrNull != null) {
+                builder.setStartFileId(((B2ListUnfinishedLargeFilesResponse) previousOrNull).getNextFileId());
             }
 
-            currentResponse = getClient().listUnfinishedLargeFiles(builder.build());
+            return getClient().listUnfinishedLargeFiles(builder.build());
         }
     }
 
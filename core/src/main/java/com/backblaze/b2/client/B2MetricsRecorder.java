@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+/**
+ * A B2MetricsRecorder is told about each operation the B2StorageClientImpl
+ * does, so you can keep track of latencies, retries, and throughput without
+ * wrapping every call yourself.  Set one with
+ * B2ClientConfig.Builder.setMetricsRecorderOrNull().
+ *
+ * The operation names are the same ones passed to the B2RetryPolicy.  They're
+ * *usually* the name of a b2 api call, such as "b2_upload_part" or
+ * "b2_list_file_names".
+ *
+ * For each operation, operationStarted() is called first, then
+ * attemptFinished() is called after every attempt, including the retries,
+ * and operationFinished() is called last.  bytesTransferred() is called when
+ * an upload or download succeeds.
+ *
+ * All of the methods do nothing by default, so you only have to implement
+ * the ones you care about.  B2MetricsRecorderSimpleImpl implements all of them
+ * by keeping histograms and counters in memory.
+ *
+ * THREAD-SAFETY: implementations must be thread-safe, since they're called
+ *   from every thread that uses the client.  They're called on the request's
+ *   thread, so they should be quick and they must not throw.
+ */
+public interface B2MetricsRecorder {
+    /**
+     * Called before the first attempt of an operation.
+     *
+     * @param operation the name of the operation.
+     */
+    default void operationStarted(String operation) {
+    }
+
+    /**
+     * Called after each attempt of an operation.
+     *
+     * @param operation the name of the operation.
+     * @param attemptsSoFar how many attempts have been made, including this one.  starts at 1.
+     * @param tookMillis how long this attempt took.
+     * @param exceptionOrNull null if the attempt succeeded, otherwise the exception that
+     *                        made it fail.  the operation may be retried after this.
+     */
+    default void attemptFinished(String operation,
+                                 int attemptsSoFar,
+                                 long tookMillis,
+                                 Exception exceptionOrNull) {
+    }
+
+    /**
+     * Called after the last attempt of an operation.
+     *
+     * @param operation the name of the operation.
+     * @param attempts how many attempts were made.
+     * @param tookMillis how long the whole operation took, including the time
+     *                   spent waiting between attempts.
+     * @param exceptionOrNull null if the operation succeeded, otherwise the
+     *                        exception from the last attempt.
+     */
+    default void operationFinished(String operation,
+                                   int attempts,
+                                   long tookMillis,
+                                   Exception exceptionOrNull) {
+    }
+
+    /**
+     * Called when an attempt to upload or download content succeeds.
+     *
+     * @param operation the name of the operation.
+     * @param numBytes how many bytes of content were uploaded or downloaded.
+     */
+    default void bytesTransferred(String operation,
+                                  long numBytes) {
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.util.B2Histogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * B2MetricsRecorderSimpleImpl keeps metrics for each operation in memory.
+ * Ask for an operation's B2OperationMetrics with getOrNull() or for all of
+ * them with getAll(), and read whatever you want to report or alert on.
+ * For instance:
+ *
+ *     recorder.getOrNull("b2_upload_part").getLatencyMillis().getValueAtPercentile(99)
+ *
+ * After the first time an operation is seen, recording its metrics doesn't
+ * allocate or lock (as long as the failure reasons have been seen before, too).
+ *
+ * THREAD-SAFETY: this class may be used from multiple threads safely.
+ */
+public class B2MetricsRecorderSimpleImpl implements B2MetricsRecorder {
+    private final ConcurrentMap<String, B2OperationMetrics> perOperation = new ConcurrentHashMap<>();
+
+    /**
+     * B2OperationMetrics holds the metrics for one operation.
+     *
+     * THREAD-SAFETY: this class may be used from multiple threads safely.
+     *   the values are updated while you read them, so they may not be
+     *   exactly consistent with each other.
+     */
+    public static class B2OperationMetrics {
+        private final String operation;
+        private final B2Histogram latencyMillis = new B2Histogram();
+        private final B2Histogram attemptLatencyMillis = new B2Histogram();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong attempts = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong bytesTransferred = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> attemptFailureReasons = new ConcurrentHashMap<>();
+
+        private B2OperationMetrics(String operation) {
+            this.operation = operation;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return how long each finished operation took, including its retries.
+         *         its count is the number of finished operations.
+         */
+        public B2Histogram getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        /**
+         * @return how long each attempt took, whether it succeeded or not.
+         */
+        public B2Histogram getAttemptLatencyMillis() {
+            return attemptLatencyMillis;
+        }
+
+        /**
+         * @return how many of these operations are running right now.
+         */
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return how many attempts have been made.  it's bigger than the
+         *         number of operations when there have been retries.
+         */
+        public long getAttempts() {
+            return attempts.get();
+        }
+
+        /**
+         * @return how many operations failed after all of their retries.
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return how many bytes of content have been uploaded or downloaded.
+         */
+        public long getBytesTransferred() {
+            return bytesTransferred.get();
+        }
+
+        /**
+         * The reason for a B2Exception is its code, such as "service_unavailable".
+         * For other exceptions, it's the exception's class name.
+         *
+         * @return a snapshot of how many attempts have failed for each reason,
+         *         whether or not they were retried.
+         */
+        public Map<String, Long> getAttemptFailureReasons() {
+            final Map<String, Long> snapshot = new TreeMap<>();
+            attemptFailureReasons.forEach((reason, count) -> snapshot.put(reason, count.get()));
+            return snapshot;
+        }
+
+        @Override
+        public String toString() {
+            return "B2OperationMetrics{" +
+                    "operation='" + operation + '\'' +
+                    ", latencyMillis=" + latencyMillis +
+                    ", attemptLatencyMillis=" + attemptLatencyMillis +
+                    ", inFlight=" + getInFlight() +
+                    ", attempts=" + getAttempts() +
+                    ", failures=" + getFailures() +
+                    ", bytesTransferred=" + getBytesTransferred() +
+                    ", attemptFailureReasons=" + getAttemptFailureReasons() +
+                    '}';
+        }
+    }
+
+    /**
+     * @param operation the name of the operation.
+     * @return the metrics for the operation, or null if it hasn't been seen yet.
+     */
+    public B2OperationMetrics getOrNull(String operation) {
+        return perOperation.get(operation);
+    }
+
+    /**
+     * @return the metrics for every operation that's been seen, sorted by operation name.
+     */
+    public List<B2OperationMetrics> getAll() {
+        final List<B2OperationMetrics> all = new ArrayList<>(perOperation.values());
+        all.sort((a, b) -> a.getOperation().compareTo(b.getOperation()));
+        return Collections.unmodifiableList(all);
+    }
+
+    @Override
+    public void operationStarted(String operation) {
+        get(operation).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void attemptFinished(String operation,
+                                int attemptsSoFar,
+                                long tookMillis,
+                                Exception exceptionOrNull) {
+        final B2OperationMetrics metrics = get(operation);
+        metrics.attempts.incrementAndGet();
+        metrics.attemptLatencyMillis.record(tookMillis);
+        if (exceptionOrNull != null) {
+            final String reason = reasonFor(exceptionOrNull);
+            AtomicLong count = metrics.attemptFailureReasons.get(reason);
+            if (count == null) {
+                count = metrics.attemptFailureReasons.computeIfAbsent(reason, k -> new AtomicLong());
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void operationFinished(String operation,
+                                  int attempts,
+                                  long tookMillis,
+                                  Exception exceptionOrNull) {
+        final B2OperationMetrics metrics = get(operation);
+        metrics.inFlight.decrementAndGet();
+        metrics.latencyMillis.record(tookMillis);
+        if (exceptionOrNull != null) {
+            metrics.failures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bytesTransferred(String operation,
+                                 long numBytes) {
+        get(operation).bytesTransferred.addAndGet(numBytes);
+    }
+
+    private B2OperationMetrics get(String operation) {
+        // try a plain get() first, since computeIfAbsent() may lock even
+        // when the operation is already there.
+        final B2OperationMetrics metrics = perOperation.get(operation);
+        if (metrics != null) {
+            return metrics;
+        }
+        return perOperation.computeIfAbsent(operation, B2OperationMetrics::new);
+    }
+
+    private static String reasonFor(Exception e) {
+        if (e instanceof B2Exception) {
+            final String code = ((B2Exception) e).getCode();
+            if (code != null) {
+                return code;
+            }
+        }
+        return e.getClass().getName();
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.exceptions.B2RuntimeException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2ListFileNamesRequest;
+import com.backblaze.b2.client.structures.B2ListFileVersionsRequest;
+import com.backblaze.b2.util.B2Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import static com.backblaze.b2.util.B2StringUtil.compareInUtf8Order;
+
+/**
+ * B2ParallelFileLister lists a bucket's files faster than a single iterable
+ * can, by splitting the file names into ranges and listing the ranges at the
+ * same time on an executor.
+ *
+ * The ranges are given by boundaries, which are a sorted list of file names
+ * or prefixes.  With the boundaries "b" and "m", there are three ranges: the
+ * names before "b", the names from "b" up to (but not including) "m", and the
+ * names from "m" on.  Names are compared the way B2 sorts them, by their
+ * UTF-8 bytes.  The listing is only as parallel as the boundaries are good;
+ * if you know a bucket's top-level "folders", they're usually a fine choice.
+ *
+ * The request's prefix, delimiter, maxFileCount, and starting point are all
+ * honored.  Each range is listed with the client's fileNames() or
+ * fileVersions() iterable, so the client's retries and prefetching apply.
+ *
+ * forEachFileName() and forEachFileVersion() give each file to the consumer
+ * as soon as it's listed, on the executor's threads, in no particular order,
+ * so the consumer must be thread-safe.
+ *
+ * forEachFileNameInOrder() and forEachFileVersionInOrder() give the files to
+ * the consumer on the calling thread, in the same order a single iterable
+ * would.  While the consumer works on one range, the later ranges are listed
+ * ahead, until maxBufferedFilesPerRange of their files are waiting.
+ *
+ * Either way, the methods return when every range has been listed, or throw
+ * the first exception from listing or from the consumer.
+ *
+ * THREAD-SAFETY: this class may be used from multiple threads safely, as long
+ *   as the client and executor are thread-safe.
+ */
+public class B2ParallelFileLister {
+    /**
+     * By default, each range that's listed ahead of the consumer may have
+     * up to this many files waiting.  It's the most that one call to
+     * b2_list_file_names can return.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_FILES_PER_RANGE = 10_000;
+
+    // put after a range's last file, so the consumer knows to move on.
+    private static final Object END_OF_RANGE = new Object();
+
+    private final B2StorageClient client;
+    private final ExecutorService executor;
+    private final int maxBufferedFilesPerRange;
+
+    /**
+     * @param client the client to list with.
+     * @param executor the executor to list the ranges on.  each range that's
+     *                 being listed uses one of its threads.
+     */
+    public B2ParallelFileLister(B2StorageClient client,
+                                ExecutorService executor) {
+        this(client, executor, DEFAULT_MAX_BUFFERED_FILES_PER_RANGE);
+    }
+
+    /**
+     * @param client the client to list with.
+     * @param executor the executor to list the ranges on.  each range that's
+     *                 being listed uses one of its threads.
+     * @param maxBufferedFilesPerRange when listing in order, how many files
+     *                                 a range may list ahead of the consumer.
+     *                                 must be positive.
+     */
+    public B2ParallelFileLister(B2StorageClient client,
+                                ExecutorService executor,
+                                int maxBufferedFilesPerRange) {
+        B2Preconditions.checkArgumentIsNotNull(client, "client");
+        B2Preconditions.checkArgumentIsNotNull(executor, "executor");
+        B2Preconditions.checkArgument(maxBufferedFilesPerRange > 0, "maxBufferedFilesPerRange must be positive");
+        this.client = client;
+        this.executor = executor;
+        this.maxBufferedFilesPerRange = maxBufferedFilesPerRange;
+    }
+
+    /**
+     * Lists the names of the files that the request would list, splitting them
+     * into ranges at the boundaries, and gives them to the consumer in no
+     * particular order.
+     *
+     * @param request the request to list with.
+     * @param boundaries the sorted names to split the ranges at.
+     * @param consumer gets each file.  it's called from the executor's threads,
+     *                 so it must be thread-safe.
+     * @throws B2Exception if there's trouble listing any of the ranges.
+     */
+    public void forEachFileName(B2ListFileNamesRequest request,
+                                List<String> boundaries,
+                                Consumer<B2FileVersion> consumer) throws B2Exception {
+        forEachUnordered(makeRanges(request.getStartFileName(), boundaries),
+                range -> client.fileNames(requestForRange(request, range)),
+                consumer);
+    }
+
+    /**
+     * Just like forEachFileName(), except that the files are given to the
+     * consumer on the calling thread, in order.
+     */
+    public void forEachFileNameInOrder(B2ListFileNamesRequest request,
+                                       List<String> boundaries,
+                                       Consumer<B2FileVersion> consumer) throws B2Exception {
+        forEachInOrder(makeRanges(request.getStartFileName(), boundaries),
+                range -> client.fileNames(requestForRange(request, range)),
+                consumer);
+    }
+
+    /**
+     * Lists the file versions that the request would list, splitting them
+     * into ranges at the boundaries, and gives them to the consumer in no
+     * particular order.
+     *
+     * @param request the request to list with.
+     * @param boundaries the sorted names to split the ranges at.
+     * @param consumer gets each file version.  it's called from the executor's
+     *                 threads, so it must be thread-safe.
+     * @throws B2Exception if there's trouble listing any of the ranges.
+     */
+    public void forEachFileVersion(B2ListFileVersionsRequest request,
+                                   List<String> boundaries,
+                                   Consumer<B2FileVersion> consumer) throws B2Exception {
+        forEachUnordered(makeRanges(request.getStartFileName(), boundaries),
+                range -> client.fileVersions(requestForRange(request, range)),
+                consumer);
+    }
+
+    /**
+     * Just like forEachFileVersion(), except that the file versions are given
+     * to the consumer on the calling thread, in order.
+     */
+    public void forEachFileVersionInOrder(B2ListFileVersionsRequest request,
+                                          List<String> boundaries,
+                                          Consumer<B2FileVersion> consumer) throws B2Exception {
+        forEachInOrder(makeRanges(request.getStartFileName(), boundaries),
+                range -> client.fileVersions(requestForRange(request, range)),
+                consumer);
+    }
+
+    /**
+     * A Range is the names from startOrNull (inclusive) to endOrNull (exclusive).
+     * A null start means the beginning and a null end means the end.
+     */
+    private static class Range {
+        private final String startOrNull;
+        private final String endOrNull;
+
+        // true iff the range starts where the caller's request starts.
+        private final boolean startsAtRequestStart;
+
+        Range(String startOrNull,
+              String endOrNull,
+              boolean startsAtRequestStart) {
+            this.startOrNull = startOrNull;
+            this.endOrNull = endOrNull;
+            this.startsAtRequestStart = startsAtRequestStart;
+        }
+
+        boolean isPastEnd(String fileName) {
+            return endOrNull != null && compareInUtf8Order(fileName, endOrNull) >= 0;
+        }
+    }
+
+    private interface IterableMaker {
+        B2ListFilesIterable makeIterableFor(Range range) throws B2Exception;
+    }
+
+    private static List<Range> makeRanges(String requestStartOrNull,
+                                          List<String> boundaries) {
+        for (int i = 1; i < boundaries.size(); i++) {
+            B2Preconditions.checkArgument(compareInUtf8Order(boundaries.get(i - 1), boundaries.get(i)) < 0,
+                    "boundaries must be sorted and must not have duplicates");
+        }
+
+        final List<Range> ranges = new ArrayList<>();
+        String startOrNull = null;
+        for (int i = 0; i <= boundaries.size(); i++) {
+            final String endOrNull = (i < boundaries.size()) ? boundaries.get(i) : null;
+            final boolean requestStartsAfterRange = requestStartOrNull != null &&
+                    endOrNull != null &&
+                    compareInUtf8Order(requestStartOrNull, endOrNull) >= 0;
+            if (!requestStartsAfterRange) {
+                final boolean requestStartsInRange = requestStartOrNull != null &&
+                        (startOrNull == null || compareInUtf8Order(requestStartOrNull, startOrNull) >= 0);
+                ranges.add(requestStartsInRange ?
+                        new Range(requestStartOrNull, endOrNull, true) :
+                        new Range(startOrNull, endOrNull, false));
+            }
+            startOrNull = endOrNull;
+        }
+        return ranges;
+    }
+
+    private static B2ListFileNamesRequest requestForRange(B2ListFileNamesRequest request,
+                                                          Range range) {
+        if (range.startsAtRequestStart || range.startOrNull == null) {
+            return request;
+        }
+        return B2ListFileNamesRequest
+                .builder(request)
+                .setStartFileName(range.startOrNull)
+                .build();
+    }
+
+    private static B2ListFileVersionsRequest requestForRange(B2ListFileVersionsRequest request,
+                                                             Range range) {
+        if (range.startsAtRequestStart || range.startOrNull == null) {
+            // the request's startFileId only makes sense with its own startFileName.
+            return request;
+        }
+        return B2ListFileVersionsRequest
+                .builder(request)
+                .setStart(range.startOrNull, null)
+                .build();
+    }
+
+    private void forEachUnordered(List<Range> ranges,
+                                  IterableMaker iterableMaker,
+                                  Consumer<B2FileVersion> consumer) throws B2Exception {
+        // the ranges are waited for in the order they finish, so the first
+        // failure is thrown right away, even if an earlier range is still going.
+        final CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (Range range : ranges) {
+                futures.add(completionService.submit(() -> {
+                    listRange(iterableMaker, range, consumer);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                waitForRange(completionService.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting for files to be listed: " + e, e);
+        } catch (RejectedExecutionException e) {
+            throw new B2LocalException("bad_state", "The executor rejected a listing task. Does it have a hard limit? Did you call shutdown() on it? (" + e + ")", e);
+        } finally {
+            // if we're giving up early, stop the ranges that are still going.
+            // the ones that are done won't mind.
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void forEachInOrder(List<Range> ranges,
+                                IterableMaker iterableMaker,
+                                Consumer<B2FileVersion> consumer) throws B2Exception {
+        final List<BlockingQueue<Object>> queues = new ArrayList<>();
+        final List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (Range range : ranges) {
+                final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(maxBufferedFilesPerRange);
+                queues.add(queue);
+                futures.add(executor.submit(() -> {
+                    try {
+                        listRange(iterableMaker, range, version -> putOrStop(queue, version));
+                    } finally {
+                        // always tell the consumer we're done, even when we failed,
+                        // so it can go find out why.
+                        putOrStop(queue, END_OF_RANGE);
+                    }
+                    return null;
+                }));
+            }
+
+            for (int i = 0; i < ranges.size(); i++) {
+                final BlockingQueue<Object> queue = queues.get(i);
+                Object item;
+                while ((item = queue.take()) != END_OF_RANGE) {
+                    consumer.accept((B2FileVersion) item);
+                }
+                waitForRange(futures.get(i));
+            }
+        } catch (RejectedExecutionException e) {
+            throw new B2LocalException("bad_state", "The executor rejected a listing task. Does it have a hard limit? Did you call shutdown() on it? (" + e + ")", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting for files to be listed: " + e, e);
+        } finally {
+            // if we're giving up early, this interrupts the ranges that are
+            // waiting for room in their queues, as well as the ones that are
+            // still listing.
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static void listRange(IterableMaker iterableMaker,
+                                  Range range,
+                                  Consumer<B2FileVersion> consumer) throws B2Exception {
+        try {
+            for (B2FileVersion version : iterableMaker.makeIterableFor(range)) {
+                if (range.isPastEnd(version.getFileName())) {
+                    // the rest belong to the next range.
+                    return;
+                }
+                consumer.accept(version);
+            }
+        } catch (B2RuntimeException e) {
+            // the iterables can't throw B2Exceptions, so they wrap them.
+            if (e.getCause() instanceof B2Exception) {
+                throw (B2Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Thrown by putOrStop() when the listing task is cancelled while it's
+     * waiting for room in its queue.
+     */
+    private static class StoppedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StoppedException(InterruptedException e) {
+            super(e);
+        }
+    }
+
+    private static void putOrStop(BlockingQueue<Object> queue,
+                                  Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoppedException(e);
+        }
+    }
+
+    private static void waitForRange(Future<Void> future) throws B2Exception {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting for files to be listed: " + e, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof B2Exception) {
+                throw (B2Exception) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                // probably from the consumer.  let it through as-is.
+                throw (RuntimeException) cause;
+            }
+            throw new B2LocalException("trouble", "exception while listing files: " + cause, cause);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.backblaze.b2.client.structures.B2Part;
 import com.backblaze.b2.client.structures.B2UploadListener;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementations of B2PartStorer are responsible for storing a single
@@ -43,4 +44,27 @@ public interface B2PartStorer {
             B2UploadListener uploadListener,
             B2CancellationToken cancellationToken) throws IOException, B2Exception;
 
+    /**
+     * Just like storePart(), except that it returns right away and the part
+     * is stored using the large file storer's executor.
+     *
+     * By default, it runs storePart() on the executor.  Implementations that
+     * may retry should override it to use the storer's asynchronous methods
+     * so that no thread is tied up between attempts.
+     *
+     * @param largeFileCreationManager The object managing the storage of the whole
+     *                                 large file.
+     * @param uploadListener The listener that tracks upload progress events.
+     * @param cancellationToken token to check whether the action has been cancelled
+     * @return a future that is completed with the part that is stored, or with
+     *         a CompletionException holding the exception if there's trouble.
+     */
+    default CompletableFuture<B2Part> storePartAsync(
+            B2LargeFileStorer largeFileCreationManager,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) {
+        return largeFileCreationManager.supplyAsyncOnExecutor(
+                () -> storePart(largeFileCreationManager, uploadListener, cancellationToken));
+    }
+
 }
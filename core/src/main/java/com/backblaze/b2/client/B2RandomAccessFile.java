@@ -0,0 +1,466 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * B2RandomAccessFile reads any part of a file in B2 without downloading
+ * the whole thing, like a RandomAccessFile does for a local file.  It's
+ * meant for formats like Parquet and ORC, where a reader jumps to the
+ * footer and then reads the column chunks it needs.
+ *
+ * The file is split into blocks of blockSize bytes, and each block is
+ * downloaded with the client's downloadById() and a B2ByteRange, so the
+ * client's retries apply.  The most recently used blocks (up to
+ * maxCachedBlocks of them) are kept in memory, so reading near something
+ * that was just read doesn't go back to B2.
+ *
+ * When reads move forward through the file one block after another, the
+ * next prefetchBlocks blocks are downloaded on the executor before they're
+ * asked for.  Random reads, like jumping to a footer, don't prefetch.  If
+ * there's no executor, nothing is prefetched.  If a prefetch fails, the
+ * block is downloaded again when it's actually read.
+ *
+ * The file version says which file to read and how long it is.  Since the
+ * download is by fileId, all of the blocks come from that one version.
+ *
+ * THREAD-SAFETY: the positional read() methods may be called from multiple
+ *   threads at once, as long as the client and executor are thread-safe.
+ *   seek(), getFilePointer(), the other read() methods, and the InputStream
+ *   from asInputStream() share one file pointer, so they should only be
+ *   used from one thread at a time.
+ */
+public class B2RandomAccessFile implements AutoCloseable {
+    /**
+     * By default, blocks are this many bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * By default, up to this many blocks are kept in memory.
+     */
+    public static final int DEFAULT_MAX_CACHED_BLOCKS = 16;
+
+    /**
+     * By default, this many blocks are prefetched when reading sequentially.
+     */
+    public static final int DEFAULT_PREFETCH_BLOCKS = 2;
+
+    private static final int EOF = -1;
+
+    private final B2StorageClient client;
+    private final String fileId;
+    private final long length;
+    private final int blockSize;
+    private final int prefetchBlocks;
+    private final ExecutorService executorOrNull;
+
+    // guarded by 'this'.  a block's future is in the map from when it starts
+    // downloading.  a failed download is removed, so it'll be tried again.
+    private final Map<Long, CompletableFuture<byte[]>> blocks;
+    // starts just before the first block, so reading from the start is sequential.
+    private long lastBlockIndexRead = -1;
+    private boolean closed;
+
+    // only used by the methods that share the file pointer.
+    private long filePointer;
+
+    private final AtomicLong downloadCount = new AtomicLong();
+
+    private B2RandomAccessFile(Builder builder) {
+        this.client = builder.client;
+        this.fileId = builder.fileVersion.getFileId();
+        this.length = builder.fileVersion.getContentLength();
+        this.blockSize = builder.blockSize;
+        this.prefetchBlocks = builder.prefetchBlocks;
+        this.executorOrNull = builder.executorOrNull;
+        this.blocks = B2BoundedLruMap.withMax(builder.maxCachedBlocks);
+    }
+
+    /**
+     * @param client the client to download with.
+     * @param fileVersion the file version to read.  getFileInfo() will get
+     *                    one if you only have the fileId.
+     * @return a new builder.
+     */
+    public static Builder builder(B2StorageClient client,
+                                  B2FileVersion fileVersion) {
+        return new Builder(client, fileVersion);
+    }
+
+    /**
+     * @return the length of the file, in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Reads bytes starting at the given position in the file, without
+     * changing the file pointer.  Unlike FileChannel.read(), this keeps
+     * reading until the buffer is full or the file ends.
+     *
+     * @param position where in the file to start reading.  must not be negative.
+     * @param dst the buffer to read into, from its position up to its limit.
+     * @return the number of bytes read, or -1 if position is at or after the end of the file.
+     * @throws B2Exception if there's trouble downloading.
+     */
+    public int read(long position,
+                    ByteBuffer dst) throws B2Exception {
+        B2Preconditions.checkArgument(position >= 0, "position must not be negative");
+        B2Preconditions.checkArgumentIsNotNull(dst, "dst");
+        if (position >= length) {
+            return (dst.hasRemaining()) ? EOF : 0;
+        }
+
+        int bytesRead = 0;
+        while (dst.hasRemaining() && position < length) {
+            final long blockIndex = position / blockSize;
+            final byte[] block = getBlock(blockIndex);
+            final int offsetInBlock = (int) (position - blockIndex * blockSize);
+            final int n = Math.min(dst.remaining(), block.length - offsetInBlock);
+            dst.put(block, offsetInBlock, n);
+            position += n;
+            bytesRead += n;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Just like read(position, ByteBuffer), but reads into an array.
+     */
+    public int read(long position,
+                    byte[] b,
+                    int off,
+                    int len) throws B2Exception {
+        return read(position, ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Reads bytes from the file pointer, and moves the file pointer past them.
+     *
+     * @return the number of bytes read, or -1 if the file pointer is at or after the end of the file.
+     * @throws B2Exception if there's trouble downloading.
+     */
+    public int read(byte[] b,
+                    int off,
+                    int len) throws B2Exception {
+        final int n = read(filePointer, b, off, len);
+        if (n > 0) {
+            filePointer += n;
+        }
+        return n;
+    }
+
+    /**
+     * @param position where the next read() without a position will start.
+     *                 it may be past the end of the file.  must not be negative.
+     */
+    public void seek(long position) {
+        B2Preconditions.checkArgument(position >= 0, "position must not be negative");
+        filePointer = position;
+    }
+
+    /**
+     * @return where the next read() without a position will start.
+     */
+    public long getFilePointer() {
+        return filePointer;
+    }
+
+    /**
+     * @return an InputStream that reads from the file pointer, and moves it.
+     *         closing the stream doesn't close this object.  read failures
+     *         are thrown as IOExceptions with the B2Exception as the cause.
+     */
+    public InputStream asInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final byte[] oneByte = new byte[1];
+                final int n = read(oneByte, 0, 1);
+                return (n == EOF) ? EOF : (oneByte[0] & 0xff);
+            }
+
+            @Override
+            public int read(@SuppressWarnings("NullableProblems") byte[] b, int off, int len) throws IOException {
+                try {
+                    return B2RandomAccessFile.this.read(b, off, len);
+                } catch (B2Exception e) {
+                    throw new IOException("failed to read " + fileId + ": " + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public long skip(long n) {
+                if (n <= 0) {
+                    return 0;
+                }
+                final long skipped = Math.min(n, Math.max(0, length - filePointer));
+                filePointer += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                // only the bytes we wouldn't have to wait for.
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Forgets the cached blocks.  Prefetches that are running finish in the
+     * background, but their blocks aren't kept.  After this, reading throws.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        blocks.clear();
+    }
+
+    // for tests.
+    long getDownloadCount() {
+        return downloadCount.get();
+    }
+
+    /**
+     * @return the contents of the block, downloading it if it isn't cached.
+     */
+    private byte[] getBlock(long blockIndex) throws B2Exception {
+        final CompletableFuture<byte[]> future;
+        final boolean mustDownload;
+        final Map<Long, CompletableFuture<byte[]>> prefetches;
+        synchronized (this) {
+            B2Preconditions.checkState(!closed, "this B2RandomAccessFile has been closed");
+            final CompletableFuture<byte[]> existing = blocks.get(blockIndex);
+            if (existing != null && !existing.isCompletedExceptionally()) {
+                future = existing;
+                mustDownload = false;
+            } else {
+                future = new CompletableFuture<>();
+                blocks.put(blockIndex, future);
+                mustDownload = true;
+            }
+            prefetches = claimPrefetchesAfter(blockIndex);
+        }
+        // submit them without holding the lock, so a slow or caller-runs
+        // executor doesn't hold up other readers.
+        startPrefetches(prefetches);
+
+        if (mustDownload) {
+            // download it on this thread, since we have to wait for it anyway.
+            downloadBlock(blockIndex, future);
+        }
+        return waitFor(future);
+    }
+
+    /**
+     * If reads are moving forward a block at a time, claims the next
+     * prefetchBlocks blocks that aren't cached by putting new futures for
+     * them in blocks, so other readers wait for the prefetches instead of
+     * downloading the blocks too.
+     *
+     * @return the claimed blocks, in order, for startPrefetches().
+     */
+    private Map<Long, CompletableFuture<byte[]>> claimPrefetchesAfter(long blockIndex) {
+        final boolean isSequential = (blockIndex == lastBlockIndexRead || blockIndex == lastBlockIndexRead + 1);
+        lastBlockIndexRead = blockIndex;
+        if (!isSequential || executorOrNull == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<Long, CompletableFuture<byte[]>> prefetches = new LinkedHashMap<>();
+        final long numBlocks = (length + blockSize - 1) / blockSize;
+        for (long i = blockIndex + 1; i <= blockIndex + prefetchBlocks && i < numBlocks; i++) {
+            final CompletableFuture<byte[]> existing = blocks.get(i);
+            if (existing != null && !existing.isCompletedExceptionally()) {
+                continue;
+            }
+            final CompletableFuture<byte[]> future = new CompletableFuture<>();
+            blocks.put(i, future);
+            prefetches.put(i, future);
+        }
+        return prefetches;
+    }
+
+    /**
+     * Submits the downloads of the claimed blocks to the executor.  If it
+     * rejects one, the rest of them are forgotten and failed, so they'll be
+     * downloaded again when they're read.
+     */
+    private void startPrefetches(Map<Long, CompletableFuture<byte[]>> prefetches) {
+        B2LocalException rejectedOrNull = null;
+        for (Map.Entry<Long, CompletableFuture<byte[]>> entry : prefetches.entrySet()) {
+            final long blockIndex = entry.getKey();
+            final CompletableFuture<byte[]> future = entry.getValue();
+            if (rejectedOrNull == null) {
+                try {
+                    executorOrNull.execute(() -> downloadBlock(blockIndex, future));
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    // prefetching is just an optimization.
+                    rejectedOrNull = new B2LocalException("bad_state", "the executor rejected a prefetch: " + e, e);
+                }
+            }
+            forgetFailedBlock(blockIndex, future);
+            future.completeExceptionally(rejectedOrNull);
+        }
+    }
+
+    /**
+     * Downloads the block and completes the future with it, or with the failure.
+     */
+    private void downloadBlock(long blockIndex,
+                              CompletableFuture<byte[]> future) {
+        final long start = blockIndex * blockSize;
+        final int blockLength = (int) Math.min(blockSize, length - start);
+        final byte[] block = new byte[blockLength];
+        final B2DownloadByIdRequest request = B2DownloadByIdRequest
+                .builder(fileId)
+                .setRange(B2ByteRange.between(start, start + blockLength - 1))
+                .build();
+        try {
+            downloadCount.incrementAndGet();
+            client.downloadById(request, (responseHeaders, in) -> readBlock(responseHeaders, in, block));
+            future.complete(block);
+        } catch (B2Exception e) {
+            forgetFailedBlock(blockIndex, future);
+            future.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            forgetFailedBlock(blockIndex, future);
+            future.completeExceptionally(new B2LocalException("trouble", "failed to download block " + blockIndex + " of " + fileId + ": " + e, e));
+        }
+    }
+
+    private synchronized void forgetFailedBlock(long blockIndex,
+                                                CompletableFuture<byte[]> future) {
+        // it might have been evicted and replaced already.
+        if (blocks.get(blockIndex) == future) {
+            blocks.remove(blockIndex);
+        }
+    }
+
+    private static void readBlock(B2Headers responseHeaders,
+                                  InputStream in,
+                                  byte[] block) throws B2Exception {
+        if (responseHeaders.getContentLength() != block.length) {
+            throw new B2LocalException("mismatch", "expected " + block.length + " bytes, but the response has " + responseHeaders.getContentLength());
+        }
+
+        int filled = 0;
+        while (filled < block.length) {
+            final int nRead;
+            try {
+                nRead = in.read(block, filled, block.length - filled);
+            } catch (IOException e) {
+                throw new B2ConnectionBrokenException("read_failed", null, "read failed: " + e.getMessage(), e);
+            }
+            if (nRead == EOF) {
+                throw new B2ConnectionBrokenException("read_failed", null, "the response ended after " + filled + " of " + block.length + " bytes");
+            }
+            filled += nRead;
+        }
+    }
+
+    private static byte[] waitFor(CompletableFuture<byte[]> future) throws B2Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting for a block: " + e, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof B2Exception) {
+                throw (B2Exception) cause;
+            }
+            throw new B2LocalException("trouble", "failed to download block: " + cause, cause);
+        }
+    }
+
+    public static class Builder {
+        private final B2StorageClient client;
+        private final B2FileVersion fileVersion;
+        private int blockSize = DEFAULT_BLOCK_SIZE;
+        private int maxCachedBlocks = DEFAULT_MAX_CACHED_BLOCKS;
+        private int prefetchBlocks = DEFAULT_PREFETCH_BLOCKS;
+        private ExecutorService executorOrNull;
+
+        private Builder(B2StorageClient client,
+                        B2FileVersion fileVersion) {
+            B2Preconditions.checkArgumentIsNotNull(client, "client");
+            B2Preconditions.checkArgumentIsNotNull(fileVersion, "fileVersion");
+            this.client = client;
+            this.fileVersion = fileVersion;
+        }
+
+        /**
+         * @param blockSize how many bytes to download at a time.  must be positive.
+         * @return this builder.
+         */
+        public Builder setBlockSize(int blockSize) {
+            B2Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * @param maxCachedBlocks how many blocks to keep in memory.  must be positive.
+         * @return this builder.
+         */
+        public Builder setMaxCachedBlocks(int maxCachedBlocks) {
+            B2Preconditions.checkArgument(maxCachedBlocks > 0, "maxCachedBlocks must be positive");
+            this.maxCachedBlocks = maxCachedBlocks;
+            return this;
+        }
+
+        /**
+         * @param prefetchBlocks how many blocks to prefetch when reading sequentially.
+         *                       must not be negative.
+         * @return this builder.
+         */
+        public Builder setPrefetchBlocks(int prefetchBlocks) {
+            B2Preconditions.checkArgument(prefetchBlocks >= 0, "prefetchBlocks must not be negative");
+            this.prefetchBlocks = prefetchBlocks;
+            return this;
+        }
+
+        /**
+         * @param executorOrNull the executor to prefetch on, or null to not prefetch.
+         *                       the caller owns it.
+         * @return this builder.
+         */
+        public Builder setExecutorOrNull(ExecutorService executorOrNull) {
+            this.executorOrNull = executorOrNull;
+            return this;
+        }
+
+        public B2RandomAccessFile build() {
+            B2Preconditions.checkArgument(prefetchBlocks < maxCachedBlocks,
+                    "prefetchBlocks must be less than maxCachedBlocks, or prefetched blocks would push out the one being read");
+            return new B2RandomAccessFile(this);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentHandlers.B2ContentWriter;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2Sha1;
+import com.backblaze.b2.util.B2StringUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * B2ResumableFileDownloader downloads a file into a local file, and if the
+ * connection breaks partway through, the retry asks for just the bytes we
+ * don't have yet, instead of starting over from the beginning.
+ *
+ * The first response tells us which file we're getting (its fileId), how
+ * many bytes to expect, and, if the whole file was requested, what its SHA1
+ * should be.  Later responses must be for the same fileId and must start
+ * right where we left off.  The SHA1 is computed as the bytes are written,
+ * and that state is kept across attempts, so the whole file is checked at
+ * the end without reading it again.
+ *
+ * A response that ends early without an error is treated like a broken
+ * connection, so it's retried too.  A SHA1 mismatch, a different fileId,
+ * or a response for the wrong range are real problems, and aren't retried.
+ *
+ * The AttemptDownloader makes one attempt; retrying is our job, so that
+ * each attempt can ask for a different range.
+ *
+ * THREAD-SAFETY: an instance downloads one file, once, from one thread.
+ */
+class B2ResumableFileDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // like "bytes 100-199/1000" or "bytes 100-199/*".
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /**
+     * An AttemptDownloader makes one attempt to download the given range
+     * (or the whole file, if it's null), without retrying, and hands the
+     * response to the given sink.
+     */
+    interface AttemptDownloader {
+        void download(B2ByteRange rangeOrNull, B2ContentSink sink) throws B2Exception;
+    }
+
+    private final B2Retryer retryer;
+    private final B2AccountAuthorizationCache accountAuthCache;
+    private final Supplier<B2RetryPolicy> retryPolicySupplier;
+    private final String operation;
+    private final B2ByteRange requestedRangeOrNull;
+    private final AttemptDownloader attemptDownloader;
+
+    // these are set by the first response.
+    private boolean gotFirstResponse;
+    private String fileIdOrNull;
+    private String expectedSha1OrNull;
+    private long firstByteOffset;          // the offset in the B2 file of our first byte.
+    private long expectedLengthOrMinusOne; // -1 if there's no Content-Length.
+
+    // these are kept across attempts.
+    private final MessageDigest digest = B2Sha1.createSha1MessageDigest();
+    private long bytesWritten;
+    private int attemptsWithContent;
+
+    /**
+     * @param retryer the retryer to make the attempts with.
+     * @param accountAuthCache the cache the retryer should refresh when the authorization expires.
+     * @param retryPolicySupplier supplies the policy for this download.
+     * @param operation the name of the operation, for the retry policy and metrics.
+     * @param requestedRangeOrNull the range that was asked for, if any.
+     * @param attemptDownloader makes each attempt.
+     */
+    B2ResumableFileDownloader(B2Retryer retryer,
+                              B2AccountAuthorizationCache accountAuthCache,
+                              Supplier<B2RetryPolicy> retryPolicySupplier,
+                              String operation,
+                              B2ByteRange requestedRangeOrNull,
+                              AttemptDownloader attemptDownloader) {
+        this.retryer = retryer;
+        this.accountAuthCache = accountAuthCache;
+        this.retryPolicySupplier = retryPolicySupplier;
+        this.operation = operation;
+        this.requestedRangeOrNull = requestedRangeOrNull;
+        this.attemptDownloader = attemptDownloader;
+    }
+
+    void downloadToFile(File destination) throws B2Exception {
+        try (FileChannel channel = FileChannel.open(destination.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            retryer.doRetry(operation,
+                    accountAuthCache,
+                    () -> {
+                        // if the last attempt got everything but then failed,
+                        // there's nothing left to ask for.
+                        if (!gotFirstResponse || bytesWritten != expectedLengthOrMinusOne) {
+                            attemptDownloader.download(nextRangeOrNull(),
+                                    (responseHeaders, in) -> readContent(channel, responseHeaders, in));
+                        }
+                        return 0; // to meet Callable api!
+                    },
+                    retryPolicySupplier.get());
+
+            maybeCheckSha1();
+
+            // like B2FlushAndSyncFileOnCloseOutputStream, make sure the bytes
+            // are really on disk before we say we're done.
+            channel.force(true);
+        } catch (IOException e) {
+            throw new B2LocalException("write_failed", "failed to write to " + destination + ": " + e, e);
+        }
+    }
+
+    // for tests.
+    int getAttemptsWithContent() {
+        return attemptsWithContent;
+    }
+
+    /**
+     * @return the range to ask for in the next attempt.
+     */
+    /*forTests*/ B2ByteRange nextRangeOrNull() {
+        if (!gotFirstResponse) {
+            return requestedRangeOrNull;
+        }
+        final long nextOffset = firstByteOffset + bytesWritten;
+        if (expectedLengthOrMinusOne < 0) {
+            return B2ByteRange.startAt(nextOffset);
+        }
+        return B2ByteRange.between(nextOffset, firstByteOffset + expectedLengthOrMinusOne - 1);
+    }
+
+    private void readContent(FileChannel channel,
+                             B2Headers responseHeaders,
+                             InputStream in) throws B2Exception {
+        attemptsWithContent++;
+        if (!gotFirstResponse) {
+            startFromFirstResponse(responseHeaders);
+        } else {
+            throwIfNotWhereWeLeftOff(responseHeaders);
+        }
+
+        final long bytesWrittenBefore = bytesWritten;
+        try {
+            copyToChannel(channel, in);
+        } finally {
+            retryer.getMetricsRecorder().bytesTransferred(operation, bytesWritten - bytesWrittenBefore);
+        }
+
+        if (expectedLengthOrMinusOne >= 0 && bytesWritten < expectedLengthOrMinusOne) {
+            throw new B2ConnectionBrokenException("read_failed", null, "the response ended after " + bytesWritten + " of " + expectedLengthOrMinusOne + " bytes");
+        }
+    }
+
+    private void copyToChannel(FileChannel channel,
+                               InputStream in) throws B2Exception {
+        final byte[] bytes = new byte[BUFFER_SIZE];
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (true) {
+            final int nRead;
+            try {
+                nRead = in.read(bytes);
+            } catch (IOException e) {
+                throw new B2ConnectionBrokenException("read_failed", null, "read failed after " + bytesWritten + " bytes: " + e.getMessage(), e);
+            }
+            if (nRead == -1) {
+                break;
+            }
+            if (expectedLengthOrMinusOne >= 0 && bytesWritten + nRead > expectedLengthOrMinusOne) {
+                throw new B2LocalException("mismatch", "got more than the " + expectedLengthOrMinusOne + " bytes we expected");
+            }
+
+            buffer.clear();
+            buffer.limit(nRead);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, bytesWritten + buffer.position());
+                }
+            } catch (IOException e) {
+                throw new B2LocalException("write_failed", "write failed: " + e.getMessage(), e);
+            }
+
+            // only count (and digest) the bytes once they've been written,
+            // so that the next attempt picks up right after them.
+            digest.update(bytes, 0, nRead);
+            bytesWritten += nRead;
+        }
+    }
+
+    private void startFromFirstResponse(B2Headers responseHeaders) throws B2Exception {
+        fileIdOrNull = responseHeaders.getValueOrNull(B2Headers.FILE_ID);
+        expectedSha1OrNull = B2ContentWriter.getSha1ToCheckOrNull(responseHeaders);
+        firstByteOffset = responseHeaders.hasContentRange() ? getContentRangeStart(responseHeaders) : 0;
+        expectedLengthOrMinusOne = (responseHeaders.getValueOrNull(B2Headers.CONTENT_LENGTH) != null) ?
+                responseHeaders.getContentLength() :
+                -1;
+        gotFirstResponse = true;
+    }
+
+    private void throwIfNotWhereWeLeftOff(B2Headers responseHeaders) throws B2Exception {
+        final String fileId = responseHeaders.getValueOrNull(B2Headers.FILE_ID);
+        if (fileIdOrNull != null && !fileIdOrNull.equals(fileId)) {
+            throw new B2LocalException("mismatch", "expected to resume downloading fileId '" + fileIdOrNull + "', but got '" + fileId + "'. was a new version uploaded during the download?");
+        }
+
+        final long expectedStart = firstByteOffset + bytesWritten;
+        final long start = responseHeaders.hasContentRange() ? getContentRangeStart(responseHeaders) : 0;
+        if (start != expectedStart) {
+            throw new B2LocalException("mismatch", "expected the response to resume at byte " + expectedStart + ", but it starts at byte " + start);
+        }
+    }
+
+    private static long getContentRangeStart(B2Headers responseHeaders) throws B2LocalException {
+        final String contentRange = responseHeaders.getValueOrNull(B2Headers.CONTENT_RANGE);
+        final Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+        if (!matcher.matches()) {
+            throw new B2LocalException("mismatch", "can't parse Content-Range '" + contentRange + "'");
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private void maybeCheckSha1() throws B2LocalException {
+        if (expectedSha1OrNull == null) {
+            return;
+        }
+        final String actualSha1 = B2StringUtil.toHexString(digest.digest());
+        if (!B2Sha1.equalHexSha1s(expectedSha1OrNull, actualSha1)) {
+            throw new B2LocalException("mismatch", "sha1 mismatch as written to destination.  expected " + expectedSha1OrNull + ", but got " + actualSha1);
+        }
+    }
+}
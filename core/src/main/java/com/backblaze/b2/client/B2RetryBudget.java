@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2Preconditions;
+
+/**
+ * A B2RetryBudget limits how many retries all of the threads sharing it may
+ * make.  It's a token bucket: each retry takes a token, and tokens come back
+ * at a steady rate, up to a maximum.  When the bucket is empty, we give up
+ * instead of retrying.
+ *
+ * When B2 is having trouble, lots of threads can start failing at once.
+ * If they all keep retrying, they just add to the trouble.  With a budget,
+ * the first few failures are retried as usual, but once the budget is used
+ * up, most of the rest fail quickly until things get better.
+ *
+ * Share one instance between all of the B2DefaultRetryPolicy instances for
+ * a client.  B2DefaultRetryPolicy.supplier(B2RetryBudget) does that for you.
+ * Retries aren't budgeted unless you ask for it.
+ *
+ * THREAD-SAFETY: this class may be used from multiple threads safely.
+ */
+public class B2RetryBudget {
+    /**
+     * By default, up to this many retries can happen in a burst...
+     */
+    public static final double DEFAULT_MAX_TOKENS = 100;
+
+    /**
+     * ...and after that, this many retries per second can continue.
+     */
+    public static final double DEFAULT_TOKENS_PER_SECOND = 10;
+
+    private final double maxTokens;
+    private final double tokensPerMilli;
+
+    // guarded by 'this'.
+    private double tokens;
+    private long lastRefillMonoMillis;
+
+    /**
+     * @return a budget with the default settings.
+     */
+    public static B2RetryBudget withDefaults() {
+        return new B2RetryBudget(DEFAULT_MAX_TOKENS, DEFAULT_TOKENS_PER_SECOND);
+    }
+
+    /**
+     * @param maxTokens the most tokens the bucket can hold.  it starts out full.
+     *                  must be at least one.
+     * @param tokensPerSecond how quickly tokens come back.  must not be negative.
+     */
+    public B2RetryBudget(double maxTokens,
+                         double tokensPerSecond) {
+        B2Preconditions.checkArgument(maxTokens >= 1, "maxTokens must be at least one");
+        B2Preconditions.checkArgument(tokensPerSecond >= 0, "tokensPerSecond must not be negative");
+        this.maxTokens = maxTokens;
+        this.tokensPerMilli = tokensPerSecond / 1000.0;
+        this.tokens = maxTokens;
+        this.lastRefillMonoMillis = B2Clock.get().monotonicMillis();
+    }
+
+    /**
+     * Takes a token, if there is one.
+     *
+     * @return true iff there was a token, so a retry is allowed.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * @return how many tokens are available right now.
+     */
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        final long nowMonoMillis = B2Clock.get().monotonicMillis();
+        final long elapsedMillis = nowMonoMillis - lastRefillMonoMillis;
+        if (elapsedMillis > 0) {
+            tokens = Math.min(maxTokens, tokens + elapsedMillis * tokensPerMilli);
+            lastRefillMonoMillis = nowMonoMillis;
+        }
+    }
+}
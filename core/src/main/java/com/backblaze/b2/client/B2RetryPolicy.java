@@ -54,6 +54,26 @@ public interface B2RetryPolicy {
                                    long tookMillis,
                                    B2Exception e);
 
+    /**
+     * Just like gotRetryableAfterDelay(), except that it returns the number of
+     * milliseconds to sleep before trying again.  This is the one B2Retryer
+     * calls.  By default, it uses the answer from gotRetryableAfterDelay().
+     * Override it if you want finer-grained delays, such as jittered ones.
+     *
+     * @param operation the name of what is being retried.  *usually* the name of a b2 operation.
+     * @param attemptsSoFar how many times have we called callable.call() so far?
+     * @param tookMillis     how long did this attempt take?
+     * @param e             the retryable exception.
+     * @return null to stop trying OR the number of milliseconds to sleep before trying again.
+     */
+    default Long gotRetryableAfterDelayMillis(String operation,
+                                              int attemptsSoFar,
+                                              long tookMillis,
+                                              B2Exception e) {
+        final Integer waitSeconds = gotRetryableAfterDelay(operation, attemptsSoFar, tookMillis, e);
+        return (waitSeconds == null) ? null : waitSeconds * 1000L;
+    }
+
     /**
      * Callable.call() threw a retryable B2Exception.  We will retry immediately.
      *
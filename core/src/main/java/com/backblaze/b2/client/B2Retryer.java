@@ -6,31 +6,76 @@ package com.backblaze.b2.client;
 
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.exceptions.B2LocalException;
 import com.backblaze.b2.client.exceptions.B2NetworkBaseException;
 import com.backblaze.b2.client.exceptions.B2RequestTimeoutException;
 import com.backblaze.b2.client.exceptions.B2ServiceUnavailableException;
 import com.backblaze.b2.client.exceptions.B2TooManyRequestsException;
 import com.backblaze.b2.client.exceptions.B2UnauthorizedException;
 import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2ExecutorUtils;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Instances of this class provide helpers to do automatic backoff and retrying
  * for retryable errors.  The backoff behavior is determined by the B2RetryPolicy
  * that are passed in.
+ *
+ * Every operation and every attempt is also reported to the B2MetricsRecorder.
+ *
+ * doRetry() sleeps on the calling thread between attempts.  doRetryAsync()
+ * runs each attempt on an executor and uses a ScheduledExecutorService to
+ * start the next one after the delay, so no thread waits around in between.
+ * doRetryNonBlocking() does the same for attempts that return a future
+ * instead of blocking until they're done.
  */
 class B2Retryer {
+    // used when the caller doesn't want metrics.  all of its methods do nothing.
+    private static final B2MetricsRecorder NO_METRICS = new B2MetricsRecorder() {};
+
     private final B2Sleeper sleeper;
+    private final B2MetricsRecorder metricsRecorder;
 
     B2Retryer(B2Sleeper sleeper) {
+        this(sleeper, null);
+    }
+
+    B2Retryer(B2Sleeper sleeper,
+              B2MetricsRecorder metricsRecorderOrNull) {
         this.sleeper = sleeper;
+        this.metricsRecorder = (metricsRecorderOrNull != null) ? metricsRecorderOrNull : NO_METRICS;
+    }
+
+    /**
+     * @return the recorder that callers should tell about the bytes they
+     *         upload or download.  never null.
+     */
+    B2MetricsRecorder getMetricsRecorder() {
+        return metricsRecorder;
     }
 
     interface RetryableCallable<T> {
         T call(boolean isRetry) throws Exception;
     }
 
+    /**
+     * An AsyncRetryableCallable starts an attempt and returns a future
+     * that's completed when the attempt is done.  It may also throw if
+     * it can't even start the attempt.
+     */
+    interface AsyncRetryableCallable<T> {
+        CompletableFuture<T> call(boolean isRetry) throws Exception;
+    }
+
     /**
      * Just like doRetry(B2AccountAuthorizationCache, RetryableCallable) except
      * that it takes a normal callable instead of a RetryableCallable.
@@ -69,90 +114,374 @@ class B2Retryer {
 
         // keeps trying until we hit an unretryable exception or the retryPolicy says to stop.
         int attemptsSoFar = 0; // we haven't attempted it at all yet.
-        while (true) {
-            final long beforeMonoMillis = clock.monotonicMillis();
 
-            // i have to set this to a default value because clock.monotonicMillis()
-            // in the finally block below could throw and then tookMillis wouldn't be
-            // set in the catch(Exception) block way below.
-            long tookMillis = -1;
+        // what to tell the metricsRecorder when we're done.  it's only
+        // non-null while the most recent attempt has failed.
+        Exception lastExceptionOrNull = null;
+        metricsRecorder.operationStarted(operation);
+        final long startMonoMillis = clock.monotonicMillis();
 
-            try {
-                try {
-                    final boolean isRetry = (attemptsSoFar != 0);
-                    attemptsSoFar++; // about to attempt again.
+        try {
+            while (true) {
+                final long beforeMonoMillis = clock.monotonicMillis();
+                final boolean isRetry = (attemptsSoFar != 0);
+                attemptsSoFar++; // about to attempt again.
 
+                try {
                     final T value = callable.call(isRetry);
-                    tookMillis = clock.monotonicMillis() - beforeMonoMillis;
-                    retryPolicy.succeeded(operation, attemptsSoFar, tookMillis);
-
+                    lastExceptionOrNull = null;
+                    attemptSucceeded(operation, attemptsSoFar, clock.monotonicMillis() - beforeMonoMillis, retryPolicy);
                     return value;
-                } finally {
-                    // be sure to set tookMillis for exception handling below.
-                    tookMillis = clock.monotonicMillis() - beforeMonoMillis;
-                }
-            } catch (B2UnauthorizedException e) {
-                switch (e.getRequestCategory()) {
-                    case ACCOUNT_AUTHORIZATION:
-                        // unauthorized during account authorization is NOT retryable.
-                        retryPolicy.gotUnretryable(operation, attemptsSoFar, tookMillis, e);
-                        throw e;
+                } catch (Exception e) {
+                    lastExceptionOrNull = e;
+                    final long waitMillis = attemptFailed(operation,
+                            accountAuthCache,
+                            retryPolicy,
+                            attemptsSoFar,
+                            clock.monotonicMillis() - beforeMonoMillis,
+                            e);
 
-                    case UPLOADING:
-                        // nothing to do.  the upload url won't have been returned to the
-                        // pool, so it won't be reused.  we'll try again with another url.
-                        // (in fact, the B2UploadUrlCache will always get a new URL for retries.)
-                        if (!retryPolicy.gotRetryableImmediately(operation, attemptsSoFar, tookMillis, e)) {
-                            throw e;
-                        }
-                        continue; // to go around the loop and try again.
-
-                    case OTHER:
-                        accountAuthCache.clear();
-                        if (!retryPolicy.gotRetryableImmediately(operation, attemptsSoFar, tookMillis, e)) {
-                            throw e;
-                        }
-
-                        //noinspection UnnecessaryContinue
-                        continue; // to go around the loop and try again.
-                }
-            } catch (B2TooManyRequestsException |
-                    B2ServiceUnavailableException |
-                    B2InternalErrorException |
-                    B2RequestTimeoutException |
-                    B2NetworkBaseException e) {
-
-                final Integer waitSeconds = retryPolicy.gotRetryableAfterDelay(operation, attemptsSoFar, tookMillis, e);
-                if (waitSeconds == null) {
-                    // i haven't convinced myself that making a special "too many retries"
-                    // exception to hold the underlying cause is sufficiently useful, so
-                    // let's throw the most recent exception we got.  our documentation
-                    // already says that if the caller gets a retryable exception, we've
-                    // already retried it.
-                    throw e;
+                    if (waitMillis > 0) {
+                        // this sleep might return early, but it won't throw.  if it gets interrupted
+                        // it resets the thread's interrupted flag so that we'll get the error later,
+                        // hopefully during the next attempt (which is probably blocking on something
+                        // like IO).  if we threw from here without retrying, we might surprise our
+                        // B2RetryPolicy since it just told us to try again and we wouldn't.
+                        sleeper.sleepMilliseconds(waitMillis);
+                    }
                 }
+            }
+        } finally {
+            metricsRecorder.operationFinished(operation,
+                    attemptsSoFar,
+                    clock.monotonicMillis() - startMonoMillis,
+                    lastExceptionOrNull);
+        }
+    }
 
-                // this sleep might return early, but it won't throw.  if it gets interrupted
-                // it resets the thread's interrupted flag so that we'll get the error later,
-                // hopefully during the next attempt (which is probably blocking on something
-                // like IO).  if we threw from here without retrying, we might surprise our
-                // B2RetryPolicy since it just told us to try again and we wouldn't.
-                sleeper.sleepSeconds(waitSeconds);
-            } catch (B2Exception e) {
-                // other types of exceptions aren't retryable!
-                retryPolicy.gotUnretryable(operation, attemptsSoFar, tookMillis, e);
-                throw e;
+    /**
+     * Just like doRetry(), except that it doesn't block.  Each attempt is run
+     * on the executor.  When an attempt needs to be retried after a delay,
+     * the scheduler starts the next attempt when it's time, so no thread is
+     * tied up while we wait.
+     *
+     * Cancelling the returned future stops any further attempts from starting.
+     *
+     * @param executor runs the attempts.
+     * @param scheduler only used to wait for the delays between attempts.
+     *                  the attempts themselves are always run by the executor.
+     * @return a future that will be completed with whatever is returned by
+     *         callable.call(), or with the exception that doRetry() would have
+     *         thrown.  it's completed exceptionally with a B2LocalException
+     *         if the executor or scheduler rejects our work.
+     */
+    <T> CompletableFuture<T> doRetryAsync(String operation,
+                                          B2AccountAuthorizationCache accountAuthCache,
+                                          RetryableCallable<T> callable,
+                                          B2RetryPolicy retryPolicy,
+                                          Executor executor,
+                                          ScheduledExecutorService scheduler) {
+        return doRetryNonBlocking(operation,
+                accountAuthCache,
+                isRetry -> CompletableFuture.completedFuture(callable.call(isRetry)),
+                retryPolicy,
+                executor,
+                scheduler);
+    }
+
+    /**
+     * Just like doRetryAsync(), except that each attempt returns a future
+     * instead of blocking until it's done.  The attempts are started on the
+     * executor, but nothing waits for them to finish.  The next step happens
+     * on whichever thread completes the attempt's future.
+     *
+     * This is what lets callers with a non-blocking transport keep many
+     * operations in flight with only a few threads.
+     *
+     * @param executor starts the attempts.
+     * @param scheduler only used to wait for the delays between attempts.
+     * @return a future that will be completed with the value of the first
+     *         attempt that succeeds, or with the exception that doRetry()
+     *         would have thrown.
+     */
+    <T> CompletableFuture<T> doRetryNonBlocking(String operation,
+                                                B2AccountAuthorizationCache accountAuthCache,
+                                                AsyncRetryableCallable<T> callable,
+                                                B2RetryPolicy retryPolicy,
+                                                Executor executor,
+                                                ScheduledExecutorService scheduler) {
+        final AsyncRetry<T> asyncRetry = new AsyncRetry<>(operation,
+                accountAuthCache,
+                callable,
+                retryPolicy,
+                executor,
+                scheduler);
+        asyncRetry.start();
+        return asyncRetry.future;
+    }
+
+    /**
+     * @return a scheduler that's shared by everyone who doesn't bring their own.
+     *         it only ever waits for delays to end, so one daemon thread is plenty.
+     */
+    static ScheduledExecutorService getDefaultScheduler() {
+        return DefaultSchedulerHolder.SCHEDULER;
+    }
+
+    private static class DefaultSchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = makeDefaultScheduler();
+
+        private static ScheduledExecutorService makeDefaultScheduler() {
+            final ThreadFactory namingFactory = B2ExecutorUtils.createThreadFactory("B2Retryer-scheduler-%d");
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = namingFactory.newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    /**
+     * AsyncRetry holds the state of one call to doRetryNonBlocking().  Only
+     * one of its attempts is ever running at a time, and each one hands off
+     * to the next through the executor or scheduler, so its fields don't
+     * need to be guarded.
+     */
+    private class AsyncRetry<T> {
+        private final String operation;
+        private final B2AccountAuthorizationCache accountAuthCache;
+        private final AsyncRetryableCallable<T> callable;
+        private final B2RetryPolicy retryPolicy;
+        private final Executor executor;
+        private final ScheduledExecutorService scheduler;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final B2Clock clock = B2Clock.get();
+
+        private long startMonoMillis;
+        private int attemptsSoFar;
+
+        AsyncRetry(String operation,
+                   B2AccountAuthorizationCache accountAuthCache,
+                   AsyncRetryableCallable<T> callable,
+                   B2RetryPolicy retryPolicy,
+                   Executor executor,
+                   ScheduledExecutorService scheduler) {
+            this.operation = operation;
+            this.accountAuthCache = accountAuthCache;
+            this.callable = callable;
+            this.retryPolicy = retryPolicy;
+            this.executor = executor;
+            this.scheduler = scheduler;
+        }
+
+        void start() {
+            metricsRecorder.operationStarted(operation);
+            startMonoMillis = clock.monotonicMillis();
+            submitAttempt();
+        }
+
+        private void submitAttempt() {
+            try {
+                executor.execute(this::attempt);
+            } catch (RejectedExecutionException e) {
+                finish(null, new B2LocalException("bad_state", "The executor rejected a retry attempt. Has it been shut down? (" + e + ")", e));
+            }
+        }
+
+        private void attempt() {
+            try {
+                attemptGuts();
+            } catch (RuntimeException e) {
+                failedWhileRetrying(e);
+            }
+        }
+
+        private void failedWhileRetrying(RuntimeException e) {
+            // probably from the retry policy.  doRetry() would have thrown it
+            // at the caller.  we have to make sure the future gets completed.
+            finish(null, new B2LocalException("trouble", "exception while retrying: " + e, e));
+        }
+
+        private void attemptGuts() {
+            if (future.isDone()) {
+                // cancelled by the caller.
+                finish(null, new B2LocalException("cancelled", operation + " was cancelled"));
+                return;
+            }
+
+            final long beforeMonoMillis = clock.monotonicMillis();
+            final boolean isRetry = (attemptsSoFar != 0);
+            attemptsSoFar++; // about to attempt again.
+
+            final CompletableFuture<T> attemptFuture;
+            try {
+                attemptFuture = callable.call(isRetry);
             } catch (Exception e) {
-                // callable.call() throws Exception, so I have to catch Exception (shudder!).
-                // i don't want to suppress an InterruptedException, so check for it here.
-                if (e instanceof InterruptedException) {
-                    Thread.currentThread().interrupt(); // reset the flag!
+                attemptFinished(beforeMonoMillis, null, e);
+                return;
+            }
+
+            attemptFuture.whenComplete((value, throwable) -> {
+                try {
+                    attemptFinished(beforeMonoMillis, value, throwable);
+                } catch (RuntimeException e) {
+                    failedWhileRetrying(e);
                 }
-                retryPolicy.gotUnexpectedUnretryable(operation, attemptsSoFar, tookMillis, e);
-                throw new B2Exception("unexpected", 500, null, "unexpected: " + e, e);
+            });
+        }
+
+        private void attemptFinished(long beforeMonoMillis,
+                                     T value,
+                                     Throwable throwableOrNull) {
+            if (throwableOrNull == null) {
+                attemptSucceeded(operation, attemptsSoFar, clock.monotonicMillis() - beforeMonoMillis, retryPolicy);
+                finish(value, null);
+                return;
+            }
+
+            final Exception e = unwrap(throwableOrNull);
+            final long waitMillis;
+            try {
+                waitMillis = attemptFailed(operation,
+                        accountAuthCache,
+                        retryPolicy,
+                        attemptsSoFar,
+                        clock.monotonicMillis() - beforeMonoMillis,
+                        e);
+            } catch (B2Exception giveUp) {
+                finish(null, giveUp);
+                return;
+            }
+            scheduleAttempt(waitMillis, e);
+        }
+
+        private void scheduleAttempt(long waitMillis, Exception lastException) {
+            if (waitMillis <= 0) {
+                submitAttempt();
+                return;
+            }
+            try {
+                scheduler.schedule(this::submitAttempt, waitMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // we can't wait, so we can't retry.  report what went wrong with the
+                // last attempt, since that's what the caller would have gotten if
+                // the policy had said not to retry.
+                finish(null, (lastException instanceof B2Exception) ?
+                        (B2Exception) lastException :
+                        new B2LocalException("bad_state", "The scheduler rejected a retry. Has it been shut down? (" + e + ")", e));
             }
         }
+
+        private void finish(T valueOrNull, B2Exception exceptionOrNull) {
+            metricsRecorder.operationFinished(operation,
+                    attemptsSoFar,
+                    clock.monotonicMillis() - startMonoMillis,
+                    exceptionOrNull);
+            if (exceptionOrNull == null) {
+                future.complete(valueOrNull);
+            } else {
+                future.completeExceptionally(exceptionOrNull);
+            }
+        }
+    }
+
+    /**
+     * @return the exception that a failed attempt's future was completed with,
+     *         without the CompletionException that CompletableFuture may have
+     *         wrapped it in.  Errors are wrapped so they can be handled like
+     *         any other unexpected exception.
+     */
+    private static Exception unwrap(Throwable throwable) {
+        final Throwable cause = (throwable instanceof CompletionException && throwable.getCause() != null) ?
+                throwable.getCause() :
+                throwable;
+        return (cause instanceof Exception) ? (Exception) cause : new RuntimeException(cause);
     }
 
+    /**
+     * Tells the metrics recorder and the retry policy that an attempt worked.
+     */
+    private void attemptSucceeded(String operation,
+                                  int attemptsSoFar,
+                                  long tookMillis,
+                                  B2RetryPolicy retryPolicy) {
+        metricsRecorder.attemptFinished(operation, attemptsSoFar, tookMillis, null);
+        retryPolicy.succeeded(operation, attemptsSoFar, tookMillis);
+    }
+
+    /**
+     * Decides what to do after an attempt throws.  It clears the accountAuthCache
+     * when needed and tells the metrics recorder and the retry policy about it.
+     *
+     * @return how many milliseconds to wait before trying again.  zero means
+     *         to try again right away.
+     * @throws B2Exception if we shouldn't try again.  it's the exception to
+     *         give to the caller.
+     */
+    private long attemptFailed(String operation,
+                               B2AccountAuthorizationCache accountAuthCache,
+                               B2RetryPolicy retryPolicy,
+                               int attemptsSoFar,
+                               long tookMillis,
+                               Exception exception) throws B2Exception {
+        metricsRecorder.attemptFinished(operation, attemptsSoFar, tookMillis, exception);
+
+        try {
+            throw exception;
+        } catch (B2UnauthorizedException e) {
+            switch (e.getRequestCategory()) {
+                case ACCOUNT_AUTHORIZATION:
+                    // unauthorized during account authorization is NOT retryable.
+                    retryPolicy.gotUnretryable(operation, attemptsSoFar, tookMillis, e);
+                    throw e;
 
-}
\ No newline at end of file
+                case UPLOADING:
+                    // nothing to do.  the upload url won't have been returned to the
+                    // pool, so it won't be reused.  we'll try again with another url.
+                    // (in fact, the B2UploadUrlCache will always get a new URL for retries.)
+                    if (!retryPolicy.gotRetryableImmediately(operation, attemptsSoFar, tookMillis, e)) {
+                        throw e;
+                    }
+                    return 0; // to try again right away.
+
+                case OTHER:
+                default:
+                    accountAuthCache.clear();
+                    if (!retryPolicy.gotRetryableImmediately(operation, attemptsSoFar, tookMillis, e)) {
+                        throw e;
+                    }
+                    return 0; // to try again right away.
+            }
+        } catch (B2TooManyRequestsException |
+                B2ServiceUnavailableException |
+                B2InternalErrorException |
+                B2RequestTimeoutException |
+                B2NetworkBaseException e) {
+
+            final Long waitMillis = retryPolicy.gotRetryableAfterDelayMillis(operation, attemptsSoFar, tookMillis, e);
+            if (waitMillis == null) {
+                // i haven't convinced myself that making a special "too many retries"
+                // exception to hold the underlying cause is sufficiently useful, so
+                // let's throw the most recent exception we got.  our documentation
+                // already says that if the caller gets a retryable exception, we've
+                // already retried it.
+                throw e;
+            }
+            return waitMillis;
+        } catch (B2Exception e) {
+            // other types of exceptions aren't retryable!
+            retryPolicy.gotUnretryable(operation, attemptsSoFar, tookMillis, e);
+            throw e;
+        } catch (Exception e) {
+            // callable.call() throws Exception, so I have to catch Exception (shudder!).
+            // i don't want to suppress an InterruptedException, so check for it here.
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt(); // reset the flag!
+            }
+            retryPolicy.gotUnexpectedUnretryable(operation, attemptsSoFar, tookMillis, e);
+            throw new B2Exception("unexpected", 500, null, "unexpected: " + e, e);
+        }
+    }
+}
@@ -5,9 +5,11 @@
 
 package com.backblaze.b2.client;
 
+import com.backblaze.b2.client.contentHandlers.B2ContentFileWriter;
 import com.backblaze.b2.client.contentHandlers.B2ContentSink;
 import com.backblaze.b2.client.contentSources.B2ContentSource;
 import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2RuntimeException;
 import com.backblaze.b2.client.structures.B2AccountAuthorization;
 import com.backblaze.b2.client.structures.B2ApplicationKey;
 import com.backblaze.b2.client.structures.B2Bucket;
@@ -50,9 +52,11 @@ import com.backblaze.b2.client.structures.B2UploadPartUrlResponse;
 import com.backblaze.b2.client.structures.B2UploadUrlResponse;
 
 import java.io.Closeable;
+import java.io.File;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
 /*****
  * B2StorageClient is the interface for performing B2 operations.
@@ -219,6 +223,20 @@ public interface B2StorageClient extends Closeable {
      */
     B2FileVersion uploadSmallFile(B2UploadFileRequest request) throws B2Exception;
 
+    /**
+     * Gets upload urls for the bucket ahead of time, so that the first uploads
+     * to it don't have to wait for them.  It gets enough to fill the bucket's
+     * pool to B2ClientConfig's uploadUrlPoolMinSizePerBucket, or at least one.
+     *
+     * You don't need to call this; it just saves time on the first uploads.
+     * The default implementation doesn't get any.
+     *
+     * @param bucketId the id of the bucket you're going to upload to.
+     * @throws B2Exception if there's any trouble.
+     */
+    default void warmUploadUrlPool(String bucketId) throws B2Exception {
+    }
+
     /**
      * Makes a copy of a file in the same bucket.
      * The new file must be smaller than the maximum file size (5 GB).
@@ -300,6 +318,39 @@ public interface B2StorageClient extends Closeable {
             B2UploadListener uploadListenerOrNull,
             ExecutorService executor) throws B2Exception;
 
+    /**
+     * Just like storeLargeFileFromLocalContent(), except that the parts are
+     * recorded in the journal as they're stored, and the parts that the
+     * journal already has aren't stored (or read) again.  This lets the
+     * upload pick up where it left off after a crash.
+     *
+     * If the journal is empty, it's started for the large file in the
+     * request.  When resuming, pass in the large file version from
+     * journal.getLargeFileVersionOrNull() rather than starting a new
+     * large file.  The journal is deleted once the large file is finished.
+     *
+     * @param storeLargeFileRequest The B2StoreLargeFileRequest for the large file
+     *                              getting stored.
+     * @param contentSource The contentSource to upload.  When resuming, it must
+     *                      have the same content as before.
+     * @param uploadListenerOrNull The object that handles upload progress events.
+     *                             This may be null if you do not need to be notified
+     *                             of progress events.
+     * @param executor The executor for uploading parts in parallel. The caller
+     *                 retains ownership of the executor and is responsible for
+     *                 shutting it down.
+     * @param journal The journal to record the stored parts in.
+     * @return The fileVersion of the large file after it has been finished.
+     * @throws B2Exception If there's trouble, including if the journal is for
+     *                     a different large file.
+     */
+    B2FileVersion storeLargeFileFromLocalContent(
+            B2StoreLargeFileRequest storeLargeFileRequest,
+            B2ContentSource contentSource,
+            B2UploadListener uploadListenerOrNull,
+            ExecutorService executor,
+            B2LargeFileJournal journal) throws B2Exception;
+
     /**
      * Initiates uploading the specified content source as separate parts to form a
      * B2 large file. This allows the upload to be cancelled partway through.
@@ -522,6 +573,65 @@ public interface B2StorageClient extends Closeable {
         return fileNames(B2ListFileNamesRequest.builder(bucketId).setMaxFileCount(1000).build());
     }
 
+    /**
+     * Hands each fileVersion that matches the given request to the visitor, in
+     * the same order that fileVersions(request) would yield them.
+     *
+     * Unlike fileVersions(request), it doesn't collect each batch of answers
+     * into a list before handing them out.  Each fileVersion is passed to the
+     * visitor as soon as it's parsed from the response, so only a few of them
+     * are in memory at a time, even with a big maxFileCount.
+     *
+     * If a request for a batch fails partway through and is retried, the
+     * fileVersions the visitor has already seen from that batch are skipped.
+     * If the visitor throws a RuntimeException, the listing stops and that
+     * exception is thrown from here.
+     *
+     * The default implementation just visits what fileVersions(request)
+     * yields, so it does collect each batch into a list.
+     *
+     * @param request specifies which fileVersions to list.
+     * @param visitor called with each fileVersion that matches the request.
+     * @throws B2Exception if there's any trouble
+     */
+    default void forEachFileVersion(B2ListFileVersionsRequest request,
+                                    Consumer<B2FileVersion> visitor) throws B2Exception {
+        try {
+            for (B2FileVersion version : fileVersions(request)) {
+                visitor.accept(version);
+            }
+        } catch (B2RuntimeException e) {
+            // the iterables can't throw B2Exceptions, so they wrap them.
+            if (e.getCause() instanceof B2Exception) {
+                throw (B2Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Just like forEachFileVersion(request, visitor), except that it visits
+     * the fileVersions that fileNames(request) would yield.
+     *
+     * @param request specifies which fileNames to list.
+     * @param visitor called with each fileVersion that matches the request.
+     * @throws B2Exception if there's any trouble
+     */
+    default void forEachFileName(B2ListFileNamesRequest request,
+                                 Consumer<B2FileVersion> visitor) throws B2Exception {
+        try {
+            for (B2FileVersion version : fileNames(request)) {
+                visitor.accept(version);
+            }
+        } catch (B2RuntimeException e) {
+            // the iterables can't throw B2Exceptions, so they wrap them.
+            if (e.getCause() instanceof B2Exception) {
+                throw (B2Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Returns an iterable whose iterator yields the fileVersions of large,
      * unfinished files that match the given request.
@@ -653,6 +763,106 @@ public interface B2StorageClient extends Closeable {
     }
 
 
+    /**
+     * Downloads the specified file by id into the destination file, fetching
+     * separate byte ranges of the file in parallel.  This can be a lot faster
+     * than downloadById() for big files because it isn't limited to what a
+     * single connection can do.
+     *
+     * If the request has a range, only that range is downloaded and it
+     * is written to the start of the destination.  Each range is retried
+     * independently.  If there's trouble, the destination may be left
+     * partially written.
+     *
+     * When the whole file is downloaded and B2 knows its SHA1, the
+     * destination is read back and checked against it once all of the
+     * ranges are written.  There's no SHA1 to check a range against.
+     *
+     * The default implementation downloads the file with downloadById(),
+     * over one connection, and doesn't use the executor.
+     *
+     * @param request specifies the file and, optionally, which part of the file to download.
+     * @param destination the file to write the content to.  it will be created or truncated.
+     * @param executor the executor to use for downloading ranges in parallel.
+     *                 the caller retains ownership of the executor and is
+     *                 responsible for shutting it down.
+     * @throws B2Exception if there's any trouble.
+     */
+    default void downloadByIdParallel(B2DownloadByIdRequest request,
+                                      File destination,
+                                      ExecutorService executor) throws B2Exception {
+        downloadById(request, B2ContentFileWriter.builder(destination).build());
+    }
+
+    /**
+     * Just like downloadByIdParallel(), but for the
+     * most recent version of the file with the given bucket name and file name.
+     *
+     * All of the ranges are checked to make sure they come from the same
+     * file version, so uploading a new version of the file during the
+     * download will make the download fail instead of mixing versions.
+     *
+     * The default implementation downloads the file with downloadByName(),
+     * over one connection, and doesn't use the executor.
+     *
+     * @param request specifies the file and, optionally, which part of the file to download.
+     * @param destination the file to write the content to.  it will be created or truncated.
+     * @param executor the executor to use for downloading ranges in parallel.
+     *                 the caller retains ownership of the executor and is
+     *                 responsible for shutting it down.
+     * @throws B2Exception if there's any trouble.
+     */
+    default void downloadByNameParallel(B2DownloadByNameRequest request,
+                                        File destination,
+                                        ExecutorService executor) throws B2Exception {
+        downloadByName(request, B2ContentFileWriter.builder(destination).build());
+    }
+
+    /**
+     * Downloads the specified file by id into the destination file.  If the
+     * connection breaks partway through, the retry asks for only the bytes
+     * that haven't been written yet, instead of starting over.
+     *
+     * The SHA1 of the whole file is computed as it's written, across all of
+     * the attempts, and checked at the end (when B2 knows the SHA1 and the
+     * request is for the whole file), so the destination isn't read again.
+     *
+     * If the request has a range, only that range is downloaded and it
+     * is written to the start of the destination.  If there's trouble, the
+     * destination may be left partially written.
+     *
+     * The default implementation downloads the file with downloadById(),
+     * so a retry starts over from the beginning.
+     *
+     * @param request specifies the file and, optionally, which part of the file to download.
+     * @param destination the file to write the content to.  it will be created or truncated.
+     * @throws B2Exception if there's any trouble.
+     */
+    default void downloadByIdResumable(B2DownloadByIdRequest request,
+                                       File destination) throws B2Exception {
+        downloadById(request, B2ContentFileWriter.builder(destination).build());
+    }
+
+    /**
+     * Just like downloadByIdResumable(), but for the most recent version
+     * of the file with the given bucket name and file name.
+     *
+     * Each resumed response is checked to make sure it's for the same file
+     * version as the first one, so uploading a new version of the file during
+     * the download will make the download fail instead of mixing versions.
+     *
+     * The default implementation downloads the file with downloadByName(),
+     * so a retry starts over from the beginning.
+     *
+     * @param request specifies the file and, optionally, which part of the file to download.
+     * @param destination the file to write the content to.  it will be created or truncated.
+     * @throws B2Exception if there's any trouble.
+     */
+    default void downloadByNameResumable(B2DownloadByNameRequest request,
+                                         File destination) throws B2Exception {
+        downloadByName(request, B2ContentFileWriter.builder(destination).build());
+    }
+
     /**
      * Deletes the specified file version.
      *
@@ -688,6 +898,9 @@ public interface B2StorageClient extends Closeable {
     /**
      * Delete all files in bucket.
      *
+     * This deletes them one at a time.  To delete lots of file versions
+     * several at a time, use a B2BulkDeleter.
+     *
      * @param bucketId the bucket whose file versions should be deleted
      * @throws B2Exception if there's any trouble. if there's trouble, it's undefined which
      * file versions have been deleted (if any) and which haven't (if any).
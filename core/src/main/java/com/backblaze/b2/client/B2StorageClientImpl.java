@@ -6,6 +6,7 @@ package com.backblaze.b2.client;
 
 import com.backblaze.b2.client.contentHandlers.B2ContentSink;
 import com.backblaze.b2.client.contentSources.B2ContentSource;
+import com.backblaze.b2.client.contentSources.B2Headers;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.exceptions.B2LocalException;
 import com.backblaze.b2.client.structures.B2AccountAuthorization;
@@ -58,12 +59,24 @@ import com.backblaze.b2.client.structures.B2UploadFileRequest;
 import com.backblaze.b2.client.structures.B2UploadListener;
 import com.backblaze.b2.client.structures.B2UploadPartUrlResponse;
 import com.backblaze.b2.client.structures.B2UploadUrlResponse;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2ExecutorUtils;
+import com.backblaze.b2.util.B2Preconditions;
+import com.backblaze.b2.util.B2StringUtil;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -81,12 +94,18 @@ public class B2StorageClientImpl implements B2StorageClient {
 
     private final B2AccountAuthorizationCache accountAuthCache;
     private final B2UploadUrlCache uploadUrlCache;
+    private final int maxPartsInFlightPerLargeFile;
+    private final int listFilesPrefetchPages;
 
 
     // protected by synchronized(this)
     // starts out false.  it is changed to true when close() is called.
     private boolean closed;
 
+    // protected by synchronized(this)
+    // made the first time a file listing gets pages ahead.  shut down by close().
+    private ExecutorService listFilesPrefetchExecutorOrNull;
+
     /**
      * Creates a client with the given webifier and config and a default B2Sleeper.
      * This is the normal constructor.
@@ -97,7 +116,7 @@ public class B2StorageClientImpl implements B2StorageClient {
     public B2StorageClientImpl(B2StorageClientWebifier webifier,
                                B2ClientConfig config,
                                Supplier<B2RetryPolicy> retryPolicySupplier) {
-        this(webifier, config, retryPolicySupplier, new B2Retryer(new B2Sleeper()));
+        this(webifier, config, retryPolicySupplier, new B2Retryer(new B2Sleeper(), config.getMetricsRecorderOrNull()));
     }
 
     /**
@@ -115,7 +134,12 @@ public class B2StorageClientImpl implements B2StorageClient {
         this.retryPolicySupplier = retryPolicySupplier;
         this.retryer = retryer;
         this.accountAuthCache = new B2AccountAuthorizationCache(webifier, config.getAccountAuthorizer());
-        this.uploadUrlCache = new B2UploadUrlCache(webifier, accountAuthCache);
+        this.uploadUrlCache = new B2UploadUrlCache(webifier,
+                accountAuthCache,
+                config.getUploadUrlPoolMinSizePerBucket(),
+                config.getUploadUrlMaxAgeMillis());
+        this.maxPartsInFlightPerLargeFile = config.getMaxPartsInFlightPerLargeFile();
+        this.listFilesPrefetchPages = config.getListFilesPrefetchPages();
     }
 
     /**
@@ -127,6 +151,10 @@ public class B2StorageClientImpl implements B2StorageClient {
     public synchronized void close() {
         if (!closed) {
             closed = true;
+            uploadUrlCache.close();
+            if (listFilesPrefetchExecutorOrNull != null) {
+                listFilesPrefetchExecutorOrNull.shutdownNow();
+            }
             webifier.close();
         }
     }
@@ -150,6 +178,24 @@ public class B2StorageClientImpl implements B2StorageClient {
         return webifier;
     }
 
+    // these let B2AsyncStorageClientImpl share our authorization, upload urls,
+    // and retrying, so the two clients behave the same way.
+    B2AccountAuthorizationCache getAccountAuthCache() {
+        return accountAuthCache;
+    }
+
+    B2UploadUrlCache getUploadUrlCache() {
+        return uploadUrlCache;
+    }
+
+    B2Retryer getRetryer() {
+        return retryer;
+    }
+
+    Supplier<B2RetryPolicy> getRetryPolicySupplier() {
+        return retryPolicySupplier;
+    }
+
     @Override
     public B2Bucket createBucket(B2CreateBucketRequest request) throws B2Exception {
         return retryer.doRetry("b2_create_bucket", accountAuthCache, () -> {
@@ -200,7 +246,7 @@ public class B2StorageClientImpl implements B2StorageClient {
         final long contentLength = getContentLength(request.getContentSource());
         final B2PartSizes partSizes = getPartSizes();
 
-        B2LargeFileUploader uploader = new B2LargeFileUploader(retryer, webifier, accountAuthCache, retryPolicySupplier, executor, partSizes, request, contentLength);
+        B2LargeFileUploader uploader = new B2LargeFileUploader(retryer, webifier, accountAuthCache, retryPolicySupplier, executor, partSizes, request, contentLength, maxPartsInFlightPerLargeFile);
         final List<B2Part> alreadyUploadedParts = new ArrayList<>();
         for (B2Part part : parts(fileVersion.getFileId())) {
             alreadyUploadedParts.add(part);
@@ -216,11 +262,23 @@ public class B2StorageClientImpl implements B2StorageClient {
                     final B2UploadUrlResponse uploadUrlResponse = uploadUrlCache.get(request.getBucketId(), isRetry);
                     final B2FileVersion version = webifier.uploadFile(uploadUrlResponse, request);
                     uploadUrlCache.unget(uploadUrlResponse);
+                    retryer.getMetricsRecorder().bytesTransferred("b2_upload_file", version.getContentLength());
                     return version;
                 },
                 retryPolicySupplier.get());
     }
 
+    @Override
+    public void warmUploadUrlPool(String bucketId) throws B2Exception {
+        retryer.doRetry("b2_get_upload_url",
+                accountAuthCache,
+                () -> {
+                    uploadUrlCache.warm(bucketId);
+                    return 0; // to meet Callable api!
+                },
+                retryPolicySupplier.get());
+    }
+
     @Override
     public B2FileVersion copySmallFile(B2CopyFileRequest request) throws B2Exception {
         return retryer.doRetry("b2_copy_file",
@@ -263,7 +321,30 @@ public class B2StorageClientImpl implements B2StorageClient {
                 webifier,
                 retryer,
                 retryPolicySupplier,
-                executor).storeFile(uploadListener);
+                executor,
+                maxPartsInFlightPerLargeFile).storeFile(uploadListener);
+    }
+
+    @Override
+    public B2FileVersion storeLargeFileFromLocalContent(
+            B2StoreLargeFileRequest storeLargeFileRequest,
+            B2ContentSource contentSource,
+            B2UploadListener uploadListener,
+            ExecutorService executor,
+            B2LargeFileJournal journal) throws B2Exception {
+        B2Preconditions.checkArgumentIsNotNull(journal, "journal");
+
+        return B2LargeFileStorer.forLocalContent(
+                storeLargeFileRequest,
+                contentSource,
+                getPartSizes(),
+                accountAuthCache,
+                webifier,
+                retryer,
+                retryPolicySupplier,
+                executor,
+                maxPartsInFlightPerLargeFile,
+                journal).storeFile(uploadListener);
     }
 
     @Override
@@ -291,7 +372,8 @@ public class B2StorageClientImpl implements B2StorageClient {
                 webifier,
                 retryer,
                 retryPolicySupplier,
-                executor);
+                executor,
+                maxPartsInFlightPerLargeFile);
 
         return storer.storeFileAsync(uploadListenerOrNull);
     }
@@ -320,14 +402,15 @@ public class B2StorageClientImpl implements B2StorageClient {
                 webifier,
                 retryer,
                 retryPolicySupplier,
-                executor).storeFile(uploadListenerOrNull);
+                executor,
+                maxPartsInFlightPerLargeFile).storeFile(uploadListenerOrNull);
     }
 
     private B2FileVersion uploadLargeFileGuts(ExecutorService executor,
                                               B2PartSizes partSizes,
                                               B2UploadFileRequest request,
                                               long contentLength) throws B2Exception {
-        B2LargeFileUploader uploader = new B2LargeFileUploader(retryer, webifier, accountAuthCache, retryPolicySupplier, executor, partSizes, request, contentLength);
+        B2LargeFileUploader uploader = new B2LargeFileUploader(retryer, webifier, accountAuthCache, retryPolicySupplier, executor, partSizes, request, contentLength, maxPartsInFlightPerLargeFile);
         return uploader.uploadLargeFile();
     }
 
@@ -369,6 +452,123 @@ public class B2StorageClientImpl implements B2StorageClient {
         return new B2ListFileNamesIterable(this, request);
     }
 
+    @Override
+    public void forEachFileVersion(B2ListFileVersionsRequest request,
+                                   Consumer<B2FileVersion> visitor) throws B2Exception {
+        B2ListFileVersionsRequest pageRequest = request;
+        while (true) {
+            final B2ListFileVersionsRequest thisPageRequest = pageRequest;
+            final PageVisitor pageVisitor = new PageVisitor(visitor);
+            final B2ListFileVersionsResponse response;
+            try {
+                response = retryer.doRetry("b2_list_file_versions", accountAuthCache,
+                        () -> webifier.listFileVersions(accountAuthCache.get(), thisPageRequest, pageVisitor.startAttempt()),
+                        retryPolicySupplier.get());
+            } catch (B2Exception e) {
+                pageVisitor.throwIfVisitorFailed();
+                throw e;
+            }
+            if (response.atEnd()) {
+                return;
+            }
+            pageRequest = B2ListFileVersionsRequest
+                    .builder(request)
+                    .setStart(response.getNextFileName(), response.getNextFileId())
+                    .build();
+        }
+    }
+
+    @Override
+    public void forEachFileName(B2ListFileNamesRequest request,
+                                Consumer<B2FileVersion> visitor) throws B2Exception {
+        B2ListFileNamesRequest pageRequest = request;
+        while (true) {
+            final B2ListFileNamesRequest thisPageRequest = pageRequest;
+            final PageVisitor pageVisitor = new PageVisitor(visitor);
+            final B2ListFileNamesResponse response;
+            try {
+                response = retryer.doRetry("b2_list_file_names", accountAuthCache,
+                        () -> webifier.listFileNames(accountAuthCache.get(), thisPageRequest, pageVisitor.startAttempt()),
+                        retryPolicySupplier.get());
+            } catch (B2Exception e) {
+                pageVisitor.throwIfVisitorFailed();
+                throw e;
+            }
+            if (response.atEnd()) {
+                return;
+            }
+            pageRequest = B2ListFileNamesRequest
+                    .builder(request)
+                    .setStartFileName(response.getNextFileName())
+                    .build();
+        }
+    }
+
+    /**
+     * A PageVisitor passes the fileVersions from one page of a listing to the
+     * caller's visitor.
+     *
+     * If an attempt to get the page fails partway through, the retry starts
+     * the page over from the beginning.  The PageVisitor remembers the
+     * fileName and fileId of the last fileVersion it passed along, and each
+     * later attempt skips everything up to and including that one, so the
+     * caller's visitor sees each one once, even if files were added or
+     * removed earlier in the page between attempts.  If the last one is gone
+     * by then, skipping stops at the first fileVersion with a later name.
+     *
+     * The retryer turns a RuntimeException from the caller's visitor into a
+     * B2Exception.  The PageVisitor remembers it so that it can be rethrown
+     * as it was.
+     */
+    private static class PageVisitor {
+        private final Consumer<B2FileVersion> visitor;
+        private String lastFileNameOrNull;
+        private String lastFileIdOrNull;
+        private RuntimeException visitorExceptionOrNull;
+
+        PageVisitor(Consumer<B2FileVersion> visitor) {
+            this.visitor = visitor;
+        }
+
+        Consumer<B2FileVersion> startAttempt() {
+            final boolean[] skipping = {lastFileNameOrNull != null};
+            return version -> {
+                if (skipping[0]) {
+                    final int order = B2StringUtil.compareInUtf8Order(version.getFileName(), lastFileNameOrNull);
+                    if (order < 0) {
+                        // we passed this one along before the last one.
+                        return;
+                    }
+                    if (order == 0) {
+                        // the versions of one name are all together.  we passed along
+                        // the ones up to the last one.
+                        if (Objects.equals(version.getFileId(), lastFileIdOrNull)) {
+                            skipping[0] = false;
+                        }
+                        return;
+                    }
+                    // the last one must have been removed, and this one is new to the visitor.
+                    skipping[0] = false;
+                }
+
+                try {
+                    visitor.accept(version);
+                } catch (RuntimeException e) {
+                    visitorExceptionOrNull = e;
+                    throw e;
+                }
+                lastFileNameOrNull = version.getFileName();
+                lastFileIdOrNull = version.getFileId();
+            };
+        }
+
+        void throwIfVisitorFailed() {
+            if (visitorExceptionOrNull != null) {
+                throw visitorExceptionOrNull;
+            }
+        }
+    }
+
     @Override
     public B2ListFilesIterable unfinishedLargeFiles(B2ListUnfinishedLargeFilesRequest request) throws B2Exception {
         return new B2ListUnfinishedLargeFilesIterable(this, request);
@@ -393,11 +593,12 @@ public class B2StorageClientImpl implements B2StorageClient {
     @Override
     public void downloadById(B2DownloadByIdRequest request,
                              B2ContentSink handler) throws B2Exception {
+        final B2ContentSink handlerThatRecordsBytes = sinkThatRecordsBytes("b2_download_file_by_id", handler);
         retryer.doRetry("b2_download_file_by_id",
                 accountAuthCache,
                 () -> {
                     B2AccountAuthorization accountAuth = accountAuthCache.get();
-                    webifier.downloadById(accountAuth, request, handler);
+                    webifier.downloadById(accountAuth, request, handlerThatRecordsBytes);
                     return 0; // to meet Callable api!
                 },
                 retryPolicySupplier.get());
@@ -429,16 +630,117 @@ public class B2StorageClientImpl implements B2StorageClient {
     @Override
     public void downloadByName(B2DownloadByNameRequest request,
                                B2ContentSink handler) throws B2Exception {
+        final B2ContentSink handlerThatRecordsBytes = sinkThatRecordsBytes("b2_download_file_by_name", handler);
         retryer.doRetry("b2_download_file_by_name",
                 accountAuthCache,
                 () -> {
                     B2AccountAuthorization accountAuth = accountAuthCache.get();
-                    webifier.downloadByName(accountAuth, request, handler);
+                    webifier.downloadByName(accountAuth, request, handlerThatRecordsBytes);
                     return 0; // to meet Callable api!
                 },
                 retryPolicySupplier.get());
     }
 
+    @Override
+    public void downloadByIdParallel(B2DownloadByIdRequest request,
+                                     File destination,
+                                     ExecutorService executor) throws B2Exception {
+        final B2FileVersion fileVersion = getFileInfo(request.getFileId());
+        downloadParallelGuts(fileVersion,
+                request.getRange(),
+                destination,
+                executor,
+                (range, sink) -> downloadById(B2DownloadByIdRequest.builder(request).setRange(range).build(), sink));
+    }
+
+    @Override
+    public void downloadByNameParallel(B2DownloadByNameRequest request,
+                                       File destination,
+                                       ExecutorService executor) throws B2Exception {
+        final B2GetFileInfoByNameRequest infoRequest = B2GetFileInfoByNameRequest
+                .builder(request.getBucketName(), request.getFileName())
+                .setServerSideEncryption(request.getServerSideEncryption())
+                .build();
+        final B2FileVersion fileVersion = getFileInfoByName(infoRequest);
+
+        // we download each range by name, but the downloader will insist that every
+        // range comes from the version we just looked up.
+        downloadParallelGuts(fileVersion,
+                request.getRange(),
+                destination,
+                executor,
+                (range, sink) -> downloadByName(B2DownloadByNameRequest.builder(request).setRange(range).build(), sink));
+    }
+
+    @Override
+    public void downloadByIdResumable(B2DownloadByIdRequest request,
+                                      File destination) throws B2Exception {
+        new B2ResumableFileDownloader(retryer,
+                accountAuthCache,
+                retryPolicySupplier,
+                "b2_download_file_by_id",
+                request.getRange(),
+                (range, sink) -> webifier.downloadById(accountAuthCache.get(),
+                        B2DownloadByIdRequest.builder(request).setRange(range).build(),
+                        sink)).downloadToFile(destination);
+    }
+
+    @Override
+    public void downloadByNameResumable(B2DownloadByNameRequest request,
+                                        File destination) throws B2Exception {
+        new B2ResumableFileDownloader(retryer,
+                accountAuthCache,
+                retryPolicySupplier,
+                "b2_download_file_by_name",
+                request.getRange(),
+                (range, sink) -> webifier.downloadByName(accountAuthCache.get(),
+                        B2DownloadByNameRequest.builder(request).setRange(range).build(),
+                        sink)).downloadToFile(destination);
+    }
+
+    private void downloadParallelGuts(B2FileVersion fileVersion,
+                                      B2ByteRange requestedRangeOrNull,
+                                      File destination,
+                                      ExecutorService executor,
+                                      B2LargeFileDownloader.RangeDownloader rangeDownloader) throws B2Exception {
+        final long contentLength = fileVersion.getContentLength();
+        long start = 0;
+        long length = contentLength;
+        if (requestedRangeOrNull != null) {
+            if (!requestedRangeOrNull.isSatisfied(contentLength)) {
+                throw new B2LocalException("range_not_satisfiable", "range " + requestedRangeOrNull + " can't be satisfied by a file with " + contentLength + " bytes");
+            }
+            final B2ByteRange effectiveRange = requestedRangeOrNull.effectiveRange(contentLength);
+            start = effectiveRange.start;
+            length = effectiveRange.getNumberOfBytes();
+        }
+
+        // there's only a SHA1 to check against when we get the whole file.
+        final boolean wholeFile = (start == 0 && length == contentLength);
+        final B2LargeFileDownloader downloader = new B2LargeFileDownloader(executor,
+                rangeDownloader,
+                fileVersion.getFileId(),
+                wholeFile ? B2LargeFileDownloader.getSha1ToCheckOrNull(fileVersion) : null,
+                start,
+                length,
+                getPartSizes().getRecommendedPartSize());
+        downloader.downloadToFile(destination);
+    }
+
+    /**
+     * @return a sink that passes the content to the given handler and then
+     *         tells the metrics recorder how many bytes were downloaded.
+     */
+    B2ContentSink sinkThatRecordsBytes(String operation,
+                                       B2ContentSink handler) {
+        return (responseHeaders, in) -> {
+            handler.readContent(responseHeaders, in);
+            if (responseHeaders.getValueOrNull(B2Headers.CONTENT_LENGTH) != null) {
+                retryer.getMetricsRecorder().bytesTransferred(operation, responseHeaders.getContentLength());
+            }
+        };
+    }
+
     @Override
     public void deleteFileVersion(B2DeleteFileVersionRequest request) throws B2Exception {
         retryer.doRetry("b2_delete_file_version",
@@ -548,6 +850,38 @@ public class B2StorageClientImpl implements B2StorageClient {
     // For use by our iterators
     // XXX: make private somehow, or move to B2StorageClient interface.
     //
+    /**
+     * @return how many pages the file listing iterables should get ahead of their callers.
+     */
+    int getListFilesPrefetchPages() {
+        return listFilesPrefetchPages;
+    }
+
+    /**
+     * @return the executor the file listing iterables use to get pages ahead
+     *         of their callers.  each iterator only ever has one page request
+     *         running, so there's a thread for each iterator that's getting
+     *         pages at the moment.  the threads are daemons and they go away
+     *         when they're idle.
+     */
+    synchronized Executor getListFilesPrefetchExecutor() {
+        if (listFilesPrefetchExecutorOrNull == null) {
+            final ThreadFactory namingFactory = B2ExecutorUtils.createThreadFactory("B2StorageClientImpl-listFilesPrefetch-%d");
+            listFilesPrefetchExecutorOrNull = new ThreadPoolExecutor(
+                    0,
+                    Integer.MAX_VALUE,
+                    30,
+                    TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    runnable -> {
+                        final Thread thread = namingFactory.newThread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return listFilesPrefetchExecutorOrNull;
+    }
+
     B2ListFileVersionsResponse listFileVersions(B2ListFileVersionsRequest request) throws B2Exception {
         return retryer.doRetry("b2_list_file_versions", accountAuthCache, () -> webifier.listFileVersions(accountAuthCache.get(), request), retryPolicySupplier.get());
     }
@@ -56,6 +56,8 @@ import com.backblaze.b2.client.structures.B2UploadPartRequest;
 import com.backblaze.b2.client.structures.B2UploadPartUrlResponse;
 import com.backblaze.b2.client.structures.B2UploadUrlResponse;
 
+import java.util.function.Consumer;
+
 /**
  * A B2StorageClientWebifier is responsible for converting from request objects
  * to web calls and back again.
@@ -120,6 +122,40 @@ public interface B2StorageClientWebifier extends AutoCloseable {
     B2ListFileNamesResponse listFileNames(B2AccountAuthorization accountAuth,
                                           B2ListFileNamesRequest request) throws B2Exception;
 
+    /**
+     * Just like listFileVersions(accountAuth, request), except that each fileVersion
+     * is handed to the visitor as it's parsed from the response, so that the whole
+     * page of them is never in memory at once.  The files list in the returned
+     * response is empty; use it for the next file name and id.
+     *
+     * The default implementation gets the whole page with listFileVersions(accountAuth, request)
+     * and then visits its files, so its response still has them.
+     */
+    default B2ListFileVersionsResponse listFileVersions(B2AccountAuthorization accountAuth,
+                                                        B2ListFileVersionsRequest request,
+                                                        Consumer<B2FileVersion> visitor) throws B2Exception {
+        final B2ListFileVersionsResponse response = listFileVersions(accountAuth, request);
+        response.getFiles().forEach(visitor);
+        return response;
+    }
+
+    /**
+     * Just like listFileNames(accountAuth, request), except that each fileVersion
+     * is handed to the visitor as it's parsed from the response, so that the whole
+     * page of them is never in memory at once.  The files list in the returned
+     * response is empty; use it for the next file name.
+     *
+     * The default implementation gets the whole page with listFileNames(accountAuth, request)
+     * and then visits its files, so its response still has them.
+     */
+    default B2ListFileNamesResponse listFileNames(B2AccountAuthorization accountAuth,
+                                                  B2ListFileNamesRequest request,
+                                                  Consumer<B2FileVersion> visitor) throws B2Exception {
+        final B2ListFileNamesResponse response = listFileNames(accountAuth, request);
+        response.getFiles().forEach(visitor);
+        return response;
+    }
+
     B2ListUnfinishedLargeFilesResponse listUnfinishedLargeFiles(B2AccountAuthorization accountAuth,
                                                                 B2ListUnfinishedLargeFilesRequest request) throws B2Exception;
 
@@ -82,6 +82,7 @@ import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
 import static com.backblaze.b2.client.contentSources.B2Headers.FILE_ID;
 import static com.backblaze.b2.client.contentSources.B2Headers.FILE_NAME;
@@ -245,77 +246,13 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
     public B2FileVersion uploadFile(B2UploadUrlResponse uploadUrlResponse,
                                     B2UploadFileRequest request) throws B2Exception {
         final B2UploadListener uploadListener = request.getListener();
-        final B2ContentSource source = request.getContentSource();
         try (final B2ContentDetailsForUpload contentDetails = new B2ContentDetailsForUpload(request.getContentSource())) {
             final long contentLen = contentDetails.getContentLength();
 
             uploadListener.progress(B2UploadProgressUtil.forSmallFileWaitingToStart(contentLen));
             uploadListener.progress(B2UploadProgressUtil.forSmallFileStarting(contentLen));
 
-            // build the headers.
-            final B2HeadersImpl.Builder headersBuilder = B2HeadersImpl
-                    .builder()
-                    .set(B2Headers.EXPECT, "100-continue")
-                    .set(B2Headers.AUTHORIZATION, uploadUrlResponse.getAuthorizationToken())
-                    .set(FILE_NAME, percentEncode(request.getFileName()))
-                    .set(B2Headers.CONTENT_TYPE, request.getContentType())
-                    .set(B2Headers.CONTENT_SHA1, contentDetails.getContentSha1HeaderValue());
-            setCommonHeaders(headersBuilder);
-
-            if (request.getServerSideEncryption() != null) {
-                switch (request.getServerSideEncryption().getMode()) {
-                    case SSE_B2:
-                        headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION,
-                                request.getServerSideEncryption().getAlgorithm());
-                        break;
-                    case SSE_C:
-                        headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_ALGORITHM,
-                                request.getServerSideEncryption().getAlgorithm());
-                        headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY,
-                                request.getServerSideEncryption().getCustomerKey());
-                        headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY_MD5,
-                                request.getServerSideEncryption().getCustomerKeyMd5());
-                        break;
-                    default:
-                        throw new B2LocalException("invalid_sse_mode", "invalid SSE mode in uploadFile");
-                }
-            }
-
-            if (request.getLegalHold() != null) {
-                headersBuilder.set(B2Headers.FILE_LEGAL_HOLD,
-                        request.getLegalHold());
-            }
-
-            if (request.getFileRetention() != null) {
-                // no need to send file retention headers; but may need to receive one for HEAD calls
-                // discussed inside getFileInfoByName
-                if (request.getFileRetention().getMode() != null) {
-                    headersBuilder.set(B2Headers.FILE_RETENTION_MODE,
-                            request.getFileRetention().getMode());
-                }
-                if (request.getFileRetention().getRetainUntilTimestamp() != null) {
-                    headersBuilder.set(B2Headers.FILE_RETENTION_RETAIN_UNTIL_TIMESTAMP,
-                            request.getFileRetention().getRetainUntilTimestamp().toString());
-                }
-            }
-
-            // if the source provides a last-modified time, add it.
-            final Long lastModMillis;
-            try {
-                lastModMillis = source.getSrcLastModifiedMillisOrNull();
-            } catch (IOException e) {
-                throw new B2LocalException("read_failed", "failed to get lastModified from source: " + e, e);
-            }
-            if (lastModMillis != null) {
-                headersBuilder.set(B2Headers.SRC_LAST_MODIFIED_MILLIS, Long.toString(lastModMillis, 10));
-            }
-
-            // add any custom file infos.
-            // Only percent encode the values.  Check the keys for legal characters
-            for (Map.Entry<String, String> entry : request.getFileInfo().entrySet()) {
-                validateFileInfoName(entry.getKey());
-                headersBuilder.set(B2Headers.FILE_INFO_PREFIX + entry.getKey(), percentEncode(entry.getValue()));
-            }
+            final B2Headers headers = makeUploadFileHeaders(uploadUrlResponse, request, contentDetails);
 
             final B2ByteProgressListener progressAdapter = new B2UploadProgressAdapter(uploadListener, 0, 1, 0, contentLen);
             final B2ByteProgressFilteringListener progressListener = new B2ByteProgressFilteringListener(progressAdapter);
@@ -323,7 +260,7 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
             try {
                 final B2FileVersion version = webApiClient.postDataReturnJson(
                         uploadUrlResponse.getUploadUrl(),
-                        headersBuilder.build(),
+                        headers,
                         new B2InputStreamWithByteProgressListener(contentDetails.getInputStream(), progressListener),
                         contentLen,
                         B2FileVersion.class);
@@ -344,6 +281,80 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
         }
     }
 
+    /**
+     * @return the headers for uploading the request's content to the upload url.
+     */
+    B2Headers makeUploadFileHeaders(B2UploadUrlResponse uploadUrlResponse,
+                                    B2UploadFileRequest request,
+                                    B2ContentDetailsForUpload contentDetails) throws B2Exception {
+        final B2ContentSource source = request.getContentSource();
+        final B2HeadersImpl.Builder headersBuilder = B2HeadersImpl
+                .builder()
+                .set(B2Headers.EXPECT, "100-continue")
+                .set(B2Headers.AUTHORIZATION, uploadUrlResponse.getAuthorizationToken())
+                .set(FILE_NAME, percentEncode(request.getFileName()))
+                .set(B2Headers.CONTENT_TYPE, request.getContentType())
+                .set(B2Headers.CONTENT_SHA1, contentDetails.getContentSha1HeaderValue());
+        setCommonHeaders(headersBuilder);
+
+        if (request.getServerSideEncryption() != null) {
+            switch (request.getServerSideEncryption().getMode()) {
+                case SSE_B2:
+                    headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION,
+                            request.getServerSideEncryption().getAlgorithm());
+                    break;
+                case SSE_C:
+                    headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_ALGORITHM,
+                            request.getServerSideEncryption().getAlgorithm());
+                    headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY,
+                            request.getServerSideEncryption().getCustomerKey());
+                    headersBuilder.set(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY_MD5,
+                            request.getServerSideEncryption().getCustomerKeyMd5());
+                    break;
+                default:
+                    throw new B2LocalException("invalid_sse_mode", "invalid SSE mode in uploadFile");
+            }
+        }
+
+        if (request.getLegalHold() != null) {
+            headersBuilder.set(B2Headers.FILE_LEGAL_HOLD,
+                    request.getLegalHold());
+        }
+
+        if (request.getFileRetention() != null) {
+            // no need to send file retention headers; but may need to receive one for HEAD calls
+            // discussed inside getFileInfoByName
+            if (request.getFileRetention().getMode() != null) {
+                headersBuilder.set(B2Headers.FILE_RETENTION_MODE,
+                        request.getFileRetention().getMode());
+            }
+            if (request.getFileRetention().getRetainUntilTimestamp() != null) {
+                headersBuilder.set(B2Headers.FILE_RETENTION_RETAIN_UNTIL_TIMESTAMP,
+                        request.getFileRetention().getRetainUntilTimestamp().toString());
+            }
+        }
+
+        // if the source provides a last-modified time, add it.
+        final Long lastModMillis;
+        try {
+            lastModMillis = source.getSrcLastModifiedMillisOrNull();
+        } catch (IOException e) {
+            throw new B2LocalException("read_failed", "failed to get lastModified from source: " + e, e);
+        }
+        if (lastModMillis != null) {
+            headersBuilder.set(B2Headers.SRC_LAST_MODIFIED_MILLIS, Long.toString(lastModMillis, 10));
+        }
+
+        // add any custom file infos.
+        // Only percent encode the values.  Check the keys for legal characters
+        for (Map.Entry<String, String> entry : request.getFileInfo().entrySet()) {
+            validateFileInfoName(entry.getKey());
+            headersBuilder.set(B2Headers.FILE_INFO_PREFIX + entry.getKey(), percentEncode(entry.getValue()));
+        }
+
+        return headersBuilder.build();
+    }
+
     @Override
     public B2FileVersion copyFile(B2AccountAuthorization accountAuth, B2CopyFileRequest request) throws B2Exception {
             return webApiClient.postJsonReturnJson(
@@ -422,6 +433,34 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
                 B2ListFileNamesResponse.class);
     }
 
+    @Override
+    public B2ListFileVersionsResponse listFileVersions(B2AccountAuthorization accountAuth,
+                                                       B2ListFileVersionsRequest request,
+                                                       Consumer<B2FileVersion> visitor) throws B2Exception {
+        return webApiClient.postJsonReturnJsonVisitingList(
+                makeUrl(accountAuth, "b2_list_file_versions"),
+                makeHeaders(accountAuth),
+                request,
+                B2ListFileVersionsResponse.class,
+                "files",
+                B2FileVersion.class,
+                visitor);
+    }
+
+    @Override
+    public B2ListFileNamesResponse listFileNames(B2AccountAuthorization accountAuth,
+                                                 B2ListFileNamesRequest request,
+                                                 Consumer<B2FileVersion> visitor) throws B2Exception {
+        return webApiClient.postJsonReturnJsonVisitingList(
+                makeUrl(accountAuth, "b2_list_file_names"),
+                makeHeaders(accountAuth),
+                request,
+                B2ListFileNamesResponse.class,
+                "files",
+                B2FileVersion.class,
+                visitor);
+    }
+
     @Override
     public B2ListUnfinishedLargeFilesResponse listUnfinishedLargeFiles(B2AccountAuthorization accountAuth,
                                                                        B2ListUnfinishedLargeFilesRequest request) throws B2Exception {
@@ -512,6 +551,18 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
                               B2ByteRange rangeOrNull,
                               B2FileSseForRequest serverSideEncryptionOrNull,
                               B2ContentSink handler) throws B2Exception {
+        webApiClient.getContent(
+                url,
+                makeDownloadHeaders(accountAuth, rangeOrNull, serverSideEncryptionOrNull),
+                handler);
+    }
+
+    /**
+     * @return the headers for downloading (some of) a file.
+     */
+    B2Headers makeDownloadHeaders(B2AccountAuthorization accountAuth,
+                                  B2ByteRange rangeOrNull,
+                                  B2FileSseForRequest serverSideEncryptionOrNull) {
         final Map<String, String> extras = new TreeMap<>();
         if (rangeOrNull != null) {
             extras.put(B2Headers.RANGE, rangeOrNull.toString());
@@ -522,10 +573,7 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
             extras.put(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY, serverSideEncryptionOrNull.getCustomerKey());
             extras.put(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY_MD5, serverSideEncryptionOrNull.getCustomerKeyMd5());
         }
-        webApiClient.getContent(
-                url,
-                makeHeaders(accountAuth, extras),
-                handler);
+        return makeHeaders(accountAuth, extras);
     }
 
     @Override
@@ -561,6 +609,17 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
     @Override
     public B2FileVersion getFileInfoByName(B2AccountAuthorization accountAuth,
                                            B2GetFileInfoByNameRequest request) throws B2Exception {
+        B2Headers headers = webApiClient.head(makeGetFileInfoByNameUrl(accountAuth, request.getBucketName(),
+                request.getFileName()), makeGetFileInfoByNameHeaders(accountAuth, request));
+
+        return makeFileVersionFromHeadResponse(accountAuth, headers);
+    }
+
+    /**
+     * @return the headers for the HEAD request that getFileInfoByName() makes.
+     */
+    B2Headers makeGetFileInfoByNameHeaders(B2AccountAuthorization accountAuth,
+                                           B2GetFileInfoByNameRequest request) {
         final Map<String, String> extras = new TreeMap<>();
         if (request.getServerSideEncryption() != null) {
             B2Preconditions.checkArgument(request.getServerSideEncryption().getMode().equals(SSE_C));
@@ -571,10 +630,15 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
             extras.put(B2Headers.SERVER_SIDE_ENCRYPTION_CUSTOMER_KEY_MD5,
                 request.getServerSideEncryption().getCustomerKeyMd5());
         }
+        return makeHeaders(accountAuth, extras);
+    }
 
-        B2Headers headers = webApiClient.head(makeGetFileInfoByNameUrl(accountAuth, request.getBucketName(),
-                request.getFileName()), makeHeaders(accountAuth, extras));
-
+    /**
+     * @return the file version described by the headers of the response
+     *         to the HEAD request that getFileInfoByName() makes.
+     */
+    B2FileVersion makeFileVersionFromHeadResponse(B2AccountAuthorization accountAuth,
+                                                  B2Headers headers) {
         final B2FileRetention b2FileRetentionOrNull = B2FileRetention.getFileRetentionFromHeadersOrNull(headers);
         final String legalHoldOrNull = headers.getFileLegalHoldOrNull();
 
@@ -669,7 +733,7 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
         builder.set(B2Headers.AUTHORIZATION, accountAuth.getAuthorizationToken());
     }
 
-    private B2Headers makeHeaders(B2AccountAuthorization accountAuth) {
+    B2Headers makeHeaders(B2AccountAuthorization accountAuth) {
         return makeHeaders(accountAuth, null);
     }
 
@@ -698,8 +762,8 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
     }
 
 
-    private String makeUrl(B2AccountAuthorization accountAuth,
-                           String apiName) {
+    String makeUrl(B2AccountAuthorization accountAuth,
+                   String apiName) {
         String url = accountAuth.getApiUrl();
         if (!url.endsWith("/")) {
             url += "/";
@@ -709,8 +773,8 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
         return url;
     }
 
-    private String makeDownloadByIdUrl(B2AccountAuthorization accountAuth,
-                                       B2DownloadByIdRequest request) {
+    String makeDownloadByIdUrl(B2AccountAuthorization accountAuth,
+                               B2DownloadByIdRequest request) {
         B2Preconditions.checkArgumentIsNotNull(request, "request");
         final String downloadUrl = accountAuth.getDownloadUrl();
         final StringBuilder uriBuilder = new StringBuilder(downloadUrl);
@@ -728,16 +792,16 @@ public class B2StorageClientWebifierImpl implements B2StorageClientWebifier {
         return uriBuilder.toString();
     }
 
-    private String makeGetFileInfoByNameUrl(B2AccountAuthorization accountAuth,
-                                         String bucketName,
-                                         String fileName) {
+    String makeGetFileInfoByNameUrl(B2AccountAuthorization accountAuth,
+                                    String bucketName,
+                                    String fileName) {
         return makeDownloadByNameUrl(accountAuth, bucketName, fileName, null);
     }
 
-    private String makeDownloadByNameUrl(B2AccountAuthorization accountAuth,
-                                         String bucketName,
-                                         String fileName,
-                                         B2DownloadByNameRequest request) {
+    String makeDownloadByNameUrl(B2AccountAuthorization accountAuth,
+                                 String bucketName,
+                                 String fileName,
+                                 B2DownloadByNameRequest request) {
         final String downloadUrl = accountAuth.getDownloadUrl();
         final StringBuilder uriBuilder = new StringBuilder(downloadUrl);
 
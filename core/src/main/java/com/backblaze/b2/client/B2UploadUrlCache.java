@@ -7,10 +7,22 @@ package com.backblaze.b2.client;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.structures.B2GetUploadUrlRequest;
 import com.backblaze.b2.client.structures.B2UploadUrlResponse;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2ExecutorUtils;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The B2UploadUrlCache holds upload urls for buckets.
@@ -18,14 +30,28 @@ import java.util.Map;
  * If you use it and it works, unget() it when you're done.
  * If there's trouble, don't unget() it so it won't be used again.
  *
+ * If minPoolSize is positive, the cache tries to keep at least that many
+ * urls on hand for each bucket it's been asked about.  Whenever a bucket
+ * has fewer than that, we get more in the background, so that get()
+ * usually doesn't have to wait for the server.  warm() fills the pool
+ * for a bucket ahead of time.
+ *
+ * Urls that are older than maxAgeMillis are never handed out.  We just
+ * drop them and use another one.
+ *
  * THREAD-SAFETY: this class may be used from multiple threads safely.
  */
-class B2UploadUrlCache {
+class B2UploadUrlCache implements AutoCloseable {
     // how many buckets are we willing to track at once?
     static final int MAX_BUCKETS = 100;
 
     private final B2StorageClientWebifier webifier;
     private final B2AccountAuthorizationCache accountAuthCache;
+    private final int minPoolSize;
+    private final long maxAgeMillis;
+
+    // runs the background refills.  null if minPoolSize is zero.
+    private final Executor refillExecutorOrNull;
 
     // this is a LinkedHashMap because i want get rid of the least recently
     // used entries when we've got more than 100 buckets.  that's the most
@@ -36,18 +62,50 @@ class B2UploadUrlCache {
     // this contains deques so that i can inexpensively pull from the
     // front and add to the end so that answers don't get stuck too long.
     //
-    // it might be nice to have a maximum number of responses per bucket
-    // that i'm willing to keep or a maximum age before we consider them
-    // too old, or something else to help bound memory usage.  meanwhile,
-    // it should be roughly bound by the number of threads that have
-    // ever uploaded to a given bucket simultaneously and that's probably
-    // good enough.
+    // the number of responses per bucket is roughly bound by the number
+    // of threads that have ever uploaded to a given bucket simultaneously
+    // (or minPoolSize, if that's bigger).  responses older than maxAgeMillis
+    // are dropped when we come across them.
     private final Map<String, Deque<B2UploadUrlResponse>> perBucket;
 
+    // when we got each response from the server, so we know when it's too
+    // old.  it's weak so that we forget about responses that callers drop
+    // after trouble.  responses we didn't get from the server ourselves are
+    // treated as if we got them when they were first offered to us.
+    private final Map<B2UploadUrlResponse, Long> obtainedMonoMillis = new WeakHashMap<>();
+
+    // the buckets that have a refill queued or running.
+    private final Set<String> refillingBucketIds = new HashSet<>();
+
     B2UploadUrlCache(B2StorageClientWebifier webifier,
                      B2AccountAuthorizationCache accountAuthCache) {
+        this(webifier,
+                accountAuthCache,
+                B2ClientConfig.DEFAULT_UPLOAD_URL_POOL_MIN_SIZE_PER_BUCKET,
+                B2ClientConfig.DEFAULT_UPLOAD_URL_MAX_AGE_MILLIS);
+    }
+
+    B2UploadUrlCache(B2StorageClientWebifier webifier,
+                     B2AccountAuthorizationCache accountAuthCache,
+                     int minPoolSize,
+                     long maxAgeMillis) {
+        this(webifier,
+                accountAuthCache,
+                minPoolSize,
+                maxAgeMillis,
+                (minPoolSize > 0) ? makeRefillExecutor() : null);
+    }
+
+    /*forTests*/ B2UploadUrlCache(B2StorageClientWebifier webifier,
+                                  B2AccountAuthorizationCache accountAuthCache,
+                                  int minPoolSize,
+                                  long maxAgeMillis,
+                                  Executor refillExecutorOrNull) {
         this.webifier = webifier;
         this.accountAuthCache = accountAuthCache;
+        this.minPoolSize = minPoolSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.refillExecutorOrNull = refillExecutorOrNull;
         perBucket = B2BoundedLruMap.withMax(MAX_BUCKETS);
     }
 
@@ -63,6 +121,27 @@ class B2UploadUrlCache {
      */
     B2UploadUrlResponse get(String bucketId,
                             boolean isRetry) throws B2Exception {
+        final B2UploadUrlResponse cachedOrNull = getCachedOrNull(bucketId, isRetry);
+        if (cachedOrNull != null) {
+            return cachedOrNull;
+        }
+
+        // we don't have an answer yet, so ask the server for one and return it.
+        return getFromServer(bucketId);
+    }
+
+    /**
+     * Just like get(), except that it never asks the server itself.  It's for
+     * callers who want to get an upload url from the server in their own way
+     * when we don't have one on hand.
+     *
+     * @param bucketId the bucket we want to upload to.
+     * @param isRetry says whether we want a url for a retry or for an initial attempt.
+     * @return a cached upload url response for the bucket, or null if the
+     *         caller should get one from the server.
+     */
+    B2UploadUrlResponse getCachedOrNull(String bucketId,
+                                        boolean isRetry) {
         // we don't use cached URLs for retries because many of them may have
         // gotten stale simultaneously and we don't want to use up all of client's
         // retries on stale URLs.  as long as every client first calls this
@@ -71,20 +150,13 @@ class B2UploadUrlCache {
         // we won't build up lots of URLs.
         if (!isRetry) {
             // first, look to see if we have an answer already.
-            synchronized (this) {
-                Deque<B2UploadUrlResponse> responses = perBucket.get(bucketId);
-                if (responses != null) {
-                    B2UploadUrlResponse response = responses.pollFirst();
-                    if (response != null) {
-                        return response;
-                    }
-                }
-            }
+            final B2UploadUrlResponse response = pollFreshResponseOrNull(bucketId);
+            maybeStartRefill(bucketId);
+            return response;
+        } else {
+            maybeStartRefill(bucketId);
+            return null;
         }
-
-        // we don't have an answer yet, so ask the server for one and return it.
-        final B2GetUploadUrlRequest request = B2GetUploadUrlRequest.builder(bucketId).build();
-        return webifier.getUploadUrl(accountAuthCache.get(), request);
     }
 
     /**
@@ -96,7 +168,142 @@ class B2UploadUrlCache {
      * @param response the response to return to the cache for later use.
      */
     synchronized void unget(B2UploadUrlResponse response) {
+        obtainedMonoMillis.putIfAbsent(response, B2Clock.get().monotonicMillis());
         Deque<B2UploadUrlResponse> responses = perBucket.computeIfAbsent(response.getBucketId(), k -> new ArrayDeque<>());
         responses.offerLast(response);
     }
+
+    /**
+     * Gets upload urls for the bucket until it has minPoolSize of them
+     * (or at least one, if minPoolSize is zero).  It blocks until they've
+     * all been gotten, so that the first uploads to the bucket don't have
+     * to wait.
+     *
+     * @param bucketId the bucket to get upload urls for.
+     * @throws B2Exception if there's trouble getting an upload url.
+     */
+    void warm(String bucketId) throws B2Exception {
+        final int targetSize = Math.max(1, minPoolSize);
+        while (countFreshResponses(bucketId) < targetSize) {
+            unget(getFromServer(bucketId));
+        }
+    }
+
+    /**
+     * Stops the background refills, if there are any.
+     */
+    @Override
+    public void close() {
+        if (refillExecutorOrNull instanceof ExecutorService) {
+            ((ExecutorService) refillExecutorOrNull).shutdownNow();
+        }
+    }
+
+    private B2UploadUrlResponse getFromServer(String bucketId) throws B2Exception {
+        final B2GetUploadUrlRequest request = B2GetUploadUrlRequest.builder(bucketId).build();
+        final long beforeMonoMillis = B2Clock.get().monotonicMillis();
+        final B2UploadUrlResponse response = webifier.getUploadUrl(accountAuthCache.get(), request);
+        synchronized (this) {
+            // use the time we asked, so we're conservative about the age.
+            obtainedMonoMillis.put(response, beforeMonoMillis);
+        }
+        return response;
+    }
+
+    private synchronized B2UploadUrlResponse pollFreshResponseOrNull(String bucketId) {
+        final Deque<B2UploadUrlResponse> responses = perBucket.get(bucketId);
+        if (responses == null) {
+            return null;
+        }
+        B2UploadUrlResponse response;
+        while ((response = responses.pollFirst()) != null) {
+            if (!isTooOld(response)) {
+                return response;
+            }
+            obtainedMonoMillis.remove(response);
+        }
+        return null;
+    }
+
+    /**
+     * Drops any responses that are too old and returns how many are left.
+     */
+    private synchronized int countFreshResponses(String bucketId) {
+        final Deque<B2UploadUrlResponse> responses = perBucket.get(bucketId);
+        if (responses == null) {
+            return 0;
+        }
+        responses.removeIf(response -> {
+            if (isTooOld(response)) {
+                obtainedMonoMillis.remove(response);
+                return true;
+            }
+            return false;
+        });
+        return responses.size();
+    }
+
+    private boolean isTooOld(B2UploadUrlResponse response) {
+        final Long obtained = obtainedMonoMillis.get(response);
+        return obtained != null && B2Clock.get().monotonicMillis() - obtained >= maxAgeMillis;
+    }
+
+    private void maybeStartRefill(String bucketId) {
+        if (refillExecutorOrNull == null) {
+            return;
+        }
+        synchronized (this) {
+            if (refillingBucketIds.contains(bucketId) || countFreshResponses(bucketId) >= minPoolSize) {
+                return;
+            }
+            refillingBucketIds.add(bucketId);
+        }
+
+        try {
+            refillExecutorOrNull.execute(() -> refill(bucketId));
+        } catch (RejectedExecutionException e) {
+            // we've been closed.  callers will just have to get their own.
+            synchronized (this) {
+                refillingBucketIds.remove(bucketId);
+            }
+        }
+    }
+
+    private void refill(String bucketId) {
+        try {
+            while (countFreshResponses(bucketId) < minPoolSize) {
+                unget(getFromServer(bucketId));
+            }
+        } catch (B2Exception | RuntimeException e) {
+            // give up for now.  callers will get their own url from the server,
+            // which will tell them about any trouble, and the next get() will
+            // start another refill.
+        } finally {
+            synchronized (this) {
+                refillingBucketIds.remove(bucketId);
+            }
+        }
+    }
+
+    /**
+     * Refills are occasional and go one at a time, so a single thread is
+     * plenty.  It goes away when it's idle, and it's a daemon so that
+     * a client that isn't closed doesn't keep the JVM alive.
+     */
+    private static ExecutorService makeRefillExecutor() {
+        final ThreadFactory namingFactory = B2ExecutorUtils.createThreadFactory("B2UploadUrlCache-refill-%d");
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1,
+                1,
+                30,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = namingFactory.newThread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
@@ -12,6 +12,8 @@ import com.backblaze.b2.client.structures.B2UploadListener;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This implementation stores a part of a large file by uploading
  * the bytes from a B2ContentSource.
@@ -50,6 +52,16 @@ public class B2UploadingPartStorer implements B2PartStorer {
         return largeFileCreationManager.uploadPart(partNumber, cancellableContentSource, uploadListener, cancellationToken);
     }
 
+    @Override
+    public CompletableFuture<B2Part> storePartAsync(
+            B2LargeFileStorer largeFileCreationManager,
+            B2UploadListener uploadListener,
+            B2CancellationToken cancellationToken) {
+
+        final B2CancellableContentSource cancellableContentSource = new B2CancellableContentSource(contentSource, cancellationToken);
+        return largeFileCreationManager.uploadPartAsync(partNumber, cancellableContentSource, uploadListener, cancellationToken);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
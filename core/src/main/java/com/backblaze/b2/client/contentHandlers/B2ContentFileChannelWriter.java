@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.contentHandlers;
+
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.util.B2ByteBufferPool;
+import com.backblaze.b2.util.B2Preconditions;
+import com.backblaze.b2.util.B2Sha1;
+import com.backblaze.b2.util.B2StringUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * B2ContentFileChannelWriter is a B2ContentSink which writes the content to
+ * a file through a FileChannel, in big chunks.  B2ContentFileWriter copies
+ * through a 4 KB buffer, which is a lot of reads and writes for a big,
+ * fast download.  This fills a much bigger buffer from the network before
+ * each write.
+ *
+ * The buffers come from a B2ByteBufferPool.  By default, each writer has its
+ * own pool, which is only reused when the download is retried.  To avoid
+ * allocating a new buffer for each download, give the writers a shared pool.
+ *
+ * If possible (see B2ContentWriter), the SHA1 of the bytes written to the file
+ * is checked after the file has been forced to disk, so there's no need to
+ * read the file back to verify it.
+ *
+ * THREAD-SAFETY: this object is NOT thread-safe on its own.  users should
+ *                only use it from one thread at a time and do proper locking
+ *                to ensure changes are visible to other threads as needed.
+ */
+public class B2ContentFileChannelWriter implements B2ContentSink {
+    /**
+     * By default, this many bytes are read from the network before each write.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final int EOF = -1;
+
+    private final File outputFile;
+    private final B2ByteBufferPool bufferPool;
+    private final boolean verifySha1;
+    private B2Headers headers; // null until readContent is called.
+
+    private B2ContentFileChannelWriter(File outputFile,
+                                       B2ByteBufferPool bufferPool,
+                                       boolean verifySha1) {
+        this.outputFile = outputFile;
+        this.bufferPool = bufferPool;
+        this.verifySha1 = verifySha1;
+    }
+
+    public static Builder builder(File outputFile) {
+        return new Builder(outputFile);
+    }
+
+    @Override
+    public void readContent(B2Headers responseHeaders,
+                            InputStream in) throws B2Exception {
+        // grab the headers for later.
+        this.headers = responseHeaders;
+
+        // this is null if we can't (or shouldn't) check the sha1.
+        final String expectedSha1OrNull = verifySha1 ? B2ContentWriter.getSha1ToCheckOrNull(responseHeaders) : null;
+        final MessageDigest digestOrNull = (expectedSha1OrNull != null) ? B2Sha1.createSha1MessageDigest() : null;
+
+        final ByteBuffer buffer = bufferPool.acquire();
+        try (FileChannel channel = openOrThrow()) {
+            final byte[] array = buffer.array();
+            int filled;
+            do {
+                filled = fill(in, array);
+                if (digestOrNull != null) {
+                    digestOrNull.update(array, 0, filled);
+                }
+                buffer.clear();
+                buffer.limit(filled);
+                writeOrThrow(channel, buffer);
+            } while (filled == array.length);
+
+            forceOrThrow(channel);
+        } catch (IOException e) {
+            // closing the channel failed.
+            throw new B2LocalException("write_failed", "couldn't close destination file: " + e.getMessage(), e);
+        } finally {
+            bufferPool.release(buffer);
+        }
+
+        if (digestOrNull != null) {
+            final String actualSha1 = B2StringUtil.toHexString(digestOrNull.digest());
+            if (!B2Sha1.equalHexSha1s(expectedSha1OrNull, actualSha1)) {
+                throw new B2LocalException("mismatch", "sha1 mismatch as written to destination.  expected " + expectedSha1OrNull + ", but got " + actualSha1);
+            }
+        }
+    }
+
+    /**
+     * @return the headers from the server, if any.
+     *         returns null until readContent is called.
+     *         may return non-null even if there's an exception
+     *         during readContent().
+     */
+    public B2Headers getHeadersOrNull() {
+        return headers;
+    }
+
+    // for tests.
+    B2ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Reads from 'in' until the array is full or there's nothing left.
+     *
+     * @return the number of bytes read.  it's less than array.length iff we hit the end.
+     */
+    private static int fill(InputStream in,
+                            byte[] array) throws B2Exception {
+        int filled = 0;
+        while (filled < array.length) {
+            final int nRead;
+            try {
+                nRead = in.read(array, filled, array.length - filled);
+            } catch (IOException e) {
+                throw new B2ConnectionBrokenException("read_failed", null, "read failed: " + e.getMessage(), e);
+            }
+            if (nRead == EOF) {
+                break;
+            }
+            filled += nRead;
+        }
+        return filled;
+    }
+
+    private FileChannel openOrThrow() throws B2Exception {
+        try {
+            return FileChannel.open(outputFile.toPath(), CREATE, WRITE, TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new B2LocalException("write_failed", "couldn't open destination file to write it: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeOrThrow(FileChannel channel,
+                                     ByteBuffer buffer) throws B2Exception {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new B2LocalException("write_failed", "write failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static void forceOrThrow(FileChannel channel) throws B2Exception {
+        try {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new B2LocalException("write_failed", "couldn't sync destination file: " + e.getMessage(), e);
+        }
+    }
+
+    public static class Builder {
+        private final File outputFile;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private B2ByteBufferPool bufferPoolOrNull;
+        private boolean verifySha1 = true;
+
+        private Builder(File outputFile) {
+            B2Preconditions.checkArgumentIsNotNull(outputFile, "outputFile");
+            this.outputFile = outputFile;
+        }
+
+        /**
+         * @param bufferSize how many bytes to read from the network before each write.
+         *                   ignored if setBufferPool() is used.
+         * @return this builder.
+         */
+        public Builder setBufferSize(int bufferSize) {
+            B2Preconditions.checkArgument(bufferSize > 0, "bufferSize must be positive");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param bufferPool the pool to get buffers from.  its buffer size is the
+         *                   number of bytes read from the network before each write.
+         * @return this builder.
+         */
+        public Builder setBufferPool(B2ByteBufferPool bufferPool) {
+            this.bufferPoolOrNull = bufferPool;
+            return this;
+        }
+
+        /**
+         * @param verifySha1 if true (the default), the SHA1 of the content is checked
+         *                   when the response says what it should be.
+         * @return this builder.
+         */
+        public Builder setVerifySha1(boolean verifySha1) {
+            this.verifySha1 = verifySha1;
+            return this;
+        }
+
+        public B2ContentFileChannelWriter build() {
+            final B2ByteBufferPool bufferPool = (bufferPoolOrNull != null) ?
+                    bufferPoolOrNull :
+                    new B2ByteBufferPool(bufferSize, 1);
+            return new B2ContentFileChannelWriter(outputFile, bufferPool, verifySha1);
+        }
+    }
+}
@@ -15,14 +15,18 @@ import java.io.OutputStream;
 /**
  * This is a B2ContentWriter which records the incoming data into a file on disk.
  *
- * It is careful to flush &amp; sync the file when closing it.
+ * It is careful to flush &amp; sync the file when closing it.  Because of that,
+ * setVerifySha1AsWrittenToDestination(true) along with
+ * setVerifySha1ByRereadingFromDestination(false) verifies the file without
+ * reading it back from disk.
  */
 public class B2ContentFileWriter extends B2ContentWriter {
     private final File outputFile;
 
     private B2ContentFileWriter(File outputFile,
-                                boolean verifySha1ByRereadingFromDisk) {
-        super(verifySha1ByRereadingFromDisk);
+                                boolean verifySha1ByRereadingFromDisk,
+                                boolean verifySha1AsWrittenToDisk) {
+        super(verifySha1ByRereadingFromDisk, verifySha1AsWrittenToDisk);
         this.outputFile = outputFile;
     }
 
@@ -43,6 +47,7 @@ public class B2ContentFileWriter extends B2ContentWriter {
     public static class Builder {
         private final File outputFile;
         private boolean verifySha1ByRereadingFromDestination = true;
+        private boolean verifySha1AsWrittenToDestination = false;
 
         private Builder(File file) {
             this.outputFile = file;
@@ -50,12 +55,25 @@ public class B2ContentFileWriter extends B2ContentWriter {
 
 
         public B2ContentFileWriter build() {
-            return new B2ContentFileWriter(outputFile, verifySha1ByRereadingFromDestination);
+            return new B2ContentFileWriter(outputFile, verifySha1ByRereadingFromDestination, verifySha1AsWrittenToDestination);
         }
 
         public Builder setVerifySha1ByRereadingFromDestination(boolean verifySha1ByRereadingFromDestination) {
             this.verifySha1ByRereadingFromDestination = verifySha1ByRereadingFromDestination;
             return this;
         }
+
+        /**
+         * @param verifySha1AsWrittenToDestination if true, the SHA1 is computed from the
+         *                                         bytes as they're written to the file,
+         *                                         instead of from the bytes read from the
+         *                                         network, and checked after the file has
+         *                                         been synced.
+         * @return this builder.
+         */
+        public Builder setVerifySha1AsWrittenToDestination(boolean verifySha1AsWrittenToDestination) {
+            this.verifySha1AsWrittenToDestination = verifySha1AsWrittenToDestination;
+            return this;
+        }
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.contentHandlers;
+
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.util.B2ByteBufferSizeClassPool;
+import com.backblaze.b2.util.B2Preconditions;
+import com.backblaze.b2.util.B2Sha1;
+import com.backblaze.b2.util.B2StringUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * B2ContentPooledMemoryWriter is a B2ContentSink which reads the content
+ * into a ByteBuffer from a B2ByteBufferSizeClassPool.
+ *
+ * B2ContentMemoryWriter grows a byte array as the content arrives, and
+ * getBytes() copies it, so each download allocates the content at least
+ * twice.  This one gets a buffer of the right size (from the response's
+ * Content-Length) from the pool, reads straight into its array, and hands
+ * back a read-only view of it.  Once the pool has warmed up, downloading
+ * lots of similar-sized objects allocates almost nothing.
+ *
+ * When you're done with the content, call release() to give the buffer back
+ * to the pool.  You must not use the ByteBuffer from getContent() after that.
+ * If you never call release(), the buffer is just left for the garbage
+ * collector, like with B2ContentMemoryWriter.
+ *
+ * If possible (see B2ContentWriter), the SHA1 of the content is checked as
+ * it's read.
+ *
+ * THREAD-SAFETY: this object is NOT thread-safe on its own.  users should
+ *                only use it from one thread at a time and do proper locking
+ *                to ensure changes are visible to other threads as needed.
+ */
+public class B2ContentPooledMemoryWriter implements B2ContentSink {
+    private static final int EOF = -1;
+    private static final long MAX_LEN = Integer.MAX_VALUE;
+
+    private final B2ByteBufferSizeClassPool bufferPool;
+    private final boolean verifySha1;
+
+    private B2Headers headers;       // null until readContent is called.
+    private ByteBuffer bufferOrNull; // null until readContent is called, and after release().
+    private int contentLength;
+    private boolean gotContent;
+
+    private B2ContentPooledMemoryWriter(B2ByteBufferSizeClassPool bufferPool,
+                                        boolean verifySha1) {
+        this.bufferPool = bufferPool;
+        this.verifySha1 = verifySha1;
+    }
+
+    /**
+     * @param bufferPool the pool to get the buffer from.  share one pool between
+     *                   all of the writers, so they can reuse each other's buffers.
+     * @return a new builder.
+     */
+    public static Builder builder(B2ByteBufferSizeClassPool bufferPool) {
+        return new Builder(bufferPool);
+    }
+
+    @Override
+    public void readContent(B2Headers responseHeaders,
+                            InputStream in) throws B2Exception {
+        // if this is a retry, start over with a fresh buffer.
+        release();
+        gotContent = false;
+
+        // grab the headers for later.
+        this.headers = responseHeaders;
+
+        final long len = responseHeaders.getContentLength();
+        if (len >= MAX_LEN) {
+            throw new B2LocalException("too_big",
+                    "contentLength is too big for this B2ContentPooledMemoryWriter.  (" + len + " > " + MAX_LEN + ")");
+        }
+        contentLength = (int) len;
+        bufferOrNull = bufferPool.acquire(contentLength);
+
+        final byte[] array = bufferOrNull.array();
+        fillOrThrow(in, array, contentLength);
+        throwIfMoreContent(in);
+
+        // this is null if we can't (or shouldn't) check the sha1.
+        final String expectedSha1OrNull = verifySha1 ? B2ContentWriter.getSha1ToCheckOrNull(responseHeaders) : null;
+        if (expectedSha1OrNull != null) {
+            final MessageDigest digest = B2Sha1.createSha1MessageDigest();
+            digest.update(array, 0, contentLength);
+            final String actualSha1 = B2StringUtil.toHexString(digest.digest());
+            if (!B2Sha1.equalHexSha1s(expectedSha1OrNull, actualSha1)) {
+                throw new B2LocalException("mismatch", "sha1 mismatch from network.  expected " + expectedSha1OrNull + ", but got " + actualSha1);
+            }
+        }
+        gotContent = true;
+    }
+
+    /**
+     * @return the headers from the server, if any.
+     *         returns null until readContent is called.
+     *         may return non-null even if there's an exception
+     *         during readContent().
+     */
+    public B2Headers getHeadersOrNull() {
+        return headers;
+    }
+
+    /**
+     * @return a read-only view of the content, from position zero to its length.
+     *         it's only valid until release() is called.
+     * @throws IllegalStateException if readContent() hasn't succeeded, or
+     *         if release() has been called since then.
+     */
+    public ByteBuffer getContent() {
+        B2Preconditions.checkState(gotContent && bufferOrNull != null, "there's no content.  did the download fail or was it already released?");
+        final ByteBuffer view = bufferOrNull.asReadOnlyBuffer();
+        view.clear();
+        view.limit(contentLength);
+        return view;
+    }
+
+    /**
+     * Gives the buffer back to the pool.  After this, the ByteBuffers from
+     * getContent() must not be used.  It's fine to call this more than once.
+     */
+    public void release() {
+        if (bufferOrNull != null) {
+            bufferPool.release(bufferOrNull);
+            bufferOrNull = null;
+        }
+        gotContent = false;
+    }
+
+    /**
+     * Reads exactly len bytes from 'in' into the start of the array.
+     */
+    private static void fillOrThrow(InputStream in,
+                                    byte[] array,
+                                    int len) throws B2Exception {
+        int filled = 0;
+        while (filled < len) {
+            final int nRead = readOrThrow(in, array, filled, len - filled);
+            if (nRead == EOF) {
+                throw new B2ConnectionBrokenException("read_failed", null, "the response ended after " + filled + " of " + len + " bytes");
+            }
+            filled += nRead;
+        }
+    }
+
+    private static void throwIfMoreContent(InputStream in) throws B2Exception {
+        final byte[] oneByte = new byte[1];
+        if (readOrThrow(in, oneByte, 0, 1) != EOF) {
+            throw new B2LocalException("mismatch", "got more bytes than the Content-Length said there would be");
+        }
+    }
+
+    private static int readOrThrow(InputStream in,
+                                   byte[] array,
+                                   int offset,
+                                   int len) throws B2Exception {
+        try {
+            return in.read(array, offset, len);
+        } catch (IOException e) {
+            throw new B2ConnectionBrokenException("read_failed", null, "read failed: " + e.getMessage(), e);
+        }
+    }
+
+    public static class Builder {
+        private final B2ByteBufferSizeClassPool bufferPool;
+        private boolean verifySha1 = true;
+
+        private Builder(B2ByteBufferSizeClassPool bufferPool) {
+            B2Preconditions.checkArgumentIsNotNull(bufferPool, "bufferPool");
+            this.bufferPool = bufferPool;
+        }
+
+        /**
+         * @param verifySha1 if true (the default), the SHA1 of the content is checked
+         *                   when the response says what it should be.
+         * @return this builder.
+         */
+        public Builder setVerifySha1(boolean verifySha1) {
+            this.verifySha1 = verifySha1;
+            return this;
+        }
+
+        public B2ContentPooledMemoryWriter build() {
+            return new B2ContentPooledMemoryWriter(bufferPool, verifySha1);
+        }
+    }
+}
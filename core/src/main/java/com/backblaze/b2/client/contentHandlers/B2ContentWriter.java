@@ -12,6 +12,7 @@ import com.backblaze.b2.util.B2IoUtils;
 import com.backblaze.b2.util.B2Preconditions;
 import com.backblaze.b2.util.B2Sha1;
 import com.backblaze.b2.util.B2Sha1InputStream;
+import com.backblaze.b2.util.B2Sha1OutputStream;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -40,6 +41,13 @@ import static com.backblaze.b2.util.B2IoUtils.closeQuietly;
  * content from its destination to verify that it has been stored to the destination
  * with no errors.
  *
+ * If possible (see above) and requested, this class will instead compute the
+ * SHA1 of the bytes as they're written to the destination, and check it after
+ * the destination has been closed.  That covers both the network and the
+ * writing, without reading the content again, so it's a cheaper alternative
+ * to re-reading from destinations that make sure the bytes are stored by the
+ * time they're closed (like B2ContentFileWriter, which syncs).
+ *
  * THREAD-SAFETY: this object is NOT thread-safe on its own.  users should
  *                only use it from one thread at a time and do proper locking
  *                to ensure changes are visible to other threads as needed.
@@ -48,10 +56,17 @@ public abstract class B2ContentWriter implements B2ContentSink {
     private static final int EOF = -1;
     private static final int DEFAULT_COPY_BUFFER_SIZE = 4 * 1024;
     private final boolean verifySha1ByRereadingFromDestination;
+    private final boolean verifySha1AsWrittenToDestination;
     private B2Headers headers; // null until readContent is called.
 
     B2ContentWriter(boolean verifySha1ByRereadingFromDestination) {
+        this(verifySha1ByRereadingFromDestination, false);
+    }
+
+    B2ContentWriter(boolean verifySha1ByRereadingFromDestination,
+                    boolean verifySha1AsWrittenToDestination) {
         this.verifySha1ByRereadingFromDestination = verifySha1ByRereadingFromDestination;
+        this.verifySha1AsWrittenToDestination = verifySha1AsWrittenToDestination;
     }
 
     // for tests.
@@ -59,6 +74,11 @@ public abstract class B2ContentWriter implements B2ContentSink {
         return verifySha1ByRereadingFromDestination;
     }
 
+    // for tests.
+    boolean getVerifySha1AsWrittenToDestination() {
+        return verifySha1AsWrittenToDestination;
+    }
+
     @Override
     public void readContent(B2Headers responseHeaders,
                             InputStream rawIn) throws B2Exception {
@@ -68,9 +88,13 @@ public abstract class B2ContentWriter implements B2ContentSink {
         // this is null if we can't check the sha1 for this input stream.
         final String expectedSha1OrNull = getSha1ToCheckOrNull(this.headers);
 
+        // when we're checking what's written to the destination, there's
+        // no need to also digest what we read from the network.
+        final boolean checkAsWritten = (expectedSha1OrNull != null) && verifySha1AsWrittenToDestination;
+
         // we'll read from 'in'.
         final InputStream in;
-        if (expectedSha1OrNull != null) {
+        if (expectedSha1OrNull != null && !checkAsWritten) {
             in =  new B2Sha1InputStream(rawIn);
         } else {
             in = rawIn;
@@ -83,11 +107,21 @@ public abstract class B2ContentWriter implements B2ContentSink {
 
             // copy to the destination.
             out = createDestinationOutputStreamOrThrow();
+            final B2Sha1OutputStream sha1OutOrNull = checkAsWritten ? new B2Sha1OutputStream(out) : null;
+            if (sha1OutOrNull != null) {
+                out = sha1OutOrNull;
+            }
             copy(in, out);
             closeOrThrow(out);
 
-            // if possible, verify that the right data was read from the network.
-            maybeCheckSha1("from network", expectedSha1OrNull, in);
+            if (sha1OutOrNull != null) {
+                // verify that the right data was handed to the destination,
+                // which also means it was read from the network correctly.
+                checkSha1("as written to destination", expectedSha1OrNull, sha1OutOrNull.hexDigest());
+            } else {
+                // if possible, verify that the right data was read from the network.
+                maybeCheckSha1("from network", expectedSha1OrNull, in);
+            }
 
             // if possible and requested, verify that the right data made it to the destination.
             maybeVerifySha1FromDestination(expectedSha1OrNull);
@@ -119,9 +153,14 @@ public abstract class B2ContentWriter implements B2ContentSink {
         }
 
         B2Preconditions.checkArgument(in instanceof B2Sha1InputStream);
-        final String actualSha1 = ((B2Sha1InputStream) in).hexDigest();
-        if (!B2Sha1.equalHexSha1s(expectedSha1OrNull, actualSha1)) {
-            throw new B2LocalException("mismatch", "sha1 mismatch " + when + ".  expected " + expectedSha1OrNull + ", but got " + actualSha1);
+        checkSha1(when, expectedSha1OrNull, ((B2Sha1InputStream) in).hexDigest());
+    }
+
+    private void checkSha1(String when,
+                           String expectedSha1,
+                           String actualSha1) throws B2LocalException {
+        if (!B2Sha1.equalHexSha1s(expectedSha1, actualSha1)) {
+            throw new B2LocalException("mismatch", "sha1 mismatch " + when + ".  expected " + expectedSha1 + ", but got " + actualSha1);
         }
     }
 
@@ -144,7 +183,13 @@ public abstract class B2ContentWriter implements B2ContentSink {
     }
 
 
-    /*forTests*/ static String getSha1ToCheckOrNull(B2Headers headers) {
+    /**
+     * @param headers the headers of a download response.
+     * @return the SHA1 that the downloaded content should have, or null if
+     *         it can't be checked, because it's a range or B2 doesn't know
+     *         the SHA1 of the whole file.
+     */
+    public static String getSha1ToCheckOrNull(B2Headers headers) {
         if (headers.hasContentRange()) {
             return null;
         }
@@ -47,6 +47,11 @@ public class B2FileContentSource implements B2ContentSource {
         return new FileInputStream(source);
     }
 
+    @Override
+    public B2ContentSource createContentSourceWithRangeOrNull(long start, long length) throws IOException {
+        return new B2FileRangeContentSource(source, start, length);
+    }
+
     public static class Builder {
         private final File source;
         private String sha1;
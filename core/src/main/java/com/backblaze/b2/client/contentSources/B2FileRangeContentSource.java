@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.contentSources;
+
+import com.backblaze.b2.util.B2FileRangeInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * B2FileRangeContentSource provides one range of a file, such as
+ * a part of a large file that's being uploaded.
+ *
+ * Each call to createInputStream() opens the file again and starts
+ * reading right at the start of the range, so retrying a part near
+ * the end of a huge file is just as cheap as retrying the first one.
+ */
+class B2FileRangeContentSource implements B2ContentSource {
+    private final File source;
+    private final long start;
+    private final long length;
+
+    B2FileRangeContentSource(File source,
+                             long start,
+                             long length) {
+        this.source = source;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public long getContentLength() throws IOException {
+        return length;
+    }
+
+    @Override
+    public String getSha1OrNull() throws IOException {
+        return null;
+    }
+
+    @Override
+    public Long getSrcLastModifiedMillisOrNull() throws IOException {
+        throw new IllegalStateException("why are we asking about the srcLastModifiedMillis of a PART?");
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+        return B2FileRangeInputStream.open(source, start, length);
+    }
+
+    @Override
+    public String toString() {
+        return "B2FileRangeContentSource{" +
+                "start=" + start +
+                ", length=" + length +
+                ", source=" + source +
+                '}';
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.structures;
+
+/**
+ * A B2BulkDeleteListener is called by B2BulkDeleter after each file version
+ * is deleted, and once more when the bulk delete is done, to provide an
+ * indication of progress.
+ *
+ * THREAD-SAFETY: Listeners will be called from arbitrary threads and may be
+ * called from multiple threads simultaneously.  As a result, implementations
+ * of B2BulkDeleteListener must be thread-safe.
+ *
+ * PERFORMANCE: do not do anything that might block the thread for any appreciable
+ *              amount of time.  doing so will slow down the deletes.
+ */
+public interface B2BulkDeleteListener {
+
+    /**
+     * Called with progress about a bulk delete.
+     */
+    void progress(B2BulkDeleteProgress progress);
+
+    /**
+     * @return A listener that doesn't do anything when called.
+     */
+    static B2BulkDeleteListener noopListener() {
+        return (progress) -> {
+        };
+    }
+}
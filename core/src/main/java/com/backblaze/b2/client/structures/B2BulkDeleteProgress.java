@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.structures;
+
+import java.util.Objects;
+
+/**
+ * The B2BulkDeleteProgress summarizes how far a bulk delete has gotten.
+ * It's a structure so we can extend it later, if needed.
+ */
+public class B2BulkDeleteProgress {
+
+    /**
+     * how many file versions have been listed so far?
+     */
+    private final long listedCount;
+
+    /**
+     * how many of the listed file versions matched the filter?
+     */
+    private final long matchedCount;
+
+    /**
+     * how many file versions have been deleted so far?
+     */
+    private final long deletedCount;
+
+    /**
+     * the sum of the contentLengths of the deleted file versions.
+     */
+    private final long deletedBytes;
+
+    /**
+     * how long has the bulk delete been running?
+     */
+    private final long elapsedMillis;
+
+    public B2BulkDeleteProgress(long listedCount,
+                                long matchedCount,
+                                long deletedCount,
+                                long deletedBytes,
+                                long elapsedMillis) {
+        this.listedCount = listedCount;
+        this.matchedCount = matchedCount;
+        this.deletedCount = deletedCount;
+        this.deletedBytes = deletedBytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getListedCount() {
+        return listedCount;
+    }
+
+    public long getMatchedCount() {
+        return matchedCount;
+    }
+
+    public long getDeletedCount() {
+        return deletedCount;
+    }
+
+    public long getDeletedBytes() {
+        return deletedBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the average number of file versions deleted per second so far,
+     *         or zero if no time has passed yet.
+     */
+    public double getDeletesPerSecond() {
+        return (elapsedMillis == 0) ? 0 : (deletedCount * 1000.0 / elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "B2BulkDeleteProgress{" +
+                "listedCount=" + listedCount +
+                ", matchedCount=" + matchedCount +
+                ", deletedCount=" + deletedCount +
+                ", deletedBytes=" + deletedBytes +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        B2BulkDeleteProgress progress = (B2BulkDeleteProgress) o;
+        return listedCount == progress.listedCount &&
+                matchedCount == progress.matchedCount &&
+                deletedCount == progress.deletedCount &&
+                deletedBytes == progress.deletedBytes &&
+                elapsedMillis == progress.elapsedMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(listedCount, matchedCount, deletedCount, deletedBytes, elapsedMillis);
+    }
+}
@@ -110,6 +110,10 @@ public class B2DownloadByIdRequest implements B2OverrideableHeaders {
         return new Builder(fileId);
     }
 
+    public static Builder builder(B2DownloadByIdRequest orig) {
+        return new Builder(orig);
+    }
+
     public static class Builder {
         private final String fileId;
         private B2ByteRange range;
@@ -125,6 +129,18 @@ public class B2DownloadByIdRequest implements B2OverrideableHeaders {
             this.fileId = fileId;
         }
 
+        private Builder(B2DownloadByIdRequest orig) {
+            this.fileId = orig.fileId;
+            this.range = orig.range;
+            this.serverSideEncryption = orig.serverSideEncryption;
+            this.b2ContentDisposition = orig.b2ContentDisposition;
+            this.b2ContentLanguage = orig.b2ContentLanguage;
+            this.b2Expires = orig.b2Expires;
+            this.b2CacheControl = orig.b2CacheControl;
+            this.b2ContentEncoding = orig.b2ContentEncoding;
+            this.b2ContentType = orig.b2ContentType;
+        }
+
         public B2DownloadByIdRequest build() {
             return new B2DownloadByIdRequest(fileId,
                     range,
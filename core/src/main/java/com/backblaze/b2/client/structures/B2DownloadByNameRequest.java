@@ -136,6 +136,10 @@ public class B2DownloadByNameRequest implements B2OverrideableHeaders {
         return new Builder(bucketName, fileName);
     }
 
+    public static Builder builder(B2DownloadByNameRequest orig) {
+        return new Builder(orig);
+    }
+
     public static class Builder {
         private final String bucketName;
         private final String fileName;
@@ -154,6 +158,19 @@ public class B2DownloadByNameRequest implements B2OverrideableHeaders {
             this.fileName = fileName;
         }
 
+        private Builder(B2DownloadByNameRequest orig) {
+            this.bucketName = orig.bucketName;
+            this.fileName = orig.fileName;
+            this.range = orig.range;
+            this.serverSideEncryption = orig.serverSideEncryption;
+            this.b2ContentDisposition = orig.b2ContentDisposition;
+            this.b2ContentLanguage = orig.b2ContentLanguage;
+            this.b2Expires = orig.b2Expires;
+            this.b2CacheControl = orig.b2CacheControl;
+            this.b2ContentEncoding = orig.b2ContentEncoding;
+            this.b2ContentType = orig.b2ContentType;
+        }
+
         public Builder setRange(B2ByteRange range) {
             this.range = range;
             return this;
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiClients;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * B2AsyncWebApiClient is the non-blocking version of B2WebApiClient.
+ * Each method starts the request and returns right away.  The methods
+ * end with "Async", so one class can implement both interfaces.  Implementations
+ * should not tie up a thread per request while waiting for the server.
+ *
+ * When there's trouble, the returned future is completed exceptionally
+ * with the B2Exception that the matching B2WebApiClient method would
+ * have thrown.
+ */
+public interface B2AsyncWebApiClient extends AutoCloseable {
+    /**
+     * POSTs to a web service that takes JSON and returns JSON.
+     *
+     * @param url the url to post to
+     * @param headersOrNull if non-null, some headers to include in the post
+     * @param request the object to be converted to json (with B2Json) and posted as the body of the request
+     * @param responseClass the class to convert the response body into (with B2Json)
+     * @param <ResponseType> the class
+     * @return a future for the response object (converted from json by B2Json)
+     */
+    <ResponseType> CompletableFuture<ResponseType> postJsonReturnJsonAsync(
+            String url,
+            B2Headers headersOrNull,
+            Object request,
+            Class<ResponseType> responseClass);
+
+    /**
+     * POSTs to a web service that takes content and returns JSON.
+     *
+     * @param url the url to post to
+     * @param headersOrNull if non-null, some headers to include in the post
+     * @param contentSource the content to post as the body of the request
+     * @param contentLength the number of bytes in the content to post
+     * @param responseClass the class to convert the response body into (with B2Json)
+     * @param <ResponseType> the class
+     * @return a future for the response object (converted from json by B2Json)
+     */
+    <ResponseType> CompletableFuture<ResponseType> postDataReturnJsonAsync(
+            String url,
+            B2Headers headersOrNull,
+            InputStream contentSource,
+            long contentLength,
+            Class<ResponseType> responseClass);
+
+    /**
+     * GETs from a web service that returns content.
+     *
+     * Implementations may collect the whole response before calling the
+     * handler, so they don't need a thread waiting on the handler while
+     * the content arrives.
+     *
+     * @param url the url to get from
+     * @param headersOrNull if non-null, some headers to include in the get
+     * @param handler the object which will be called with the response's headers and content
+     * @return a future that's completed after the handler returns
+     */
+    CompletableFuture<Void> getContentAsync(String url,
+                                            B2Headers headersOrNull,
+                                            B2ContentSink handler);
+
+    /**
+     * HEADs to a web service that returns content, and returns the headers.
+     *
+     * @param url the url to head to
+     * @param headersOrNull the headers, if any.
+     * @return a future for the headers of the response.
+     */
+    CompletableFuture<B2Headers> headAsync(String url, B2Headers headersOrNull);
+
+    /**
+     * Closes this object and its underlying resources.
+     * This is overridden from AutoCloseable to declare that it can't throw any exception.
+     */
+    @Override
+    void close();
+}
@@ -7,9 +7,16 @@ package com.backblaze.b2.client.webApiClients;
 import com.backblaze.b2.client.contentHandlers.B2ContentSink;
 import com.backblaze.b2.client.contentSources.B2Headers;
 import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.json.B2Json;
+import com.backblaze.b2.json.B2JsonException;
+import com.backblaze.b2.json.B2JsonOptions;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface B2WebApiClient extends AutoCloseable {
     /**
@@ -29,6 +36,58 @@ public interface B2WebApiClient extends AutoCloseable {
             Object request,
             Class<ResponseType> responseClass) throws B2Exception;
 
+    /**
+     * POSTs to a web service that takes JSON and returns JSON, just like
+     * postJsonReturnJson(), except that the items of the named list field in
+     * the response are handed to the visitor as they're parsed, instead of
+     * being collected into the response object.  The response object that's
+     * returned has an empty list in that field.
+     *
+     * This lets callers handle responses with big lists without having all
+     * of the items in memory at once.
+     *
+     * The default implementation gets the whole response with postJsonReturnJson(),
+     * converts it back to json, and parses that with B2Json.fromJsonVisitingList(),
+     * so it works for any response class, but it doesn't save any memory.
+     * Implementations that can parse as they read should override it.
+     *
+     * @param url the url to post to
+     * @param headersOrNull if non-null, some headers to include in the post
+     * @param request the object to be converted to json (with B2Json) and posted as the body of the request
+     * @param responseClass the class to convert the response body into (with B2Json)
+     * @param listFieldName the name of the list field in the response whose items should be visited
+     * @param itemClass the class of the items in that list
+     * @param visitor called with each item in the list, in order
+     * @param <ResponseType> the class
+     * @param <ItemType> the class of the items
+     * @return the response object (converted from json by B2Json), without the list's items
+     * @throws B2Exception if there's any trouble
+     */
+    default <ResponseType, ItemType> ResponseType postJsonReturnJsonVisitingList(
+            String url,
+            B2Headers headersOrNull,
+            Object request,
+            Class<ResponseType> responseClass,
+            String listFieldName,
+            Class<ItemType> itemClass,
+            Consumer<? super ItemType> visitor) throws B2Exception {
+        final ResponseType response = postJsonReturnJson(url, headersOrNull, request, responseClass);
+        final B2Json bzJson = B2Json.get();
+        try {
+            return bzJson.fromJsonVisitingList(
+                    new ByteArrayInputStream(bzJson.toJsonUtf8Bytes(response)),
+                    responseClass,
+                    listFieldName,
+                    itemClass,
+                    visitor,
+                    B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS);
+        } catch (B2JsonException e) {
+            throw new B2LocalException("parsing_failed", "can't visit " + listFieldName + " of " + responseClass.getSimpleName() + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new B2LocalException("trouble", "can't read back " + responseClass.getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
     /**
      * POSTs to a web service that takes content and returns JSON.
      *
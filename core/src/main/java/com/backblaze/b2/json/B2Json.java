@@ -7,10 +7,8 @@ package com.backblaze.b2.json;
 
 import com.backblaze.b2.util.B2StringUtil;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.lang.annotation.Annotation;
@@ -21,6 +19,7 @@ import java.lang.annotation.Target;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static com.backblaze.b2.json.B2JsonBoundedByteArrayOutputStream.SYSTEM_MAX_CAPACITY;
 
@@ -333,7 +332,7 @@ public class B2Json {
     }
 
     public <T> T fromJsonUntilEof(InputStream in, Class<T> clazz, B2JsonOptions options) throws IOException, B2JsonException {
-        B2JsonReader reader = new B2JsonReader(new InputStreamReader(in, "UTF-8"));
+        B2JsonReader reader = new B2JsonReader(new B2JsonUtf8Reader(in));
         final B2JsonTypeHandler handler = handlerMap.getHandler(clazz);
         //noinspection unchecked
         T result = (T) handler.deserialize(reader, options);
@@ -370,7 +369,7 @@ public class B2Json {
      * 2. By constructing a class that implements Type.
      */
     public <T> T fromJson(InputStream in, Type type, B2JsonOptions options) throws IOException, B2JsonException {
-        B2JsonReader reader = new B2JsonReader(new InputStreamReader(in, "UTF-8"));
+        B2JsonReader reader = new B2JsonReader(new B2JsonUtf8Reader(in));
         final B2JsonTypeHandler handler = handlerMap.getHandler(type);
 
         if (handler == null) {
@@ -381,6 +380,35 @@ public class B2Json {
         return (T) handler.deserialize(reader, options);
     }
 
+    /**
+     * Parse JSON from the input stream as an object of the given class, except
+     * that the items in the named list field are handed to the visitor as they
+     * are parsed, instead of being collected into a list.  The object that's
+     * returned has an empty list in that field.
+     *
+     * This is for responses with big lists, so that the caller never needs
+     * to have all of the items in memory at once.
+     */
+    public <T, I> T fromJsonVisitingList(InputStream in,
+                                         Class<T> clazz,
+                                         String listFieldName,
+                                         Class<I> itemClass,
+                                         Consumer<? super I> visitor,
+                                         B2JsonOptions options) throws IOException, B2JsonException {
+        final B2JsonTypeHandler<T> handler = handlerMap.getHandler(clazz);
+        if (!(handler instanceof B2JsonObjectHandler)) {
+            throw new B2JsonException("B2Json.fromJsonVisitingList needs an object class, not " + clazz.getName());
+        }
+        final B2JsonObjectHandler<T> objectHandler = (B2JsonObjectHandler<T>) handler;
+        final B2JsonReader reader = new B2JsonReader(new B2JsonUtf8Reader(in));
+        return objectHandler.deserializeVisitingList(
+                reader,
+                options,
+                listFieldName,
+                itemClass,
+                item -> visitor.accept(itemClass.cast(item)));
+    }
+
     /**
      * Parse JSON as an object of the given class.
      */
@@ -435,7 +463,7 @@ public class B2Json {
     }
 
     public <T> T fromJson(byte[] jsonUtf8Bytes, Class<T> clazz, B2JsonOptions options) throws IOException, B2JsonException {
-        B2JsonReader reader = new B2JsonReader(new InputStreamReader(new ByteArrayInputStream(jsonUtf8Bytes), "UTF-8"));
+        B2JsonReader reader = new B2JsonReader(new B2JsonUtf8Reader(jsonUtf8Bytes));
         final B2JsonTypeHandler handler = handlerMap.getHandler(clazz);
         //noinspection unchecked
         return (T) handler.deserialize(reader, options);
@@ -29,6 +29,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -49,6 +50,13 @@ public class B2JsonHandlerMap {
     // a handler for a class are equivalent.
     private final Map<Type, B2JsonTypeHandler<?>> map = new HashMap<>();
 
+    // the handlers that getHandler() has already handed out, so they are
+    // known to be fully initialized.  this is read without any locking, so
+    // that the common case of asking for a handler we've already built
+    // doesn't contend for the monitor.  entries are only added by
+    // getHandlerSlowly() and they're never removed.
+    private final ConcurrentMap<Type, B2JsonTypeHandler<?>> initializedHandlers = new ConcurrentHashMap<>();
+
     /**
      * The getHandler() method is not supposed to be re-entrant.  This flag
      * is used to check that.
@@ -119,8 +127,28 @@ public class B2JsonHandlerMap {
      * method from its own initialize() method.
      * <p>
      * So, this method does NOT need to be re-entrant, and in fact we assume that it's not.
+     * <p>
+     * Handlers that have been returned before are found without locking.
+     */
+    public <T> B2JsonTypeHandler<T> getHandler(Type type) throws B2JsonException {
+        @SuppressWarnings("unchecked")
+        final B2JsonTypeHandler<T> initializedHandlerOrNull = (B2JsonTypeHandler<T>) initializedHandlers.get(type);
+        if (initializedHandlerOrNull != null) {
+            return initializedHandlerOrNull;
+        }
+
+        final B2JsonTypeHandler<T> handler = getHandlerSlowly(type);
+
+        // the handler and everything it depends on is initialized now, so
+        // everyone else can use the lock-free path for it.
+        initializedHandlers.put(type, handler);
+        return handler;
+    }
+
+    /**
+     * Does the work for getHandler() when the handler isn't in initializedHandlers yet.
      */
-    public synchronized <T> B2JsonTypeHandler<T> getHandler(Type type) throws B2JsonException {
+    private synchronized <T> B2JsonTypeHandler<T> getHandlerSlowly(Type type) throws B2JsonException {
         // This method is NOT re-entrant.  The code that creates and initializes new handlers
         // should not call this method.
         //
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public class B2JsonListHandler extends B2JsonNonUrlTypeHandler<List> {
 
@@ -64,6 +65,27 @@ public class B2JsonListHandler extends B2JsonNonUrlTypeHandler<List> {
         return result;
     }
 
+    /**
+     * Reads a JSON array just like deserialize(), except that each item is
+     * handed to the visitor as soon as it's parsed, instead of being added
+     * to a list.  Nothing holds on to the items after the visitor returns.
+     */
+    void visitItems(B2JsonReader in, B2JsonOptions options, Consumer<Object> visitor) throws B2JsonException, IOException {
+        // every item is handed to the visitor as an Object, so any item type will do.
+        @SuppressWarnings("unchecked")
+        final B2JsonTypeHandler<Object> objectItemHandler = (B2JsonTypeHandler<Object>) itemHandler;
+        if (in.startArrayAndCheckForContents()) {
+            do {
+                visitor.accept(B2JsonUtil.deserializeMaybeNull(objectItemHandler, in, options));
+            } while (in.arrayHasMoreValues());
+        }
+        in.finishArray();
+    }
+
+    Type getItemType() {
+        return itemHandler.getHandledType();
+    }
+
     public List defaultValueForOptional() {
         return null;
     }
@@ -15,12 +15,14 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * (De)serializes Java objects based on field annotations.
@@ -370,6 +372,52 @@ public class B2JsonObjectHandler<T> extends B2JsonTypeHandlerWithDefaults<T> {
     }
 
     public T deserialize(B2JsonReader in, B2JsonOptions options) throws B2JsonException, IOException {
+        return deserialize(in, options, null, null);
+    }
+
+    /**
+     * Like deserialize(), except that the items in the named list field are
+     * handed to the visitor as they're parsed, instead of being collected.
+     * The object that's returned has an empty list in that field (or null,
+     * if the field was null in the JSON).
+     *
+     * This lets callers handle objects with huge lists without having all
+     * of the items in memory at once.
+     *
+     * @param in the reader to parse from.
+     * @param options the options to use.
+     * @param listFieldName the name of the field whose items should be visited.
+     *                      it must be a List field.
+     * @param itemClass the class of the items in the list.
+     * @param visitor called with each item in the list, in order.
+     * @return the object, without the items of the named list.
+     * @throws B2JsonException if the JSON can't be parsed, or if the named field
+     *                         isn't a list of itemClass.
+     * @throws IOException if there's trouble reading.
+     */
+    public T deserializeVisitingList(B2JsonReader in,
+                                     B2JsonOptions options,
+                                     String listFieldName,
+                                     Class<?> itemClass,
+                                     Consumer<Object> visitor) throws B2JsonException, IOException {
+        B2Preconditions.checkState(isInitialized());
+
+        final FieldInfo listFieldInfo = fieldMap.get(listFieldName);
+        if (listFieldInfo == null) {
+            throw new B2JsonException("no field named " + listFieldName + " in " + clazz.getName());
+        }
+        if (!(listFieldInfo.handler instanceof B2JsonListHandler) ||
+                !itemClass.equals(((B2JsonListHandler) listFieldInfo.handler).getItemType())) {
+            throw new B2JsonException("field " + listFieldName + " in " + clazz.getName() +
+                    " is not a List of " + itemClass.getName());
+        }
+        return deserialize(in, options, listFieldInfo, visitor);
+    }
+
+    private T deserialize(B2JsonReader in,
+                          B2JsonOptions options,
+                          FieldInfo visitedListFieldOrNull,
+                          Consumer<Object> visitorOrNull) throws B2JsonException, IOException {
 
         B2Preconditions.checkState(isInitialized());
         throwIfBadDefaultValue();
@@ -403,7 +451,9 @@ public class B2JsonObjectHandler<T> extends B2JsonTypeHandlerWithDefaults<T> {
                         throw new B2JsonException("duplicate field: " + fieldInfo.getName());
                     }
                     @SuppressWarnings("unchecked")
-                    final Object value = B2JsonUtil.deserializeMaybeNull(fieldInfo.handler, in, options);
+                    final Object value = (fieldInfo == visitedListFieldOrNull) ?
+                            visitListItemsMaybeNull(fieldInfo, in, options, visitorOrNull) :
+                            B2JsonUtil.deserializeMaybeNull(fieldInfo.handler, in, options);
                     if (fieldInfo.isRequiredAndInVersion(version) && value == null) {
                         throw new B2JsonException("required field " + fieldInfo.getName() + " cannot be null");
                     }
@@ -422,6 +472,18 @@ public class B2JsonObjectHandler<T> extends B2JsonTypeHandlerWithDefaults<T> {
         return deserializeFromConstructorArgs(constructorArgs, version);
     }
 
+    private Object visitListItemsMaybeNull(FieldInfo fieldInfo,
+                                           B2JsonReader in,
+                                           B2JsonOptions options,
+                                           Consumer<Object> visitor) throws B2JsonException, IOException {
+        if (in.peekNextNotWhitespaceChar() == 'n') {
+            in.readNull();
+            return null;
+        }
+        ((B2JsonListHandler) fieldInfo.handler).visitItems(in, options, visitor);
+        return new ArrayList<>();
+    }
+
     public T deserializeFromFieldNameToValueMap(Map<String, Object> fieldNameToValue, B2JsonOptions options) throws B2JsonException {
 
         B2Preconditions.checkState(isInitialized());
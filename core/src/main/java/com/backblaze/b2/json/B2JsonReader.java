@@ -11,6 +11,10 @@ import java.io.Reader;
 /**
  * Reads a stream of characters and converts them to JSON tokens.
  *
+ * Characters are pulled from the Reader a buffer at a time, so it's
+ * fine to give us a Reader that doesn't do its own buffering.  Note
+ * that this means we may read past the end of the JSON value.
+ *
  * This class is NOT thread safe.
  */
 public class B2JsonReader {
@@ -20,6 +24,19 @@ public class B2JsonReader {
      */
     private final Reader in;
 
+    /**
+     * The number of chars we try to read from "in" at a time.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Chars that have been read from "in", but not consumed yet.
+     * The unconsumed ones are from bufferPos up to bufferLimit.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+
     /**
      * The next character to be read, or -1 at EOF.
      *
@@ -42,7 +59,7 @@ public class B2JsonReader {
      */
     public B2JsonReader(Reader in) throws IOException {
         this.in = in;
-        this.currentChar = in.read();
+        next();
     }
 
     /**
@@ -66,10 +83,10 @@ public class B2JsonReader {
             throw new B2JsonException("expected value but found EOF");
         }
         else if (currentChar == '"') {
-            readString();
+            scanString(false);
         }
         else if (currentChar == '-' || isDigit(currentChar)) {
-            readNumberAsString();
+            scanNumber(false);
         }
         else if (currentChar == 'n') {
             readNull();
@@ -109,13 +126,46 @@ public class B2JsonReader {
      * Throws JsonError if the next thing is not a number.
      */
     public String readNumberAsString() throws IOException, B2JsonException {
+        scanNumber(true);
+        return builder.toString();
+    }
+
+    /**
+     * Reads the next value, which is expected to be an integer that
+     * fits in a long.  Unlike readNumberAsString(), this doesn't make
+     * a String unless there's an error to report.
+     */
+    public long readLong() throws IOException, B2JsonException {
+        scanNumber(true);
+        return parseBuilderAsLong("long");
+    }
+
+    /**
+     * Reads the next value, which is expected to be an integer that
+     * fits in an int.  Unlike readNumberAsString(), this doesn't make
+     * a String unless there's an error to report.
+     */
+    public int readInt() throws IOException, B2JsonException {
+        scanNumber(true);
+        final long value = parseBuilderAsLong("integer");
+        if (value < Integer.MIN_VALUE || Integer.MAX_VALUE < value) {
+            throw new B2JsonException("bad integer: " + builder);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a number, checking that it's well-formed.  If keepText is
+     * true, the text of the number is left in the builder.
+     */
+    private void scanNumber(boolean keepText) throws IOException, B2JsonException {
         skipWhitespace();
 
         builder.setLength(0);
 
         // All numbers have an optional leading '-'
         if (currentChar == '-') {
-            appendAndNext();
+            appendAndNext(keepText);
         }
 
         // After that, there is a string of digits.  You're not
@@ -124,46 +174,82 @@ public class B2JsonReader {
             throw new B2JsonException("Bad number");
         }
         if (currentChar == '0') {
-            appendAndNext();
+            appendAndNext(keepText);
             if (isDigit(currentChar)) {
                 throw new B2JsonException("Number cannot start with 0 and then have another digit");
             }
         }
         else {
             while (isDigit(currentChar)) {
-                appendAndNext();
+                appendAndNext(keepText);
             }
         }
 
         // Optional decimal point followed by digits
         if (currentChar == '.') {
-            appendAndNext();
+            appendAndNext(keepText);
             while (isDigit(currentChar)) {
-                appendAndNext();
+                appendAndNext(keepText);
             }
         }
 
         // Optional exponend part:  [eE][+-]?[0-9]+
         if (currentChar == 'e' || currentChar == 'E') {
-            appendAndNext();
+            appendAndNext(keepText);
             if (currentChar == '+' || currentChar == '-') {
-                appendAndNext();
+                appendAndNext(keepText);
             }
             if (!isDigit(currentChar)) {
                 throw new B2JsonException("Bad number");
             }
             while (isDigit(currentChar)) {
-                appendAndNext();
+                appendAndNext(keepText);
             }
         }
+    }
 
-        return builder.toString();
+    /**
+     * Converts the number in the builder to a long, the same way that
+     * Long.valueOf() would, but without making a String first.
+     */
+    private long parseBuilderAsLong(String typeName) throws B2JsonException {
+        final int length = builder.length();
+        final boolean negative = (builder.charAt(0) == '-');
+
+        // accumulate the value as a negative number, so that
+        // Long.MIN_VALUE doesn't overflow.
+        long negativeValue = 0;
+        for (int i = (negative ? 1 : 0); i < length; i++) {
+            final int digit = builder.charAt(i) - '0';
+            if (digit < 0 || 9 < digit || negativeValue < (Long.MIN_VALUE + digit) / 10) {
+                // not a digit (decimal point or exponent) or it overflowed.
+                throw new B2JsonException("bad " + typeName + ": " + builder);
+            }
+            negativeValue = negativeValue * 10 - digit;
+        }
+
+        if (negative) {
+            return negativeValue;
+        }
+        if (negativeValue == Long.MIN_VALUE) {
+            throw new B2JsonException("bad " + typeName + ": " + builder);
+        }
+        return -negativeValue;
     }
 
     /**
      * Reads a string value, returning its contents.
      */
     public String readString() throws B2JsonException, IOException {
+        scanString(true);
+        return builder.toString();
+    }
+
+    /**
+     * Reads a string, checking that it's well-formed.  If keepText is
+     * true, the contents of the string are left in the builder.
+     */
+    private void scanString(boolean keepText) throws B2JsonException, IOException {
         skipWhitespace();
         if (currentChar != '"') {
             throw new B2JsonException("string does not start with quote");
@@ -179,15 +265,32 @@ public class B2JsonReader {
                 throw new B2JsonException("control character in string");
             }
             if (currentChar == '\\') {
+                // escapes are rare enough that we let this append even
+                // when we're skipping.  the builder gets reset before it's
+                // used again.
                 handleBackslashInString();
             }
             else {
-                appendAndNext();
+                // currentChar is an ordinary char.  so are the chars after
+                // it in the buffer, up to the next special one.  take them
+                // all at once instead of one at a time.
+                int runEnd = bufferPos;
+                while (runEnd < bufferLimit && isOrdinaryStringChar(buffer[runEnd])) {
+                    runEnd++;
+                }
+                if (keepText) {
+                    builder.append((char) currentChar);
+                    builder.append(buffer, bufferPos, runEnd - bufferPos);
+                }
+                bufferPos = runEnd;
+                next();
             }
         }
         next(); // skip closing quote
+    }
 
-        return builder.toString();
+    private static boolean isOrdinaryStringChar(char c) {
+        return c != '"' && c != '\\' && 32 <= c;
     }
 
     private void handleBackslashInString() throws IOException, B2JsonException {
@@ -531,22 +634,49 @@ public class B2JsonReader {
     }
 
     /**
-     * Appends the current character to the string builder, and then
-     * reads the next character.
+     * Appends the current character to the string builder if keepText
+     * is true, and then reads the next character.
      */
-    private void appendAndNext() throws IOException {
+    private void appendAndNext(boolean keepText) throws IOException {
         if (currentChar == EOF) {
             throw new IllegalStateException();
         }
-        builder.append((char) currentChar);
-        currentChar = in.read();
+        if (keepText) {
+            builder.append((char) currentChar);
+        }
+        next();
     }
 
     /**
      * Advances to the next character.
      */
     private void next() throws IOException {
-        currentChar = in.read();
+        if (bufferPos == bufferLimit && !fillBuffer()) {
+            currentChar = EOF;
+            return;
+        }
+        currentChar = buffer[bufferPos++];
+    }
+
+    /**
+     * Reads more chars into the buffer.
+     *
+     * Returns false iff "in" is at EOF.
+     */
+    private boolean fillBuffer() throws IOException {
+        int numRead;
+        do {
+            numRead = in.read(buffer, 0, buffer.length);
+        } while (numRead == 0);
+
+        if (numRead < 0) {
+            bufferPos = 0;
+            bufferLimit = 0;
+            return false;
+        }
+        bufferPos = 0;
+        bufferLimit = numRead;
+        return true;
     }
 
     /**
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+
+package com.backblaze.b2.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * B2JsonUtf8Reader decodes UTF-8 bytes into chars a buffer at a time.
+ *
+ * It's what B2Json uses instead of an InputStreamReader.  When the json is
+ * already in memory, it decodes straight out of the caller's bytes instead of
+ * copying them through a ByteArrayInputStream first.  And since B2JsonReader
+ * always asks for chars in bulk, we don't bother with the locking that
+ * InputStreamReader does on every call.
+ *
+ * Like InputStreamReader, malformed input is replaced with U+FFFD instead of
+ * causing an error.
+ *
+ * THREAD-SAFETY: NOT thread safe.
+ */
+class B2JsonUtf8Reader extends Reader {
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final InputStream inOrNull;
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // true once there are no more bytes to add to 'bytes'.
+    private boolean endOfInput;
+
+    // true once the decoder has been flushed and we've returned everything.
+    private boolean flushed;
+
+    /**
+     * Decodes the bytes from the given stream.
+     */
+    B2JsonUtf8Reader(InputStream in) {
+        this.inOrNull = in;
+        this.bytes = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        this.bytes.flip(); // start out empty and ready for reading.
+        this.endOfInput = false;
+    }
+
+    /**
+     * Decodes the bytes from the buffer's position to its limit, without
+     * changing the caller's position.
+     */
+    B2JsonUtf8Reader(ByteBuffer utf8Bytes) {
+        this.inOrNull = null;
+        this.bytes = utf8Bytes.duplicate();
+        this.endOfInput = true;
+    }
+
+    /**
+     * Decodes all of the given bytes.  The array is not copied, so the caller
+     * must leave it alone while we're reading.
+     */
+    B2JsonUtf8Reader(byte[] utf8Bytes) {
+        this(ByteBuffer.wrap(utf8Bytes));
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        final CharBuffer out = CharBuffer.wrap(chars, offset, length);
+        while (out.position() == offset) {
+            if (flushed) {
+                return -1;
+            }
+
+            final CoderResult result = decoder.decode(bytes, out, endOfInput);
+            if (result.isOverflow()) {
+                if (out.position() == offset) {
+                    // only happens if the caller asked for one char and the
+                    // next code point needs a surrogate pair.  B2JsonReader
+                    // never asks for that little.
+                    throw new IOException("read() needs room for at least two chars");
+                }
+            } else if (endOfInput) {
+                decoder.flush(out);
+                flushed = true;
+            } else {
+                // the decoder wants more bytes, even if it decoded some.
+                // hand back what we have before blocking on the stream again.
+                if (out.position() == offset) {
+                    readMoreBytes();
+                }
+            }
+        }
+        return out.position() - offset;
+    }
+
+    private void readMoreBytes() throws IOException {
+        // keep any bytes of a partial code point at the front.
+        bytes.compact();
+        try {
+            final int numRead = inOrNull.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            if (numRead < 0) {
+                endOfInput = true;
+            } else {
+                bytes.position(bytes.position() + numRead);
+            }
+        } finally {
+            bytes.flip();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inOrNull != null) {
+            inOrNull.close();
+        }
+    }
+}
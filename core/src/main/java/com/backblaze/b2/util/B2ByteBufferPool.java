@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * B2ByteBufferPool hands out ByteBuffers of one size and takes them back
+ * when they're released, so that code which needs a big buffer for a
+ * short time doesn't have to allocate a new one each time.
+ *
+ * The buffers are on the heap, so they have arrays that InputStreams can
+ * read into directly.
+ *
+ * At most maxPooledBuffers are kept.  If more than that are released,
+ * the extras are left for the garbage collector.  If the pool is empty,
+ * acquire() allocates a new buffer, so it never waits.
+ *
+ * THREAD-SAFETY: this class is thread-safe.
+ */
+public class B2ByteBufferPool {
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+
+    // protected by synchronized(this)
+    private final Deque<ByteBuffer> pooled = new ArrayDeque<>();
+
+    /**
+     * @param bufferSize the capacity of each buffer.  must be positive.
+     * @param maxPooledBuffers the most buffers to keep for reuse.  must not be negative.
+     */
+    public B2ByteBufferPool(int bufferSize,
+                            int maxPooledBuffers) {
+        B2Preconditions.checkArgument(bufferSize > 0, "bufferSize must be positive");
+        B2Preconditions.checkArgument(maxPooledBuffers >= 0, "maxPooledBuffers must not be negative");
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return a cleared buffer with a capacity of getBufferSize().  it should
+     *         be given back with release() when the caller is done with it.
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            buffer = pooled.pollFirst();
+        }
+        if (buffer == null) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer that came from acquire().  The caller must not
+     * use it (or any views of it) afterwards.
+     *
+     * @param buffer the buffer to give back.
+     */
+    public void release(ByteBuffer buffer) {
+        B2Preconditions.checkArgumentIsNotNull(buffer, "buffer");
+        B2Preconditions.checkArgument(buffer.capacity() == bufferSize && buffer.hasArray(),
+                "buffer didn't come from this pool");
+        synchronized (this) {
+            if (pooled.size() < maxPooledBuffers) {
+                // most recently used first, since it's the most likely to be in a cache.
+                pooled.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return how many buffers are waiting to be reused.
+     */
+    public synchronized int getPooledCount() {
+        return pooled.size();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * B2ByteBufferSizeClassPool hands out ByteBuffers of whatever size is asked
+ * for, by keeping a B2ByteBufferPool for each of several "size classes".
+ * The classes start at minBufferSize and double until they reach
+ * maxBufferSize.  acquire() returns a buffer from the smallest class that's
+ * big enough, so a buffer may be up to about twice as big as what was
+ * asked for.
+ *
+ * Buffers bigger than maxBufferSize aren't pooled; acquire() allocates
+ * exactly what was asked for, and release() leaves it for the garbage
+ * collector.
+ *
+ * THREAD-SAFETY: this class is thread-safe.
+ */
+public class B2ByteBufferSizeClassPool {
+    private final List<B2ByteBufferPool> pools = new ArrayList<>();
+    private final int maxBufferSize;
+
+    /**
+     * @param minBufferSize the capacity of the smallest size class.  must be positive.
+     * @param maxBufferSize the capacity of the biggest size class.  must be at least minBufferSize.
+     * @param maxPooledBuffersPerSize the most buffers to keep for reuse in each size class.
+     *                                must not be negative.
+     */
+    public B2ByteBufferSizeClassPool(int minBufferSize,
+                                     int maxBufferSize,
+                                     int maxPooledBuffersPerSize) {
+        B2Preconditions.checkArgument(minBufferSize > 0, "minBufferSize must be positive");
+        B2Preconditions.checkArgument(maxBufferSize >= minBufferSize, "maxBufferSize must be at least minBufferSize");
+        B2Preconditions.checkArgument(maxPooledBuffersPerSize >= 0, "maxPooledBuffersPerSize must not be negative");
+
+        // use a long so doubling can't overflow.
+        long size = minBufferSize;
+        while (size < maxBufferSize) {
+            pools.add(new B2ByteBufferPool((int) size, maxPooledBuffersPerSize));
+            size *= 2;
+        }
+        pools.add(new B2ByteBufferPool(maxBufferSize, maxPooledBuffersPerSize));
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * @param minCapacity the smallest capacity the caller can use.  must not be negative.
+     * @return a cleared buffer with a capacity of at least minCapacity.  it should
+     *         be given back with release() when the caller is done with it.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        B2Preconditions.checkArgument(minCapacity >= 0, "minCapacity must not be negative");
+        final B2ByteBufferPool poolOrNull = findPoolOrNull(minCapacity);
+        if (poolOrNull == null) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        return poolOrNull.acquire();
+    }
+
+    /**
+     * Gives back a buffer that came from acquire().  The caller must not
+     * use it (or any views of it) afterwards.
+     *
+     * @param buffer the buffer to give back.
+     */
+    public void release(ByteBuffer buffer) {
+        B2Preconditions.checkArgumentIsNotNull(buffer, "buffer");
+        if (buffer.capacity() > maxBufferSize) {
+            // it wasn't pooled.
+            return;
+        }
+        final B2ByteBufferPool poolOrNull = findPoolOrNull(buffer.capacity());
+        B2Preconditions.checkArgument(poolOrNull != null && poolOrNull.getBufferSize() == buffer.capacity(),
+                "buffer didn't come from this pool");
+        poolOrNull.release(buffer);
+    }
+
+    /**
+     * @return the capacities of the size classes, smallest first.
+     */
+    public int[] getBufferSizes() {
+        final int[] sizes = new int[pools.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = pools.get(i).getBufferSize();
+        }
+        return sizes;
+    }
+
+    /**
+     * @return how many buffers are waiting to be reused, in all of the size classes.
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (B2ByteBufferPool pool : pools) {
+            count += pool.getPooledCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the pool for the smallest size class that holds at least
+     *         minCapacity bytes, or null if none of them do.
+     */
+    private B2ByteBufferPool findPoolOrNull(int minCapacity) {
+        // there are only a handful of classes, so a linear search is fine.
+        for (B2ByteBufferPool pool : pools) {
+            if (pool.getBufferSize() >= minCapacity) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * B2FileRangeInputStream provides the bytes of a file starting from the
+ * start'th byte and continuing up to and including the (start + length - 1)'th
+ * byte, or the end of the file, whichever comes first.
+ *
+ * Unlike wrapping a FileInputStream in a B2InputStreamExcerpt, it never
+ * reads or skips the bytes before 'start'.  It opens a FileChannel and does
+ * positional reads, so getting to the start of the last part of a huge file
+ * costs the same as getting to the start of the first one.
+ *
+ * It does NOT support mark/reset.
+ *
+ * THREAD-SAFETY: this class is NOT thread-safe on its own.
+ */
+public class B2FileRangeInputStream extends InputStream {
+    private static final int EOF = -1;
+
+    private final FileChannel channel;
+    private final byte[] oneByte = new byte[1];
+
+    // these are positions in the file.
+    private long position;
+    private long pastEnd; // we should never return the byte at this position.
+
+    private B2FileRangeInputStream(FileChannel channel,
+                                   long start,
+                                   long length) {
+        this.channel = channel;
+        this.position = start;
+        this.pastEnd = start + length;
+    }
+
+    /**
+     * @param file the file to read from.
+     * @param start the position in the file of the first byte to return.
+     * @param length the maximum number of bytes to return.
+     * @return a new stream.  the caller is responsible for closing it.
+     * @throws IOException if the file can't be opened.
+     */
+    public static B2FileRangeInputStream open(File file,
+                                              long start,
+                                              long length) throws IOException {
+        B2Preconditions.checkArgument(start >= 0, "start must be non-negative.");
+        B2Preconditions.checkArgument(length >= 0, "length must be non-negative.");
+        return new B2FileRangeInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ), start, length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int numRead = read(oneByte, 0, 1);
+        return (numRead == 1) ? (oneByte[0] & 0xff) : EOF;
+    }
+
+    @Override
+    public int read(byte[] b,
+                    int off,
+                    int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= pastEnd) {
+            return EOF;
+        }
+
+        final int toRead = (int) Math.min(len, pastEnd - position);
+        final int actuallyRead = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        if (actuallyRead == EOF) {
+            // the file is shorter than we were told.  remember we're at the end.
+            pastEnd = position;
+            return EOF;
+        }
+        position += actuallyRead;
+        return actuallyRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || position >= pastEnd) {
+            return 0;
+        }
+        // there's no need to touch the file to skip.  if it's shorter than
+        // we think, the next read will find that out.
+        final long actuallySkipped = Math.min(n, pastEnd - position);
+        position += actuallySkipped;
+        return actuallySkipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        final long availableInFile = Math.min(pastEnd, channel.size()) - position;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, availableInFile));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * B2Histogram counts non-negative long values, such as latencies in
+ * milliseconds, so you can ask for percentiles later.
+ *
+ * It's laid out like an HdrHistogram: values are grouped into buckets
+ * that double in size, and each bucket is split into SUB_BUCKET_COUNT
+ * equal sub-buckets.  Small values (under SUB_BUCKET_COUNT) are counted
+ * exactly.  Bigger values land in a sub-bucket that's no more than about
+ * 3% wide, so a percentile is never off by more than that.  It covers
+ * every non-negative long, so there's nothing to configure.
+ *
+ * record() doesn't allocate or lock, so it's fine to call on every request.
+ *
+ * THREAD-SAFETY: this class may be used from multiple threads safely.
+ *   record() can run concurrently with the getters.  When it does, the
+ *   getters may see some of an in-progress record() and not the rest,
+ *   so the answers are only exact when nothing is being recorded.
+ */
+public class B2Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // one bucket for the exactly-counted values, plus one for each possible
+    // highest bit from SUB_BUCKET_BITS up to 62 (the top bit of Long.MAX_VALUE).
+    private static final int NUM_COUNTERS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_COUNTERS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts the value.  Negative values are counted as zero.
+     *
+     * @param value the value to count.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexFor(value));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+
+        long maxSoFar = max.get();
+        while (value > maxSoFar && !max.compareAndSet(maxSoFar, value)) {
+            maxSoFar = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values that have been recorded.
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the largest value recorded, or zero if none have been.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the average of the values recorded, or zero if none have been.
+     */
+    public double getMean() {
+        final long count = totalCount.get();
+        return (count == 0) ? 0 : ((double) totalSum.get()) / count;
+    }
+
+    /**
+     * Returns a value that's at least as big as the given percentage of
+     * the recorded values.  It's the top of the sub-bucket the percentile
+     * falls in (but never more than getMax()), so it errs on the high side.
+     *
+     * @param percentile the percentile you want, from 0 to 100.  for instance, 99.0.
+     * @return the value at that percentile, or zero if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        B2Preconditions.checkArgument(percentile >= 0 && percentile <= 100,
+                "percentile must be between 0 and 100");
+
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        // the rank of the value we want, counting from 1.
+        final long rank = Math.max(1, (long) Math.ceil((percentile / 100.0) * count));
+
+        long countSoFar = 0;
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            countSoFar += counts.get(i);
+            if (countSoFar >= rank) {
+                return Math.min(highestValueFor(i), getMax());
+            }
+        }
+
+        // a record() is in progress and hasn't incremented its counter yet.
+        return getMax();
+    }
+
+    /**
+     * Forgets all recorded values.  Values recorded while this is running
+     * may or may not be forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "B2Histogram{" +
+                "count=" + getCount() +
+                ", mean=" + getMean() +
+                ", p50=" + getValueAtPercentile(50) +
+                ", p90=" + getValueAtPercentile(90) +
+                ", p99=" + getValueAtPercentile(99) +
+                ", max=" + getMax() +
+                '}';
+    }
+
+    /**
+     * Values under SUB_BUCKET_COUNT are their own index.  For the others,
+     * we keep the highest SUB_BUCKET_BITS+1 bits of the value.  The position
+     * of the highest bit picks the bucket, and the bits after it pick the
+     * sub-bucket.  The indexes are contiguous and grow with the value.
+     */
+    /*forTests*/ static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = highestBit - SUB_BUCKET_BITS;
+        final int top = (int) (value >>> shift); // between SUB_BUCKET_COUNT and 2*SUB_BUCKET_COUNT-1.
+        return (shift + 1) * SUB_BUCKET_COUNT + (top - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * @return the largest value that's counted at the given index.
+     */
+    /*forTests*/ static long highestValueFor(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index / SUB_BUCKET_COUNT) - 1;
+        final long top = (index % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT;
+        final long lowest = top << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+}
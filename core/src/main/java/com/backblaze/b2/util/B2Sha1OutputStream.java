@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Wrapper for an OutputStream that computes the SHA1 of the bytes
+ * written through it.  A byte is digested once the underlying stream
+ * has accepted it.
+ */
+public class B2Sha1OutputStream extends FilterOutputStream {
+    private final MessageDigest digest;
+
+    public B2Sha1OutputStream(OutputStream out) {
+        super(out);
+        this.digest = B2Sha1.createSha1MessageDigest();
+    }
+
+    /**
+     * Returns the SHA1 of the bytes written so far.
+     */
+    public byte [] digest() {
+        return digest.digest();
+    }
+
+    /**
+     * Returns the SHA1 of the bytes written so far, as a hex string.
+     */
+    public String hexDigest() {
+        return B2StringUtil.toHexString(digest());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digest.update((byte) b);
+    }
+
+    @Override
+    public void write(@SuppressWarnings("NullableProblems") byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream would write them one at a time.
+        out.write(b, off, len);
+        digest.update(b, off, len);
+    }
+}
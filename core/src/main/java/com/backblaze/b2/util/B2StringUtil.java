@@ -165,6 +165,30 @@ public class B2StringUtil {
         return sb.toString();
     }
 
+    /**
+     * Compares strings in the order of their UTF-8 bytes, which is how B2
+     * sorts file names.  That's the order of their code points, which isn't
+     * what String.compareTo() does, because it compares UTF-16 chars, which
+     * puts surrogate pairs in a different place.
+     *
+     * @param a the first string.
+     * @param b the second string.
+     * @return negative, zero, or positive, as a is before, the same as, or after b.
+     */
+    public static int compareInUtf8Order(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length()) {
+            final int aCodePoint = a.codePointAt(i);
+            final int bCodePoint = b.codePointAt(i);
+            if (aCodePoint != bCodePoint) {
+                return Integer.compare(aCodePoint, bCodePoint);
+            }
+            // the code points are the same, so they're the same number of chars.
+            i += Character.charCount(aCodePoint);
+        }
+        return Integer.compare(a.length(), b.length());
+    }
+
     /**
      * This returns a new string with the first letter title-cased, and
      * first character after each "_" title-cased, and all underscores removed.
@@ -9,14 +9,28 @@ import com.backblaze.b2.client.exceptions.B2InternalErrorException;
 import com.backblaze.b2.client.exceptions.B2LocalException;
 import com.backblaze.b2.client.structures.B2AccountAuthorization;
 import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2ClockSim;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.backblaze.b2.client.B2TestHelpers.makeAuth;
 import static com.backblaze.b2.client.B2TestHelpers.makeAuthWithAccountId;
+import static com.backblaze.b2.util.B2DateTimeUtil.parseDateTime;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.doReturn;
@@ -128,6 +142,114 @@ public class B2AccountAuthorizationCacheTest extends B2BaseTest {
         cache.get();
     }
 
+    @Test
+    public void testRefreshesInTheBackgroundBeforeExpiring() throws B2Exception {
+        final B2ClockSim clock = B2Clock.useSimulator(parseDateTime("2021-06-01 00:00:00"));
+        final AtomicInteger authorizeCount = new AtomicInteger();
+        final B2AccountAuthorizer countingAuthorizer = webifierParam -> makeAuthWithAccountId(accountId, authorizeCount.incrementAndGet());
+
+        // the "background" refreshes are queued so we can decide when they run.
+        final List<Runnable> refreshes = new ArrayList<>();
+        final B2AccountAuthorizationCache refreshingCache = new B2AccountAuthorizationCache(webifier,
+                countingAuthorizer,
+                refreshes::add,
+                TimeUnit.HOURS.toMillis(22),
+                TimeUnit.MINUTES.toMillis(1));
+
+        final B2AccountAuthorization auth1 = refreshingCache.get();
+        assertEquals("accountToken1", auth1.getAuthorizationToken());
+
+        // not old enough to refresh yet.
+        clock.advanceBoth(Duration.ofHours(21));
+        assertSame(auth1, refreshingCache.get());
+        assertEquals(0, refreshes.size());
+
+        // old enough.  we start one refresh, but keep handing out auth1 until it's done.
+        clock.advanceBoth(Duration.ofHours(1));
+        assertSame(auth1, refreshingCache.get());
+        assertSame(auth1, refreshingCache.get());
+        assertEquals(1, refreshes.size());
+        assertEquals(1, authorizeCount.get());
+
+        refreshes.get(0).run();
+        assertEquals("accountToken2", refreshingCache.get().getAuthorizationToken());
+        assertEquals(2, authorizeCount.get());
+    }
+
+    @Test
+    public void testFailedBackgroundRefreshIsRetriedLater() throws B2Exception {
+        final B2ClockSim clock = B2Clock.useSimulator(parseDateTime("2021-06-01 00:00:00"));
+        final AtomicInteger authorizeCount = new AtomicInteger();
+        final B2AccountAuthorizer flakyAuthorizer = webifierParam -> {
+            final int count = authorizeCount.incrementAndGet();
+            if (count == 2) {
+                throw new B2InternalErrorException("testing", "testing message");
+            }
+            return makeAuthWithAccountId(accountId, count);
+        };
+        final B2AccountAuthorizationCache refreshingCache = new B2AccountAuthorizationCache(webifier,
+                flakyAuthorizer,
+                Runnable::run,
+                TimeUnit.HOURS.toMillis(22),
+                TimeUnit.MINUTES.toMillis(1));
+
+        final B2AccountAuthorization auth1 = refreshingCache.get();
+
+        // the refresh fails, but we still have auth1.
+        clock.advanceBoth(Duration.ofHours(22));
+        assertSame(auth1, refreshingCache.get());
+        assertEquals(2, authorizeCount.get());
+
+        // we don't try again right away...
+        clock.advanceBoth(Duration.ofSeconds(59));
+        assertSame(auth1, refreshingCache.get());
+        assertEquals(2, authorizeCount.get());
+
+        // ...but we do after a minute.  the get() that starts the refresh
+        // still returns auth1; the next one gets the new authorization.
+        clock.advanceBoth(Duration.ofSeconds(1));
+        assertSame(auth1, refreshingCache.get());
+        assertEquals(3, authorizeCount.get());
+        assertEquals("accountToken3", refreshingCache.get().getAuthorizationToken());
+    }
+
+    @Test
+    public void testWaitersShareOneAuthorization() throws Exception {
+        final CountDownLatch authorizeStarted = new CountDownLatch(1);
+        final CountDownLatch letAuthorizeFinish = new CountDownLatch(1);
+        final AtomicInteger authorizeCount = new AtomicInteger();
+        final B2AccountAuthorizer slowAuthorizer = webifierParam -> {
+            authorizeCount.incrementAndGet();
+            authorizeStarted.countDown();
+            try {
+                letAuthorizeFinish.await();
+            } catch (InterruptedException e) {
+                throw new B2LocalException("test", "interrupted");
+            }
+            return makeAuthWithAccountId(accountId, 1);
+        };
+        final B2AccountAuthorizationCache sharedCache = new B2AccountAuthorizationCache(webifier, slowAuthorizer);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<B2AccountAuthorization>> futures = new ArrayList<>();
+            futures.add(executor.submit(sharedCache::get));
+            authorizeStarted.await();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(sharedCache::get));
+            }
+            letAuthorizeFinish.countDown();
+
+            final B2AccountAuthorization first = futures.get(0).get();
+            for (Future<B2AccountAuthorization> future : futures) {
+                assertSame(first, future.get());
+            }
+            assertEquals(1, authorizeCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void test_forCoverage() {
         B2AccountAuthorization a = makeAuth(1);
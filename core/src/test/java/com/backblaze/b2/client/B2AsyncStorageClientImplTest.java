@@ -0,0 +1,312 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentMemoryWriter;
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2ByteArrayContentSource;
+import com.backblaze.b2.client.contentSources.B2ContentTypes;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.exceptions.B2NotFoundException;
+import com.backblaze.b2.client.structures.B2DeleteFileVersionRequest;
+import com.backblaze.b2.client.structures.B2DeleteFileVersionResponse;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2GetFileInfoRequest;
+import com.backblaze.b2.client.structures.B2UploadFileRequest;
+import com.backblaze.b2.client.structures.B2UploadUrlResponse;
+import com.backblaze.b2.client.webApiClients.B2AsyncWebApiClient;
+import com.backblaze.b2.client.webApiClients.B2WebApiClient;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2ExecutorUtils;
+import com.backblaze.b2.util.B2Sha1;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.backblaze.b2.client.B2TestHelpers.bucketId;
+import static com.backblaze.b2.client.B2TestHelpers.fileId;
+import static com.backblaze.b2.client.B2TestHelpers.fileName;
+import static com.backblaze.b2.client.B2TestHelpers.makeAuth;
+import static com.backblaze.b2.client.B2TestHelpers.makeVersion;
+import static com.backblaze.b2.util.B2StringUtil.percentEncode;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class B2AsyncStorageClientImplTest extends B2BaseTest {
+    private static final String API_URL = makeAuth(1).getApiUrl() + "/b2api/v2/";
+
+    /**
+     * A Call is one request to the ParkingWebApiClient.  It stays
+     * in flight until the test completes its future.
+     */
+    private static class Call {
+        final String url;
+        final B2Headers headers;
+        final Object requestOrNull;
+        final B2ContentSink sinkOrNull;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Call(String url,
+             B2Headers headers,
+             Object requestOrNull,
+             B2ContentSink sinkOrNull) {
+            this.url = url;
+            this.headers = headers;
+            this.requestOrNull = requestOrNull;
+            this.sinkOrNull = sinkOrNull;
+        }
+    }
+
+    /**
+     * ParkingWebApiClient never talks to a server.  It just remembers
+     * each request so the test can answer it whenever it wants.
+     */
+    private static class ParkingWebApiClient implements B2AsyncWebApiClient {
+        private final BlockingQueue<Call> calls = new LinkedBlockingQueue<>();
+        private boolean closed;
+
+        @Override
+        public <ResponseType> CompletableFuture<ResponseType> postJsonReturnJsonAsync(String url,
+                                                                                      B2Headers headersOrNull,
+                                                                                      Object request,
+                                                                                      Class<ResponseType> responseClass) {
+            return park(new Call(url, headersOrNull, request, null));
+        }
+
+        @Override
+        public <ResponseType> CompletableFuture<ResponseType> postDataReturnJsonAsync(String url,
+                                                                                      B2Headers headersOrNull,
+                                                                                      InputStream contentSource,
+                                                                                      long contentLength,
+                                                                                      Class<ResponseType> responseClass) {
+            return park(new Call(url, headersOrNull, contentSource, null));
+        }
+
+        @Override
+        public CompletableFuture<Void> getContentAsync(String url,
+                                                       B2Headers headersOrNull,
+                                                       B2ContentSink handler) {
+            return park(new Call(url, headersOrNull, null, handler));
+        }
+
+        @Override
+        public CompletableFuture<B2Headers> headAsync(String url,
+                                                      B2Headers headersOrNull) {
+            return park(new Call(url, headersOrNull, null, null));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        Call takeCall() throws InterruptedException {
+            final Call call = calls.poll(10, TimeUnit.SECONDS);
+            assertNotNull("no call arrived", call);
+            return call;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> CompletableFuture<T> park(Call call) {
+            calls.add(call);
+            return (CompletableFuture<T>) call.future;
+        }
+    }
+
+    /**
+     * The blocking client only needs a B2WebApiClient to be built.
+     * Everything in these tests goes through the ParkingWebApiClient.
+     */
+    private static class UnusedWebApiClient implements B2WebApiClient {
+        @Override
+        public <ResponseType> ResponseType postJsonReturnJson(String url, B2Headers headersOrNull, Object request, Class<ResponseType> responseClass) throws B2Exception {
+            throw new B2LocalException("test", "shouldn't be called");
+        }
+
+        @Override
+        public <ResponseType> ResponseType postDataReturnJson(String url, B2Headers headersOrNull, InputStream contentSource, long contentLength, Class<ResponseType> responseClass) throws B2Exception {
+            throw new B2LocalException("test", "shouldn't be called");
+        }
+
+        @Override
+        public void getContent(String url, B2Headers headersOrNull, B2ContentSink handler) throws B2Exception {
+            throw new B2LocalException("test", "shouldn't be called");
+        }
+
+        @Override
+        public B2Headers head(String url, B2Headers headersOrNull) throws B2Exception {
+            throw new B2LocalException("test", "shouldn't be called");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // one thread is enough, since nothing waits for the server.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ParkingWebApiClient webApiClient = new ParkingWebApiClient();
+    private final B2StorageClientImpl client = new B2StorageClientImpl(
+            new B2StorageClientWebifierImpl(new UnusedWebApiClient(), "test-agent", "https://api.example.com/", null),
+            B2ClientConfig
+                    .builder(webifier -> makeAuth(1), "test-agent")
+                    .setUploadUrlPoolMinSizePerBucket(0)
+                    .build(),
+            () -> new B2DefaultRetryPolicy(null, maxMillis -> 0));
+    private final B2AsyncStorageClient asyncClient = new B2AsyncStorageClientImpl(client, webApiClient, executor);
+
+    @After
+    public void tearDown() {
+        B2ExecutorUtils.shutdownAndAwaitTermination(executor, 10, 10);
+    }
+
+    @Test
+    public void testManyOperationsInFlightOnOneThread() throws Exception {
+        final int count = 1000;
+        final List<CompletableFuture<B2FileVersion>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(asyncClient.getFileInfo(B2GetFileInfoRequest.builder(fileId(i)).build()));
+        }
+
+        // every request reaches the transport before any of them are answered.
+        final List<Call> calls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            calls.add(webApiClient.takeCall());
+        }
+        for (CompletableFuture<B2FileVersion> future : futures) {
+            assertFalse(future.isDone());
+        }
+
+        // answer them in the opposite order.
+        for (int i = count - 1; i >= 0; i--) {
+            final Call call = calls.get(i);
+            assertEquals(API_URL + "b2_get_file_info", call.url);
+            assertEquals("accountToken1", call.headers.getValueOrNull(B2Headers.AUTHORIZATION));
+            final String fileId = ((B2GetFileInfoRequest) call.requestOrNull).getFileId();
+            call.future.complete(makeVersion(Integer.parseInt(fileId.substring("4_zBlah_".length())), 1));
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(fileId(i), futures.get(i).get(10, TimeUnit.SECONDS).getFileId());
+        }
+    }
+
+    @Test
+    public void testRetryableFailureIsRetried() throws Exception {
+        final CompletableFuture<B2FileVersion> future = asyncClient.getFileInfo(B2GetFileInfoRequest.builder(fileId(1)).build());
+
+        webApiClient.takeCall().future.completeExceptionally(new B2InternalErrorException("test", null, "pretend B2 had trouble"));
+        assertFalse(future.isDone());
+
+        final B2FileVersion version = makeVersion(1, 1);
+        webApiClient.takeCall().future.complete(version);
+        assertSame(version, future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testB2ExceptionIsTheCause() throws Exception {
+        final B2DeleteFileVersionRequest request = B2DeleteFileVersionRequest.builder("file", fileId(1)).build();
+        final CompletableFuture<Void> future = asyncClient.deleteFileVersion(request);
+
+        final B2NotFoundException notFound = new B2NotFoundException("not_found", null, "no such file");
+        final Call call = webApiClient.takeCall();
+        assertEquals(API_URL + "b2_delete_file_version", call.url);
+        assertSame(request, call.requestOrNull);
+        call.future.completeExceptionally(notFound);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("should've thrown");
+        } catch (ExecutionException e) {
+            assertSame(notFound, e.getCause());
+        }
+    }
+
+    @Test
+    public void testDownloadGivesContentToTheHandler() throws Exception {
+        final byte[] content = "hello, world".getBytes();
+        final B2DownloadByIdRequest request = B2DownloadByIdRequest
+                .builder(fileId(1))
+                .setRange(B2ByteRange.between(0, content.length - 1))
+                .build();
+        final B2ContentMemoryWriter writer = B2ContentMemoryWriter.build();
+        final CompletableFuture<Void> future = asyncClient.downloadById(request, writer);
+
+        final Call call = webApiClient.takeCall();
+        assertEquals(makeAuth(1).getDownloadUrl() + "/b2api/v2/b2_download_file_by_id?fileId=" + fileId(1), call.url);
+        assertEquals("bytes=0-11", call.headers.getValueOrNull(B2Headers.RANGE));
+        call.sinkOrNull.readContent(
+                B2HeadersImpl.builder()
+                        .set(B2Headers.CONTENT_LENGTH, Integer.toString(content.length))
+                        .set(B2Headers.CONTENT_SHA1, B2Sha1.hexSha1OfBytes(content))
+                        .build(),
+                new ByteArrayInputStream(content));
+        call.future.complete(null);
+
+        future.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(content, writer.getBytes());
+    }
+
+    @Test
+    public void testUploadReusesTheUploadUrl() throws Exception {
+        final B2UploadUrlResponse uploadUrl = new B2UploadUrlResponse(bucketId(1), "https://upload.example.com/1", "uploadToken1");
+        for (int i = 0; i < 2; i++) {
+            final B2UploadFileRequest request = B2UploadFileRequest
+                    .builder(bucketId(1), fileName(i), B2ContentTypes.APPLICATION_OCTET, B2ByteArrayContentSource.build(new byte[] {1, 2, 3}))
+                    .build();
+            final CompletableFuture<B2FileVersion> future = asyncClient.uploadSmallFile(request);
+
+            // only the first upload needs to ask for an upload url.
+            if (i == 0) {
+                final Call getUploadUrl = webApiClient.takeCall();
+                assertEquals(API_URL + "b2_get_upload_url", getUploadUrl.url);
+                getUploadUrl.future.complete(uploadUrl);
+            }
+
+            final Call upload = webApiClient.takeCall();
+            assertEquals(uploadUrl.getUploadUrl(), upload.url);
+            assertEquals("uploadToken1", upload.headers.getValueOrNull(B2Headers.AUTHORIZATION));
+            assertEquals(percentEncode(fileName(i)), upload.headers.getValueOrNull(B2Headers.FILE_NAME));
+            final B2FileVersion version = makeVersion(i, i);
+            upload.future.complete(version);
+            assertSame(version, future.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCloseClosesEverything() {
+        asyncClient.close();
+        assertTrue(webApiClient.closed);
+        assertSame(client, asyncClient.getStorageClient());
+    }
+
+    @Test
+    public void testDeleteFileVersionResponseIsIgnored() throws Exception {
+        final CompletableFuture<Void> future = asyncClient.deleteFileVersion(B2DeleteFileVersionRequest.builder("file", fileId(1)).build());
+        webApiClient.takeCall().future.complete(new B2DeleteFileVersionResponse(fileId(1), "file"));
+        future.get(10, TimeUnit.SECONDS);
+    }
+}
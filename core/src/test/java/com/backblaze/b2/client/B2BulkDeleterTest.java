@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.exceptions.B2RuntimeException;
+import com.backblaze.b2.client.structures.B2BulkDeleteListener;
+import com.backblaze.b2.client.structures.B2BulkDeleteProgress;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2ListFileVersionsRequest;
+import com.backblaze.b2.util.B2BaseTest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.backblaze.b2.client.B2TestHelpers.bucketId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class B2BulkDeleterTest extends B2BaseTest {
+    private static final B2ListFileVersionsRequest REQUEST = B2ListFileVersionsRequest.builder(bucketId(1)).build();
+
+    // the versions in our pretend bucket.  the even ones are hide markers.
+    private static final List<B2FileVersion> VERSIONS = Arrays.asList(
+            makeVersion(1, 100, B2FileVersion.UPLOAD_ACTION),
+            makeVersion(2, 200, B2FileVersion.HIDE_ACTION),
+            makeVersion(3, 300, B2FileVersion.UPLOAD_ACTION),
+            makeVersion(4, 400, B2FileVersion.HIDE_ACTION),
+            makeVersion(5, 500, B2FileVersion.UPLOAD_ACTION));
+
+    private final B2StorageClient client = mock(B2StorageClient.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private final List<String> deletedIds = Collections.synchronizedList(new ArrayList<>());
+    private final List<B2BulkDeleteProgress> progresses = Collections.synchronizedList(new ArrayList<>());
+    private final B2BulkDeleteListener listener = progresses::add;
+
+    public B2BulkDeleterTest() throws B2Exception {
+        when(client.fileVersions(any(B2ListFileVersionsRequest.class))).thenReturn(VERSIONS::iterator);
+        doAnswer(invocation -> {
+            deletedIds.add(((B2FileVersion) invocation.getArguments()[0]).getFileId());
+            return null;
+        }).when(client).deleteFileVersion(any(B2FileVersion.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDeletesEverythingThatMatches() throws B2Exception {
+        final B2BulkDeleter deleter = new B2BulkDeleter(client, executor, 2);
+        final B2BulkDeleteProgress progress = deleter.deleteFileVersions(REQUEST, version -> true, listener);
+
+        assertEquals(idsOf(VERSIONS), sorted(deletedIds));
+        assertEquals(new B2BulkDeleteProgress(5, 5, 5, 15000, 0), progress);
+
+        // once for each delete, and once at the end.
+        assertEquals(6, progresses.size());
+        assertEquals(progress, progresses.get(5));
+    }
+
+    @Test
+    public void testFilters() throws B2Exception {
+        final B2BulkDeleter deleter = new B2BulkDeleter(client, executor);
+
+        deleter.deleteFileVersions(REQUEST, B2BulkDeleter.uploadedBefore(300), B2BulkDeleteListener.noopListener());
+        assertEquals(idsOf(VERSIONS.subList(0, 2)), sorted(deletedIds));
+
+        deletedIds.clear();
+        final B2BulkDeleteProgress progress = deleter.deleteFileVersions(REQUEST,
+                B2BulkDeleter.hideMarkersOnly(),
+                B2BulkDeleteListener.noopListener());
+        assertEquals(idsOf(Arrays.asList(VERSIONS.get(1), VERSIONS.get(3))), sorted(deletedIds));
+        assertEquals(new B2BulkDeleteProgress(5, 2, 2, 6000, 0), progress);
+    }
+
+    @Test
+    public void testDeleteFailureStopsTheDeletes() throws B2Exception {
+        doAnswer(invocation -> {
+            final B2FileVersion version = (B2FileVersion) invocation.getArguments()[0];
+            if (version == VERSIONS.get(2)) {
+                throw new B2InternalErrorException("test", "testing");
+            }
+            deletedIds.add(version.getFileId());
+            return null;
+        }).when(client).deleteFileVersion(any(B2FileVersion.class));
+
+        // with one thread and one delete in flight, the deletes happen in order.
+        final ExecutorService oneThread = Executors.newSingleThreadExecutor();
+        try {
+            new B2BulkDeleter(client, oneThread, 1).deleteFileVersions(REQUEST, version -> true, listener);
+            fail("should've thrown");
+        } catch (B2InternalErrorException e) {
+            assertEquals("testing", e.getMessage());
+        } finally {
+            oneThread.shutdownNow();
+        }
+
+        assertEquals(idsOf(VERSIONS.subList(0, 2)), deletedIds);
+    }
+
+    @Test
+    public void testListingExceptionIsThrown() throws B2Exception {
+        when(client.fileVersions(any(B2ListFileVersionsRequest.class))).thenReturn(() -> {
+            throw new B2RuntimeException("failed to create/advance iterator: testing",
+                    new B2InternalErrorException("test", "testing"));
+        });
+
+        try {
+            new B2BulkDeleter(client, executor).deleteFileVersions(REQUEST, version -> true, listener);
+            fail("should've thrown");
+        } catch (B2InternalErrorException e) {
+            assertEquals("testing", e.getMessage());
+        }
+        assertEquals(0, deletedIds.size());
+    }
+
+    @Test
+    public void testRejectedDeleteIsBadState() throws B2Exception {
+        final ExecutorService shutDown = Executors.newSingleThreadExecutor();
+        shutDown.shutdown();
+        try {
+            new B2BulkDeleter(client, shutDown).deleteFileVersions(REQUEST, version -> true, listener);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertEquals("bad_state", e.getCode());
+        }
+    }
+
+    @Test
+    public void testDeletesPerSecond() {
+        assertEquals(0, new B2BulkDeleteProgress(1, 1, 1, 1, 0).getDeletesPerSecond(), 0.0);
+        assertEquals(20, new B2BulkDeleteProgress(10, 10, 10, 10, 500).getDeletesPerSecond(), 0.0);
+    }
+
+    private static List<String> idsOf(List<B2FileVersion> versions) {
+        return sorted(versions.stream().map(B2FileVersion::getFileId).collect(Collectors.toList()));
+    }
+
+    private static List<String> sorted(List<String> strings) {
+        final List<String> copy = new ArrayList<>(strings);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static B2FileVersion makeVersion(int i, long uploadTimestamp, String action) {
+        final B2FileVersion template = B2TestHelpers.makeVersion(i, i);
+        return new B2FileVersion(
+                template.getFileId(),
+                template.getFileName(),
+                template.getContentLength(),
+                template.getContentType(),
+                template.getContentSha1(),
+                template.getContentMd5(),
+                template.getFileInfo(),
+                action,
+                uploadTimestamp,
+                null,
+                null,
+                null);
+    }
+}
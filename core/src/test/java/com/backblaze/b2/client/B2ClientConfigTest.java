@@ -7,12 +7,15 @@ package com.backblaze.b2.client;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.structures.B2AuthorizeAccountRequest;
 import com.backblaze.b2.util.B2BaseTest;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
 
 import static com.backblaze.b2.client.structures.B2TestMode.FAIL_SOME_UPLOADS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -24,6 +27,9 @@ public class B2ClientConfigTest extends B2BaseTest {
         throw new RuntimeException("not expected to be called!");
     };
 
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
 
     @Test
     public void testMinimal() {
@@ -34,19 +40,75 @@ public class B2ClientConfigTest extends B2BaseTest {
         assertEquals(USER_AGENT, config.getUserAgent());
         assertNull(config.getMasterUrl());
         assertNull(config.getTestModeOrNull());
+        assertEquals(B2ClientConfig.DEFAULT_MAX_PARTS_IN_FLIGHT_PER_LARGE_FILE, config.getMaxPartsInFlightPerLargeFile());
+        assertEquals(B2ClientConfig.DEFAULT_UPLOAD_URL_POOL_MIN_SIZE_PER_BUCKET, config.getUploadUrlPoolMinSizePerBucket());
+        assertEquals(B2ClientConfig.DEFAULT_UPLOAD_URL_MAX_AGE_MILLIS, config.getUploadUrlMaxAgeMillis());
+        assertNull(config.getMetricsRecorderOrNull());
+        assertEquals(B2ClientConfig.DEFAULT_LIST_FILES_PREFETCH_PAGES, config.getListFilesPrefetchPages());
     }
 
     @Test
     public void testMaximal() {
+        final B2MetricsRecorder metricsRecorder = new B2MetricsRecorderSimpleImpl();
         final B2ClientConfig config = B2ClientConfig
                 .builder(AUTHORIZER, USER_AGENT)
                 .setMasterUrl("https://api.backblazeb2.net/")
                 .setTestModeOrNull(FAIL_SOME_UPLOADS)
+                .setMaxPartsInFlightPerLargeFile(4)
+                .setUploadUrlPoolMinSizePerBucket(2)
+                .setUploadUrlMaxAgeMillis(60_000)
+                .setMetricsRecorderOrNull(metricsRecorder)
+                .setListFilesPrefetchPages(3)
                 .build();
         assertEquals(AUTHORIZER, config.getAccountAuthorizer());
         assertEquals(USER_AGENT, config.getUserAgent());
         assertEquals("https://api.backblazeb2.net/", config.getMasterUrl());
         assertEquals(FAIL_SOME_UPLOADS, config.getTestModeOrNull());
+        assertEquals(4, config.getMaxPartsInFlightPerLargeFile());
+        assertEquals(2, config.getUploadUrlPoolMinSizePerBucket());
+        assertEquals(60_000, config.getUploadUrlMaxAgeMillis());
+        assertSame(metricsRecorder, config.getMetricsRecorderOrNull());
+        assertEquals(3, config.getListFilesPrefetchPages());
+    }
+
+    @Test
+    public void testMaxPartsInFlightPerLargeFileMustBePositive() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("maxPartsInFlightPerLargeFile must be positive");
+        B2ClientConfig
+                .builder(AUTHORIZER, USER_AGENT)
+                .setMaxPartsInFlightPerLargeFile(0)
+                .build();
+    }
+
+    @Test
+    public void testUploadUrlPoolMinSizePerBucketMustNotBeNegative() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("uploadUrlPoolMinSizePerBucket must not be negative");
+        B2ClientConfig
+                .builder(AUTHORIZER, USER_AGENT)
+                .setUploadUrlPoolMinSizePerBucket(-1)
+                .build();
+    }
+
+    @Test
+    public void testUploadUrlMaxAgeMillisMustBePositive() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("uploadUrlMaxAgeMillis must be positive");
+        B2ClientConfig
+                .builder(AUTHORIZER, USER_AGENT)
+                .setUploadUrlMaxAgeMillis(0)
+                .build();
+    }
+
+    @Test
+    public void testListFilesPrefetchPagesMustNotBeNegative() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("listFilesPrefetchPages must not be negative");
+        B2ClientConfig
+                .builder(AUTHORIZER, USER_AGENT)
+                .setListFilesPrefetchPages(-1)
+                .build();
     }
 
     @Test
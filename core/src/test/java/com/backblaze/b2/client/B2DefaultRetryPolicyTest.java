@@ -10,6 +10,8 @@ import com.backblaze.b2.client.exceptions.B2UnauthorizedException;
 import com.backblaze.b2.util.B2BaseTest;
 import org.junit.Test;
 
+import java.util.function.Supplier;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -74,4 +76,89 @@ public class B2DefaultRetryPolicyTest extends B2BaseTest {
         assertTrue(policy.gotRetryableImmediately(OP, iAttempt, 0, e));  iAttempt++;
         assertTrue(!policy.gotRetryableImmediately(OP, iAttempt, 0, e));
     }
+
+    @Test
+    public void test_gotRetryableAfterDelayMillis_isJittered() {
+        //noinspection ThrowableNotThrown
+        final B2Exception e = new B2InternalErrorException("eek!");
+
+        // the jitter gets the most we might wait.  let's wait a quarter of it.
+        final B2RetryPolicy quarterPolicy = new B2DefaultRetryPolicy(null, maxMillis -> maxMillis / 4);
+
+        int iAttempt = 1;
+        assertEquals((Long)   250L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertEquals((Long)   500L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertEquals((Long)  1000L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertEquals((Long)  2000L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertEquals((Long)  4000L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertEquals((Long)  8000L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertEquals((Long) 16000L, quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));  iAttempt++;
+        assertNull(quarterPolicy.gotRetryableAfterDelayMillis(OP, iAttempt, 0, e));
+    }
+
+    @Test
+    public void test_gotRetryableAfterDelayMillis_obeysServerExactly() {
+        //noinspection ThrowableNotThrown
+        final B2Exception withDelayFromServer = new B2InternalErrorException("test", 6, "wow!"); // retryAfterSecs=6
+        final B2RetryPolicy quarterPolicy = new B2DefaultRetryPolicy(null, maxMillis -> maxMillis / 4);
+
+        assertEquals((Long) 6000L, quarterPolicy.gotRetryableAfterDelayMillis(OP, 1, 0, withDelayFromServer));
+    }
+
+    @Test
+    public void test_gotRetryableAfterDelayMillis_withRandomJitter() {
+        //noinspection ThrowableNotThrown
+        final B2Exception e = new B2InternalErrorException("eek!");
+
+        for (int i = 0; i < 100; i++) {
+            final B2RetryPolicy randomPolicy = new B2DefaultRetryPolicy();
+            randomPolicy.gotRetryableAfterDelayMillis(OP, 1, 0, e);
+            final long millis = randomPolicy.gotRetryableAfterDelayMillis(OP, 2, 0, e);
+            assertTrue("millis = " + millis, millis >= 0 && millis <= 2000);
+        }
+    }
+
+    @Test
+    public void test_gotRetryableAfterDelayMillis_withRetryBudget() {
+        //noinspection ThrowableNotThrown
+        final B2Exception e = new B2InternalErrorException("eek!");
+
+        // two retries at first, and no more tokens until time passes.
+        final B2RetryBudget budget = new B2RetryBudget(2, 0);
+        final B2RetryPolicy policy1 = new B2DefaultRetryPolicy(budget);
+        final B2RetryPolicy policy2 = new B2DefaultRetryPolicy(budget);
+
+        assertTrue(policy1.gotRetryableAfterDelayMillis(OP, 1, 0, e) != null);
+        assertTrue(policy2.gotRetryableAfterDelayMillis(OP, 1, 0, e) != null);
+
+        // the budget is shared, so both of them are out of retries.
+        assertNull(policy1.gotRetryableAfterDelayMillis(OP, 2, 0, e));
+        assertNull(policy2.gotRetryableAfterDelayMillis(OP, 2, 0, e));
+
+        // the budget doesn't limit immediate retries.
+        assertTrue(policy1.gotRetryableImmediately(OP, 3, 0, B2UnauthorizedException.create("test", 401, null, "msg")));
+    }
+
+    @Test
+    public void testSupplierHasNoRetryBudget() {
+        //noinspection ThrowableNotThrown
+        final B2Exception e = new B2InternalErrorException("eek!");
+
+        // more policies than the default budget has tokens, and every one of them still retries.
+        final Supplier<B2RetryPolicy> supplier = B2DefaultRetryPolicy.supplier();
+        for (int i = 0; i < 2 * B2RetryBudget.DEFAULT_MAX_TOKENS; i++) {
+            assertTrue(supplier.get().gotRetryableAfterDelayMillis(OP, 1, 0, e) != null);
+        }
+    }
+
+    @Test
+    public void testSupplierWithRetryBudgetSharesIt() {
+        //noinspection ThrowableNotThrown
+        final B2Exception e = new B2InternalErrorException("eek!");
+
+        final Supplier<B2RetryPolicy> supplier = B2DefaultRetryPolicy.supplier(new B2RetryBudget(2, 0));
+        assertTrue(supplier.get().gotRetryableAfterDelayMillis(OP, 1, 0, e) != null);
+        assertTrue(supplier.get().gotRetryableAfterDelayMillis(OP, 1, 0, e) != null);
+        assertNull(supplier.get().gotRetryableAfterDelayMillis(OP, 1, 0, e));
+    }
 }
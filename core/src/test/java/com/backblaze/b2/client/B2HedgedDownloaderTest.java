@@ -0,0 +1,330 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentMemoryWriter;
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2DownloadByNameRequest;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2Sha1;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.backblaze.b2.client.B2TestHelpers.fileId;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class B2HedgedDownloaderTest extends B2BaseTest {
+    private static final B2DownloadByNameRequest BY_NAME = B2DownloadByNameRequest.builder("bucket", "thumbnail.jpg").build();
+    private static final B2DownloadByIdRequest BY_ID = B2DownloadByIdRequest.builder(fileId(1)).build();
+    private static final byte[] CONTENT = "pretend this is a thumbnail".getBytes();
+
+    /**
+     * A Response is what our pretend B2 does for one call to the client.
+     */
+    private interface Response {
+        void respond(B2ContentSink sink) throws Exception;
+    }
+
+    private final B2StorageClient client = mock(B2StorageClient.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    // the responses for the calls to the client, in the order the calls are made.
+    private final BlockingQueue<Response> responses = new ArrayBlockingQueue<>(100);
+    private final List<Throwable> responseFailures = Collections.synchronizedList(new ArrayList<>());
+
+    public B2HedgedDownloaderTest() throws B2Exception {
+        doAnswer(invocation -> {
+            serve((B2ContentSink) invocation.getArguments()[1]);
+            return null;
+        }).when(client).downloadByName(any(B2DownloadByNameRequest.class), any(B2ContentSink.class));
+        doAnswer(invocation -> {
+            serve((B2ContentSink) invocation.getArguments()[1]);
+            return null;
+        }).when(client).downloadById(any(B2DownloadByIdRequest.class), any(B2ContentSink.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNoHedgingUntilThereAreEnoughSamples() throws B2Exception {
+        final B2HedgedDownloader downloader = B2HedgedDownloader.builder(client, executor)
+                .setMinSamples(3)
+                .setMaxHedgeRatio(1)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, downloader.getHedgeDelayMillisOrMinusOne());
+            responses.add(sink -> respondWithContent(sink));
+            assertArrayEquals(CONTENT, downloadByName(downloader));
+        }
+        assertEquals(3, downloader.getTimeToFirstByteMillisHistogram().getCount());
+        assertTrue(downloader.getHedgeDelayMillisOrMinusOne() >= B2HedgedDownloader.DEFAULT_MIN_HEDGE_DELAY_MILLIS);
+
+        assertEquals(3, downloader.getDownloadCount());
+        assertEquals(0, downloader.getHedgeCount());
+    }
+
+    @Test
+    public void testSlowPrimaryIsHedged() throws Exception {
+        final B2HedgedDownloader downloader = hedgeEveryTimeDownloader();
+
+        // the primary doesn't start responding until the hedge has started,
+        // and then it stalls until it's interrupted.  the hedge responds
+        // once the primary is stalled.
+        final CountDownLatch hedgeStarted = new CountDownLatch(1);
+        final CountDownLatch primaryStalled = new CountDownLatch(1);
+        final CountDownLatch primaryInterrupted = new CountDownLatch(1);
+        responses.add(sink -> {
+            assertTrue(hedgeStarted.await(10, TimeUnit.SECONDS));
+            sink.readContent(makeHeaders(), new StallingInputStream(primaryStalled, primaryInterrupted));
+        });
+        responses.add(sink -> {
+            hedgeStarted.countDown();
+            assertTrue(primaryStalled.await(10, TimeUnit.SECONDS));
+            respondWithContent(sink);
+        });
+
+        final B2ContentMemoryWriter writer = B2ContentMemoryWriter.build();
+        downloader.downloadById(BY_ID, writer);
+        assertArrayEquals(CONTENT, writer.getBytes());
+
+        assertEquals(1, downloader.getHedgeCount());
+        assertEquals(1, downloader.getHedgeWinCount());
+
+        // the primary is cancelled instead of being left to stall.
+        assertTrue(primaryInterrupted.await(10, TimeUnit.SECONDS));
+
+        // even though it lost, the primary's time to first byte is recorded.
+        assertEquals(2, downloader.getTimeToFirstByteMillisHistogram().getCount());
+        assertEquals(Collections.emptyList(), responseFailures);
+    }
+
+    @Test
+    public void testPrimaryCanStillWin() throws Exception {
+        final B2HedgedDownloader downloader = hedgeEveryTimeDownloader();
+
+        // the primary doesn't respond until the hedge has started, and
+        // the hedge never responds on its own.
+        final CountDownLatch hedgeStarted = new CountDownLatch(1);
+        final CountDownLatch hedgeInterrupted = new CountDownLatch(1);
+        responses.add(sink -> {
+            assertTrue(hedgeStarted.await(10, TimeUnit.SECONDS));
+            respondWithContent(sink);
+        });
+        responses.add(sink -> {
+            hedgeStarted.countDown();
+            try {
+                Thread.sleep(10000);
+                fail("the hedge should've been cancelled");
+            } catch (InterruptedException e) {
+                hedgeInterrupted.countDown();
+            }
+        });
+
+        assertArrayEquals(CONTENT, downloadByName(downloader));
+        assertEquals(1, downloader.getHedgeCount());
+        assertEquals(0, downloader.getHedgeWinCount());
+
+        assertTrue(hedgeInterrupted.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.emptyList(), responseFailures);
+    }
+
+    @Test
+    public void testHedgesAreLimitedByTheBudget() throws B2Exception {
+        final B2HedgedDownloader downloader = B2HedgedDownloader.builder(client, executor)
+                .setMinSamples(0)
+                .setMinHedgeDelayMillis(1)
+                .setMaxHedgeRatio(0.5)
+                .setMaxHedgeBurst(1)
+                .build();
+
+        // every response is slow enough to hedge, so half of the downloads are.
+        for (int i = 0; i < 4; i++) {
+            // forget the slow times so far, so the hedge delay stays at the minimum.
+            downloader.getTimeToFirstByteMillisHistogram().reset();
+            for (int j = 0; j < 2; j++) {
+                responses.add(sink -> {
+                    Thread.sleep(30);
+                    respondWithContent(sink);
+                });
+            }
+            assertArrayEquals(CONTENT, downloadByName(downloader));
+            responses.clear();
+        }
+        assertEquals(4, downloader.getDownloadCount());
+        assertEquals(2, downloader.getHedgeCount());
+    }
+
+    @Test
+    public void testFastFailureIsNotHedged() throws B2Exception {
+        final B2HedgedDownloader downloader = hedgeEveryTimeDownloader();
+        final B2Exception failure = new B2InternalErrorException("test", null, "primary failed");
+        responses.add(sink -> {
+            throw failure;
+        });
+
+        try {
+            downloadByName(downloader);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertSame(failure, e);
+        }
+        assertEquals(0, downloader.getHedgeCount());
+    }
+
+    @Test
+    public void testThrowsPrimaryExceptionIfEverythingFails() throws B2Exception {
+        final B2HedgedDownloader downloader = hedgeEveryTimeDownloader();
+        final B2Exception primaryFailure = new B2InternalErrorException("test", null, "primary failed");
+        responses.add(sink -> {
+            Thread.sleep(50);
+            throw primaryFailure;
+        });
+        responses.add(sink -> {
+            throw new B2InternalErrorException("test", null, "hedge failed");
+        });
+
+        try {
+            downloadByName(downloader);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertSame(primaryFailure, e);
+        }
+        assertEquals(1, downloader.getHedgeCount());
+    }
+
+    @Test
+    public void testHedgeCanSucceedWhenPrimaryFails() throws B2Exception {
+        final B2HedgedDownloader downloader = hedgeEveryTimeDownloader();
+        responses.add(sink -> {
+            Thread.sleep(50);
+            throw new B2InternalErrorException("test", null, "primary failed");
+        });
+        responses.add(sink -> respondWithContent(sink));
+
+        assertArrayEquals(CONTENT, downloadByName(downloader));
+        assertEquals(1, downloader.getHedgeWinCount());
+    }
+
+    @Test
+    public void testRejectsBadSettings() {
+        final B2HedgedDownloader.Builder builder = B2HedgedDownloader.builder(client, executor);
+        try {
+            builder.setMaxHedgeRatio(1.5);
+            fail("should've thrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("maxHedgeRatio must be between 0 and 1", e.getMessage());
+        }
+        try {
+            builder.setPercentile(101);
+            fail("should've thrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("percentile must be between 0 and 100", e.getMessage());
+        }
+    }
+
+    /**
+     * @return a downloader that hedges any download that takes longer than
+     *         a few milliseconds to start, with no limit on the hedges.
+     */
+    private B2HedgedDownloader hedgeEveryTimeDownloader() {
+        return B2HedgedDownloader.builder(client, executor)
+                .setMinSamples(0)
+                .setMinHedgeDelayMillis(5)
+                .setMaxHedgeRatio(1)
+                .setMaxHedgeBurst(1)
+                .build();
+    }
+
+    private byte[] downloadByName(B2HedgedDownloader downloader) throws B2Exception {
+        final B2ContentMemoryWriter writer = B2ContentMemoryWriter.build();
+        downloader.downloadByName(BY_NAME, writer);
+        return writer.getBytes();
+    }
+
+    private void serve(B2ContentSink sink) throws Exception {
+        final Response response = responses.poll(10, TimeUnit.SECONDS);
+        if (response == null) {
+            throw new B2LocalException("test", "no response for this call");
+        }
+        try {
+            response.respond(sink);
+        } catch (B2Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            // remember assertion failures from the executor's threads.
+            responseFailures.add(t);
+            throw t;
+        }
+    }
+
+    private static void respondWithContent(B2ContentSink sink) throws Exception {
+        sink.readContent(makeHeaders(), new ByteArrayInputStream(CONTENT));
+    }
+
+    private static B2Headers makeHeaders() {
+        return B2HeadersImpl.builder()
+                .set(B2Headers.CONTENT_LENGTH, Integer.toString(CONTENT.length))
+                .set(B2Headers.CONTENT_SHA1, B2Sha1.hexSha1OfBytes(CONTENT))
+                .build();
+    }
+
+    /**
+     * A StallingInputStream blocks in read() until its thread is interrupted,
+     * like a connection to a server that has stopped sending.
+     */
+    private static class StallingInputStream extends InputStream {
+        private final CountDownLatch stalled;
+        private final CountDownLatch interrupted;
+
+        StallingInputStream(CountDownLatch stalled,
+                            CountDownLatch interrupted) {
+            this.stalled = stalled;
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            stalled.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedIOException("interrupted while stalled");
+            }
+            throw new IOException("wasn't interrupted");
+        }
+    }
+}
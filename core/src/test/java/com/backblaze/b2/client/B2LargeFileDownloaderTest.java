@@ -0,0 +1,260 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2ContentTypes;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2Collections;
+import com.backblaze.b2.util.B2ExecutorUtils;
+import com.backblaze.b2.util.B2Sha1;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.backblaze.b2.client.B2TestHelpers.makeBytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class B2LargeFileDownloaderTest extends B2BaseTest {
+    private static final String FILE_ID = "4_zBlah_0000001";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final byte[] content = makeBytes(1000);
+    private final List<B2ByteRange> requestedRanges = Collections.synchronizedList(new ArrayList<>());
+    private final File destination;
+
+    public B2LargeFileDownloaderTest() throws IOException {
+        destination = File.createTempFile("B2LargeFileDownloaderTest", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        B2ExecutorUtils.shutdownAndAwaitTermination(executor, 10, 10);
+        //noinspection ResultOfMethodCallIgnored
+        destination.delete();
+    }
+
+    @Test
+    public void testPickRanges() {
+        assertEquals(Collections.emptyList(), B2LargeFileDownloader.pickRanges(0, 0, 100));
+        checkRanges(B2LargeFileDownloader.pickRanges(0, 100, 100),
+                "bytes=0-99");
+        checkRanges(B2LargeFileDownloader.pickRanges(0, 101, 100),
+                "bytes=0-99", "bytes=100-100");
+        checkRanges(B2LargeFileDownloader.pickRanges(10, 250, 100),
+                "bytes=10-109", "bytes=110-209", "bytes=210-259");
+    }
+
+    @Test
+    public void testDownloadWholeFile() throws B2Exception, IOException {
+        download(0, content.length, 64);
+
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertEquals(16, requestedRanges.size());
+    }
+
+    @Test
+    public void testDownloadPartOfFile() throws B2Exception, IOException {
+        download(100, 250, 64);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 350), Files.readAllBytes(destination.toPath()));
+    }
+
+    @Test
+    public void testDownloadEmptyFile() throws B2Exception, IOException {
+        Files.write(destination.toPath(), new byte[] { 1, 2, 3 });
+
+        download(0, 0, 64);
+
+        assertEquals(0, Files.readAllBytes(destination.toPath()).length);
+        assertTrue(requestedRanges.isEmpty());
+    }
+
+    @Test
+    public void testRetriedRangeRewritesItsBytes() throws B2Exception, IOException {
+        // the sink gets called twice for each range, just like when a retry
+        // happens after a connection breaks in the middle of a download.
+        // the first call only writes half of the range and it's garbage.
+        final B2LargeFileDownloader.RangeDownloader rangeDownloader = (range, sink) -> {
+            final byte[] garbage = new byte[(int) range.getNumberOfBytes()];
+            Arrays.fill(garbage, (byte) 0x55);
+            try {
+                sink.readContent(headersFor(FILE_ID), new ByteArrayInputStream(garbage, 0, garbage.length / 2));
+            } catch (IOException e) {
+                throw new B2LocalException("test", "unexpected: " + e, e);
+            }
+            serve(FILE_ID, range, sink);
+        };
+        new B2LargeFileDownloader(executor, rangeDownloader, FILE_ID, null, 0, content.length, 64).downloadToFile(destination);
+
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+    }
+
+    @Test
+    public void testMismatchedFileId() throws B2Exception {
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("expected to download fileId '" + FILE_ID + "', but got '4_zBlah_0000002'");
+
+        new B2LargeFileDownloader(executor,
+                (range, sink) -> serve("4_zBlah_0000002", range, sink),
+                FILE_ID,
+                null,
+                0,
+                content.length,
+                64).downloadToFile(destination);
+    }
+
+    @Test
+    public void testShortRange() throws B2Exception {
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("expected 64 bytes for bytes=0-63, but got 10");
+
+        new B2LargeFileDownloader(executor,
+                (range, sink) -> serve(FILE_ID, B2ByteRange.between(range.start, range.start + 9), sink),
+                FILE_ID,
+                null,
+                0,
+                content.length,
+                64).downloadToFile(destination);
+    }
+
+    @Test
+    public void testLongRangeIsNotRetryable() {
+        // serve() would wrap an IOException, so this makes sure it's
+        // a B2LocalException by the time it leaves the sink.
+        try {
+            new B2LargeFileDownloader(executor,
+                    (range, sink) -> serve(FILE_ID, B2ByteRange.between(range.start, range.start + 99), sink),
+                    FILE_ID,
+                    null,
+                    0,
+                    content.length,
+                    64).downloadToFile(destination);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertTrue(e instanceof B2LocalException);
+            assertEquals("mismatch", e.getCode());
+            assertEquals("got more than the 64 bytes we asked for", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSha1OfWholeFile() throws B2Exception, IOException {
+        new B2LargeFileDownloader(executor,
+                (range, sink) -> serve(FILE_ID, range, sink),
+                FILE_ID,
+                B2Sha1.hexSha1OfBytes(content).toUpperCase(),
+                0,
+                content.length,
+                64).downloadToFile(destination);
+
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+    }
+
+    @Test
+    public void testSha1Mismatch() throws B2Exception {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(new byte[] { 1 });
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("sha1 mismatch as written to destination.  expected " + wrongSha1 + ", but got " + B2Sha1.hexSha1OfBytes(content));
+
+        new B2LargeFileDownloader(executor,
+                (range, sink) -> serve(FILE_ID, range, sink),
+                FILE_ID,
+                wrongSha1,
+                0,
+                content.length,
+                64).downloadToFile(destination);
+    }
+
+    @Test
+    public void testGetSha1ToCheckOrNull() {
+        assertEquals("abc", B2LargeFileDownloader.getSha1ToCheckOrNull(makeVersionWithSha1s("abc", null)));
+        assertEquals("abc", B2LargeFileDownloader.getSha1ToCheckOrNull(makeVersionWithSha1s("unverified:abc", null)));
+        assertEquals("def", B2LargeFileDownloader.getSha1ToCheckOrNull(makeVersionWithSha1s("none", "def")));
+        assertNull(B2LargeFileDownloader.getSha1ToCheckOrNull(makeVersionWithSha1s("none", null)));
+        assertNull(B2LargeFileDownloader.getSha1ToCheckOrNull(makeVersionWithSha1s(null, null)));
+    }
+
+    private void download(long start,
+                          long length,
+                          long rangeSize) throws B2Exception {
+        new B2LargeFileDownloader(executor,
+                (range, sink) -> serve(FILE_ID, range, sink),
+                FILE_ID,
+                null,
+                start,
+                length,
+                rangeSize).downloadToFile(destination);
+    }
+
+    private void serve(String fileId,
+                       B2ByteRange range,
+                       B2ContentSink sink) throws B2Exception {
+        requestedRanges.add(range);
+        try {
+            sink.readContent(headersFor(fileId),
+                    new ByteArrayInputStream(content, range.start.intValue(), (int) range.getNumberOfBytes()));
+        } catch (IOException e) {
+            throw new B2LocalException("test", "unexpected: " + e, e);
+        }
+    }
+
+    private static B2FileVersion makeVersionWithSha1s(String contentSha1,
+                                                      String largeFileSha1OrNull) {
+        return new B2FileVersion(FILE_ID,
+                "files/one",
+                1000,
+                B2ContentTypes.APPLICATION_OCTET,
+                contentSha1,
+                null,
+                (largeFileSha1OrNull == null) ?
+                        B2Collections.mapOf() :
+                        B2Collections.mapOf(B2Headers.LARGE_FILE_SHA1_INFO_NAME, largeFileSha1OrNull),
+                "upload",
+                1,
+                null,
+                null,
+                null);
+    }
+
+    private static B2Headers headersFor(String fileId) {
+        return B2HeadersImpl.builder()
+                .set(B2Headers.FILE_ID, fileId)
+                .build();
+    }
+
+    private static void checkRanges(List<B2ByteRange> actual, String... expected) {
+        final List<String> actualStrs = new ArrayList<>();
+        for (B2ByteRange range : actual) {
+            actualStrs.add(range.toString());
+        }
+        assertEquals(Arrays.asList(expected), actualStrs);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2Part;
+import com.backblaze.b2.util.B2BaseTest;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.backblaze.b2.client.B2TestHelpers.makePart;
+import static com.backblaze.b2.client.B2TestHelpers.makeVersion;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class B2LargeFileJournalTest extends B2BaseTest {
+    private final File journalDir;
+    private final File journalFile;
+    private final B2FileVersion largeFileVersion = makeVersion(1, 1);
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    public B2LargeFileJournalTest() throws IOException {
+        journalDir = Files.createTempDirectory("B2LargeFileJournalTest").toFile();
+        journalFile = new File(journalDir, "test.b2journal");
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = journalDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        journalDir.delete();
+    }
+
+    @Test
+    public void testNewJournalIsEmpty() throws B2Exception {
+        final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+        assertNull(journal.getLargeFileVersionOrNull());
+        assertEquals(Collections.emptyList(), journal.getStoredParts());
+        assertFalse(journalFile.exists());
+    }
+
+    @Test
+    public void testReopenedJournalHasWhatWasRecorded() throws B2Exception {
+        final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+        journal.startedLargeFile(largeFileVersion);
+        journal.partStored(makePart(3));
+        journal.partStored(makePart(1));
+
+        final B2LargeFileJournal reopened = new B2LargeFileJournal(journalFile);
+        assertEquals(largeFileVersion, reopened.getLargeFileVersionOrNull());
+        assertEquals(Arrays.asList(makePart(1), makePart(3)), reopened.getStoredParts());
+    }
+
+    @Test
+    public void testStartingOverForgetsTheParts() throws B2Exception {
+        final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+        journal.startedLargeFile(makeVersion(2, 2));
+        journal.partStored(makePart(1));
+        journal.startedLargeFile(largeFileVersion);
+
+        final B2LargeFileJournal reopened = new B2LargeFileJournal(journalFile);
+        assertEquals(largeFileVersion, reopened.getLargeFileVersionOrNull());
+        assertEquals(Collections.emptyList(), reopened.getStoredParts());
+    }
+
+    @Test
+    public void testPartialLastLineIsIgnored() throws B2Exception, IOException {
+        final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+        journal.startedLargeFile(largeFileVersion);
+        journal.partStored(makePart(1));
+
+        // pretend we crashed while writing part 2.
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write("{ \"fileId\": \"4_z".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final B2LargeFileJournal reopened = new B2LargeFileJournal(journalFile);
+        assertEquals(Collections.singletonList(makePart(1)), reopened.getStoredParts());
+
+        // the next part goes on its own line.
+        reopened.partStored(makePart(2));
+        assertEquals(Arrays.asList(makePart(1), makePart(2)), new B2LargeFileJournal(journalFile).getStoredParts());
+    }
+
+    @Test
+    public void testCorruptLineIsAnError() throws B2Exception, IOException {
+        Files.write(journalFile.toPath(), "not json\n".getBytes(StandardCharsets.UTF_8));
+
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("can't parse line of large file journal");
+        new B2LargeFileJournal(journalFile);
+    }
+
+    @Test
+    public void testPartStoredBeforeStartedIsAnError() throws B2Exception {
+        thrown.expect(IllegalStateException.class);
+        new B2LargeFileJournal(journalFile).partStored(makePart(1));
+    }
+
+    @Test
+    public void testDelete() throws B2Exception {
+        final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+        journal.startedLargeFile(largeFileVersion);
+        assertTrue(journalFile.exists());
+
+        assertTrue(journal.delete());
+        assertFalse(journalFile.exists());
+        assertNull(journal.getLargeFileVersionOrNull());
+
+        // deleting again is fine.
+        assertTrue(journal.delete());
+    }
+
+    @Test
+    public void testForLocalFileDependsOnTheLocalFile() throws B2Exception, IOException {
+        final File localFile = new File(journalDir, "local.dat");
+        Files.write(localFile.toPath(), new byte[] { 1, 2, 3 });
+
+        final B2LargeFileJournal journal = B2LargeFileJournal.forLocalFile(journalDir, localFile);
+        journal.startedLargeFile(largeFileVersion);
+        assertEquals(journal.getFile(), B2LargeFileJournal.forLocalFile(journalDir, localFile).getFile());
+        assertEquals(largeFileVersion, B2LargeFileJournal.forLocalFile(journalDir, localFile).getLargeFileVersionOrNull());
+
+        // once the local file changes, its old journal doesn't apply.
+        Files.write(localFile.toPath(), new byte[] { 1, 2, 3, 4 });
+        final B2LargeFileJournal changed = B2LargeFileJournal.forLocalFile(journalDir, localFile);
+        assertNotEquals(journal.getFile(), changed.getFile());
+        assertNull(changed.getLargeFileVersionOrNull());
+    }
+}
@@ -7,6 +7,7 @@ package com.backblaze.b2.client;
 import com.backblaze.b2.client.contentSources.B2ContentSource;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.exceptions.B2LocalException;
 import com.backblaze.b2.client.structures.B2AccountAuthorization;
 import com.backblaze.b2.client.structures.B2FileSseForRequest;
 import com.backblaze.b2.client.structures.B2FileVersion;
@@ -25,6 +26,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.Matchers;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -37,6 +39,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -46,6 +49,7 @@ import static com.backblaze.b2.client.B2TestHelpers.makeMd5;
 import static com.backblaze.b2.client.B2TestHelpers.makeSha1;
 import static com.backblaze.b2.client.B2TestHelpers.makeVersion;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -81,7 +85,8 @@ public class B2LargeFileStorerTest extends B2BaseTest {
     private final B2StorageClientWebifier webifier = mock(B2StorageClientWebifier.class);
 
     private final B2Retryer retryer = new B2Retryer(mock(B2Sleeper.class));
-    private final Supplier<B2RetryPolicy> retryPolicySupplier = B2DefaultRetryPolicy.supplier();
+    // parts are retried on a real scheduler, so don't make the retries wait.
+    private final Supplier<B2RetryPolicy> retryPolicySupplier = () -> new B2DefaultRetryPolicy(null, maxMillis -> 0);
     // Use an executor that has a predictable order of events.
     private final ExecutorService executor = new ExecutorThatUsesMainThread();
     private final ExecutorService singleThreadedExecutor = Executors.newSingleThreadExecutor();
@@ -234,6 +239,137 @@ public class B2LargeFileStorerTest extends B2BaseTest {
                 partStorers.get(2));
     }
 
+    @Test
+    public void testForLocalContent_skipsJournaledParts() throws IOException, B2Exception {
+        final File journalFile = File.createTempFile("B2LargeFileStorerTest", ".b2journal");
+        try {
+            final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+            journal.startedLargeFile(largeFileVersion);
+            journal.partStored(part1);
+            // part 3's length doesn't match what we'd upload now, so it's uploaded again.
+            journal.partStored(new B2Part(fileId(3), 3, LAST_PART_SIZE + 1, makeSha1(3), makeMd5(3), 3333, null));
+
+            final B2LargeFileStorer largeFileStorer = B2LargeFileStorer.forLocalContent(
+                    B2StoreLargeFileRequest.builder(largeFileVersion).build(),
+                    new TestContentSource(0, FILE_SIZE),
+                    partSizes,
+                    authCache,
+                    webifier,
+                    retryer,
+                    retryPolicySupplier,
+                    executor,
+                    2,
+                    journal);
+
+            final List<B2PartStorer> partStorers = largeFileStorer.getPartStorers();
+            assertEquals(new B2AlreadyStoredPartStorer(part1), partStorers.get(0));
+            assertEquals(
+                    new B2UploadingPartStorer(2, new TestContentSource(PART_SIZE_FOR_FIRST_TWO, PART_SIZE_FOR_FIRST_TWO, false)),
+                    partStorers.get(1));
+            assertEquals(
+                    new B2UploadingPartStorer(3, new TestContentSource(2 * PART_SIZE_FOR_FIRST_TWO, LAST_PART_SIZE, false)),
+                    partStorers.get(2));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    public void testForLocalContent_journalIsForAnotherLargeFile() throws IOException, B2Exception {
+        final File journalFile = File.createTempFile("B2LargeFileStorerTest", ".b2journal");
+        try {
+            final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+            journal.startedLargeFile(makeVersion(5, 5));
+
+            thrown.expect(B2LocalException.class);
+            thrown.expectMessage("is for large file " + fileId(5) + ", not " + fileId(4));
+            B2LargeFileStorer.forLocalContent(
+                    B2StoreLargeFileRequest.builder(largeFileVersion).build(),
+                    new TestContentSource(0, FILE_SIZE),
+                    partSizes,
+                    authCache,
+                    webifier,
+                    retryer,
+                    retryPolicySupplier,
+                    executor,
+                    2,
+                    journal);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    public void testStoreFile_recordsPartsInJournal() throws IOException, B2Exception {
+        final File journalFile = File.createTempFile("B2LargeFileStorerTest", ".b2journal");
+        try {
+            final B2LargeFileJournal journal = new B2LargeFileJournal(journalFile);
+            journal.startedLargeFile(largeFileVersion);
+
+            final List<B2PartStorer> partStorers = new ArrayList<>();
+            partStorers.add(new B2UploadingPartStorer(1, createContentSourceWithSize(PART_SIZE_FOR_FIRST_TWO)));
+            partStorers.add(new B2CopyingPartStorer(2, fileId(1)));
+            partStorers.add(new B2AlreadyStoredPartStorer(part3));
+
+            final List<B2Part> journaledParts = new ArrayList<>();
+            when(webifier.finishLargeFile(anyObject(), anyObject())).thenAnswer(invocation -> {
+                // by the time we finish, everything we stored has been journaled.
+                journaledParts.addAll(new B2LargeFileJournal(journalFile).getStoredParts());
+                return largeFileVersion;
+            });
+
+            new B2LargeFileStorer(
+                    B2StoreLargeFileRequest.builder(largeFileVersion).build(),
+                    partStorers,
+                    authCache,
+                    webifier,
+                    retryer,
+                    retryPolicySupplier,
+                    executor,
+                    2,
+                    journal).storeFile(uploadListenerMock);
+
+            assertEquals(Arrays.asList(part1, part2), journaledParts);
+
+            // once the large file is finished, there's nothing to resume.
+            assertFalse(journalFile.exists());
+            assertEquals(null, journal.getLargeFileVersionOrNull());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    public void testStoreFileAsync_manyAlreadyStoredPartsOnTheCallingThread() throws Exception {
+        // like resuming from a journal that has almost every part.  each part's
+        // future is done as soon as it's started, and the executor runs
+        // everything on this thread, so starting the next part from the last
+        // one's callback would overflow the stack.
+        final int partCount = 5000;
+        final List<B2PartStorer> partStorers = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            partStorers.add(new B2AlreadyStoredPartStorer(
+                    new B2Part(fileId(partNumber), partNumber, FIVE_MEGABYTES, makeSha1(partNumber), makeMd5(partNumber), partNumber, null)));
+        }
+        when(webifier.finishLargeFile(anyObject(), anyObject())).thenReturn(largeFileVersion);
+
+        final CompletableFuture<B2FileVersion> future = new B2LargeFileStorer(
+                B2StoreLargeFileRequest.builder(largeFileVersion).build(),
+                partStorers,
+                authCache,
+                webifier,
+                retryer,
+                retryPolicySupplier,
+                executor,
+                4).storeFileAsync(uploadListenerMock);
+
+        assertTrue(future.isDone());
+        assertEquals(largeFileVersion, future.get(0, TimeUnit.SECONDS));
+    }
+
     private void storeFile(B2UploadListener uploadListener) throws IOException, B2Exception {
         final List<B2PartStorer> partStorers = new ArrayList<>();
         final B2ContentSource contentSourceForPart1 = mock(B2ContentSource.class);
@@ -467,6 +603,69 @@ public class B2LargeFileStorerTest extends B2BaseTest {
         }
     }
 
+    @Test
+    public void testStoreFile_limitsPartsInFlight() throws B2Exception, InterruptedException {
+        final int partCount = 10;
+        final int maxPartsInFlight = 2;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlightSeen = new AtomicInteger();
+        final AtomicInteger storedCount = new AtomicInteger();
+
+        final List<B2PartStorer> partStorers = new ArrayList<>();
+        for (int i = 1; i <= partCount; i++) {
+            final B2Part part = new B2Part(fileId(i), i, 100, makeSha1(i), makeMd5(i), i, null);
+            partStorers.add(new B2PartStorer() {
+                @Override
+                public int getPartNumber() {
+                    return part.getPartNumber();
+                }
+
+                @Override
+                public long getPartSizeOrThrow() {
+                    return part.getContentLength();
+                }
+
+                @Override
+                public B2Part storePart(B2LargeFileStorer largeFileCreationManager,
+                                       B2UploadListener uploadListener,
+                                       B2CancellationToken cancellationToken) {
+                    final int nowInFlight = inFlight.incrementAndGet();
+                    maxInFlightSeen.accumulateAndGet(nowInFlight, Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    storedCount.incrementAndGet();
+                    return part;
+                }
+            });
+        }
+        when(webifier.finishLargeFile(anyObject(), anyObject())).thenReturn(largeFileVersion);
+
+        final ExecutorService bigExecutor = Executors.newFixedThreadPool(8);
+        try {
+            final B2LargeFileStorer largeFileStorer = new B2LargeFileStorer(
+                    B2StoreLargeFileRequest.builder(largeFileVersion).build(),
+                    partStorers,
+                    authCache,
+                    webifier,
+                    retryer,
+                    retryPolicySupplier,
+                    bigExecutor,
+                    maxPartsInFlight);
+
+            assertEquals(largeFileVersion, largeFileStorer.storeFile(null));
+        } finally {
+            bigExecutor.shutdown();
+            bigExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(partCount, storedCount.get());
+        assertTrue("saw " + maxInFlightSeen.get() + " parts in flight", maxInFlightSeen.get() <= maxPartsInFlight);
+    }
+
     @Test
     public void testStoreLargeFileRequest_withSseB2_throwsIllegalArgumentException() {
         thrown.expect(IllegalArgumentException.class);
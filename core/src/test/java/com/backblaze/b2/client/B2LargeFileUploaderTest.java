@@ -7,6 +7,7 @@ package com.backblaze.b2.client;
 import com.backblaze.b2.client.contentSources.B2ContentSource;
 import com.backblaze.b2.client.contentSources.B2ContentTypes;
 import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2BadRequestException;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.exceptions.B2InternalErrorException;
 import com.backblaze.b2.client.exceptions.B2LocalException;
@@ -47,6 +48,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.backblaze.b2.client.B2LargeFileUploaderTest.When.IN_GET;
@@ -551,6 +553,102 @@ public class B2LargeFileUploaderTest extends B2BaseTest {
         checkPartMatching(alreadyUploadedParts, 1, 2, 3);
     }
 
+    @Test
+    public void testNeverMoreThanMaxPartsInFlight() throws IOException, B2Exception {
+        final int maxPartsInFlight = 2;
+        final long contentLen = 6 * ACCOUNT_AUTH.getRecommendedPartSize();
+        final B2FileVersion largeFileVersion = arrangeToFinishLargeFile(contentLen);
+
+        // arrange to answer upload_part slowly, keeping track of how many run at once.
+        final AtomicInteger uploadsRunning = new AtomicInteger();
+        final AtomicInteger maxUploadsRunning = new AtomicInteger();
+        when(webifier.uploadPart(anyObject(), anyObject())).thenAnswer(invocationOnMock -> {
+            final int running = uploadsRunning.incrementAndGet();
+            maxUploadsRunning.accumulateAndGet(running, Math::max);
+            try {
+                Thread.sleep(20);
+            } finally {
+                uploadsRunning.decrementAndGet();
+            }
+            B2UploadPartRequest request = (B2UploadPartRequest) invocationOnMock.getArguments()[1];
+            return makePart(request.getPartNumber());
+        });
+
+        // the executor has a thread for every part, so only the permits hold the uploads back.
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            final B2LargeFileUploader uploader = makeUploader(PART_SIZES, executor, contentLen, B2UploadListener.noopListener(), maxPartsInFlight);
+            assertEquals(largeFileVersion, uploader.finishUploadingLargeFile(largeFileVersion, new ArrayList<>()));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(webifier, times(6)).uploadPart(anyObject(), anyObject());
+        assertTrue("maxUploadsRunning was " + maxUploadsRunning.get(), maxUploadsRunning.get() <= maxPartsInFlight);
+    }
+
+    @Test
+    public void testPermitIsReleasedWhenAnUploadThrows() throws IOException, B2Exception {
+        final long contentLen = 3 * ACCOUNT_AUTH.getRecommendedPartSize();
+        final B2FileVersion largeFileVersion = arrangeToFinishLargeFile(contentLen);
+
+        // the first part fails in a way that isn't retried.  the others would succeed.
+        final B2Exception failure = new B2BadRequestException("test", null, "part 1 failed");
+        when(webifier.uploadPart(anyObject(), anyObject())).thenAnswer(invocationOnMock -> {
+            B2UploadPartRequest request = (B2UploadPartRequest) invocationOnMock.getArguments()[1];
+            if (request.getPartNumber() == 1) {
+                throw failure;
+            }
+            return makePart(request.getPartNumber());
+        });
+
+        // with only one permit, the next part can't start unless the failed upload gave its permit back.
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        final Future<B2FileVersion> result = caller.submit(() -> {
+            final B2LargeFileUploader uploader = makeUploader(PART_SIZES, executor, contentLen, B2UploadListener.noopListener(), 1);
+            return uploader.finishUploadingLargeFile(largeFileVersion, new ArrayList<>());
+        });
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("should've thrown");
+        } catch (ExecutionException e) {
+            assertEquals(failure, e.getCause());
+        } catch (InterruptedException | TimeoutException e) {
+            fail("the uploader seems to be stuck waiting for a permit: " + e);
+        } finally {
+            caller.shutdownNow();
+            executor.shutdownNow();
+        }
+
+        verify(webifier, never()).finishLargeFile(anyObject(), anyObject());
+    }
+
+    /**
+     * Arranges for the webifier to hand out upload part urls and to finish
+     * the returned large file.
+     */
+    private B2FileVersion arrangeToFinishLargeFile(long contentLen) throws B2Exception {
+        final String largeFileId = fileId(1);
+        final B2FileVersion largeFileVersion = new B2FileVersion(largeFileId,
+                fileName(1),
+                contentLen,
+                B2ContentTypes.APPLICATION_OCTET,
+                null,
+                null,
+                B2Collections.mapOf(),
+                "upload",
+                B2Clock.get().wallClockMillis(),
+                null,
+                null,
+                null);
+
+        final B2UploadPartUrlResponse partUrl = new B2UploadPartUrlResponse(largeFileId, "uploadPartUrl", "uploadPartAuthToken");
+        when(webifier.getUploadPartUrl(anyObject(), anyObject())).thenReturn(partUrl);
+        when(webifier.finishLargeFile(anyObject(), anyObject())).thenReturn(largeFileVersion);
+        return largeFileVersion;
+    }
+
 
     private void checkPartMatching(List<B2Part> alreadyUploadedParts,
                                    Integer... vExpectedUploadPartNumbers) throws IOException, B2Exception {
@@ -765,4 +863,28 @@ public class B2LargeFileUploaderTest extends B2BaseTest {
                 contentSource.getContentLength());
 
     }
+
+    private B2LargeFileUploader makeUploader(B2PartSizes partSizes,
+                                             ExecutorService executor,
+                                             long contentLen,
+                                             B2UploadListener listener,
+                                             int maxPartsInFlight) throws IOException {
+        final B2ContentSource contentSource = mock(B2ContentSource.class);
+        when(contentSource.getContentLength()).thenReturn(contentLen);
+        final B2UploadFileRequest request = B2UploadFileRequest
+                .builder(bucketId(1), fileName(1), B2ContentTypes.APPLICATION_OCTET, contentSource)
+                .setListener(listener)
+                .build();
+
+        return new B2LargeFileUploader(
+                retryer,
+                webifier,
+                accountAuthCache,
+                B2DefaultRetryPolicy.supplier(),
+                executor,
+                partSizes,
+                request,
+                contentLen,
+                maxPartsInFlight);
+    }
 }
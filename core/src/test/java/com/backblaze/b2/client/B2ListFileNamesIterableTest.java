@@ -16,8 +16,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import static com.backblaze.b2.client.B2TestHelpers.bucketId;
 import static com.backblaze.b2.client.B2TestHelpers.fileName;
@@ -27,6 +30,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class B2ListFileNamesIterableTest extends B2BaseTest {
@@ -130,6 +135,123 @@ public class B2ListFileNamesIterableTest extends B2BaseTest {
         assertTrue(!iter.hasNext());
     }
 
+    @Test
+    public void testPrefetchGetsPagesAhead() throws B2Exception {
+        when(client.getListFilesPrefetchPages()).thenReturn(2);
+        when(client.getListFilesPrefetchExecutor()).thenReturn(Runnable::run);
+
+        final List<B2FileVersion> pageOneNames = B2Collections.listOf(makeVersion(1, 1), makeVersion(2, 2));
+        when(client.listFileNames(TRIVIAL_REQUEST)).thenReturn(new B2ListFileNamesResponse(pageOneNames, fileName(3)));
+
+        final B2ListFileNamesRequest pageTwoRequest = B2ListFileNamesRequest
+                .builder(BUCKET_ID)
+                .setStartFileName(fileName(3))
+                .build();
+        final List<B2FileVersion> pageTwoNames = B2Collections.listOf(makeVersion(3, 3));
+        when(client.listFileNames(pageTwoRequest)).thenReturn(new B2ListFileNamesResponse(pageTwoNames, fileName(4)));
+
+        final B2ListFileNamesRequest pageThreeRequest = B2ListFileNamesRequest
+                .builder(BUCKET_ID)
+                .setStartFileName(fileName(4))
+                .build();
+        final List<B2FileVersion> pageThreeNames = B2Collections.listOf(makeVersion(4, 4));
+        when(client.listFileNames(pageThreeRequest)).thenReturn(new B2ListFileNamesResponse(pageThreeNames, null));
+
+        // the executor runs things right away, so both of the pages after
+        // the first one have been gotten before we look at the first name.
+        final Iterator<B2FileVersion> iter = new B2ListFileNamesIterable(client, TRIVIAL_REQUEST).iterator();
+        verify(client, times(1)).listFileNames(pageTwoRequest);
+        verify(client, times(1)).listFileNames(pageThreeRequest);
+
+        assertTrue(pageOneNames.get(0) == iter.next());
+        assertTrue(pageOneNames.get(1) == iter.next());
+        assertTrue(pageTwoNames.get(0) == iter.next());
+        assertTrue(pageThreeNames.get(0) == iter.next());
+        assertTrue(!iter.hasNext());
+
+        // and each page was only asked for once.
+        verify(client, times(1)).listFileNames(TRIVIAL_REQUEST);
+        verify(client, times(1)).listFileNames(pageTwoRequest);
+        verify(client, times(1)).listFileNames(pageThreeRequest);
+    }
+
+    @Test
+    public void testPrefetchedPageException() throws B2Exception {
+        when(client.getListFilesPrefetchPages()).thenReturn(1);
+        when(client.getListFilesPrefetchExecutor()).thenReturn(Runnable::run);
+
+        final List<B2FileVersion> firstPageNames = B2Collections.listOf(makeVersion(1, 1));
+        when(client.listFileNames(TRIVIAL_REQUEST)).thenReturn(new B2ListFileNamesResponse(firstPageNames, "file/throwWhenQueryWithThis"));
+
+        final B2ListFileNamesRequest secondRequest = B2ListFileNamesRequest
+                .builder(BUCKET_ID)
+                .setStartFileName("file/throwWhenQueryWithThis")
+                .build();
+        when(client.listFileNames(secondRequest)).thenThrow(new B2InternalErrorException("test", "testing"));
+
+        // the second page fails in the background, but we don't hear about
+        // it until we need the second page.
+        final Iterator<B2FileVersion> iter = new B2ListFileNamesIterable(client, TRIVIAL_REQUEST).iterator();
+        assertTrue(iter.hasNext());
+
+        thrown.expect(B2RuntimeException.class);
+        thrown.expectMessage("failed to advance iterator: testing");
+        iter.next();
+    }
+
+    @Test
+    public void testStreams() throws B2Exception {
+        final List<B2FileVersion> allNames = setUpThreePages();
+        final B2ListFileNamesIterable iterable = new B2ListFileNamesIterable(client, TRIVIAL_REQUEST);
+
+        assertEquals(allNames, iterable.stream().collect(Collectors.toList()));
+        assertEquals(allNames, iterable.parallelStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSpliteratorSplitsAtPageBoundaries() throws B2Exception {
+        final List<B2FileVersion> allNames = setUpThreePages();
+        final Spliterator<B2FileVersion> spliterator = new B2ListFileNamesIterable(client, TRIVIAL_REQUEST).spliterator();
+
+        // the first two splits are the first two pages.
+        final Spliterator<B2FileVersion> pageOne = spliterator.trySplit();
+        assertEquals(2, pageOne.estimateSize());
+        final Spliterator<B2FileVersion> pageTwo = spliterator.trySplit();
+        assertEquals(1, pageTwo.estimateSize());
+
+        // the last page is split in half.
+        final Spliterator<B2FileVersion> firstHalfOfPageThree = spliterator.trySplit();
+        assertEquals(2, firstHalfOfPageThree.estimateSize());
+        assertEquals(2, spliterator.estimateSize());
+
+        final List<B2FileVersion> names = new ArrayList<>();
+        pageOne.forEachRemaining(names::add);
+        pageTwo.forEachRemaining(names::add);
+        firstHalfOfPageThree.forEachRemaining(names::add);
+        spliterator.forEachRemaining(names::add);
+        assertEquals(allNames, names);
+    }
+
+    // sets up three pages, with two, one, and four names, and returns all of the names.
+    private List<B2FileVersion> setUpThreePages() throws B2Exception {
+        final List<B2FileVersion> pageOneNames = B2Collections.listOf(makeVersion(1, 1), makeVersion(2, 2));
+        when(client.listFileNames(TRIVIAL_REQUEST)).thenReturn(new B2ListFileNamesResponse(pageOneNames, fileName(3)));
+
+        final List<B2FileVersion> pageTwoNames = B2Collections.listOf(makeVersion(3, 3));
+        when(client.listFileNames(B2ListFileNamesRequest.builder(BUCKET_ID).setStartFileName(fileName(3)).build()))
+                .thenReturn(new B2ListFileNamesResponse(pageTwoNames, fileName(4)));
+
+        final List<B2FileVersion> pageThreeNames = B2Collections.listOf(makeVersion(4, 4), makeVersion(5, 5), makeVersion(6, 6), makeVersion(7, 7));
+        when(client.listFileNames(B2ListFileNamesRequest.builder(BUCKET_ID).setStartFileName(fileName(4)).build()))
+                .thenReturn(new B2ListFileNamesResponse(pageThreeNames, null));
+
+        final List<B2FileVersion> allNames = new ArrayList<>();
+        allNames.addAll(pageOneNames);
+        allNames.addAll(pageTwoNames);
+        allNames.addAll(pageThreeNames);
+        return allNames;
+    }
+
     @Test
     public void testBuilder() {
         B2ListFileNamesRequest request = B2ListFileNamesRequest
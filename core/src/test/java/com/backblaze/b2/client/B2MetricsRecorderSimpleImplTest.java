@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.B2MetricsRecorderSimpleImpl.B2OperationMetrics;
+import com.backblaze.b2.client.exceptions.B2BadRequestException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2ServiceUnavailableException;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2ClockSim;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class B2MetricsRecorderSimpleImplTest extends B2BaseTest {
+    private final B2MetricsRecorderSimpleImpl recorder = new B2MetricsRecorderSimpleImpl();
+
+    // doesn't really sleep.
+    private final B2Sleeper sleeper = new B2Sleeper() {
+        @Override
+        boolean sleepMilliseconds(long milliseconds) {
+            takeMillis(milliseconds);
+            return true;
+        }
+    };
+    private final B2Retryer retryer = new B2Retryer(sleeper, recorder);
+
+    // retries after one second, up to three attempts.
+    private final B2RetryPolicy policy = new B2RetryPolicy() {
+        @Override
+        public Integer gotRetryableAfterDelay(String operation, int attemptsSoFar, long tookMillis, B2Exception e) {
+            return (attemptsSoFar < 3) ? 1 : null;
+        }
+
+        @Override
+        public boolean gotRetryableImmediately(String operation, int attemptsSoFar, long tookMillis, B2Exception e) {
+            return attemptsSoFar < 3;
+        }
+    };
+
+    private final B2AccountAuthorizationCache authCache = new B2AccountAuthorizationCache(null, null);
+
+    @Test
+    public void testSuccessAfterRetry() throws B2Exception {
+        final int[] attempts = {0};
+        final String result = retryer.doRetry("b2_upload_part", authCache, isRetry -> {
+            attempts[0]++;
+            takeMillis(attempts[0] * 10);
+            if (attempts[0] == 1) {
+                throw new B2ServiceUnavailableException("service_unavailable", null, "busy");
+            }
+            return "ok";
+        }, policy);
+        assertEquals("ok", result);
+
+        final B2OperationMetrics metrics = recorder.getOrNull("b2_upload_part");
+        assertEquals("b2_upload_part", metrics.getOperation());
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(2, metrics.getAttempts());
+        assertEquals(0, metrics.getFailures());
+        assertEquals(Collections.singletonMap("service_unavailable", 1L), metrics.getAttemptFailureReasons());
+
+        // the attempts took 10 and 20 msec, and the operation took those plus the second of sleeping.
+        assertEquals(2, metrics.getAttemptLatencyMillis().getCount());
+        assertEquals(20, metrics.getAttemptLatencyMillis().getMax());
+        assertEquals(1, metrics.getLatencyMillis().getCount());
+        assertEquals(1030, metrics.getLatencyMillis().getMax());
+    }
+
+    @Test
+    public void testFailure() {
+        try {
+            retryer.doRetry("b2_list_file_names", authCache, () -> {
+                throw new B2BadRequestException("bad_request", null, "nope");
+            }, policy);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertEquals("bad_request", e.getCode());
+        }
+
+        final B2OperationMetrics metrics = recorder.getOrNull("b2_list_file_names");
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, metrics.getAttempts());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(1, metrics.getLatencyMillis().getCount());
+        assertEquals(Collections.singletonMap("bad_request", 1L), metrics.getAttemptFailureReasons());
+    }
+
+    @Test
+    public void testUnexpectedExceptionReasonIsClassName() {
+        try {
+            retryer.doRetry("op", authCache, () -> {
+                throw new IllegalStateException("oops");
+            }, policy);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertEquals("unexpected", e.getCode());
+        }
+
+        final B2OperationMetrics metrics = recorder.getOrNull("op");
+        assertEquals(1, metrics.getFailures());
+        assertEquals(Collections.singletonMap(IllegalStateException.class.getName(), 1L), metrics.getAttemptFailureReasons());
+    }
+
+    @Test
+    public void testInFlight() throws B2Exception {
+        final long inFlightDuringCall = retryer.doRetry("op", authCache,
+                () -> recorder.getOrNull("op").getInFlight(),
+                policy);
+        assertEquals(1, inFlightDuringCall);
+        assertEquals(0, recorder.getOrNull("op").getInFlight());
+    }
+
+    @Test
+    public void testBytesTransferredAndGetAll() {
+        recorder.bytesTransferred("b2_upload_part", 100);
+        recorder.bytesTransferred("b2_upload_part", 23);
+        recorder.bytesTransferred("b2_download_file_by_id", 7);
+
+        assertEquals(123, recorder.getOrNull("b2_upload_part").getBytesTransferred());
+        assertEquals(2, recorder.getAll().size());
+        assertEquals("b2_download_file_by_id", recorder.getAll().get(0).getOperation());
+        assertNull(recorder.getOrNull("b2_list_buckets"));
+    }
+
+    @Test
+    public void testRetryerWithoutRecorder() throws B2Exception {
+        final B2Retryer plainRetryer = new B2Retryer(sleeper);
+        assertEquals("ok", plainRetryer.doRetry("op", authCache, () -> "ok", policy));
+
+        // it has a recorder that does nothing, so callers don't have to check.
+        plainRetryer.getMetricsRecorder().bytesTransferred("op", 1);
+    }
+
+    private static void takeMillis(long millis) {
+        ((B2ClockSim) B2Clock.get()).advanceBoth(Duration.ofMillis(millis));
+    }
+}
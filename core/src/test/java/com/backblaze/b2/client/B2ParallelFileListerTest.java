@@ -0,0 +1,221 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.exceptions.B2RuntimeException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2ListFileNamesRequest;
+import com.backblaze.b2.client.structures.B2ListFileVersionsRequest;
+import com.backblaze.b2.util.B2BaseTest;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.backblaze.b2.client.B2TestHelpers.bucketId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class B2ParallelFileListerTest extends B2BaseTest {
+    private static final String BUCKET_ID = bucketId(1);
+
+    // the names in our pretend bucket, in the order b2 would list them.
+    private static final List<String> NAMES = Arrays.asList(
+            "a/1", "a/2", "b/1", "b/2", "b/3", "c/1", "c/2", "d");
+
+    private final B2StorageClient client = mock(B2StorageClient.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    // a small buffer, so that the ranges have to wait for the consumer.
+    private final B2ParallelFileLister lister = new B2ParallelFileLister(client, executor, 1);
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public B2ParallelFileListerTest() throws B2Exception {
+        when(client.fileNames(any(B2ListFileNamesRequest.class))).thenAnswer(invocation -> {
+            final B2ListFileNamesRequest request = (B2ListFileNamesRequest) invocation.getArguments()[0];
+            return listFrom(request.getStartFileName());
+        });
+        when(client.fileVersions(any(B2ListFileVersionsRequest.class))).thenAnswer(invocation -> {
+            final B2ListFileVersionsRequest request = (B2ListFileVersionsRequest) invocation.getArguments()[0];
+            return listFrom(request.getStartFileName());
+        });
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testInOrderMatchesOneListing() throws B2Exception {
+        final List<String> names = new ArrayList<>();
+        lister.forEachFileNameInOrder(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                Arrays.asList("b", "c/2"),
+                version -> names.add(version.getFileName()));
+        assertEquals(NAMES, names);
+
+        final List<String> versionNames = new ArrayList<>();
+        lister.forEachFileVersionInOrder(B2ListFileVersionsRequest.builder(BUCKET_ID).build(),
+                Arrays.asList("a", "b/2", "z"),
+                version -> versionNames.add(version.getFileName()));
+        assertEquals(NAMES, versionNames);
+    }
+
+    @Test
+    public void testUnorderedGetsEveryFileOnce() throws B2Exception {
+        final List<String> names = Collections.synchronizedList(new ArrayList<>());
+        lister.forEachFileName(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                Arrays.asList("b", "c", "d"),
+                version -> names.add(version.getFileName()));
+        assertEquals(NAMES, names.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testStartsWhereTheRequestStarts() throws B2Exception {
+        final List<String> names = new ArrayList<>();
+        lister.forEachFileNameInOrder(B2ListFileNamesRequest.builder(BUCKET_ID).setStartFileName("b/2").build(),
+                Arrays.asList("b", "c"),
+                version -> names.add(version.getFileName()));
+        assertEquals(NAMES.subList(3, NAMES.size()), names);
+    }
+
+    @Test
+    public void testNoBoundaries() throws B2Exception {
+        final List<String> names = new ArrayList<>();
+        lister.forEachFileNameInOrder(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                Collections.emptyList(),
+                version -> names.add(version.getFileName()));
+        assertEquals(NAMES, names);
+    }
+
+    @Test
+    public void testListingExceptionIsThrown() throws B2Exception {
+        when(client.fileNames(any(B2ListFileNamesRequest.class))).thenAnswer(invocation -> {
+            final B2ListFileNamesRequest request = (B2ListFileNamesRequest) invocation.getArguments()[0];
+            if ("c".equals(request.getStartFileName())) {
+                return (B2ListFilesIterable) () -> {
+                    throw new B2RuntimeException("failed to create/advance iterator: testing",
+                            new B2InternalErrorException("test", "testing"));
+                };
+            }
+            return listFrom(request.getStartFileName());
+        });
+
+        final List<String> names = new ArrayList<>();
+        try {
+            lister.forEachFileNameInOrder(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                    Arrays.asList("b", "c"),
+                    version -> names.add(version.getFileName()));
+            fail("should've thrown");
+        } catch (B2InternalErrorException e) {
+            assertEquals("testing", e.getMessage());
+        }
+
+        // we got everything before the range that failed.
+        assertEquals(NAMES.subList(0, 5), names);
+    }
+
+    @Test
+    public void testUnorderedThrowsTheFirstFailureWithoutWaitingForEarlierRanges() throws Exception {
+        // the first range stalls until it's cancelled, and the last one fails.
+        final CountDownLatch firstRangeInterrupted = new CountDownLatch(1);
+        when(client.fileNames(any(B2ListFileNamesRequest.class))).thenAnswer(invocation -> {
+            final B2ListFileNamesRequest request = (B2ListFileNamesRequest) invocation.getArguments()[0];
+            if (request.getStartFileName() == null) {
+                return (B2ListFilesIterable) () -> {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        firstRangeInterrupted.countDown();
+                    }
+                    return Collections.emptyIterator();
+                };
+            }
+            if ("c".equals(request.getStartFileName())) {
+                return (B2ListFilesIterable) () -> {
+                    throw new B2RuntimeException("failed to create/advance iterator: testing",
+                            new B2InternalErrorException("test", "testing"));
+                };
+            }
+            return listFrom(request.getStartFileName());
+        });
+
+        try {
+            lister.forEachFileName(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                    Arrays.asList("b", "c"),
+                    version -> {});
+            fail("should've thrown");
+        } catch (B2InternalErrorException e) {
+            assertEquals("testing", e.getMessage());
+        }
+        assertTrue(firstRangeInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConsumerExceptionIsThrown() throws B2Exception {
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("from the consumer");
+        lister.forEachFileName(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                Arrays.asList("b", "c"),
+                version -> {
+                    throw new IllegalStateException("from the consumer");
+                });
+    }
+
+    @Test
+    public void testBoundariesMustBeSorted() throws B2Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("boundaries must be sorted and must not have duplicates");
+        lister.forEachFileName(B2ListFileNamesRequest.builder(BUCKET_ID).build(),
+                Arrays.asList("c", "b"),
+                version -> {});
+    }
+
+    private static B2ListFilesIterable listFrom(String startFileNameOrNull) {
+        final List<B2FileVersion> versions = new ArrayList<>();
+        for (int i = 0; i < NAMES.size(); i++) {
+            final String name = NAMES.get(i);
+            if (startFileNameOrNull == null || name.compareTo(startFileNameOrNull) >= 0) {
+                versions.add(makeVersion(i, name));
+            }
+        }
+        return versions::iterator;
+    }
+
+    private static B2FileVersion makeVersion(int i, String name) {
+        final B2FileVersion template = B2TestHelpers.makeVersion(i, i);
+        return new B2FileVersion(
+                template.getFileId(),
+                name,
+                template.getContentLength(),
+                template.getContentType(),
+                template.getContentSha1(),
+                template.getContentMd5(),
+                template.getFileInfo(),
+                template.getAction(),
+                template.getUploadTimestamp(),
+                null,
+                null,
+                null);
+    }
+}
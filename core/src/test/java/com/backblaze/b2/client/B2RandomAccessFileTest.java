@@ -0,0 +1,332 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2InternalErrorException;
+import com.backblaze.b2.client.structures.B2DownloadByIdRequest;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2ByteRange;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.backblaze.b2.client.B2TestHelpers.fileId;
+import static com.backblaze.b2.client.B2TestHelpers.makeBytes;
+import static com.backblaze.b2.client.B2TestHelpers.makeVersion;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class B2RandomAccessFileTest extends B2BaseTest {
+    private static final int LEN = 10000;
+    private static final int BLOCK_SIZE = 1000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    // makeVersion(10, ...) is 10,000 bytes long.
+    private final B2FileVersion version = makeVersion(10, 1);
+    private final byte[] content = makeBytes(LEN);
+    private final B2StorageClient client = mock(B2StorageClient.class);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final List<B2ByteRange> requestedRanges = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failuresToCause = new AtomicInteger();
+
+    public B2RandomAccessFileTest() throws B2Exception {
+        doAnswer(invocation -> {
+            serve((B2DownloadByIdRequest) invocation.getArguments()[0], (B2ContentSink) invocation.getArguments()[1]);
+            return null;
+        }).when(client).downloadById(any(B2DownloadByIdRequest.class), any(B2ContentSink.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPositionalReadAcrossBlocks() throws B2Exception {
+        final B2RandomAccessFile file = builder().build();
+        assertEquals(LEN, file.length());
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1000);
+        assertEquals(1000, file.read(1500, buffer));
+        assertEquals(0, buffer.remaining());
+        assertArrayEquals(Arrays.copyOfRange(content, 1500, 2500), buffer.array());
+
+        assertEquals(Arrays.asList(B2ByteRange.between(1000, 1999), B2ByteRange.between(2000, 2999)), requestedRanges);
+
+        // the file pointer didn't move.
+        assertEquals(0, file.getFilePointer());
+    }
+
+    @Test
+    public void testCachedBlocksArentDownloadedAgain() throws B2Exception {
+        final B2RandomAccessFile file = builder().build();
+
+        final byte[] bytes = new byte[10];
+        for (int position = 3000; position < 4000; position += 100) {
+            assertEquals(10, file.read(position, bytes, 0, 10));
+            assertArrayEquals(Arrays.copyOfRange(content, position, position + 10), bytes);
+        }
+        assertEquals(1, file.getDownloadCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlocksAreForgotten() throws B2Exception {
+        final B2RandomAccessFile file = builder()
+                .setMaxCachedBlocks(2)
+                .setPrefetchBlocks(0)
+                .build();
+
+        final byte[] bytes = new byte[1];
+        file.read(0, bytes, 0, 1);
+        file.read(5000, bytes, 0, 1);
+        file.read(0, bytes, 0, 1);
+        assertEquals(2, file.getDownloadCount());
+
+        // this pushes out block 5, which was used less recently than block 0.
+        file.read(9000, bytes, 0, 1);
+        file.read(0, bytes, 0, 1);
+        assertEquals(3, file.getDownloadCount());
+        file.read(5000, bytes, 0, 1);
+        assertEquals(4, file.getDownloadCount());
+    }
+
+    @Test
+    public void testReadsAtTheEnd() throws B2Exception {
+        final B2RandomAccessFile file = builder().build();
+
+        // the last block is shorter, since the file isn't a multiple of the block size.
+        final B2RandomAccessFile oddFile = B2RandomAccessFile.builder(client, version)
+                .setBlockSize(3000)
+                .build();
+        final ByteBuffer buffer = ByteBuffer.allocate(200);
+        assertEquals(100, oddFile.read(LEN - 100, buffer));
+        assertEquals(B2ByteRange.between(9000, 9999), requestedRanges.get(0));
+
+        final byte[] bytes = new byte[100];
+        assertEquals(10, file.read(LEN - 10, bytes, 0, 100));
+        assertEquals(-1, file.read(LEN, bytes, 0, 100));
+        assertEquals(0, file.read(LEN, bytes, 0, 0));
+    }
+
+    @Test
+    public void testSeekAndRead() throws B2Exception {
+        final B2RandomAccessFile file = builder().build();
+
+        file.seek(LEN - 300);
+        final byte[] bytes = new byte[200];
+        assertEquals(200, file.read(bytes, 0, 200));
+        assertEquals(LEN - 100, file.getFilePointer());
+        assertEquals(100, file.read(bytes, 0, 200));
+        assertEquals(LEN, file.getFilePointer());
+        assertEquals(-1, file.read(bytes, 0, 200));
+        assertEquals(LEN, file.getFilePointer());
+    }
+
+    @Test
+    public void testSequentialReadsPrefetch() throws B2Exception, InterruptedException {
+        final B2RandomAccessFile file = builder()
+                .setExecutorOrNull(executor)
+                .build();
+
+        final byte[] bytes = new byte[10];
+        file.read(0, bytes, 0, 10);
+        file.read(BLOCK_SIZE, bytes, 0, 10);
+        waitForPrefetches();
+
+        // reading block 0 prefetched blocks 1 and 2, and reading block 1 prefetched block 3.
+        assertEquals(new HashSet<>(Arrays.asList(
+                B2ByteRange.between(0, 999),
+                B2ByteRange.between(1000, 1999),
+                B2ByteRange.between(2000, 2999),
+                B2ByteRange.between(3000, 3999))),
+                new HashSet<>(requestedRanges));
+
+        // ...and they're used.
+        file.read(2500, bytes, 0, 10);
+        file.read(3500, bytes, 0, 10);
+        assertArrayEquals(Arrays.copyOfRange(content, 3500, 3510), bytes);
+        assertEquals(4, requestedRanges.size());
+    }
+
+    @Test
+    public void testReadingFromTheStartPrefetches() throws B2Exception, InterruptedException {
+        final B2RandomAccessFile file = builder()
+                .setExecutorOrNull(executor)
+                .build();
+
+        file.read(0, new byte[10], 0, 10);
+        waitForPrefetches();
+
+        assertEquals(new HashSet<>(Arrays.asList(
+                B2ByteRange.between(0, 999),
+                B2ByteRange.between(1000, 1999),
+                B2ByteRange.between(2000, 2999))),
+                new HashSet<>(requestedRanges));
+    }
+
+    @Test
+    public void testRejectedPrefetchesAreDownloadedWhenRead() throws B2Exception {
+        executor.shutdown();
+        final B2RandomAccessFile file = builder()
+                .setExecutorOrNull(executor)
+                .build();
+
+        final byte[] bytes = new byte[10];
+        for (int position = 0; position < 3000; position += 500) {
+            assertEquals(10, file.read(position, bytes, 0, 10));
+            assertArrayEquals(Arrays.copyOfRange(content, position, position + 10), bytes);
+        }
+        assertEquals(Arrays.asList(
+                B2ByteRange.between(0, 999),
+                B2ByteRange.between(1000, 1999),
+                B2ByteRange.between(2000, 2999)),
+                requestedRanges);
+    }
+
+    @Test
+    public void testRandomReadsDontPrefetch() throws B2Exception, InterruptedException {
+        final B2RandomAccessFile file = builder()
+                .setExecutorOrNull(executor)
+                .build();
+
+        // like reading a footer, and then a column chunk.
+        final byte[] bytes = new byte[10];
+        file.read(LEN - 10, bytes, 0, 10);
+        file.read(3000, bytes, 0, 10);
+        file.read(6000, bytes, 0, 10);
+        waitForPrefetches();
+
+        assertEquals(3, requestedRanges.size());
+    }
+
+    @Test
+    public void testInputStreamReadsEverythingOnce() throws B2Exception, IOException, InterruptedException {
+        final B2RandomAccessFile file = builder()
+                .setExecutorOrNull(executor)
+                .build();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final InputStream in = file.asInputStream();
+        final byte[] bytes = new byte[333];
+        int nRead;
+        while ((nRead = in.read(bytes)) != -1) {
+            out.write(bytes, 0, nRead);
+        }
+        assertArrayEquals(content, out.toByteArray());
+        waitForPrefetches();
+
+        // each block was downloaded exactly once, some of them by prefetching.
+        assertEquals(LEN / BLOCK_SIZE, requestedRanges.size());
+        assertEquals(LEN / BLOCK_SIZE, new HashSet<>(requestedRanges).size());
+    }
+
+    @Test
+    public void testFailedBlockIsDownloadedAgainNextTime() throws B2Exception {
+        final B2RandomAccessFile file = builder().build();
+        final byte[] bytes = new byte[10];
+
+        failuresToCause.set(1);
+        try {
+            file.read(0, bytes, 0, 10);
+            fail("should've thrown");
+        } catch (B2InternalErrorException e) {
+            assertEquals("pretend B2 had trouble", e.getMessage());
+        }
+
+        assertEquals(10, file.read(0, bytes, 0, 10));
+        assertArrayEquals(Arrays.copyOfRange(content, 0, 10), bytes);
+        assertEquals(2, file.getDownloadCount());
+    }
+
+    @Test
+    public void testInputStreamWrapsFailures() throws IOException {
+        final B2RandomAccessFile file = builder().build();
+        failuresToCause.set(1);
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            file.asInputStream().read();
+            fail("should've thrown");
+        } catch (IOException e) {
+            assertEquals("failed to read " + fileId(10) + ": pretend B2 had trouble", e.getMessage());
+            assertTrue(e.getCause() instanceof B2InternalErrorException);
+        }
+    }
+
+    @Test
+    public void testReadingAfterCloseIsAnError() throws B2Exception {
+        final B2RandomAccessFile file = builder().build();
+        file.close();
+
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("this B2RandomAccessFile has been closed");
+        file.read(0, new byte[1], 0, 1);
+    }
+
+    @Test
+    public void testPrefetchBlocksMustFitInTheCache() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("prefetchBlocks must be less than maxCachedBlocks");
+        builder()
+                .setMaxCachedBlocks(2)
+                .setPrefetchBlocks(2)
+                .build();
+    }
+
+    private B2RandomAccessFile.Builder builder() {
+        return B2RandomAccessFile.builder(client, version)
+                .setBlockSize(BLOCK_SIZE);
+    }
+
+    private void waitForPrefetches() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private void serve(B2DownloadByIdRequest request,
+                       B2ContentSink sink) throws B2Exception, IOException {
+        assertEquals(version.getFileId(), request.getFileId());
+        if (failuresToCause.getAndDecrement() > 0) {
+            throw new B2InternalErrorException("test", null, "pretend B2 had trouble");
+        }
+
+        final B2ByteRange range = request.getRange();
+        requestedRanges.add(range);
+        final int start = range.start.intValue();
+        final int length = (int) range.getNumberOfBytes();
+        final B2Headers headers = B2HeadersImpl.builder()
+                .set(B2Headers.CONTENT_LENGTH, Integer.toString(length))
+                .build();
+        sink.readContent(headers, new ByteArrayInputStream(content, start, length));
+    }
+}
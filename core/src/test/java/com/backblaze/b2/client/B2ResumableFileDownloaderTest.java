@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2ByteRange;
+import com.backblaze.b2.util.B2Sha1;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.backblaze.b2.client.B2TestHelpers.makeBytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class B2ResumableFileDownloaderTest extends B2BaseTest {
+    private static final String FILE_ID = "4_zBlah_0000001";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final B2Retryer retryer = new B2Retryer(new B2Sleeper());
+    // don't make the retries wait.
+    private final Supplier<B2RetryPolicy> retryPolicySupplier = () -> new B2DefaultRetryPolicy(null, maxMillis -> 0);
+
+    private final byte[] content = makeBytes(1000);
+    private final String contentSha1 = B2Sha1.hexSha1OfBytes(content);
+    private final List<String> requestedRanges = new ArrayList<>();
+    private final File destination;
+
+    public B2ResumableFileDownloaderTest() throws IOException {
+        destination = File.createTempFile("B2ResumableFileDownloaderTest", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        destination.delete();
+    }
+
+    @Test
+    public void testNoTrouble() throws B2Exception, IOException {
+        final B2ResumableFileDownloader downloader = downloader(null, new Server(FILE_ID, contentSha1, 0));
+        downloader.downloadToFile(destination);
+
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertEquals(Arrays.asList("null"), requestedRanges);
+        assertEquals(1, downloader.getAttemptsWithContent());
+    }
+
+    @Test
+    public void testResumesWhereItLeftOff() throws B2Exception, IOException {
+        // every response breaks after 300 bytes.
+        final B2ResumableFileDownloader downloader = downloader(null, new Server(FILE_ID, contentSha1, 300));
+        downloader.downloadToFile(destination);
+
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertEquals(Arrays.asList("null", "bytes=300-999", "bytes=600-999", "bytes=900-999"), requestedRanges);
+        assertEquals(4, downloader.getAttemptsWithContent());
+    }
+
+    @Test
+    public void testResumesARange() throws B2Exception, IOException {
+        final B2ResumableFileDownloader downloader = downloader(B2ByteRange.between(100, 599),
+                new Server(FILE_ID, contentSha1, 300));
+        downloader.downloadToFile(destination);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 600), Files.readAllBytes(destination.toPath()));
+        assertEquals(Arrays.asList("bytes=100-599", "bytes=400-599"), requestedRanges);
+    }
+
+    @Test
+    public void testResponseThatEndsEarlyIsResumed() throws B2Exception, IOException {
+        final Server server = new Server(FILE_ID, contentSha1, 250);
+        server.endQuietly = true;
+        downloader(null, server).downloadToFile(destination);
+
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertEquals(Arrays.asList("null", "bytes=250-999", "bytes=500-999", "bytes=750-999"), requestedRanges);
+    }
+
+    @Test
+    public void testSha1MismatchIsNotRetried() throws B2Exception {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(makeBytes(999));
+
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("sha1 mismatch as written to destination.  expected " + wrongSha1 + ", but got " + contentSha1);
+        downloader(null, new Server(FILE_ID, wrongSha1, 300)).downloadToFile(destination);
+    }
+
+    @Test
+    public void testNewVersionDuringDownload() throws B2Exception {
+        final Server server = new Server(FILE_ID, contentSha1, 300);
+        server.fileIdAfterFirstResponse = "4_zBlah_0000002";
+
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("expected to resume downloading fileId '" + FILE_ID + "', but got '4_zBlah_0000002'");
+        downloader(null, server).downloadToFile(destination);
+    }
+
+    @Test
+    public void testResponseForTheWrongRange() throws B2Exception {
+        final Server server = new Server(FILE_ID, contentSha1, 300);
+        server.ignoreRanges = true;
+
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("expected the response to resume at byte 300, but it starts at byte 0");
+        downloader(null, server).downloadToFile(destination);
+    }
+
+    private B2ResumableFileDownloader downloader(B2ByteRange requestedRangeOrNull,
+                                                 Server server) {
+        return new B2ResumableFileDownloader(retryer,
+                null,
+                retryPolicySupplier,
+                "b2_download_file_by_id",
+                requestedRangeOrNull,
+                server::serve);
+    }
+
+    /**
+     * Server pretends to be B2.  It serves the content, breaking each
+     * response after a given number of bytes.
+     */
+    private class Server {
+        private final String fileId;
+        private final String sha1;
+        private final int bytesPerResponseOrZero;
+
+        private String fileIdAfterFirstResponse;
+        private boolean endQuietly;
+        private boolean ignoreRanges;
+
+        Server(String fileId,
+               String sha1,
+               int bytesPerResponseOrZero) {
+            this.fileId = fileId;
+            this.fileIdAfterFirstResponse = fileId;
+            this.sha1 = sha1;
+            this.bytesPerResponseOrZero = bytesPerResponseOrZero;
+        }
+
+        void serve(B2ByteRange rangeOrNull,
+                   B2ContentSink sink) throws B2Exception {
+            requestedRanges.add(String.valueOf(rangeOrNull));
+
+            final B2HeadersImpl.Builder headers = B2HeadersImpl.builder()
+                    .set(B2Headers.FILE_ID, requestedRanges.size() == 1 ? fileId : fileIdAfterFirstResponse);
+            int start = 0;
+            int length = content.length;
+            if (rangeOrNull == null || ignoreRanges) {
+                headers.set(B2Headers.CONTENT_SHA1, sha1);
+            } else {
+                final B2ByteRange range = rangeOrNull.effectiveRange(content.length);
+                start = range.start.intValue();
+                length = (int) range.getNumberOfBytes();
+                headers.set(B2Headers.CONTENT_RANGE, "bytes " + range.start + "-" + range.end + "/" + content.length);
+            }
+            headers.set(B2Headers.CONTENT_LENGTH, Integer.toString(length));
+
+            try {
+                sink.readContent(headers.build(), new BreakingInputStream(start, length));
+            } catch (IOException e) {
+                throw new B2LocalException("test", "unexpected: " + e, e);
+            }
+        }
+
+        private class BreakingInputStream extends InputStream {
+            private final ByteArrayInputStream in;
+            private int bytesLeftBeforeBreaking;
+
+            BreakingInputStream(int start, int length) {
+                this.in = new ByteArrayInputStream(content, start, length);
+                this.bytesLeftBeforeBreaking = (bytesPerResponseOrZero == 0) ? Integer.MAX_VALUE : bytesPerResponseOrZero;
+            }
+
+            @Override
+            public int read() throws IOException {
+                final byte[] one = new byte[1];
+                return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xff);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (bytesLeftBeforeBreaking == 0) {
+                    if (endQuietly) {
+                        return -1;
+                    }
+                    throw new IOException("connection reset");
+                }
+                final int n = in.read(b, off, Math.min(len, bytesLeftBeforeBreaking));
+                if (n > 0) {
+                    bytesLeftBeforeBreaking -= n;
+                }
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client;
+
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2ClockSim;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class B2RetryBudgetTest extends B2BaseTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testStartsFullAndRunsOut() {
+        final B2RetryBudget budget = new B2RetryBudget(3, 0);
+        assertEquals(3.0, budget.getAvailableTokens(), 0.0);
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+        assertEquals(0.0, budget.getAvailableTokens(), 0.0);
+    }
+
+    @Test
+    public void testRefillsOverTimeUpToMax() {
+        final B2ClockSim clock = (B2ClockSim) B2Clock.get();
+        final B2RetryBudget budget = new B2RetryBudget(2, 4);
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        // four per second is one every 250 msec.
+        clock.advanceBoth(Duration.ofMillis(200));
+        assertFalse(budget.tryAcquire());
+        clock.advanceBoth(Duration.ofMillis(50));
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        // it never has more than the max.
+        clock.advanceBoth(Duration.ofMinutes(10));
+        assertEquals(2.0, budget.getAvailableTokens(), 0.0);
+    }
+
+    @Test
+    public void testDefaults() {
+        final B2RetryBudget budget = B2RetryBudget.withDefaults();
+        assertEquals(B2RetryBudget.DEFAULT_MAX_TOKENS, budget.getAvailableTokens(), 0.0);
+    }
+
+    @Test
+    public void testMaxTokensMustBeAtLeastOne() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("maxTokens must be at least one");
+        new B2RetryBudget(0.5, 1);
+    }
+}
@@ -20,12 +20,24 @@ import com.backblaze.b2.util.B2BaseTest;
 import com.backblaze.b2.util.B2Preconditions;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import static com.backblaze.b2.client.B2TestHelpers.makeAuth;
 import static com.backblaze.b2.client.exceptions.B2UnauthorizedException.RequestCategory.ACCOUNT_AUTHORIZATION;
 import static com.backblaze.b2.client.exceptions.B2UnauthorizedException.RequestCategory.OTHER;
 import static com.backblaze.b2.client.exceptions.B2UnauthorizedException.RequestCategory.UPLOADING;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
@@ -140,7 +152,7 @@ public class B2RetryerTest extends B2BaseTest {
         assertEquals(7, guts.getCallCount());
 
         verify(goodAuthCache, times(6)).clear();
-        verify(sleeper, never()).sleepSeconds(anyInt());
+        verify(sleeper, never()).sleepMilliseconds(anyLong());
         verify(policy, times(6)).gotRetryableImmediately(eq(OP), anyInt(), anyLong(), any(B2UnauthorizedException.class));
     }
 
@@ -167,7 +179,7 @@ public class B2RetryerTest extends B2BaseTest {
             assertTrue(guts.getAsException(7) == e);
             assertEquals(8, guts.getCallCount());
             verify(goodAuthCache, times(5)).clear(); // once for each OTHER.
-            verify(sleeper, never()).sleepSeconds(anyInt());
+            verify(sleeper, never()).sleepMilliseconds(anyLong());
             verify(policy, times(8)).gotRetryableImmediately(eq(OP), anyInt(), anyLong(), any());
             verifyNoMoreInteractions(policy);
             caughtIt = true;
@@ -187,19 +199,19 @@ public class B2RetryerTest extends B2BaseTest {
                 "yippee"
         );
 
-        when(policy.gotRetryableAfterDelay(eq(OP), anyInt(), anyLong(), any())).thenReturn(3, 5, 7, 11, 13, 17);
+        when(policy.gotRetryableAfterDelayMillis(eq(OP), anyInt(), anyLong(), any())).thenReturn(3L, 5L, 7L, 11L, 13L, 1700L);
         assertEquals("yippee", retryer.doRetry(OP, goodAuthCache, guts, policy));
 
         assertEquals(7, guts.getCallCount());
         verify(goodAuthCache, never()).clear();
 
         // this verifies that we use the answer from the policy to sleep.
-        verify(sleeper, times(1)).sleepSeconds(3);
-        verify(sleeper, times(1)).sleepSeconds(5);
-        verify(sleeper, times(1)).sleepSeconds(7);
-        verify(sleeper, times(1)).sleepSeconds(11);
-        verify(sleeper, times(1)).sleepSeconds(13);
-        verify(sleeper, times(1)).sleepSeconds(17);
+        verify(sleeper, times(1)).sleepMilliseconds(3);
+        verify(sleeper, times(1)).sleepMilliseconds(5);
+        verify(sleeper, times(1)).sleepMilliseconds(7);
+        verify(sleeper, times(1)).sleepMilliseconds(11);
+        verify(sleeper, times(1)).sleepMilliseconds(13);
+        verify(sleeper, times(1)).sleepMilliseconds(1700);
         verifyNoMoreInteractions(sleeper);
     }
 
@@ -218,7 +230,8 @@ public class B2RetryerTest extends B2BaseTest {
 
         boolean caughtIt = false;
         try {
-            retryer.doRetry(OP, goodAuthCache, guts, new B2DefaultRetryPolicy());
+            // without jitter, so we know exactly how long it'll sleep.
+            retryer.doRetry(OP, goodAuthCache, guts, new B2DefaultRetryPolicy(null, maxMillis -> maxMillis));
         } catch (B2Exception e) {
             assertEquals(8, guts.getCallCount());
             assertTrue(e == guts.getAsException(7));
@@ -226,13 +239,13 @@ public class B2RetryerTest extends B2BaseTest {
 
             // we're using the default policy here.  it doubles the backoff and stops after a while.
             // this verifies that if the policy says to stop retrying, we do.
-            verify(sleeper, times(1)).sleepSeconds(1);
-            verify(sleeper, times(1)).sleepSeconds(2);
-            verify(sleeper, times(1)).sleepSeconds(4);
-            verify(sleeper, times(1)).sleepSeconds(8);
-            verify(sleeper, times(1)).sleepSeconds(16);
-            verify(sleeper, times(1)).sleepSeconds(32);
-            verify(sleeper, times(1)).sleepSeconds(64);
+            verify(sleeper, times(1)).sleepMilliseconds(1000);
+            verify(sleeper, times(1)).sleepMilliseconds(2000);
+            verify(sleeper, times(1)).sleepMilliseconds(4000);
+            verify(sleeper, times(1)).sleepMilliseconds(8000);
+            verify(sleeper, times(1)).sleepMilliseconds(16000);
+            verify(sleeper, times(1)).sleepMilliseconds(32000);
+            verify(sleeper, times(1)).sleepMilliseconds(64000);
             verifyNoMoreInteractions(sleeper);
 
             caughtIt = true;
@@ -248,6 +261,98 @@ public class B2RetryerTest extends B2BaseTest {
         checkNotRetried(new RuntimeException("testing"));
     }
 
+    @Test
+    public void testAsyncWaitsWithTheSchedulerInsteadOfSleeping() throws Exception {
+        final Guts guts = new Guts(serviceUnavailable(null), internalError(), "three");
+        final RecordingScheduler scheduler = new RecordingScheduler();
+        try {
+            final CompletableFuture<String> future = retryer.doRetryAsync(OP, goodAuthCache, guts, retryAfterOneSecondPolicy(), Runnable::run, scheduler);
+            assertEquals("three", future.get(10, TimeUnit.SECONDS));
+            assertEquals(3, guts.getCallCount());
+            assertEquals(Arrays.asList(1000L, 1000L), scheduler.getDelaysMillis());
+            verifyNoMoreInteractions(sleeper);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncGivesUpOnUnretryable() throws Exception {
+        final Guts guts = new Guts(badRequest());
+        final RecordingScheduler scheduler = new RecordingScheduler();
+        try {
+            final CompletableFuture<String> future = retryer.doRetryAsync(OP, goodAuthCache, guts, retryAfterOneSecondPolicy(), Runnable::run, scheduler);
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("should've thrown");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() == guts.getAsException(0));
+            }
+            assertEquals(1, guts.getCallCount());
+            assertTrue(scheduler.getDelaysMillis().isEmpty());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncWithRejectingExecutor() throws Exception {
+        final Guts guts = new Guts("one");
+        final RecordingScheduler scheduler = new RecordingScheduler();
+        try {
+            final CompletableFuture<String> future = retryer.doRetryAsync(OP, goodAuthCache, guts, retryAfterOneSecondPolicy(),
+                    runnable -> {
+                        throw new RejectedExecutionException("nope");
+                    },
+                    scheduler);
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("should've thrown");
+            } catch (ExecutionException e) {
+                assertEquals("bad_state", ((B2Exception) e.getCause()).getCode());
+            }
+            assertEquals(0, guts.getCallCount());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // retries everything, waiting one second before the delayed ones.
+    private static B2RetryPolicy retryAfterOneSecondPolicy() {
+        return new B2RetryPolicy() {
+            @Override
+            public Integer gotRetryableAfterDelay(String operation, int attemptsSoFar, long tookMillis, B2Exception e) {
+                return 1;
+            }
+
+            @Override
+            public boolean gotRetryableImmediately(String operation, int attemptsSoFar, long tookMillis, B2Exception e) {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Remembers the delays it's asked to wait, but runs everything right away.
+     */
+    private static class RecordingScheduler extends ScheduledThreadPoolExecutor {
+        private final List<Long> delaysMillis = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            delaysMillis.add(unit.toMillis(delay));
+            return super.schedule(command, 0, unit);
+        }
+
+        List<Long> getDelaysMillis() {
+            return new ArrayList<>(delaysMillis);
+        }
+    }
+
     private void checkNotRetried(Exception exceptionToThrowFromCallable) {
         final Guts guts = new Guts(exceptionToThrowFromCallable);
 
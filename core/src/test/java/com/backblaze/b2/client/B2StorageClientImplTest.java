@@ -8,6 +8,7 @@ import com.backblaze.b2.client.contentHandlers.B2ContentSink;
 import com.backblaze.b2.client.contentSources.B2ContentSource;
 import com.backblaze.b2.client.contentSources.B2ContentTypes;
 import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2ServiceUnavailableException;
 import com.backblaze.b2.client.structures.B2AccountAuthorization;
 import com.backblaze.b2.client.structures.B2AuthorizationFilteredResponseField;
 import com.backblaze.b2.client.structures.B2AuthorizeAccountRequest;
@@ -82,6 +83,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import static com.backblaze.b2.client.B2TestHelpers.bucketId;
 import static com.backblaze.b2.client.B2TestHelpers.bucketName;
@@ -611,6 +613,124 @@ public class B2StorageClientImplTest extends B2BaseTest {
         );
     }
 
+    @Test
+    public void testForEachFileName() throws B2Exception {
+        final B2ListFileNamesRequest request = B2ListFileNamesRequest.builder(bucketId(1)).setMaxFileCount(2).build();
+        final B2ListFileNamesRequest secondRequest = B2ListFileNamesRequest
+                .builder(request)
+                .setStartFileName(fileName(3))
+                .build();
+        final B2FileVersion version1 = makeVersion(1, 1);
+        final B2FileVersion version2 = makeVersion(2, 2);
+        final B2FileVersion version3 = makeVersion(3, 3);
+        when(webifier.listFileNames(anyObject(), eq(request), any())).thenAnswer(invocation -> {
+            visit(invocation.getArguments()[2], version1, version2);
+            return new B2ListFileNamesResponse(listOf(), fileName(3));
+        });
+        when(webifier.listFileNames(anyObject(), eq(secondRequest), any())).thenAnswer(invocation -> {
+            visit(invocation.getArguments()[2], version3);
+            return new B2ListFileNamesResponse(listOf(), null);
+        });
+
+        final List<B2FileVersion> visited = new ArrayList<>();
+        client.forEachFileName(request, visited::add);
+        assertEquals(listOf(version1, version2, version3), visited);
+    }
+
+    @Test
+    public void testForEachFileVersionDoesNotRevisitAfterRetry() throws B2Exception {
+        final B2ListFileVersionsRequest request = B2ListFileVersionsRequest.builder(bucketId(1)).build();
+        final B2FileVersion version1 = makeVersion(1, 1);
+        final B2FileVersion version2 = makeVersion(2, 2);
+        final int[] attempts = {0};
+        when(webifier.listFileVersions(anyObject(), eq(request), any())).thenAnswer(invocation -> {
+            attempts[0]++;
+            if (attempts[0] == 1) {
+                // the connection breaks partway through the first attempt.
+                visit(invocation.getArguments()[2], version1);
+                throw new B2ServiceUnavailableException("test", null, "testing");
+            }
+            visit(invocation.getArguments()[2], version1, version2);
+            return new B2ListFileVersionsResponse(listOf(), null, null);
+        });
+
+        final List<B2FileVersion> visited = new ArrayList<>();
+        client.forEachFileVersion(request, visited::add);
+        assertEquals(2, attempts[0]);
+        assertEquals(listOf(version1, version2), visited);
+    }
+
+    @Test
+    public void testForEachFileVersionSkipsByKeyWhenThePageChangesBeforeTheRetry() throws B2Exception {
+        final B2ListFileVersionsRequest request = B2ListFileVersionsRequest.builder(bucketId(1)).build();
+        final B2FileVersion version1 = makeVersion(1, 1);
+        final B2FileVersion version2 = makeVersion(2, 2);
+        final B2FileVersion version3 = makeVersion(3, 3);
+        final B2FileVersion newVersionOfName2 = makeVersion(4, 2);
+        final int[] attempts = {0};
+        when(webifier.listFileVersions(anyObject(), eq(request), any())).thenAnswer(invocation -> {
+            attempts[0]++;
+            if (attempts[0] == 1) {
+                visit(invocation.getArguments()[2], version1, version2);
+                throw new B2ServiceUnavailableException("test", null, "testing");
+            }
+            // before the retry, a newer version of version2's name was uploaded.  skipping
+            // two by count would skip version1 and the new one, and visit version2 again.
+            visit(invocation.getArguments()[2], version1, newVersionOfName2, version2, version3);
+            return new B2ListFileVersionsResponse(listOf(), null, null);
+        });
+
+        final List<B2FileVersion> visited = new ArrayList<>();
+        client.forEachFileVersion(request, visited::add);
+        assertEquals(2, attempts[0]);
+        assertEquals(listOf(version1, version2, version3), visited);
+    }
+
+    @Test
+    public void testForEachFileNameStopsSkippingWhenTheLastVisitedFileIsGone() throws B2Exception {
+        final B2ListFileNamesRequest request = B2ListFileNamesRequest.builder(bucketId(1)).build();
+        final B2FileVersion version1 = makeVersion(1, 1);
+        final B2FileVersion version2 = makeVersion(2, 2);
+        final B2FileVersion version3 = makeVersion(3, 3);
+        final int[] attempts = {0};
+        when(webifier.listFileNames(anyObject(), eq(request), any())).thenAnswer(invocation -> {
+            attempts[0]++;
+            if (attempts[0] == 1) {
+                visit(invocation.getArguments()[2], version1, version2);
+                throw new B2ServiceUnavailableException("test", null, "testing");
+            }
+            // version2 was hidden before the retry.
+            visit(invocation.getArguments()[2], version1, version3);
+            return new B2ListFileNamesResponse(listOf(), null);
+        });
+
+        final List<B2FileVersion> visited = new ArrayList<>();
+        client.forEachFileName(request, visited::add);
+        assertEquals(listOf(version1, version2, version3), visited);
+    }
+
+    @Test
+    public void testForEachFileNameThrowsVisitorException() throws B2Exception {
+        final B2ListFileNamesRequest request = B2ListFileNamesRequest.builder(bucketId(1)).build();
+        when(webifier.listFileNames(anyObject(), eq(request), any())).thenAnswer(invocation -> {
+            visit(invocation.getArguments()[2], makeVersion(1, 1));
+            return new B2ListFileNamesResponse(listOf(), null);
+        });
+
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("from the visitor");
+        client.forEachFileName(request, version -> {
+            throw new IllegalStateException("from the visitor");
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void visit(Object visitor, B2FileVersion... versions) {
+        for (B2FileVersion version : versions) {
+            ((Consumer<B2FileVersion>) visitor).accept(version);
+        }
+    }
+
     @Test
     public void testUnfinishedLargeFiles() throws B2Exception {
         final B2ListUnfinishedLargeFilesRequest request = B2ListUnfinishedLargeFilesRequest.builder(bucketId(1)).setMaxFileCount(100).build();
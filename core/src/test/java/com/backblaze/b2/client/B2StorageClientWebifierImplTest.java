@@ -75,6 +75,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static com.backblaze.b2.client.B2TestHelpers.bucketId;
 import static com.backblaze.b2.client.B2TestHelpers.bucketName;
@@ -216,6 +217,30 @@ public class B2StorageClientWebifierImplTest extends B2BaseTest {
             return null;
         }
 
+        @Override
+        public <ResponseType, ItemType> ResponseType postJsonReturnJsonVisitingList(String url,
+                                                                                    B2Headers headersOrNull,
+                                                                                    Object request,
+                                                                                    Class<ResponseType> responseClass,
+                                                                                    String listFieldName,
+                                                                                    Class<ItemType> itemClass,
+                                                                                    Consumer<? super ItemType> visitor) {
+            B2Preconditions.checkArgument(callDescription == null, "called more than once?");
+
+            callDescription = ("postJsonReturnJsonVisitingList.\n" +
+                    "url:\n" +
+                    indent(url) + "\n" +
+                    "headers:\n" +
+                    indent(toString(headersOrNull)) + "\n" +
+                    "request:\n" +
+                    indent(toJsonOrThrowRuntime(request)) + "\n" +
+                    "responseClass:\n" +
+                    indent(responseClass.getSimpleName()) + "\n" +
+                    "visiting:\n" +
+                    indent(listFieldName + " of " + itemClass.getSimpleName()) + "\n");
+            return null;
+        }
+
         private String indent(Object objectOrNull) {
             final String indentation = "    ";
             final String toIndent = (objectOrNull != null) ? objectOrNull.toString() : "null";
@@ -587,6 +612,69 @@ public class B2StorageClientWebifierImplTest extends B2BaseTest {
         checkRequestCategory(OTHER, w -> w.listFileNames(ACCOUNT_AUTH, request));
     }
 
+    @Test
+    public void testListFileVersionsWithVisitor() throws B2Exception {
+        final B2ListFileVersionsRequest request = B2ListFileVersionsRequest
+                .builder(bucketId(1))
+                .build();
+        webifier.listFileVersions(ACCOUNT_AUTH, request, version -> {});
+
+        webApiClient.check("postJsonReturnJsonVisitingList.\n" +
+                "url:\n" +
+                "    apiUrl1/b2api/v2/b2_list_file_versions\n" +
+                "headers:\n" +
+                "    Authorization: accountToken1\n" +
+                "    User-Agent: SecretAgentMan/3.19.28\n" +
+                "    X-Bz-Test-Mode: force_cap_exceeded\n" +
+                "request:\n" +
+                "    {\n" +
+                "      \"bucketId\": \"bucket1\",\n" +
+                "      \"delimiter\": null,\n" +
+                "      \"maxFileCount\": null,\n" +
+                "      \"prefix\": null,\n" +
+                "      \"startFileId\": null,\n" +
+                "      \"startFileName\": null\n" +
+                "    }\n" +
+                "responseClass:\n" +
+                "    B2ListFileVersionsResponse\n" +
+                "visiting:\n" +
+                "    files of B2FileVersion\n"
+        );
+
+        checkRequestCategory(OTHER, w -> w.listFileVersions(ACCOUNT_AUTH, request, version -> {}));
+    }
+
+    @Test
+    public void testListFileNamesWithVisitor() throws B2Exception {
+        final B2ListFileNamesRequest request = B2ListFileNamesRequest
+                .builder(bucketId(1))
+                .build();
+        webifier.listFileNames(ACCOUNT_AUTH, request, version -> {});
+
+        webApiClient.check("postJsonReturnJsonVisitingList.\n" +
+                "url:\n" +
+                "    apiUrl1/b2api/v2/b2_list_file_names\n" +
+                "headers:\n" +
+                "    Authorization: accountToken1\n" +
+                "    User-Agent: SecretAgentMan/3.19.28\n" +
+                "    X-Bz-Test-Mode: force_cap_exceeded\n" +
+                "request:\n" +
+                "    {\n" +
+                "      \"bucketId\": \"bucket1\",\n" +
+                "      \"delimiter\": null,\n" +
+                "      \"maxFileCount\": null,\n" +
+                "      \"prefix\": null,\n" +
+                "      \"startFileName\": null\n" +
+                "    }\n" +
+                "responseClass:\n" +
+                "    B2ListFileNamesResponse\n" +
+                "visiting:\n" +
+                "    files of B2FileVersion\n"
+        );
+
+        checkRequestCategory(OTHER, w -> w.listFileNames(ACCOUNT_AUTH, request, version -> {}));
+    }
+
     @Test
     public void testListUnfinishedLargeFiles() throws B2Exception {
         final B2ListUnfinishedLargeFilesRequest request = B2ListUnfinishedLargeFilesRequest
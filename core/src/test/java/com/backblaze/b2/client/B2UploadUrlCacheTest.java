@@ -8,14 +8,21 @@ import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.exceptions.B2InternalErrorException;
 import com.backblaze.b2.client.structures.B2UploadUrlResponse;
 import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2Clock;
+import com.backblaze.b2.util.B2ClockSim;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.backblaze.b2.client.B2TestHelpers.bucketId;
 import static com.backblaze.b2.client.B2TestHelpers.makeAuth;
 import static com.backblaze.b2.client.B2TestHelpers.uploadUrlResponse;
 import static com.backblaze.b2.client.B2UploadUrlCache.MAX_BUCKETS;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.doReturn;
@@ -145,4 +152,89 @@ public class B2UploadUrlCacheTest extends B2BaseTest {
 
         uploadCache.get(bucketId(1), false);
     }
+
+    @Test
+    public void testTooOldResponsesAreDropped() throws B2Exception {
+        doReturn(makeAuth(1)).when(authCache).get();
+        final B2ClockSim clock = (B2ClockSim) B2Clock.get();
+        final long maxAgeMillis = Duration.ofHours(1).toMillis();
+        final B2UploadUrlCache cache = new B2UploadUrlCache(webifier, authCache, 0, maxAgeMillis, null);
+
+        final B2UploadUrlResponse oldResponse = uploadUrlResponse(bucketId(1), 1);
+        doReturn(oldResponse).when(webifier).getUploadUrl(anyObject(), anyObject());
+        cache.unget(cache.get(bucketId(1), false));
+
+        // still young enough to be reused.
+        clock.advanceBoth(Duration.ofMinutes(59));
+        assertTrue(oldResponse == cache.get(bucketId(1), false));
+        cache.unget(oldResponse);
+
+        // now it's too old, so we get a new one instead.
+        clock.advanceBoth(Duration.ofMinutes(1));
+        final B2UploadUrlResponse newResponse = uploadUrlResponse(bucketId(1), 2);
+        doReturn(newResponse).when(webifier).getUploadUrl(anyObject(), anyObject());
+        assertTrue(newResponse == cache.get(bucketId(1), false));
+
+        verify(webifier, times(2)).getUploadUrl(anyObject(), anyObject());
+    }
+
+    @Test
+    public void testRefillsInBackgroundWhenBelowMinPoolSize() throws B2Exception {
+        doReturn(makeAuth(1)).when(authCache).get();
+        doReturn(uploadUrlResponse(bucketId(1), 1)).when(webifier).getUploadUrl(anyObject(), anyObject());
+
+        final List<Runnable> refills = new ArrayList<>();
+        final B2UploadUrlCache cache = new B2UploadUrlCache(webifier, authCache, 3, Long.MAX_VALUE, refills::add);
+
+        // the pool is empty, so the caller gets its own and a refill is started.
+        cache.get(bucketId(1), false);
+        assertEquals(1, refills.size());
+        verify(webifier, times(1)).getUploadUrl(anyObject(), anyObject());
+
+        // only one refill at a time per bucket.
+        cache.get(bucketId(1), false);
+        assertEquals(1, refills.size());
+        verify(webifier, times(2)).getUploadUrl(anyObject(), anyObject());
+
+        // running the refill fills the pool to the minimum.
+        refills.get(0).run();
+        verify(webifier, times(5)).getUploadUrl(anyObject(), anyObject());
+
+        // taking one from the full pool doesn't go to the server, but
+        // starts another refill since we're below the minimum again.
+        cache.get(bucketId(1), false);
+        verify(webifier, times(5)).getUploadUrl(anyObject(), anyObject());
+        assertEquals(2, refills.size());
+    }
+
+    @Test
+    public void testWarm() throws B2Exception {
+        doReturn(makeAuth(1)).when(authCache).get();
+        doReturn(uploadUrlResponse(bucketId(1), 1)).when(webifier).getUploadUrl(anyObject(), anyObject());
+
+        final List<Runnable> refills = new ArrayList<>();
+        final B2UploadUrlCache cache = new B2UploadUrlCache(webifier, authCache, 2, Long.MAX_VALUE, refills::add);
+
+        cache.warm(bucketId(1));
+        verify(webifier, times(2)).getUploadUrl(anyObject(), anyObject());
+
+        // already warm, so nothing to do.
+        cache.warm(bucketId(1));
+        verify(webifier, times(2)).getUploadUrl(anyObject(), anyObject());
+
+        // both uses come from the pool.
+        cache.get(bucketId(1), false);
+        cache.get(bucketId(1), false);
+        verify(webifier, times(2)).getUploadUrl(anyObject(), anyObject());
+    }
+
+    @Test
+    public void testWarmWithoutPoolGetsOne() throws B2Exception {
+        doReturn(makeAuth(1)).when(authCache).get();
+        doReturn(uploadUrlResponse(bucketId(1), 1)).when(webifier).getUploadUrl(anyObject(), anyObject());
+
+        uploadCache.warm(bucketId(1));
+        uploadCache.get(bucketId(1), false);
+        verify(webifier, times(1)).getUploadUrl(anyObject(), anyObject());
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.contentHandlers;
+
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.util.B2ByteBufferPool;
+import com.backblaze.b2.util.B2Sha1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * B2ContentFileChannelWriterBenchmark measures how fast B2ContentFileWriter
+ * and B2ContentFileChannelWriter (with a few buffer sizes) write a 256 MB
+ * download to a temporary file, verifying its SHA1 along the way.
+ *
+ * The "network" hands out at most 64 KB per read, which is about what a
+ * socket does for a fast download.  Both writers sync the file at the end,
+ * and B2ContentFileWriter is told not to re-read the file, so the two are
+ * doing the same work.
+ *
+ * It's not a unit test; run main() by hand, preferably on the disk you care
+ * about (pass a directory as the only argument).  Each writer is run a few
+ * times so the later rounds are warmed up.
+ */
+public class B2ContentFileChannelWriterBenchmark {
+    private static final int CONTENT_LENGTH = 256 * 1024 * 1024;
+    private static final int MAX_BYTES_PER_READ = 64 * 1024;
+    private static final int ROUNDS = 3;
+
+    private interface Writer {
+        void write(B2Headers headers, InputStream in) throws B2Exception;
+    }
+
+    public static void main(String[] args) throws IOException, B2Exception {
+        final File dir = (args.length > 0) ? new File(args[0]) : null;
+        final File file = File.createTempFile("B2ContentFileChannelWriterBenchmark", ".dat", dir);
+        try {
+            final byte[] chunk = new byte[MAX_BYTES_PER_READ];
+            new Random(1).nextBytes(chunk);
+            final B2Headers headers = B2HeadersImpl
+                    .builder()
+                    .set(B2Headers.CONTENT_LENGTH, Integer.toString(CONTENT_LENGTH))
+                    .set(B2Headers.CONTENT_SHA1, sha1OfContent(chunk))
+                    .build();
+            System.out.println("writing " + (CONTENT_LENGTH >> 20) + " MB to " + file);
+
+            final B2ContentFileWriter fileWriter = B2ContentFileWriter
+                    .builder(file)
+                    .setVerifySha1ByRereadingFromDestination(false)
+                    .build();
+            for (int round = 1; round <= ROUNDS; round++) {
+                measure("round " + round + ": B2ContentFileWriter               ", headers, chunk, fileWriter::readContent);
+                for (int bufferSize : new int[] { 64 * 1024, 1024 * 1024, 4 * 1024 * 1024 }) {
+                    // one pool per size, shared by the downloads, like a real caller would.
+                    final B2ByteBufferPool pool = new B2ByteBufferPool(bufferSize, 1);
+                    final B2ContentFileChannelWriter channelWriter = B2ContentFileChannelWriter
+                            .builder(file)
+                            .setBufferPool(pool)
+                            .build();
+                    measure(String.format("round %d: B2ContentFileChannelWriter %4d KB", round, bufferSize >> 10),
+                            headers, chunk, channelWriter::readContent);
+                }
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static String sha1OfContent(byte[] chunk) throws IOException {
+        return B2Sha1.hexSha1OfInputStream(new FakeNetworkInputStream(chunk));
+    }
+
+    private static void measure(String name,
+                                B2Headers headers,
+                                byte[] chunk,
+                                Writer writer) throws B2Exception {
+        final long startNanos = System.nanoTime();
+        writer.write(headers, new FakeNetworkInputStream(chunk));
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        System.out.println(String.format("%s  %6d ms  %8.1f MB/s",
+                name,
+                elapsedNanos / 1000000,
+                (CONTENT_LENGTH / (1024.0 * 1024.0)) / (elapsedNanos / 1e9)));
+    }
+
+    /**
+     * Hands out CONTENT_LENGTH bytes, by repeating the chunk, at most a
+     * chunk at a time.
+     */
+    private static class FakeNetworkInputStream extends InputStream {
+        private final byte[] chunk;
+        private long remaining = CONTENT_LENGTH;
+
+        FakeNetworkInputStream(byte[] chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            final byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining == 0) {
+                return -1;
+            }
+            final int chunkOffset = (int) ((CONTENT_LENGTH - remaining) % chunk.length);
+            final int n = (int) Math.min(Math.min(len, chunk.length - chunkOffset), remaining);
+            System.arraycopy(chunk, chunkOffset, b, off, n);
+            remaining -= n;
+            return n;
+        }
+    }
+}
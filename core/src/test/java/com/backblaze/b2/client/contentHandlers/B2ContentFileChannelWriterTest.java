@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.contentHandlers;
+
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2ByteBufferPool;
+import com.backblaze.b2.util.B2Sha1;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static com.backblaze.b2.client.B2TestHelpers.makeBytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class B2ContentFileChannelWriterTest extends B2BaseTest {
+    private static final int LEN = 6123;
+
+    private final byte[] bytes = makeBytes(LEN);
+    private final String rightSha1 = B2Sha1.hexSha1OfBytes(bytes);
+    private final File outputFile;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public B2ContentFileChannelWriterTest() throws IOException {
+        outputFile = File.createTempFile("B2ContentFileChannelWriterTest", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        outputFile.delete();
+    }
+
+    @Test
+    public void testWritesContentInBufferSizedChunks() throws B2Exception, IOException {
+        // the sizes don't line up, so there's a partial buffer at the end.
+        checkWritesContent(1000);
+
+        // the sizes line up, so the last buffer is empty.
+        checkWritesContent(LEN);
+
+        // it all fits in one buffer.
+        checkWritesContent(2 * LEN);
+    }
+
+    private void checkWritesContent(int bufferSize) throws B2Exception, IOException {
+        // start with something longer in the file, to be sure it gets truncated.
+        Files.write(outputFile.toPath(), makeBytes(2 * LEN));
+
+        final B2ContentFileChannelWriter writer = B2ContentFileChannelWriter
+                .builder(outputFile)
+                .setBufferSize(bufferSize)
+                .build();
+        final B2Headers headers = makeHeaders(rightSha1);
+        writer.readContent(headers, new TrickleInputStream(bytes));
+
+        assertArrayEquals(bytes, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(headers, writer.getHeadersOrNull());
+        assertEquals(bufferSize, writer.getBufferPool().getBufferSize());
+    }
+
+    @Test
+    public void testBuffersComeFromTheGivenPool() throws B2Exception {
+        final B2ByteBufferPool pool = new B2ByteBufferPool(1000, 4);
+        final B2ContentFileChannelWriter writer = B2ContentFileChannelWriter
+                .builder(outputFile)
+                .setBufferPool(pool)
+                .build();
+        assertSame(pool, writer.getBufferPool());
+
+        writer.readContent(makeHeaders(rightSha1), new ByteArrayInputStream(bytes));
+        writer.readContent(makeHeaders(rightSha1), new ByteArrayInputStream(bytes));
+
+        // the one buffer was given back both times.
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void testSha1Mismatch() throws B2Exception {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(makeBytes(LEN + 1));
+
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("sha1 mismatch as written to destination.  expected " + wrongSha1 + ", but got " + rightSha1);
+        B2ContentFileChannelWriter
+                .builder(outputFile)
+                .setBufferSize(1000)
+                .build()
+                .readContent(makeHeaders(wrongSha1), new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testSha1IsntCheckedWhenToldNotTo() throws B2Exception, IOException {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(makeBytes(LEN + 1));
+
+        B2ContentFileChannelWriter
+                .builder(outputFile)
+                .setVerifySha1(false)
+                .build()
+                .readContent(makeHeaders(wrongSha1), new ByteArrayInputStream(bytes));
+        assertArrayEquals(bytes, Files.readAllBytes(outputFile.toPath()));
+    }
+
+    @Test
+    public void testReadFailureIsConnectionBroken() throws B2Exception {
+        final B2ByteBufferPool pool = new B2ByteBufferPool(1000, 4);
+        final InputStream throwingIn = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("throwing while reading input to handler");
+            }
+        };
+
+        try {
+            B2ContentFileChannelWriter
+                    .builder(outputFile)
+                    .setBufferPool(pool)
+                    .build()
+                    .readContent(makeHeaders(rightSha1), throwingIn);
+            fail("should've thrown");
+        } catch (B2ConnectionBrokenException e) {
+            assertEquals("read failed: throwing while reading input to handler", e.getMessage());
+        }
+
+        // the buffer was given back even though it failed.
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void testOpenFailure() throws B2Exception {
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("couldn't open destination file to write it");
+        B2ContentFileChannelWriter
+                .builder(new File(outputFile, "notADirectory"))
+                .build()
+                .readContent(makeHeaders(rightSha1), new ByteArrayInputStream(bytes));
+    }
+
+    private static B2Headers makeHeaders(String sha1) {
+        return B2HeadersImpl
+                .builder()
+                .set(B2Headers.CONTENT_LENGTH, "" + LEN)
+                .set(B2Headers.CONTENT_SHA1, sha1)
+                .build();
+    }
+
+    /**
+     * Returns at most 100 bytes per read, like a network stream might.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 100));
+        }
+    }
+}
@@ -31,5 +31,15 @@ public class B2ContentFileWriterTest extends B2BaseTest {
                 .setVerifySha1ByRereadingFromDestination(false)
                 .build()
                 .getVerifySha1ByRereadingFromDestination());
+
+        assertTrue(!B2ContentFileWriter
+                .builder(FILE)
+                .build()
+                .getVerifySha1AsWrittenToDestination());
+        assertTrue(B2ContentFileWriter
+                .builder(FILE)
+                .setVerifySha1AsWrittenToDestination(true)
+                .build()
+                .getVerifySha1AsWrittenToDestination());
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.contentHandlers;
+
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2ConnectionBrokenException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2ByteBufferSizeClassPool;
+import com.backblaze.b2.util.B2Sha1;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static com.backblaze.b2.client.B2TestHelpers.makeBytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class B2ContentPooledMemoryWriterTest extends B2BaseTest {
+    private static final int LEN = 6123;
+
+    private final byte[] bytes = makeBytes(LEN);
+    private final String rightSha1 = B2Sha1.hexSha1OfBytes(bytes);
+    private final B2ByteBufferSizeClassPool pool = new B2ByteBufferSizeClassPool(1024, 16 * 1024, 4);
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testReadsContentIntoAPooledBuffer() throws B2Exception {
+        final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool).build();
+        final B2Headers headers = makeHeaders(LEN, rightSha1);
+        writer.readContent(headers, new ByteArrayInputStream(bytes));
+        assertSame(headers, writer.getHeadersOrNull());
+
+        final ByteBuffer content = writer.getContent();
+        assertTrue(content.isReadOnly());
+        assertEquals(0, content.position());
+        assertEquals(LEN, content.remaining());
+        assertArrayEquals(bytes, toArray(content));
+
+        // each view starts at the beginning.
+        assertEquals(0, content.remaining());
+        assertEquals(LEN, writer.getContent().remaining());
+
+        writer.release();
+        assertEquals(1, pool.getPooledCount());
+
+        // releasing again doesn't give the buffer back twice.
+        writer.release();
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void testReusesReleasedBuffers() throws B2Exception {
+        for (int i = 0; i < 3; i++) {
+            final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool).build();
+            writer.readContent(makeHeaders(LEN, rightSha1), new ByteArrayInputStream(bytes));
+            assertEquals(0, pool.getPooledCount());
+            assertArrayEquals(bytes, toArray(writer.getContent()));
+            writer.release();
+            assertEquals(1, pool.getPooledCount());
+        }
+    }
+
+    @Test
+    public void testEmptyContent() throws B2Exception {
+        final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool).build();
+        writer.readContent(makeHeaders(0, B2Sha1.hexSha1OfBytes(new byte[0])), new ByteArrayInputStream(new byte[0]));
+        assertEquals(0, writer.getContent().remaining());
+    }
+
+    @Test
+    public void testContentIsntAvailableAfterRelease() throws B2Exception {
+        final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool).build();
+        writer.readContent(makeHeaders(LEN, rightSha1), new ByteArrayInputStream(bytes));
+        writer.release();
+
+        thrown.expect(IllegalStateException.class);
+        writer.getContent();
+    }
+
+    @Test
+    public void testSha1Mismatch() throws B2Exception {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(makeBytes(LEN + 1));
+        final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool).build();
+        try {
+            writer.readContent(makeHeaders(LEN, wrongSha1), new ByteArrayInputStream(bytes));
+            fail("should've thrown");
+        } catch (B2LocalException e) {
+            assertEquals("sha1 mismatch from network.  expected " + wrongSha1 + ", but got " + rightSha1, e.getMessage());
+        }
+
+        // the content isn't available, but the caller can still give back the buffer.
+        try {
+            writer.getContent();
+            fail("should've thrown");
+        } catch (IllegalStateException e) {
+            // expected.
+        }
+        writer.release();
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void testSha1IsntCheckedWhenToldNotTo() throws B2Exception {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(makeBytes(LEN + 1));
+        final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool)
+                .setVerifySha1(false)
+                .build();
+        writer.readContent(makeHeaders(LEN, wrongSha1), new ByteArrayInputStream(bytes));
+        assertArrayEquals(bytes, toArray(writer.getContent()));
+    }
+
+    @Test
+    public void testShortResponseIsConnectionBroken() throws B2Exception {
+        thrown.expect(B2ConnectionBrokenException.class);
+        thrown.expectMessage("the response ended after " + LEN + " of " + (LEN + 1) + " bytes");
+        B2ContentPooledMemoryWriter.builder(pool)
+                .build()
+                .readContent(makeHeaders(LEN + 1, rightSha1), new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testLongResponseIsMismatch() throws B2Exception {
+        thrown.expect(B2LocalException.class);
+        thrown.expectMessage("got more bytes than the Content-Length said there would be");
+        B2ContentPooledMemoryWriter.builder(pool)
+                .build()
+                .readContent(makeHeaders(LEN - 1, rightSha1), new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testRetryGivesBackTheFirstBuffer() throws B2Exception {
+        final B2ContentPooledMemoryWriter writer = B2ContentPooledMemoryWriter.builder(pool).build();
+        final InputStream throwingIn = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("throwing while reading input to handler");
+            }
+        };
+        try {
+            writer.readContent(makeHeaders(LEN, rightSha1), throwingIn);
+            fail("should've thrown");
+        } catch (B2ConnectionBrokenException e) {
+            assertEquals("read failed: throwing while reading input to handler", e.getMessage());
+        }
+
+        // the client calls readContent() again when it retries.
+        writer.readContent(makeHeaders(LEN, rightSha1), new ByteArrayInputStream(bytes));
+        assertArrayEquals(bytes, toArray(writer.getContent()));
+        writer.release();
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    private static B2Headers makeHeaders(int contentLength,
+                                         String sha1) {
+        return B2HeadersImpl
+                .builder()
+                .set(B2Headers.CONTENT_LENGTH, "" + contentLength)
+                .set(B2Headers.CONTENT_SHA1, sha1)
+                .build();
+    }
+}
@@ -65,6 +65,11 @@ public class B2ContentWriterTest extends B2BaseTest {
             super(verifySha1ByRereadingFromDestination);
         }
 
+        private Writer(boolean verifySha1ByRereadingFromDestination,
+                       boolean verifySha1AsWrittenToDestination) {
+            super(verifySha1ByRereadingFromDestination, verifySha1AsWrittenToDestination);
+        }
+
         @Override
         protected OutputStream createDestinationOutputStream() throws IOException {
             if (throwInGetDestinationOutputStream) {
@@ -232,6 +237,37 @@ public class B2ContentWriterTest extends B2BaseTest {
         assertTrue(!sha1WasVerifiedFromDestination(lackadaisicalWriter));
     }
 
+    @Test
+    public void testSha1CheckedAsWrittenWithoutRereading() throws B2Exception {
+        final Writer inlineWriter = new Writer(false, true);
+        assertTrue(inlineWriter.getVerifySha1AsWrittenToDestination());
+
+        inlineWriter.readContent(makeHeadersWithLenAndSha1(bytes.length, rightSha1), in);
+
+        assertArrayEquals(makeBytes(LEN), inlineWriter.getBytes());
+        assertTrue(!sha1WasVerifiedFromDestination(inlineWriter));
+    }
+
+    @Test
+    public void testSha1CheckFailsAsWritten() throws B2Exception {
+        final String wrongSha1 = B2Sha1.hexSha1OfBytes(makeBytes(LEN+1));
+
+        thrown.expect(B2Exception.class);
+        thrown.expectMessage("sha1 mismatch as written to destination.  expected " + wrongSha1 + ", but got " + rightSha1);
+        new Writer(false, true).readContent(makeHeadersWithLenAndSha1(bytes.length, wrongSha1), in);
+    }
+
+    @Test
+    public void testSha1CheckedAsWrittenAndByRereading() throws B2Exception, IOException {
+        final Writer carefulWriter = new Writer(true, true);
+        carefulWriter.addToDestination(B2StringUtil.getUtf8Bytes("ab")); // this will mess up the checksum from the destination
+
+        // what we wrote was right, but the destination has extra bytes.
+        thrown.expect(B2Exception.class);
+        thrown.expectMessage("sha1 mismatch from destination.");
+        carefulWriter.readContent(makeHeadersWithLenAndSha1(bytes.length, rightSha1), in);
+    }
+
     @Test
     public void testThrowInCreateDestinationInputStream() throws B2Exception {
         writer.setThrowInCreateDestinationInputStream();
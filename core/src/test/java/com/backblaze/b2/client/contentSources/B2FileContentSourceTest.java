@@ -6,15 +6,21 @@ package com.backblaze.b2.client.contentSources;
 
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.util.B2BaseTest;
+import com.backblaze.b2.util.B2IoUtils;
+import com.backblaze.b2.util.B2StringUtil;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 
 import static com.backblaze.b2.client.B2TestHelpers.SAMPLE_SHA1;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -57,4 +63,28 @@ public class B2FileContentSourceTest extends B2BaseTest {
         thrown.expectMessage(file + " (No such file or directory)");
         contentSource.createInputStream();
     }
+
+    @Test
+    public void testCreateContentSourceWithRange() throws IOException, B2Exception {
+        final File realFile = File.createTempFile("B2FileContentSourceTest", ".txt");
+        try {
+            Files.write(realFile.toPath(), B2StringUtil.getUtf8Bytes("0123456789"));
+            final B2ContentSource part = B2FileContentSource.build(realFile).createContentSourceWithRangeOrNull(3, 4);
+
+            assertEquals(4, part.getContentLength());
+            assertNull(part.getSha1OrNull());
+
+            // each stream starts over at the beginning of the range.
+            for (int i = 0; i < 2; i++) {
+                try (InputStream in = part.createInputStream()) {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    B2IoUtils.copy(in, out);
+                    assertArrayEquals(B2StringUtil.getUtf8Bytes("3456"), out.toByteArray());
+                }
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            realFile.delete();
+        }
+    }
 }
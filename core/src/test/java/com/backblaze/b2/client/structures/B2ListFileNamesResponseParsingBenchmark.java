@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.structures;
+
+import com.backblaze.b2.client.B2TestHelpers;
+import com.backblaze.b2.json.B2Json;
+import com.backblaze.b2.json.B2JsonException;
+import com.backblaze.b2.json.B2JsonOptions;
+import com.backblaze.b2.util.B2Collections;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * B2ListFileNamesResponseParsingBenchmark measures how long B2Json takes to
+ * parse a B2ListFileNamesResponse with 1000 files in it, which is the size of
+ * a full page from b2_list_file_names.  It parses from a String, from UTF-8
+ * bytes, and from an InputStream, which is what the web api client does.
+ *
+ * It's not a unit test; run main() by hand.  It reports the average time and
+ * the average number of bytes allocated per parse (when the JVM can measure that).
+ * Each mode is run a few times so the later rounds are warmed up.
+ */
+public class B2ListFileNamesResponseParsingBenchmark {
+    private static final int FILE_COUNT = 1000;
+    private static final int ITERATIONS = 200;
+    private static final int ROUNDS = 5;
+
+    private interface Parser {
+        B2ListFileNamesResponse parse() throws IOException, B2JsonException;
+    }
+
+    public static void main(String[] args) throws IOException, B2JsonException {
+        final B2Json b2Json = B2Json.get();
+        final String json = b2Json.toJson(makeResponse());
+        final byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        System.out.println("parsing " + utf8.length + " bytes of json with " + FILE_COUNT + " files.");
+
+        final B2JsonOptions options = B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS;
+        for (int round = 1; round <= ROUNDS; round++) {
+            measure("round " + round + ": String     ",
+                    () -> b2Json.fromJson(json, B2ListFileNamesResponse.class, options));
+            measure("round " + round + ": byte[]     ",
+                    () -> b2Json.fromJson(utf8, B2ListFileNamesResponse.class, options));
+            measure("round " + round + ": InputStream",
+                    () -> b2Json.fromJson(new ByteArrayInputStream(utf8), B2ListFileNamesResponse.class, options));
+        }
+    }
+
+    private static B2ListFileNamesResponse makeResponse() {
+        final List<B2FileVersion> files = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            final B2FileVersion template = B2TestHelpers.makeVersion(i + 1, i + 1);
+            files.add(new B2FileVersion(
+                    template.getFileId(),
+                    "photos/2021/05/IMG_" + (100000 + i) + ".jpg",
+                    template.getContentLength(),
+                    template.getContentType(),
+                    template.getContentSha1(),
+                    template.getContentMd5(),
+                    B2Collections.mapOf(
+                            "src_last_modified_millis", Long.toString(1620000000000L + i),
+                            "b2-content-disposition", "attachment"),
+                    template.getAction(),
+                    template.getUploadTimestamp(),
+                    null,
+                    null,
+                    null));
+        }
+        return new B2ListFileNamesResponse(files, "photos/2021/05/IMG_" + (100000 + FILE_COUNT) + ".jpg");
+    }
+
+    private static void measure(String name,
+                                Parser parser) throws IOException, B2JsonException {
+        // keep a running count so the JIT can't throw away the work.
+        long blackhole = 0;
+
+        final long startBytes = allocatedBytesOrMinusOne();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            blackhole += parser.parse().getFiles().size();
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        final long endBytes = allocatedBytesOrMinusOne();
+
+        final String bytesPerOp = (startBytes < 0) ?
+                "?" :
+                Long.toString((endBytes - startBytes) / ITERATIONS);
+        System.out.println(String.format("%s  %8d us/op  %10s bytes/op  (%d)",
+                name,
+                elapsedNanos / ITERATIONS / 1000,
+                bytesPerOp,
+                blackhole & 1));
+    }
+
+    private static long allocatedBytesOrMinusOne() {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiClients;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2ListFileNamesResponse;
+import com.backblaze.b2.client.structures.B2ListPartsResponse;
+import com.backblaze.b2.client.structures.B2Part;
+import com.backblaze.b2.util.B2BaseTest;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.backblaze.b2.client.B2TestHelpers.makePart;
+import static com.backblaze.b2.client.B2TestHelpers.makeVersion;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the default methods of B2WebApiClient.
+ */
+public class B2WebApiClientTest extends B2BaseTest {
+
+    /**
+     * Answers every postJsonReturnJson() with the same response.
+     */
+    private static class CannedWebApiClient implements B2WebApiClient {
+        private final Object response;
+
+        CannedWebApiClient(Object response) {
+            this.response = response;
+        }
+
+        @Override
+        public <ResponseType> ResponseType postJsonReturnJson(String url,
+                                                              B2Headers headersOrNull,
+                                                              Object request,
+                                                              Class<ResponseType> responseClass) {
+            return responseClass.cast(response);
+        }
+
+        @Override
+        public <ResponseType> ResponseType postDataReturnJson(String url,
+                                                              B2Headers headersOrNull,
+                                                              InputStream contentSource,
+                                                              long contentLength,
+                                                              Class<ResponseType> responseClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getContent(String url,
+                               B2Headers headersOrNull,
+                               B2ContentSink handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public B2Headers head(String url, B2Headers headersOrNull) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testDefaultPostJsonReturnJsonVisitingListVisitsTheParsedFiles() throws Exception {
+        final List<B2FileVersion> files = new ArrayList<>();
+        files.add(makeVersion(1, 1));
+        files.add(makeVersion(2, 2));
+        final B2WebApiClient webApiClient = new CannedWebApiClient(new B2ListFileNamesResponse(files, "files/3"));
+
+        final List<B2FileVersion> visited = new ArrayList<>();
+        final B2ListFileNamesResponse returned = webApiClient.postJsonReturnJsonVisitingList(
+                "url",
+                null,
+                "request",
+                B2ListFileNamesResponse.class,
+                "files",
+                B2FileVersion.class,
+                visited::add);
+
+        assertEquals(files, visited);
+        assertTrue(returned.getFiles().isEmpty());
+        assertEquals("files/3", returned.getNextFileName());
+    }
+
+    @Test
+    public void testDefaultPostJsonReturnJsonVisitingListVisitsAnyList() throws Exception {
+        final List<B2Part> parts = new ArrayList<>();
+        parts.add(makePart(1));
+        parts.add(makePart(2));
+        final B2WebApiClient webApiClient = new CannedWebApiClient(new B2ListPartsResponse(parts, 3));
+
+        final List<B2Part> visited = new ArrayList<>();
+        final B2ListPartsResponse returned = webApiClient.postJsonReturnJsonVisitingList(
+                "url",
+                null,
+                "request",
+                B2ListPartsResponse.class,
+                "parts",
+                B2Part.class,
+                visited::add);
+
+        assertEquals(parts, visited);
+        assertTrue(returned.getParts().isEmpty());
+        assertEquals(Integer.valueOf(3), returned.getNextPartNumber());
+    }
+
+    @Test
+    public void testDefaultPostJsonReturnJsonVisitingListWithUnknownField() throws Exception {
+        final B2WebApiClient webApiClient = new CannedWebApiClient(new B2ListPartsResponse(new ArrayList<>(), null));
+        try {
+            webApiClient.postJsonReturnJsonVisitingList(
+                    "url",
+                    null,
+                    "request",
+                    B2ListPartsResponse.class,
+                    "files",
+                    B2FileVersion.class,
+                    version -> fail("shouldn't visit anything"));
+            fail("should've thrown");
+        } catch (B2LocalException e) {
+            assertEquals("parsing_failed", e.getCode());
+        }
+    }
+}
@@ -11,9 +11,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -78,4 +85,36 @@ public class B2JsonHandlerMapTest extends B2BaseTest {
         handlerMap.getHandler(HashSet.class);
     }
 
+    /**
+     * Once a handler has been built, every thread should get that same handler.
+     */
+    @Test
+    public void testSameHandlerFromManyThreads() throws B2JsonException, InterruptedException, ExecutionException {
+        final B2JsonHandlerMap handlerMap = new B2JsonHandlerMap();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<B2JsonTypeHandler<GoodClass>>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> handlerMap.getHandler(GoodClass.class)));
+            }
+
+            final B2JsonTypeHandler<GoodClass> handler = handlerMap.getHandler(GoodClass.class);
+            for (Future<B2JsonTypeHandler<GoodClass>> future : futures) {
+                assertSame(handler, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class GoodClass {
+        @B2Json.required
+        private final int n;
+
+        @B2Json.constructor(params = "n")
+        public GoodClass(int n) {
+            this.n = n;
+        }
+    }
+
 }
@@ -146,6 +146,102 @@ public class B2JsonReaderTest extends B2BaseTest {
         assertEquals("8", reader.readNumberAsString());
     }
 
+    @Test
+    public void testReadLongAndInt() throws IOException, B2JsonException {
+        checkLong("0", 0L);
+        checkLong("-0", 0L);
+        checkLong(" 12345 ", 12345L);
+        checkLong("9223372036854775807", Long.MAX_VALUE);
+        checkLong("-9223372036854775808", Long.MIN_VALUE);
+        checkLong("9223372036854775808", null);
+        checkLong("-9223372036854775809", null);
+        checkLong("99999999999999999999999", null);
+        checkLong("1.5", null);
+        checkLong("1e3", null);
+        checkLong("x", null);
+
+        checkInt("2147483647", Integer.MAX_VALUE);
+        checkInt("-2147483648", Integer.MIN_VALUE);
+        checkInt("2147483648", null);
+        checkInt("-2147483649", null);
+        checkInt("3.0", null);
+    }
+
+    private void checkLong(String text, Long expectedOrNull) throws IOException, B2JsonException {
+        B2JsonReader reader = new B2JsonReader(new StringReader(text));
+        if (expectedOrNull == null) {
+            try {
+                reader.readLong();
+                fail("should have thrown: " + text);
+            }
+            catch (B2JsonException e) {
+                // cool
+            }
+        }
+        else {
+            assertEquals((long) expectedOrNull, reader.readLong());
+        }
+    }
+
+    private void checkInt(String text, Integer expectedOrNull) throws IOException, B2JsonException {
+        B2JsonReader reader = new B2JsonReader(new StringReader(text));
+        if (expectedOrNull == null) {
+            try {
+                reader.readInt();
+                fail("should have thrown: " + text);
+            }
+            catch (B2JsonException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("bad integer: "));
+            }
+        }
+        else {
+            assertEquals((int) expectedOrNull, reader.readInt());
+        }
+    }
+
+    @Test
+    public void testValuesThatCrossBufferBoundaries() throws IOException, B2JsonException {
+        // a Reader that only hands out a few chars at a time makes every
+        // value straddle the end of the reader's buffer.
+        final StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            longString.append((char) ('a' + (i % 26)));
+        }
+        final String json = "[\"" + longString + "\", \"a\\\"b\\u00DFc\", 123456789012, \"skip\\nme\", 8]";
+
+        final B2JsonReader reader = new B2JsonReader(new TrickleReader(json, 3));
+        assertTrue(reader.startArrayAndCheckForContents());
+        assertEquals(longString.toString(), reader.readString());
+        assertTrue(reader.arrayHasMoreValues());
+        assertEquals("a\"b\u00DFc", reader.readString());
+        assertTrue(reader.arrayHasMoreValues());
+        assertEquals(123456789012L, reader.readLong());
+        assertTrue(reader.arrayHasMoreValues());
+        reader.skipValue();
+        assertTrue(reader.arrayHasMoreValues());
+        assertEquals(8, reader.readInt());
+        assertFalse(reader.arrayHasMoreValues());
+        reader.finishArray();
+        assertTrue(reader.nextNonWhitespaceIsEof());
+    }
+
+    /**
+     * A Reader that returns at most maxPerRead chars from each read().
+     */
+    private static class TrickleReader extends StringReader {
+        private final int maxPerRead;
+
+        TrickleReader(String s, int maxPerRead) {
+            super(s);
+            this.maxPerRead = maxPerRead;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            return super.read(chars, offset, Math.min(length, maxPerRead));
+        }
+    }
+
     @Test
     public void testNextNotWhitespaceIsEof() throws IOException, B2JsonException {
         {
@@ -615,6 +615,102 @@ public class B2JsonTest extends B2BaseTest {
         checkDeserializeSerialize(json2, ListHolder.class);
     }
 
+    private static class PageHolder {
+        @B2Json.optional
+        final String before;
+
+        @B2Json.optional
+        final List<Container> items;
+
+        @B2Json.optional
+        final String after;
+
+        @B2Json.constructor(params = "before, items, after")
+        PageHolder(String before, List<Container> items, String after) {
+            this.before = before;
+            this.items = items;
+            this.after = after;
+        }
+    }
+
+    @Test
+    public void testFromJsonVisitingList() throws IOException, B2JsonException {
+        final String json =
+                "{\n" +
+                "  \"before\": \"x\",\n" +
+                "  \"items\": [ { \"a\": 1, \"b\": \"one\" }, null, { \"a\": 2 } ],\n" +
+                "  \"extra\": 7,\n" +
+                "  \"after\": \"y\"\n" +
+                "}";
+        final List<Container> visited = new ArrayList<>();
+        final PageHolder holder = b2Json.fromJsonVisitingList(
+                new ByteArrayInputStream(getUtf8Bytes(json)),
+                PageHolder.class,
+                "items",
+                Container.class,
+                visited::add,
+                B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS);
+
+        assertEquals(3, visited.size());
+        assertEquals(new Container(1, "one"), visited.get(0));
+        assertNull(visited.get(1));
+        assertEquals(new Container(2, null), visited.get(2));
+
+        // the other fields are there, but the items aren't.
+        assertEquals("x", holder.before);
+        assertEquals("y", holder.after);
+        assertTrue(holder.items.isEmpty());
+    }
+
+    @Test
+    public void testFromJsonVisitingListWithNullOrEmptyList() throws IOException, B2JsonException {
+        final List<Container> visited = new ArrayList<>();
+        final PageHolder nullHolder = b2Json.fromJsonVisitingList(
+                new ByteArrayInputStream(getUtf8Bytes("{ \"items\": null }")),
+                PageHolder.class,
+                "items",
+                Container.class,
+                visited::add,
+                B2JsonOptions.DEFAULT);
+        assertNull(nullHolder.items);
+
+        final PageHolder emptyHolder = b2Json.fromJsonVisitingList(
+                new ByteArrayInputStream(getUtf8Bytes("{ \"items\": [] }")),
+                PageHolder.class,
+                "items",
+                Container.class,
+                visited::add,
+                B2JsonOptions.DEFAULT);
+        assertTrue(emptyHolder.items.isEmpty());
+        assertTrue(visited.isEmpty());
+    }
+
+    @Test
+    public void testFromJsonVisitingListNeedsListOfItemClass() throws IOException, B2JsonException {
+        thrown.expect(B2JsonException.class);
+        thrown.expectMessage("field items in " + PageHolder.class.getName() + " is not a List of java.lang.String");
+        b2Json.fromJsonVisitingList(
+                new ByteArrayInputStream(getUtf8Bytes("{}")),
+                PageHolder.class,
+                "items",
+                String.class,
+                item -> {},
+                B2JsonOptions.DEFAULT);
+    }
+
+    @Test
+    public void testFromJsonVisitingListNeedsList() throws IOException, B2JsonException {
+        thrown.expect(B2JsonException.class);
+        thrown.expectMessage("field before in " + PageHolder.class.getName() + " is not a List of java.lang.String");
+        b2Json.fromJsonVisitingList(
+                new ByteArrayInputStream(getUtf8Bytes("{}")),
+                PageHolder.class,
+                "before",
+                String.class,
+                item -> {},
+                B2JsonOptions.DEFAULT);
+    }
+
     private <T> void checkDeserializeSerialize(String json, Class<T> clazz) throws IOException, B2JsonException {
         T obj = b2Json.fromJson(json, clazz);
         assertEquals(json, b2Json.toJson(obj));
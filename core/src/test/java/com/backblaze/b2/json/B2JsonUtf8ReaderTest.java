@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+
+package com.backblaze.b2.json;
+
+import com.backblaze.b2.util.B2BaseTest;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class B2JsonUtf8ReaderTest extends B2BaseTest {
+    // one, two, three, and four byte encodings, and a surrogate pair.
+    private static final String TEXT = "a\u00DF\u6771\uD801\uDC00z";
+
+    @Test
+    public void testFromBytes() throws IOException {
+        assertEquals("", readAll(new B2JsonUtf8Reader(new byte[0]), 100));
+        assertEquals(TEXT, readAll(new B2JsonUtf8Reader(utf8(TEXT)), 100));
+        assertEquals(TEXT, readAll(new B2JsonUtf8Reader(utf8(TEXT)), 2));
+    }
+
+    @Test
+    public void testFromByteBufferLeavesCallersPositionAlone() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(utf8("xx" + TEXT));
+        buffer.position(2);
+
+        assertEquals(TEXT, readAll(new B2JsonUtf8Reader(buffer), 100));
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testFromStreamWithCodePointsSplitAcrossReads() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append(TEXT);
+        }
+        final String expected = builder.toString();
+
+        // one byte per read() splits every multi-byte code point.
+        assertEquals(expected, readAll(new B2JsonUtf8Reader(new OneByteAtATimeInputStream(utf8(expected))), 100));
+        assertEquals(expected, readAll(new B2JsonUtf8Reader(new ByteArrayInputStream(utf8(expected))), 4096));
+    }
+
+    @Test
+    public void testMalformedInputIsReplaced() throws IOException {
+        final byte[] bytes = { 'a', (byte) 0xff, 'b', (byte) 0xe6 };
+        final String expected = new String(bytes, StandardCharsets.UTF_8);
+
+        assertEquals(expected, readAll(new B2JsonUtf8Reader(bytes), 100));
+        assertEquals(expected, readAll(new B2JsonUtf8Reader(new ByteArrayInputStream(bytes)), 100));
+    }
+
+    private static String readAll(Reader reader, int charsPerRead) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final char[] chars = new char[charsPerRead];
+        int numRead;
+        while ((numRead = reader.read(chars, 0, chars.length)) != -1) {
+            builder.append(chars, 0, numRead);
+        }
+        return builder.toString();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class OneByteAtATimeInputStream extends InputStream {
+        private final ByteArrayInputStream in;
+
+        OneByteAtATimeInputStream(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            return in.read(bytes, offset, Math.min(length, 1));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class B2ByteBufferPoolTest extends B2BaseTest {
+    private final B2ByteBufferPool pool = new B2ByteBufferPool(100, 2);
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        final ByteBuffer a = pool.acquire();
+        assertEquals(100, a.capacity());
+        assertTrue(a.hasArray());
+
+        a.put((byte) 1).flip();
+        pool.release(a);
+        assertEquals(1, pool.getPooledCount());
+
+        final ByteBuffer b = pool.acquire();
+        assertSame(a, b);
+        assertEquals(0, b.position());
+        assertEquals(100, b.limit());
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testKeepsAtMostMaxPooledBuffers() {
+        final ByteBuffer a = pool.acquire();
+        final ByteBuffer b = pool.acquire();
+        final ByteBuffer c = pool.acquire();
+        assertNotSame(a, b);
+
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test
+    public void testReleasingAForeignBufferIsAnError() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("buffer didn't come from this pool");
+        pool.release(ByteBuffer.allocate(99));
+    }
+}
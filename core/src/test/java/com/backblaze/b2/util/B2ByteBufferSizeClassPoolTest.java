@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class B2ByteBufferSizeClassPoolTest extends B2BaseTest {
+    private final B2ByteBufferSizeClassPool pool = new B2ByteBufferSizeClassPool(100, 500, 2);
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testSizeClasses() {
+        assertArrayEquals(new int[] { 100, 200, 400, 500 }, pool.getBufferSizes());
+        assertArrayEquals(new int[] { 64 }, new B2ByteBufferSizeClassPool(64, 64, 1).getBufferSizes());
+
+        // doubling doesn't overflow.
+        assertArrayEquals(new int[] { 1 << 30, Integer.MAX_VALUE },
+                new B2ByteBufferSizeClassPool(1 << 30, Integer.MAX_VALUE, 0).getBufferSizes());
+    }
+
+    @Test
+    public void testAcquiresFromTheSmallestClassThatFits() {
+        assertEquals(100, pool.acquire(0).capacity());
+        assertEquals(100, pool.acquire(100).capacity());
+        assertEquals(200, pool.acquire(101).capacity());
+        assertEquals(400, pool.acquire(399).capacity());
+        assertEquals(500, pool.acquire(401).capacity());
+
+        final ByteBuffer buffer = pool.acquire(1);
+        assertTrue(buffer.hasArray());
+        assertEquals(0, buffer.position());
+        assertEquals(100, buffer.limit());
+    }
+
+    @Test
+    public void testReleasedBuffersAreReusedBySize() {
+        final ByteBuffer small = pool.acquire(50);
+        final ByteBuffer big = pool.acquire(300);
+        pool.release(small);
+        pool.release(big);
+        assertEquals(2, pool.getPooledCount());
+
+        assertSame(big, pool.acquire(250));
+        assertSame(small, pool.acquire(80));
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testBigBuffersArentPooled() {
+        final ByteBuffer huge = pool.acquire(501);
+        assertEquals(501, huge.capacity());
+
+        pool.release(huge);
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testReleasingAForeignBufferIsAnError() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("buffer didn't come from this pool");
+        pool.release(ByteBuffer.allocate(150));
+    }
+}
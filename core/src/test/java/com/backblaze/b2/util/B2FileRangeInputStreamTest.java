@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class B2FileRangeInputStreamTest extends B2BaseTest {
+    private static final String DIGITS_STR = "0123456789";
+    private static final int EOF = -1;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final File file;
+
+    public B2FileRangeInputStreamTest() throws IOException {
+        file = File.createTempFile("B2FileRangeInputStreamTest", ".txt");
+        Files.write(file.toPath(), B2StringUtil.getUtf8Bytes(DIGITS_STR));
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void testNegativeStartThrows() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("start must be non-negative.");
+
+        B2FileRangeInputStream.open(file, -1, 1);
+    }
+
+    @Test
+    public void testReadRanges() throws IOException {
+        assertEquals("", readAll(0, 0));
+        assertEquals("0123456789", readAll(0, 10));
+        assertEquals("345", readAll(3, 3));
+        assertEquals("9", readAll(9, 1));
+
+        // past the end of the file.
+        assertEquals("789", readAll(7, 6));
+        assertEquals("", readAll(10, 6));
+        assertEquals("", readAll(20, 6));
+    }
+
+    @Test
+    public void testReadOneByteAtATime() throws IOException {
+        try (InputStream in = B2FileRangeInputStream.open(file, 8, 5)) {
+            assertEquals('8', in.read());
+            assertEquals('9', in.read());
+            assertEquals(EOF, in.read());
+            assertEquals(EOF, in.read());
+        }
+    }
+
+    @Test
+    public void testSkipAndAvailable() throws IOException {
+        try (InputStream in = B2FileRangeInputStream.open(file, 2, 6)) {
+            assertEquals(6, in.available());
+            assertEquals(2, in.skip(2));
+            assertEquals(4, in.available());
+            assertEquals('4', in.read());
+            assertEquals(3, in.skip(100));
+            assertEquals(0, in.available());
+            assertEquals(EOF, in.read());
+            assertEquals(0, in.skip(1));
+        }
+
+        try (InputStream in = B2FileRangeInputStream.open(file, 8, 6)) {
+            // the range goes past the end of the file.
+            assertEquals(2, in.available());
+        }
+    }
+
+    private String readAll(long start, long length) throws IOException {
+        try (InputStream in = B2FileRangeInputStream.open(file, start, length)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4];
+            int numRead;
+            while ((numRead = in.read(buffer)) != EOF) {
+                out.write(buffer, 0, numRead);
+            }
+            return new String(out.toByteArray(), "UTF-8");
+        }
+    }
+}
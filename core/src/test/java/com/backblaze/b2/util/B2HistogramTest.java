@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class B2HistogramTest extends B2BaseTest {
+
+    @Test
+    public void testEmpty() {
+        final B2Histogram histogram = new B2Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        final B2Histogram histogram = new B2Histogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        assertEquals(20, histogram.getCount());
+        assertEquals(20, histogram.getMax());
+        assertEquals(10.5, histogram.getMean(), 0.0);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(18, histogram.getValueAtPercentile(90));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testBigValuesAreClose() {
+        final B2Histogram histogram = new B2Histogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10_000, histogram.getMax());
+
+        // it never guesses low and it's within about 3%.
+        final long p99 = histogram.getValueAtPercentile(99);
+        assertTrue("p99 = " + p99, p99 >= 9_900 && p99 <= 9_900 * 1.04);
+        final long p50 = histogram.getValueAtPercentile(50);
+        assertTrue("p50 = " + p50, p50 >= 5_000 && p50 <= 5_000 * 1.04);
+        assertEquals(10_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testNegativeValuesCountAsZero() {
+        final B2Histogram histogram = new B2Histogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+        final B2Histogram histogram = new B2Histogram();
+        histogram.record(1234);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testIndexesAreContiguousAndCoverTheirValues() {
+        // walk through the indexes and make sure each one's range starts right
+        // after the previous one's and that its values all map back to it.
+        long expectedLowest = 0;
+        int index = 0;
+        while (true) {
+            final long highest = B2Histogram.highestValueFor(index);
+            assertEquals(index, B2Histogram.indexFor(expectedLowest));
+            assertEquals(index, B2Histogram.indexFor(highest));
+            if (highest == Long.MAX_VALUE) {
+                break;
+            }
+            expectedLowest = highest + 1;
+            index++;
+        }
+
+        // the width of each sub-bucket is at most 1/32 of its values.
+        for (int i = 64; i < index; i++) {
+            final long lowest = B2Histogram.highestValueFor(i - 1) + 1;
+            final long width = B2Histogram.highestValueFor(i) - lowest + 1;
+            assertTrue(width <= lowest / 32);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class B2Sha1OutputStreamTest extends B2BaseTest {
+
+    @Test
+    public void testAllWriteMethods() throws IOException {
+        final byte[] data = makeData(100);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final B2Sha1OutputStream out = new B2Sha1OutputStream(bytes);
+        out.write(data[0]);
+        out.write(new byte[] { data[1], data[2] });
+        out.write(data, 3, 97);
+        out.close();
+
+        assertArrayEquals(data, bytes.toByteArray());
+        assertArrayEquals(B2Sha1.binarySha1OfBytes(data), out.digest());
+    }
+
+    @Test
+    public void testHexDigest() throws IOException {
+        final B2Sha1OutputStream out = new B2Sha1OutputStream(new ByteArrayOutputStream());
+        out.write(B2StringUtil.getUtf8Bytes("abc"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", out.hexDigest());
+    }
+
+    @SuppressWarnings("SameParameterValue")
+    private byte [] makeData(int byteCount) {
+        byte [] result = new byte[byteCount];
+        for (int i = 0; i < byteCount; i++) {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import static com.backblaze.b2.util.B2StringUtil.allDecimal;
+import static com.backblaze.b2.util.B2StringUtil.compareInUtf8Order;
 import static com.backblaze.b2.util.B2StringUtil.decimalNumberInRange;
 import static com.backblaze.b2.util.B2StringUtil.decimalSubstringToInt;
 import static com.backblaze.b2.util.B2StringUtil.getUtf8Bytes;
@@ -133,6 +134,19 @@ public class B2StringUtilTest extends B2BaseTest {
         new B2StringUtil();
     }
 
+    @Test
+    public void testCompareInUtf8Order() {
+        assertTrue(compareInUtf8Order("a", "b") < 0);
+        assertTrue(compareInUtf8Order("b", "a") > 0);
+        assertTrue(compareInUtf8Order("a", "a/") < 0);
+        assertEquals(0, compareInUtf8Order("a/b", "a/b"));
+
+        // U+FFFD is three bytes of UTF-8 and U+1F600 is four, starting with a
+        // bigger byte.  String.compareTo() disagrees, because it compares UTF-16.
+        assertTrue(compareInUtf8Order("\uFFFD", "\uD83D\uDE00") < 0);
+        assertTrue("\uFFFD".compareTo("\uD83D\uDE00") > 0);
+    }
+
     @Test
     public void testUnderscoresToCamelCase() {
         assertEquals("", B2StringUtil.underscoresToCamelCase("", false));
@@ -43,6 +43,7 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.function.Consumer;
 
 import static com.backblaze.b2.util.B2IoUtils.closeQuietly;
 
@@ -69,12 +70,27 @@ public class B2WebApiHttpClientImpl implements B2WebApiClient {
                                                           B2Headers headersOrNull,
                                                           Object request,
                                                           Class<ResponseType> responseClass) throws B2Exception {
-        final String responseString = postJsonAndReturnString(url, headersOrNull, request);
-        try {
-            return bzJson.fromJson(responseString, responseClass, B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS);
-        } catch (B2JsonException e) {
-            throw new B2LocalException("parsing_failed", "can't convert response from json: " + e.getMessage(), e);
-        }
+        ByteArrayEntity requestEntity = parseToByteArrayEntityUsingBzJson(request);
+        return postAndReturnJson(url, headersOrNull, requestEntity, responseClass);
+    }
+
+    @Override
+    public <ResponseType, ItemType> ResponseType postJsonReturnJsonVisitingList(String url,
+                                                                                B2Headers headersOrNull,
+                                                                                Object request,
+                                                                                Class<ResponseType> responseClass,
+                                                                                String listFieldName,
+                                                                                Class<ItemType> itemClass,
+                                                                                Consumer<? super ItemType> visitor) throws B2Exception {
+        ByteArrayEntity requestEntity = parseToByteArrayEntityUsingBzJson(request);
+        return postAndReturnJson(url, headersOrNull, requestEntity,
+                content -> bzJson.fromJsonVisitingList(
+                        content,
+                        responseClass,
+                        listFieldName,
+                        itemClass,
+                        visitor,
+                        B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS));
     }
 
     @Override
@@ -83,13 +99,8 @@ public class B2WebApiHttpClientImpl implements B2WebApiClient {
                                                           InputStream inputStream,
                                                           long contentLength,
                                                           Class<ResponseType> responseClass) throws B2Exception {
-        try {
-            InputStreamEntity requestEntity = new InputStreamEntity(inputStream, contentLength);
-            String responseJson = postAndReturnString(url, headersOrNull, requestEntity);
-            return B2Json.get().fromJson(responseJson, responseClass, B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS);
-        } catch (B2JsonException e) {
-            throw new B2LocalException("parsing_failed", "can't convert response from json: " + e.getMessage(), e);
-        }
+        InputStreamEntity requestEntity = new InputStreamEntity(inputStream, contentLength);
+        return postAndReturnJson(url, headersOrNull, requestEntity, responseClass);
     }
 
 
@@ -193,24 +204,40 @@ public class B2WebApiHttpClientImpl implements B2WebApiClient {
         return builder.build();
     }
 
-    private String postJsonAndReturnString(String url,
-                                           B2Headers headersOrNull,
-                                           Object request) throws B2Exception {
-        ByteArrayEntity requestEntity = parseToByteArrayEntityUsingBzJson(request);
-        return postAndReturnString(url, headersOrNull, requestEntity);
-    }
-
     /**
-     * POSTs to a web service that returns content, and returns the content
-     * as a single string.
+     * POSTs to a web service that returns json, and returns the parsed response.
+     *
+     * Successful responses are parsed straight from the response's stream, so
+     * we never hold the whole body as a String.  Error responses are small, and
+     * we want their text for the exception, so we still read those into a String.
      *
      * @param url the url to post to
      * @param headersOrNull the headers, if any.
      * @param requestEntity the entity to post.
-     * @return the body of the response.
+     * @param responseClass the class of the object to parse the response into.
+     * @return the parsed body of the response.
      * @throws B2Exception if there's any trouble
      */
-    private String postAndReturnString(String url, B2Headers headersOrNull, HttpEntity requestEntity)
+    private <ResponseType> ResponseType postAndReturnJson(String url,
+                                                          B2Headers headersOrNull,
+                                                          HttpEntity requestEntity,
+                                                          Class<ResponseType> responseClass)
+            throws B2Exception {
+        return postAndReturnJson(url, headersOrNull, requestEntity,
+                content -> bzJson.fromJson(content, responseClass, B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS));
+    }
+
+    /**
+     * Parses the content of a successful response.
+     */
+    private interface ResponseParser<ResponseType> {
+        ResponseType parse(InputStream content) throws IOException, B2JsonException;
+    }
+
+    private <ResponseType> ResponseType postAndReturnJson(String url,
+                                                          B2Headers headersOrNull,
+                                                          HttpEntity requestEntity,
+                                                          ResponseParser<ResponseType> parser)
             throws B2Exception {
 
         CloseableHttpResponse response = null;
@@ -226,14 +253,20 @@ public class B2WebApiHttpClientImpl implements B2WebApiClient {
             response = clientFactory.create().execute(post);
 
             HttpEntity responseEntity = response.getEntity();
-            String responseText = EntityUtils.toString(responseEntity, "UTF-8");
-
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
-                return responseText;
+                final ResponseType result = parser.parse(responseEntity.getContent());
+
+                // the parser stops at the end of the json value.  read whatever is
+                // left (usually a trailing newline) so the connection can be reused.
+                EntityUtils.consume(responseEntity);
+                return result;
             } else {
+                String responseText = EntityUtils.toString(responseEntity, UTF8);
                 throw extractExceptionFromErrorResponse(response, responseText);
             }
+        } catch (B2JsonException e) {
+            throw new B2LocalException("parsing_failed", "can't convert response from json: " + e.getMessage(), e);
         } catch (IOException e) {
             throw translateToB2Exception(e, url);
         }
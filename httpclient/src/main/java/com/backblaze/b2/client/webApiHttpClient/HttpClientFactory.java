@@ -18,7 +18,11 @@ public interface HttpClientFactory extends AutoCloseable {
      * the SDK will *not* call close() on it, because doing so
      * would close the client's HttpClientConnectionManager.
      *
-     * @return a new httpClient for use by the SDK.
+     * The SDK calls this for every request and may use the result from
+     * many threads at once, so it's fine (and cheaper) for implementations
+     * to return the same thread-safe client every time.
+     *
+     * @return an httpClient for use by the SDK.
      *         this will be called often.
      * @throws B2Exception if there's any trouble creating the client.
      */
@@ -36,13 +36,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class HttpClientFactoryImpl implements HttpClientFactory {
     private final HttpClientConnectionManager connectionManager;
-    private final RequestConfig requestConfig;
+    private final CloseableHttpClient httpClient;
     private final IdleConnectionMonitorThread connectionJanitor;
 
     /**
      * This is the user-agent we should use on Apache HttpClient instances.
      * If we do not set it, HttpClientBuilder will compute this every time
-     * it creates an HttpClient (and we do that A LOT).  That wouldn't
+     * it creates an HttpClient.  That wouldn't
      * be so bad, except that internally it gets its own version by opening
      * a resource stream which involves opening a jar and using a ZipFile
      * instance, etc, so it's a non-obvious amount of work.  (at least as
@@ -56,7 +56,17 @@ public class HttpClientFactoryImpl implements HttpClientFactory {
     private HttpClientFactoryImpl(HttpClientConnectionManager connectionManager,
                           RequestConfig requestConfig) {
         this.connectionManager = connectionManager;
-        this.requestConfig = requestConfig;
+
+        // CloseableHttpClients are thread-safe, so we build one up front and
+        // hand it out from every call to create().  building a new one for
+        // every request allocates a new interceptor chain and exec chain
+        // each time, which shows up when making lots of small requests.
+        this.httpClient = HttpClients.custom()
+                .setUserAgent(APACHE_HTTP_CLIENT_USER_AGENT)
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
         connectionJanitor = new IdleConnectionMonitorThread(connectionManager);
         connectionJanitor.start();
     }
@@ -70,13 +80,12 @@ public class HttpClientFactoryImpl implements HttpClientFactory {
         return new Builder();
     }
 
+    /**
+     * @return the same, shared CloseableHttpClient every time.
+     */
     @Override
     public CloseableHttpClient create() throws B2Exception {
-        return HttpClients.custom()
-                .setUserAgent(APACHE_HTTP_CLIENT_USER_AGENT)
-                .setConnectionManager(connectionManager)
-                .setDefaultRequestConfig(requestConfig)
-                .build();
+        return httpClient;
     }
 
     @Override
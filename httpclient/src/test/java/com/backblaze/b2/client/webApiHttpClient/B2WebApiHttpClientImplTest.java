@@ -9,6 +9,9 @@ import com.backblaze.b2.client.contentSources.B2Headers;
 import com.backblaze.b2.client.contentSources.B2HeadersImpl;
 import com.backblaze.b2.client.exceptions.B2Exception;
 import com.backblaze.b2.client.structures.B2ErrorStructure;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2ListFileNamesRequest;
+import com.backblaze.b2.client.structures.B2ListFileNamesResponse;
 import com.backblaze.b2.client.webApiClients.B2WebApiClient;
 import com.backblaze.b2.json.B2Json;
 import cz.msebera.android.httpclient.HttpStatus;
@@ -17,7 +20,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.Deflater;
 
@@ -97,6 +103,74 @@ public class B2WebApiHttpClientImplTest {
         doTestGetContentWithException(REQUEST_HEADERS, JSON_ERROR_RESPONSE, RESPONSE_HEADERS);
     }
 
+    @Test
+    public void testPostJsonReturnJson() throws B2Exception {
+        final B2ErrorStructure expected = new B2ErrorStructure(123, "code", "message");
+        final byte[] responseBytes = (B2Json.toJsonOrThrowRuntime(expected) + "\n").getBytes();
+        requestHandler.setNextResponse(createResponse(HttpStatus.SC_OK, ContentType.APPLICATION_JSON.toString(), responseBytes));
+
+        final B2ErrorStructure request = new B2ErrorStructure(1, "request", "hello");
+        final B2ErrorStructure actual = b2WebApiClient.postJsonReturnJson(url, null, request, B2ErrorStructure.class);
+
+        assertEquals("POST", requestHandler.getLastRequestMethod());
+        assertEquals(expected.status, actual.status);
+        assertEquals(expected.code, actual.code);
+        assertEquals(expected.message, actual.message);
+    }
+
+    @Test
+    public void testPostJsonReturnJsonVisitingList() throws B2Exception {
+        final String responseJson = "{\n" +
+                "  \"files\": [\n" +
+                "    { \"fileName\": \"a\", \"uploadTimestamp\": 1 },\n" +
+                "    { \"fileName\": \"b\", \"uploadTimestamp\": 2, \"somethingNew\": true }\n" +
+                "  ],\n" +
+                "  \"nextFileName\": \"c\"\n" +
+                "}\n";
+        requestHandler.setNextResponse(createResponse(HttpStatus.SC_OK, ContentType.APPLICATION_JSON.toString(), responseJson.getBytes()));
+
+        final List<String> visitedNames = new ArrayList<>();
+        final B2ListFileNamesResponse response = b2WebApiClient.postJsonReturnJsonVisitingList(
+                url,
+                null,
+                B2ListFileNamesRequest.builder("bucket1").build(),
+                B2ListFileNamesResponse.class,
+                "files",
+                B2FileVersion.class,
+                version -> visitedNames.add(version.getFileName()));
+
+        assertEquals("POST", requestHandler.getLastRequestMethod());
+        assertEquals(Arrays.asList("a", "b"), visitedNames);
+        assertTrue(response.getFiles().isEmpty());
+        assertEquals("c", response.getNextFileName());
+    }
+
+    @Test
+    public void testPostJsonReturnJsonWithErrorResponse() {
+        requestHandler.setNextResponse(JSON_ERROR_RESPONSE);
+
+        try {
+            b2WebApiClient.postJsonReturnJson(url, null, INTERNAL_ERROR_STRUCTURE, B2ErrorStructure.class);
+            fail("should've thrown");
+        } catch (B2Exception b2Exception) {
+            assertEquals(INTERNAL_ERROR_STRUCTURE.status, b2Exception.getStatus());
+            assertEquals(INTERNAL_ERROR_STRUCTURE.code, b2Exception.getCode());
+            assertEquals(INTERNAL_ERROR_STRUCTURE.message, b2Exception.getMessage());
+        }
+    }
+
+    @Test
+    public void testPostJsonReturnJsonWithBadJson() {
+        requestHandler.setNextResponse(createResponse(HttpStatus.SC_OK, ContentType.APPLICATION_JSON.toString(), "{ \"status\": ".getBytes()));
+
+        try {
+            b2WebApiClient.postJsonReturnJson(url, null, INTERNAL_ERROR_STRUCTURE, B2ErrorStructure.class);
+            fail("should've thrown");
+        } catch (B2Exception b2Exception) {
+            assertEquals("parsing_failed", b2Exception.getCode());
+        }
+    }
+
     private void doTestGetContentWithException(Map<String, String> requestHeaders, SimpleHttpRequestHandler.Response expectedResponse, Map<String, String> responseHeaders) {
         final B2HeadersImpl.Builder requestHeaderBuilder = B2HeadersImpl.builder();
         requestHeaders.forEach(requestHeaderBuilder::set);
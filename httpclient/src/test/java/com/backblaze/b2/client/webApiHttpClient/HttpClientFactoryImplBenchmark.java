@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiHttpClient;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import cz.msebera.android.httpclient.impl.client.CloseableHttpClient;
+import cz.msebera.android.httpclient.impl.client.HttpClients;
+import cz.msebera.android.httpclient.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * HttpClientFactoryImplBenchmark compares what the SDK pays per request to get
+ * an HttpClient from HttpClientFactoryImpl.create() with what it used to pay
+ * when create() built a new client for every request.
+ *
+ * It's not a unit test; run main() by hand.  It reports the average time and
+ * the average number of bytes allocated per call (when the JVM can measure that).
+ * Each mode is run a few times so the later rounds are warmed up.
+ */
+public class HttpClientFactoryImplBenchmark {
+    private static final int ITERATIONS = 100_000;
+    private static final int ROUNDS = 5;
+
+    private interface ClientSupplier {
+        CloseableHttpClient get() throws B2Exception;
+    }
+
+    public static void main(String[] args) throws B2Exception {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        final ClientSupplier buildPerRequest = () -> HttpClients.custom()
+                .setUserAgent("benchmark")
+                .setConnectionManager(connectionManager)
+                .build();
+
+        try (HttpClientFactoryImpl factory = HttpClientFactoryImpl.build()) {
+            for (int round = 1; round <= ROUNDS; round++) {
+                measure("round " + round + ": build per request", buildPerRequest);
+                measure("round " + round + ": shared client   ", factory::create);
+            }
+        } finally {
+            connectionManager.shutdown();
+        }
+    }
+
+    private static void measure(String name,
+                                ClientSupplier supplier) throws B2Exception {
+        // keep a running hash so the JIT can't throw away the work.
+        int blackhole = 0;
+
+        final long startBytes = allocatedBytesOrMinusOne();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            blackhole += System.identityHashCode(supplier.get());
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        final long endBytes = allocatedBytesOrMinusOne();
+
+        final String bytesPerOp = (startBytes < 0) ?
+                "?" :
+                Long.toString((endBytes - startBytes) / ITERATIONS);
+        System.out.println(String.format("%s  %8d ns/op  %8s bytes/op  (%d)",
+                name,
+                elapsedNanos / ITERATIONS,
+                bytesPerOp,
+                blackhole & 1));
+    }
+
+    private static long allocatedBytesOrMinusOne() {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiHttpClient;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class HttpClientFactoryImplTest {
+
+    @Test
+    public void testCreateReturnsTheSameClient() throws B2Exception {
+        try (HttpClientFactoryImpl factory = HttpClientFactoryImpl.build()) {
+            assertNotNull(factory.create());
+            assertSame(factory.create(), factory.create());
+        }
+    }
+}
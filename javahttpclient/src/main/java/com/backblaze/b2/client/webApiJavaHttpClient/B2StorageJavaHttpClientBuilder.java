@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiJavaHttpClient;
+
+import com.backblaze.b2.client.B2AccountAuthorizer;
+import com.backblaze.b2.client.B2AccountAuthorizerSimpleImpl;
+import com.backblaze.b2.client.B2AsyncStorageClient;
+import com.backblaze.b2.client.B2AsyncStorageClientImpl;
+import com.backblaze.b2.client.B2ClientConfig;
+import com.backblaze.b2.client.B2DefaultRetryPolicy;
+import com.backblaze.b2.client.B2RetryPolicy;
+import com.backblaze.b2.client.B2Sdk;
+import com.backblaze.b2.client.B2StorageClient;
+import com.backblaze.b2.client.B2StorageClientImpl;
+import com.backblaze.b2.client.B2StorageClientWebifierImpl;
+import com.backblaze.b2.client.credentialsSources.B2Credentials;
+import com.backblaze.b2.client.credentialsSources.B2CredentialsFromEnvironmentSource;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * B2StorageJavaHttpClientBuilder builds clients that send their requests
+ * with java.net.http.HttpClient.  build() makes a B2StorageClient, just
+ * like B2StorageHttpClientBuilder does.  buildAsync() makes a
+ * B2AsyncStorageClient that doesn't hold a thread while a request is with
+ * the server, so it can keep thousands of requests in flight on a few threads.
+ */
+public class B2StorageJavaHttpClientBuilder {
+
+    private static final String DEFAULT_MASTER_URL = "https://api.backblazeb2.com/";
+    private final B2ClientConfig config;
+    private HttpClient httpClient;
+    private Duration requestTimeout;
+    private Supplier<B2RetryPolicy> retryPolicySupplier;
+    private Executor executor;
+
+    @SuppressWarnings("WeakerAccess")
+    public static B2StorageJavaHttpClientBuilder builder(B2ClientConfig config) {
+        return new B2StorageJavaHttpClientBuilder(config);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public static B2StorageJavaHttpClientBuilder builder(String applicationKeyId, String applicationKey, String userAgent) {
+        final B2AccountAuthorizer accountAuthorizer = B2AccountAuthorizerSimpleImpl
+                .builder(applicationKeyId, applicationKey)
+                .build();
+        final B2ClientConfig config = B2ClientConfig
+                .builder(accountAuthorizer, userAgent)
+                .build();
+        return builder(config);
+    }
+
+    /**
+     * @param userAgent the user agent to use when performing http requests.
+     * @return a storage builder.
+     */
+    @SuppressWarnings("unused")
+    public static B2StorageJavaHttpClientBuilder builder(String userAgent) {
+        final B2Credentials credentials = B2CredentialsFromEnvironmentSource.build().getCredentials();
+        return builder(credentials.getApplicationKeyId(), credentials.getApplicationKey(), userAgent);
+    }
+
+    private B2StorageJavaHttpClientBuilder(B2ClientConfig config) {
+        this.config = config;
+    }
+
+    public B2StorageClient build() {
+        return buildStorageClient(buildWebApiClient());
+    }
+
+    public B2AsyncStorageClient buildAsync() {
+        final B2WebApiJavaHttpClientImpl webApiClient = buildWebApiClient();
+        final Executor executor = (this.executor != null) ?
+                this.executor :
+                ForkJoinPool.commonPool();
+        return new B2AsyncStorageClientImpl(buildStorageClient(webApiClient), webApiClient, executor);
+    }
+
+    private B2WebApiJavaHttpClientImpl buildWebApiClient() {
+        final B2WebApiJavaHttpClientImpl.Builder builder = B2WebApiJavaHttpClientImpl.builder()
+                .setHttpClient(httpClient);
+        if (requestTimeout != null) {
+            builder.setRequestTimeout(requestTimeout);
+        }
+        return builder.build();
+    }
+
+    private B2StorageClientImpl buildStorageClient(B2WebApiJavaHttpClientImpl webApiClient) {
+        final B2StorageClientWebifierImpl webifier = new B2StorageClientWebifierImpl(
+                webApiClient,
+                config.getUserAgent() + " " + B2Sdk.getName() + "/" + B2Sdk.getVersion(),
+                (config.getMasterUrl() == null) ? DEFAULT_MASTER_URL : config.getMasterUrl(),
+                config.getTestModeOrNull());
+        final Supplier<B2RetryPolicy> retryPolicySupplier = (this.retryPolicySupplier != null) ?
+                this.retryPolicySupplier :
+                B2DefaultRetryPolicy.supplier();
+        return new B2StorageClientImpl(
+                webifier,
+                config,
+                retryPolicySupplier);
+    }
+
+    /**
+     * @param httpClient the client to send requests with.  if it isn't set,
+     *                   a new one is made with a five second connect timeout.
+     * @return this builder.
+     */
+    @SuppressWarnings("unused")
+    public B2StorageJavaHttpClientBuilder setHttpClient(HttpClient httpClient) {
+        this.httpClient = httpClient;
+        return this;
+    }
+
+    /**
+     * @param requestTimeout how long to wait for each response to start.
+     *                       if it isn't set, it's twenty seconds.
+     * @return this builder.
+     */
+    @SuppressWarnings("unused")
+    public B2StorageJavaHttpClientBuilder setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    @SuppressWarnings("unused")
+    public B2StorageJavaHttpClientBuilder setRetryPolicySupplier(Supplier<B2RetryPolicy> retryPolicySupplier) {
+        this.retryPolicySupplier = retryPolicySupplier;
+        return this;
+    }
+
+    /**
+     * @param executor where buildAsync()'s client starts each attempt.  it
+     *                 doesn't wait for the server there, so a thread or two is
+     *                 plenty.  if it isn't set, ForkJoinPool.commonPool() is used.
+     *                 the caller is responsible for shutting it down.
+     * @return this builder.
+     */
+    @SuppressWarnings("unused")
+    public B2StorageJavaHttpClientBuilder setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiJavaHttpClient;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentSink;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2ConnectFailedException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2LocalException;
+import com.backblaze.b2.client.exceptions.B2NetworkException;
+import com.backblaze.b2.client.exceptions.B2NetworkTimeoutException;
+import com.backblaze.b2.client.structures.B2ErrorStructure;
+import com.backblaze.b2.client.webApiClients.B2AsyncWebApiClient;
+import com.backblaze.b2.client.webApiClients.B2WebApiClient;
+import com.backblaze.b2.json.B2Json;
+import com.backblaze.b2.json.B2JsonException;
+import com.backblaze.b2.json.B2JsonOptions;
+import com.backblaze.b2.util.B2Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static com.backblaze.b2.util.B2IoUtils.closeQuietly;
+
+/**
+ * B2WebApiJavaHttpClientImpl implements both B2WebApiClient and
+ * B2AsyncWebApiClient with java.net.http.HttpClient, which is part of
+ * the JDK starting with Java 11.
+ *
+ * The async methods use HttpClient.sendAsync(), so requests that are
+ * waiting for the server don't hold a thread.  Their responses are
+ * collected in memory before they're handed to the caller, so they're
+ * meant for api calls and small downloads.  The blocking getContent()
+ * streams the response to the handler instead, so it's fine for big files.
+ *
+ * The content for postDataReturnJson() is read by HttpClient's executor.
+ * That's fine for local content, but a content source that waits on
+ * the network will tie up one of those threads while it does.
+ *
+ * THREAD-SAFETY: this class is thread-safe.
+ */
+public class B2WebApiJavaHttpClientImpl implements B2WebApiClient, B2AsyncWebApiClient {
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    // the same as the Apache HttpClient's default socket timeout.  without one,
+    // a server that accepts a request and never answers leaves it pending forever.
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(20);
+
+    // HttpClient's timeout covers sending the request, too, so uploads get
+    // extra time for their content, as if it were sent at this rate.
+    private static final long MIN_UPLOAD_BYTES_PER_SECOND = 100_000;
+
+    // HttpClient manages these headers itself and throws if we try to set them.
+    // it sets Content-Length from the BodyPublisher, and we translate Expect
+    // into expectContinue().
+    private static final Set<String> HEADERS_WE_CANT_SET = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final B2Json bzJson = B2Json.get();
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+
+    private B2WebApiJavaHttpClientImpl(HttpClient httpClientOrNull,
+                                       Duration requestTimeout) {
+        this.httpClient = (httpClientOrNull != null) ?
+                httpClientOrNull :
+                HttpClient.newBuilder()
+                        .connectTimeout(DEFAULT_CONNECT_TIMEOUT)
+                        .build();
+        this.requestTimeout = requestTimeout;
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public <ResponseType> ResponseType postJsonReturnJson(String url,
+                                                          B2Headers headersOrNull,
+                                                          Object request,
+                                                          Class<ResponseType> responseClass) throws B2Exception {
+        return await(postJsonReturnJsonAsync(url, headersOrNull, request, responseClass));
+    }
+
+    @Override
+    public <ResponseType> ResponseType postDataReturnJson(String url,
+                                                          B2Headers headersOrNull,
+                                                          InputStream contentSource,
+                                                          long contentLength,
+                                                          Class<ResponseType> responseClass) throws B2Exception {
+        return await(postDataReturnJsonAsync(url, headersOrNull, contentSource, contentLength, responseClass));
+    }
+
+    @Override
+    public void getContent(String url,
+                           B2Headers headersOrNull,
+                           B2ContentSink handler) throws B2Exception {
+        // unlike the Apache HttpClient, java.net.http never asks for compressed
+        // content or decompresses it, so we download exactly what was uploaded.
+        final HttpRequest request = makeRequestBuilder(url, headersOrNull)
+                .GET()
+                .build();
+
+        InputStream content = null;
+        try {
+            final HttpResponse<InputStream> response = httpClient.send(request, BodyHandlers.ofInputStream());
+            content = response.body();
+            final int statusCode = response.statusCode();
+            if (200 <= statusCode && statusCode < 300) {
+                handler.readContent(makeHeaders(response.headers()), content);
+            } else {
+                final String responseText = new String(content.readAllBytes(), StandardCharsets.UTF_8);
+                throw extractExceptionFromErrorResponse(statusCode, response.headers(), responseText);
+            }
+        } catch (IOException e) {
+            throw translateToB2Exception(e, url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while getting content from " + url + ": " + e, e);
+        } finally {
+            closeQuietly(content);
+        }
+    }
+
+    @Override
+    public B2Headers head(String url, B2Headers headersOrNull) throws B2Exception {
+        return await(headAsync(url, headersOrNull));
+    }
+
+    @Override
+    public <ResponseType> CompletableFuture<ResponseType> postJsonReturnJsonAsync(String url,
+                                                                                  B2Headers headersOrNull,
+                                                                                  Object request,
+                                                                                  Class<ResponseType> responseClass) {
+        final byte[] requestBytes;
+        try {
+            requestBytes = toJsonBytes(request);
+        } catch (B2Exception e) {
+            return failedFuture(e);
+        }
+        return postAndReturnJson(url, headersOrNull, BodyPublishers.ofByteArray(requestBytes), requestTimeout, responseClass);
+    }
+
+    @Override
+    public <ResponseType> CompletableFuture<ResponseType> postDataReturnJsonAsync(String url,
+                                                                                  B2Headers headersOrNull,
+                                                                                  InputStream contentSource,
+                                                                                  long contentLength,
+                                                                                  Class<ResponseType> responseClass) {
+        // fromPublisher() insists on a positive length.
+        final BodyPublisher body = (contentLength == 0) ?
+                BodyPublishers.noBody() :
+                BodyPublishers.fromPublisher(BodyPublishers.ofInputStream(() -> contentSource), contentLength);
+        final Duration timeout = requestTimeout.plusSeconds(contentLength / MIN_UPLOAD_BYTES_PER_SECOND);
+        return postAndReturnJson(url, headersOrNull, body, timeout, responseClass);
+    }
+
+    @Override
+    public CompletableFuture<Void> getContentAsync(String url,
+                                                   B2Headers headersOrNull,
+                                                   B2ContentSink handler) {
+        final HttpRequest request = makeRequestBuilder(url, headersOrNull)
+                .GET()
+                .build();
+        return send(request, response -> {
+            final int statusCode = response.statusCode();
+            if (200 <= statusCode && statusCode < 300) {
+                handler.readContent(makeHeaders(response.headers()), new ByteArrayInputStream(response.body()));
+                return null;
+            } else {
+                throw extractExceptionFromErrorResponse(response);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<B2Headers> headAsync(String url, B2Headers headersOrNull) {
+        final HttpRequest request = makeRequestBuilder(url, headersOrNull)
+                .method("HEAD", BodyPublishers.noBody())
+                .build();
+        return send(request, response -> {
+            final int statusCode = response.statusCode();
+            if (statusCode == 200) {
+                return makeHeaders(response.headers());
+            } else {
+                throw B2Exception.create(null, statusCode, null, "");
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        // java.net.http.HttpClient doesn't have a close() until java 21.
+        // its threads go away on their own once nothing refers to it.
+    }
+
+    /**
+     * Reads a complete response.  It's called on one of the HttpClient's threads.
+     */
+    private interface ResponseReader<ResultType> {
+        ResultType read(HttpResponse<byte[]> response) throws B2Exception, IOException;
+    }
+
+    private <ResponseType> CompletableFuture<ResponseType> postAndReturnJson(String url,
+                                                                             B2Headers headersOrNull,
+                                                                             BodyPublisher body,
+                                                                             Duration timeout,
+                                                                             Class<ResponseType> responseClass) {
+        final HttpRequest request = makeRequestBuilder(url, headersOrNull)
+                .timeout(timeout)
+                .POST(body)
+                .build();
+        return send(request, response -> {
+            if (response.statusCode() == 200) {
+                try {
+                    return bzJson.fromJson(new ByteArrayInputStream(response.body()), responseClass, B2JsonOptions.DEFAULT_AND_ALLOW_EXTRA_FIELDS);
+                } catch (B2JsonException e) {
+                    throw new B2LocalException("parsing_failed", "can't convert response from json: " + e.getMessage(), e);
+                }
+            } else {
+                throw extractExceptionFromErrorResponse(response);
+            }
+        });
+    }
+
+    /**
+     * Sends the request without waiting for it.
+     *
+     * @return a future that's completed with whatever the reader returns, or
+     *         completed exceptionally with the B2Exception that describes
+     *         what went wrong.
+     */
+    private <ResultType> CompletableFuture<ResultType> send(HttpRequest request,
+                                                            ResponseReader<ResultType> reader) {
+        final String url = request.uri().toString();
+        final CompletableFuture<ResultType> result = new CompletableFuture<>();
+        httpClient.sendAsync(request, BodyHandlers.ofByteArray()).whenComplete((response, throwable) -> {
+            try {
+                if (throwable != null) {
+                    throw translateToB2Exception(throwable, url);
+                }
+                result.complete(reader.read(response));
+            } catch (IOException e) {
+                result.completeExceptionally(translateToB2Exception(e, url));
+            } catch (B2Exception | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private HttpRequest.Builder makeRequestBuilder(String url,
+                                                   B2Headers headersOrNull) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout);
+        if (headersOrNull != null) {
+            for (String name : headersOrNull.getNames()) {
+                final String lowerName = name.toLowerCase(Locale.ROOT);
+                if (lowerName.equals("expect")) {
+                    builder.expectContinue("100-continue".equalsIgnoreCase(headersOrNull.getValueOrNull(name)));
+                } else if (!HEADERS_WE_CANT_SET.contains(lowerName)) {
+                    builder.header(name, headersOrNull.getValueOrNull(name));
+                }
+            }
+        }
+        return builder;
+    }
+
+    private static B2Headers makeHeaders(HttpHeaders httpHeaders) {
+        final B2HeadersImpl.Builder builder = B2HeadersImpl.builder();
+        for (Map.Entry<String, List<String>> entry : httpHeaders.map().entrySet()) {
+            // skip http/2 pseudo-headers, such as ":status".
+            if (entry.getKey().startsWith(":")) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                builder.set(entry.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    private static <ResultType> ResultType await(CompletableFuture<ResultType> future) throws B2Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new B2LocalException("interrupted", "interrupted while waiting for a response: " + e, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof B2Exception) {
+                throw (B2Exception) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new B2LocalException("trouble", "trouble waiting for a response: " + cause, cause);
+        }
+    }
+
+    private static <ResultType> CompletableFuture<ResultType> failedFuture(B2Exception e) {
+        final CompletableFuture<ResultType> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static B2Exception translateToB2Exception(Throwable throwable, String url) {
+        // sendAsync() wraps what went wrong in a CompletionException.
+        final Throwable t = (throwable instanceof CompletionException && throwable.getCause() != null) ?
+                throwable.getCause() :
+                throwable;
+
+        if (t instanceof B2Exception) {
+            return (B2Exception) t;
+        }
+        if (t instanceof HttpConnectTimeoutException) {
+            return new B2ConnectFailedException("connect_timed_out", null, "connect timed out for " + url, t);
+        }
+        if (t instanceof HttpTimeoutException) {
+            return new B2NetworkTimeoutException("request_timed_out", null, "request timed out talking to " + url, t);
+        }
+        if (t instanceof ConnectException) {
+            return new B2ConnectFailedException("connect_failed", null, "failed to connect for " + url, t);
+        }
+        if (t instanceof UnknownHostException) {
+            return new B2ConnectFailedException("unknown_host", null, "unknown host for " + url, t);
+        }
+        if (t instanceof SocketException) {
+            return new B2NetworkException("socket_exception", null, "socket exception talking to " + url, t);
+        }
+        if (t instanceof IOException) {
+            return new B2NetworkException("io_exception", null, t + " talking to " + url, t);
+        }
+        return new B2LocalException("trouble", t + " talking to " + url, t);
+    }
+
+    private static B2Exception extractExceptionFromErrorResponse(HttpResponse<byte[]> response) {
+        final String responseText = new String(response.body(), StandardCharsets.UTF_8);
+        return extractExceptionFromErrorResponse(response.statusCode(), response.headers(), responseText);
+    }
+
+    private static B2Exception extractExceptionFromErrorResponse(int statusCode,
+                                                                 HttpHeaders headers,
+                                                                 String responseText) {
+        // Try B2 error structure
+        try {
+            B2ErrorStructure err = B2Json.get().fromJson(responseText, B2ErrorStructure.class);
+            return B2Exception.create(err.code, err.status, getRetryAfterSecondsOrNull(headers), err.message);
+        }
+        catch (Throwable t) {
+            // we can't parse the response as a B2 JSON error structure.
+            // so use the default.
+            return new B2Exception("unknown", statusCode, getRetryAfterSecondsOrNull(headers), responseText);
+        }
+    }
+
+    /**
+     * If there's a Retry-After header and it has a delay-seconds formatted value,
+     * this returns it.  (to be clear, if there's an HTTP-date value, we ignore it
+     * and keep looking for one with delay-seconds format.)
+     *
+     * @param headers the headers of the http response.
+     * @return the delay-seconds from a Retry-After header, if any.  otherwise, null.
+     */
+    private static Integer getRetryAfterSecondsOrNull(HttpHeaders headers) {
+        // https://tools.ietf.org/html/rfc7231#section-7.1.3
+        for (String value : headers.allValues(B2Headers.RETRY_AFTER)) {
+            try {
+                return Integer.parseInt(value, 10);
+            } catch (IllegalArgumentException e) {
+                // continue.
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param request the object to be json'ified.
+     * @return the utf-8 bytes of the json representation of request.
+     */
+    private byte[] toJsonBytes(Object request) throws B2Exception {
+        B2Preconditions.checkArgument(request != null);
+
+        try {
+            return bzJson.toJson(request).getBytes(StandardCharsets.UTF_8);
+        } catch (B2JsonException e) {
+            throw new B2LocalException("parsing_failed", "B2Json.toJson(" + request.getClass() + ") failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * This Builder creates B2WebApiJavaHttpClientImpls.
+     * If the httpClient isn't set, a new one with a five second
+     * connect timeout is used.  If the request timeout isn't set,
+     * it's twenty seconds.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static class Builder {
+        private HttpClient httpClient;
+        private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+        /**
+         * @param httpClient the client to send requests with.  set its
+         *                   executor to control which threads finish
+         *                   requests and run the code that waits on them.
+         * @return this builder.
+         */
+        public Builder setHttpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * @param requestTimeout how long to wait for a response to start
+         *                       before giving up with a B2NetworkTimeoutException,
+         *                       which is retried.  uploads get extra time for
+         *                       sending their content.  must be positive.
+         * @return this builder.
+         */
+        public Builder setRequestTimeout(Duration requestTimeout) {
+            B2Preconditions.checkArgumentIsNotNull(requestTimeout, "requestTimeout");
+            B2Preconditions.checkArgument(!requestTimeout.isNegative() && !requestTimeout.isZero(), "requestTimeout must be positive");
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public B2WebApiJavaHttpClientImpl build() {
+            return new B2WebApiJavaHttpClientImpl(httpClient, requestTimeout);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiJavaHttpClient;
+
+import com.backblaze.b2.client.B2AsyncStorageClient;
+import com.backblaze.b2.client.B2ClientConfig;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.structures.B2AccountAuthorization;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2GetFileInfoRequest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class B2StorageJavaHttpClientBuilderTest {
+    private final StubB2Server server = new StubB2Server();
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(2);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final B2AccountAuthorization accountAuth = new B2AccountAuthorization(
+            "account1",
+            "accountToken1",
+            server.getBaseUrl(),
+            server.getBaseUrl(),
+            100000000,
+            5000000,
+            null,
+            server.getBaseUrl());
+    private final B2AsyncStorageClient client = B2StorageJavaHttpClientBuilder
+            .builder(B2ClientConfig.builder(webifier -> accountAuth, "test-agent").build())
+            .setHttpClient(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(httpExecutor)
+                    .build())
+            .setExecutor(executor)
+            .buildAsync();
+
+    public B2StorageJavaHttpClientBuilderTest() throws Exception {
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+        httpExecutor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncClientKeepsThousandsOfRequestsInFlightOnAFewThreads() throws Exception {
+        final int threadsBefore = Thread.activeCount();
+
+        final int count = 1000;
+        final List<CompletableFuture<B2FileVersion>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(client.getFileInfo(B2GetFileInfoRequest.builder("id" + i).build()));
+        }
+
+        // every request gets to the server before it answers any of them...
+        final List<StubB2Server.Exchange> exchanges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final StubB2Server.Exchange exchange = server.takeExchange();
+            assertEquals("/b2api/v2/b2_get_file_info", exchange.path);
+            assertEquals("accountToken1", exchange.requestHeaders.getFirst(B2Headers.AUTHORIZATION));
+            exchanges.add(exchange);
+        }
+        for (CompletableFuture<B2FileVersion> future : futures) {
+            assertFalse(future.isDone());
+        }
+
+        // ...without a thread for each request.
+        final int threadsStarted = Thread.activeCount() - threadsBefore;
+        assertTrue("started " + threadsStarted + " threads", threadsStarted < 20);
+
+        for (StubB2Server.Exchange exchange : exchanges) {
+            final String fileId = exchange.getRequestBodyAsString().replaceAll("(?s).*\"(id[0-9]+)\".*", "$1");
+            exchange.respond(200, "{\"fileId\": \"" + fileId + "\", \"fileName\": \"files/" + fileId + "\", \"uploadTimestamp\": 1}");
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals("id" + i, futures.get(i).get(30, TimeUnit.SECONDS).getFileId());
+        }
+    }
+
+    @Test
+    public void testErrorsAreRetried() throws Exception {
+        final CompletableFuture<B2FileVersion> future = client.getFileInfo(B2GetFileInfoRequest.builder("id1").build());
+
+        // 429 with Retry-After: 0 is retried right away.
+        server.takeExchange().respond(
+                429,
+                Map.of(B2Headers.RETRY_AFTER, "0"),
+                "{\"status\": 429, \"code\": \"too_many_requests\", \"message\": \"slow down\"}");
+        server.takeExchange().respond(200, "{\"fileId\": \"id1\", \"fileName\": \"files/one\", \"uploadTimestamp\": 1}");
+
+        assertEquals("id1", future.get(30, TimeUnit.SECONDS).getFileId());
+    }
+}
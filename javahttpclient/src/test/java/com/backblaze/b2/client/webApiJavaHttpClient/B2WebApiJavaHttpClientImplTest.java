@@ -0,0 +1,286 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiJavaHttpClient;
+
+import com.backblaze.b2.client.contentHandlers.B2ContentMemoryWriter;
+import com.backblaze.b2.client.contentSources.B2Headers;
+import com.backblaze.b2.client.contentSources.B2HeadersImpl;
+import com.backblaze.b2.client.exceptions.B2ConnectFailedException;
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2NetworkTimeoutException;
+import com.backblaze.b2.client.exceptions.B2NotFoundException;
+import com.backblaze.b2.client.exceptions.B2TooManyRequestsException;
+import com.backblaze.b2.client.structures.B2FileVersion;
+import com.backblaze.b2.client.structures.B2GetFileInfoRequest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests B2WebApiJavaHttpClientImpl against a real http server in this process.
+ */
+public class B2WebApiJavaHttpClientImplTest {
+    private static final String FILE_VERSION_JSON = "{\"fileId\": \"id1\", \"fileName\": \"files/one\", \"uploadTimestamp\": 1}";
+
+    private final StubB2Server server = new StubB2Server();
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(2);
+    private final B2WebApiJavaHttpClientImpl webApiClient = B2WebApiJavaHttpClientImpl.builder()
+            .setHttpClient(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(httpExecutor)
+                    .build())
+            .build();
+
+    public B2WebApiJavaHttpClientImplTest() throws Exception {
+    }
+
+    @After
+    public void tearDown() {
+        webApiClient.close();
+        server.close();
+        httpExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPostJsonReturnJson() throws Exception {
+        server.setResponder(exchange -> {
+            assertEquals("POST", exchange.method);
+            assertEquals("/b2api/v2/b2_get_file_info", exchange.path);
+            assertEquals("token1", exchange.requestHeaders.getFirst(B2Headers.AUTHORIZATION));
+            assertEquals("{\n  \"fileId\": \"id1\"\n}", exchange.getRequestBodyAsString());
+            exchange.respond(200, FILE_VERSION_JSON);
+        });
+
+        final B2FileVersion version = webApiClient.postJsonReturnJson(
+                server.getBaseUrl() + "/b2api/v2/b2_get_file_info",
+                makeAuthHeaders(),
+                B2GetFileInfoRequest.builder("id1").build(),
+                B2FileVersion.class);
+        assertEquals("id1", version.getFileId());
+        assertEquals("files/one", version.getFileName());
+    }
+
+    @Test
+    public void testErrorResponseBecomesB2Exception() throws Exception {
+        server.setResponder(exchange -> exchange.respond(
+                429,
+                Map.of(B2Headers.RETRY_AFTER, "5"),
+                "{\"status\": 429, \"code\": \"too_many_requests\", \"message\": \"slow down\"}"));
+
+        final CompletableFuture<B2FileVersion> future = webApiClient.postJsonReturnJsonAsync(
+                server.getBaseUrl() + "/b2api/v2/b2_get_file_info",
+                makeAuthHeaders(),
+                B2GetFileInfoRequest.builder("id1").build(),
+                B2FileVersion.class);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("should've thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof B2TooManyRequestsException);
+            final B2Exception b2Exception = (B2Exception) e.getCause();
+            assertEquals("too_many_requests", b2Exception.getCode());
+            assertEquals("slow down", b2Exception.getMessage());
+            assertEquals(Integer.valueOf(5), b2Exception.getRetryAfterSecondsOrNull());
+        }
+    }
+
+    @Test
+    public void testUnparseableErrorResponse() {
+        server.setResponder(exchange -> exchange.respond(500, "not json"));
+
+        try {
+            webApiClient.postJsonReturnJson(
+                    server.getBaseUrl() + "/b2api/v2/b2_get_file_info",
+                    makeAuthHeaders(),
+                    B2GetFileInfoRequest.builder("id1").build(),
+                    B2FileVersion.class);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertEquals("unknown", e.getCode());
+            assertEquals(500, e.getStatus());
+            assertEquals("not json", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPostDataReturnJson() throws Exception {
+        final byte[] content = "some content".getBytes();
+        server.setResponder(exchange -> {
+            assertEquals(Integer.toString(content.length), exchange.requestHeaders.getFirst(B2Headers.CONTENT_LENGTH));
+            assertTrue("100-continue".equalsIgnoreCase(exchange.requestHeaders.getFirst(B2Headers.EXPECT)));
+            assertEquals("files/one", exchange.requestHeaders.getFirst(B2Headers.FILE_NAME));
+            assertArrayEquals(content, exchange.requestBody);
+            exchange.respond(200, FILE_VERSION_JSON);
+        });
+
+        final B2Headers headers = B2HeadersImpl.builder()
+                .set(B2Headers.AUTHORIZATION, "uploadToken1")
+                .set(B2Headers.FILE_NAME, "files/one")
+                .set(B2Headers.CONTENT_LENGTH, Integer.toString(content.length))
+                .set(B2Headers.EXPECT, "100-continue")
+                .build();
+        final B2FileVersion version = webApiClient.postDataReturnJson(
+                server.getBaseUrl() + "/upload",
+                headers,
+                new ByteArrayInputStream(content),
+                content.length,
+                B2FileVersion.class);
+        assertEquals("id1", version.getFileId());
+    }
+
+    @Test
+    public void testGetContent() throws Exception {
+        server.setResponder(exchange -> {
+            assertEquals("GET", exchange.method);
+            assertEquals("bytes=0-4", exchange.requestHeaders.getFirst(B2Headers.RANGE));
+            exchange.respond(206, Map.of("X-Bz-Info-color", "blue"), "hello");
+        });
+        final B2Headers headers = B2HeadersImpl.builder()
+                .set(B2Headers.RANGE, "bytes=0-4")
+                .build();
+
+        // blocking.
+        final B2ContentMemoryWriter writer = B2ContentMemoryWriter.build();
+        webApiClient.getContent(server.getBaseUrl() + "/file/bucket/one", headers, writer);
+        assertArrayEquals("hello".getBytes(), writer.getBytes());
+        assertEquals("blue", writer.getHeadersOrNull().getValueOrNull("x-bz-info-color"));
+
+        // non-blocking.
+        final B2ContentMemoryWriter asyncWriter = B2ContentMemoryWriter.build();
+        assertNull(webApiClient.getContentAsync(server.getBaseUrl() + "/file/bucket/one", headers, asyncWriter).get(10, TimeUnit.SECONDS));
+        assertArrayEquals("hello".getBytes(), asyncWriter.getBytes());
+    }
+
+    @Test
+    public void testGetContentErrorResponse() {
+        server.setResponder(exchange -> exchange.respond(404, "{\"status\": 404, \"code\": \"not_found\", \"message\": \"no such file\"}"));
+        try {
+            webApiClient.getContent(server.getBaseUrl() + "/file/bucket/one", null, B2ContentMemoryWriter.build());
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertTrue(e instanceof B2NotFoundException);
+            assertEquals("no such file", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testHead() throws Exception {
+        server.setResponder(exchange -> {
+            assertEquals("HEAD", exchange.method);
+            if (exchange.path.endsWith("/one")) {
+                exchange.respond(200, Map.of(B2Headers.FILE_ID, "id1"), "");
+            } else {
+                exchange.respond(404, "");
+            }
+        });
+
+        assertEquals("id1", webApiClient.head(server.getBaseUrl() + "/file/bucket/one", null).getValueOrNull(B2Headers.FILE_ID));
+        try {
+            webApiClient.headAsync(server.getBaseUrl() + "/file/bucket/two", null).get(10, TimeUnit.SECONDS);
+            fail("should've thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof B2NotFoundException);
+        }
+    }
+
+    @Test
+    public void testConnectFailure() {
+        final String url = server.getBaseUrl() + "/b2api/v2/b2_get_file_info";
+        server.close();
+        try {
+            webApiClient.postJsonReturnJson(url, makeAuthHeaders(), B2GetFileInfoRequest.builder("id1").build(), B2FileVersion.class);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertTrue(e instanceof B2ConnectFailedException);
+            assertEquals("connect_failed", e.getCode());
+        }
+    }
+
+    @Test
+    public void testRequestTimesOutWhenTheServerNeverAnswers() throws Exception {
+        // the responder takes each request and never answers it.
+        server.setResponder(exchange -> {});
+        final B2WebApiJavaHttpClientImpl impatientClient = B2WebApiJavaHttpClientImpl.builder()
+                .setHttpClient(HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .executor(httpExecutor)
+                        .build())
+                .setRequestTimeout(Duration.ofMillis(200))
+                .build();
+        final String url = server.getBaseUrl() + "/b2api/v2/b2_get_file_info";
+
+        try {
+            impatientClient.postJsonReturnJson(url, makeAuthHeaders(), B2GetFileInfoRequest.builder("id1").build(), B2FileVersion.class);
+            fail("should've thrown");
+        } catch (B2Exception e) {
+            assertTrue(e instanceof B2NetworkTimeoutException);
+            assertEquals("request_timed_out", e.getCode());
+        }
+
+        try {
+            impatientClient.postJsonReturnJsonAsync(url, makeAuthHeaders(), B2GetFileInfoRequest.builder("id1").build(), B2FileVersion.class)
+                    .get(10, TimeUnit.SECONDS);
+            fail("should've thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof B2NetworkTimeoutException);
+            assertEquals("request_timed_out", ((B2Exception) e.getCause()).getCode());
+        }
+    }
+
+    @Test
+    public void testRequestsWaitWithoutHoldingThreads() throws Exception {
+        // more requests than the http client has threads, by a lot.
+        final int count = 500;
+        final List<CompletableFuture<B2FileVersion>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(webApiClient.postJsonReturnJsonAsync(
+                    server.getBaseUrl() + "/b2api/v2/b2_get_file_info",
+                    makeAuthHeaders(),
+                    B2GetFileInfoRequest.builder("id" + i).build(),
+                    B2FileVersion.class));
+        }
+
+        // all of them get to the server before it answers any of them.
+        final List<StubB2Server.Exchange> exchanges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            exchanges.add(server.takeExchange());
+        }
+        for (CompletableFuture<B2FileVersion> future : futures) {
+            assertFalse(future.isDone());
+        }
+
+        for (StubB2Server.Exchange exchange : exchanges) {
+            final String fileId = exchange.getRequestBodyAsString().replaceAll("(?s).*\"(id[0-9]+)\".*", "$1");
+            exchange.respond(200, FILE_VERSION_JSON.replace("id1", fileId));
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals("id" + i, futures.get(i).get(30, TimeUnit.SECONDS).getFileId());
+        }
+    }
+
+    private static B2Headers makeAuthHeaders() {
+        return B2HeadersImpl.builder()
+                .set(B2Headers.AUTHORIZATION, "token1")
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021, Backblaze Inc. All Rights Reserved.
+ * License https://www.backblaze.com/using_b2_code.html
+ */
+package com.backblaze.b2.client.webApiJavaHttpClient;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * StubB2Server is a real http server on the loopback interface.
+ *
+ * By default, it parks every request it gets until the test takes it
+ * with takeExchange() and responds to it.  Parked requests don't hold a
+ * thread, so a test can have as many of them as it has sockets.  If a
+ * responder is set, the server uses it to answer requests right away.
+ */
+class StubB2Server implements AutoCloseable {
+
+    /**
+     * One request, waiting for its response.
+     */
+    static class Exchange {
+        final String method;
+        final String path;
+        final Headers requestHeaders;
+        final byte[] requestBody;
+        private final HttpExchange httpExchange;
+
+        private Exchange(HttpExchange httpExchange) throws IOException {
+            this.method = httpExchange.getRequestMethod();
+            this.path = httpExchange.getRequestURI().toString();
+            this.requestHeaders = httpExchange.getRequestHeaders();
+            try (InputStream in = httpExchange.getRequestBody()) {
+                this.requestBody = in.readAllBytes();
+            }
+            this.httpExchange = httpExchange;
+        }
+
+        String getRequestBodyAsString() {
+            return new String(requestBody, StandardCharsets.UTF_8);
+        }
+
+        void respond(int statusCode, String body) throws IOException {
+            respond(statusCode, Collections.emptyMap(), body);
+        }
+
+        void respond(int statusCode,
+                     Map<String, String> headers,
+                     String body) throws IOException {
+            headers.forEach(httpExchange.getResponseHeaders()::add);
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            if (method.equals("HEAD")) {
+                httpExchange.sendResponseHeaders(statusCode, -1);
+            } else {
+                httpExchange.sendResponseHeaders(statusCode, bytes.length);
+                try (OutputStream out = httpExchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            httpExchange.close();
+        }
+    }
+
+    interface Responder {
+        void respond(Exchange exchange) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final BlockingQueue<Exchange> parked = new LinkedBlockingQueue<>();
+    private volatile Responder responderOrNull;
+
+    StubB2Server() throws IOException {
+        // the backlog is big enough for every connection in the busiest test.
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2000);
+        server.createContext("/", httpExchange -> {
+            final Exchange exchange = new Exchange(httpExchange);
+            final Responder responder = responderOrNull;
+            if (responder != null) {
+                try {
+                    responder.respond(exchange);
+                } catch (AssertionError | RuntimeException e) {
+                    // let the test see what the responder didn't like.
+                    exchange.respond(500, "stub server: " + e);
+                }
+            } else {
+                parked.add(exchange);
+            }
+        });
+        server.start();
+    }
+
+    String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void setResponder(Responder responder) {
+        this.responderOrNull = responder;
+    }
+
+    Exchange takeExchange() throws InterruptedException {
+        final Exchange exchange = parked.poll(30, TimeUnit.SECONDS);
+        assertNotNull("no request arrived", exchange);
+        return exchange;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}